@@ -0,0 +1,271 @@
+package bx.cryptogui;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Candle buckets aligned to the wall clock of a time zone, changes of offset such as summer time included, found by
+ * a few integer operations on tables made once per zone instead of {@link java.time.LocalDateTime}s.
+ * <p>
+ *     The offset transitions of the zone from 1900 to 2200 are kept as epoch seconds, and the start of each local day
+ *     from 1970 to 2100 with the offset then in force, so the offset at a time and the day containing it are a lookup.
+ *     Outside of these the offsets are found by binary search, and before 1900 and after 2200 the first and last
+ *     offsets are kept.
+ * </p>
+ * <p>
+ *     Intervals dividing a day start where the local time is a multiple of them. Over a change of offset the bucket
+ *     ends at the first such time after it, so it may be shorter or longer. Intervals of whole days start at local
+ *     midnight, counted in days since 1970-01-01, and those of whole weeks on Monday, from 1970-01-05; such a day is
+ *     23 or 25 hours long when the clocks change.
+ * </p>
+ * <p>Immutable.</p>
+ */
+public final class CalendarBuckets {
+
+    public static final int DAY = 86400;
+    public static final int WEEK = 7*DAY;
+
+    private static final long FIRST_DAY = 0;     // 1970-01-01
+    private static final long END_DAY = LocalDate.of(2100, 1, 1).toEpochDay();
+    private static final long WEEK_ANCHOR_DAY = 4;  // 1970-01-05, a Monday
+    private static final long TRANSITIONS_FROM = LocalDate.of(1900, 1, 1).toEpochDay()*DAY;
+    private static final long TRANSITIONS_TO = LocalDate.of(2200, 1, 1).toEpochDay()*DAY;
+
+    private static volatile CalendarBuckets local;
+
+    private final ZoneId zone;
+    private final long[] transitions;       // instants the offset changes
+    private final long[] localTransitions;  // local times of the changes, in the offset before them
+    private final int[] offsets;            // offsets[i] in force before transitions[i], the last after them all
+    private final int standardOffset;
+    private final long[] dayStarts;         // start of each local day from FIRST_DAY to END_DAY
+    private final int[] daySegments;        // index into offsets in force at each day start
+
+    private CalendarBuckets(ZoneId zone) {
+        this.zone = zone;
+        final ZoneRules rules = zone.getRules();
+        List<ZoneOffsetTransition> changes = new ArrayList<>();
+        ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochSecond(TRANSITIONS_FROM));
+        while (transition != null && transition.toEpochSecond() < TRANSITIONS_TO) {
+            changes.add(transition);
+            transition = rules.nextTransition(transition.getInstant());
+        }
+        transitions = new long[changes.size()];
+        localTransitions = new long[changes.size()];
+        offsets = new int[changes.size() + 1];
+        offsets[0] = rules.getOffset(Instant.ofEpochSecond(TRANSITIONS_FROM)).getTotalSeconds();
+        for (int i = 0; i < changes.size(); i++) {
+            transitions[i] = changes.get(i).toEpochSecond();
+            localTransitions[i] = transitions[i] + offsets[i];
+            offsets[i + 1] = changes.get(i).getOffsetAfter().getTotalSeconds();
+        }
+        standardOffset = rules.getStandardOffset(Instant.now()).getTotalSeconds();
+        final int days = (int) (END_DAY - FIRST_DAY);
+        dayStarts = new long[days + 1];
+        daySegments = new int[days + 1];
+        int segment = 0;
+        for (int i = 0; i <= days; i++) {
+            dayStarts[i] = toInstant((FIRST_DAY + i)*DAY);
+            while (segment < transitions.length && transitions[segment] <= dayStarts[i]) {
+                segment++;
+            }
+            daySegments[i] = segment;
+        }
+    }
+
+    /**
+     * @return buckets of a zone, made anew
+     */
+    public static CalendarBuckets of(ZoneId zone) {
+        return new CalendarBuckets(zone);
+    }
+
+    /**
+     * @return buckets of the system default zone when first called, made once
+     */
+    public static CalendarBuckets local() {
+        CalendarBuckets buckets = local;
+        if (buckets == null) {
+            buckets = new CalendarBuckets(ZoneId.systemDefault());
+            local = buckets;
+        }
+        return buckets;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return seconds east of UTC of the zone's standard time now, without summer time
+     */
+    public int getStandardOffset() {
+        return standardOffset;
+    }
+
+    /**
+     * @return true if the zone never changes offset in the tables
+     */
+    public boolean isFixed() {
+        return transitions.length == 0;
+    }
+
+    /**
+     * @param level seconds per bucket
+     * @param offset offset the buckets are aligned to, seconds east of UTC
+     * @return true if buckets of a fixed offset start where those of the zone do at every offset since 1970, eg.
+     * hours for a zone only changing by whole hours
+     */
+    public boolean alignsWith(int level, int offset) {
+        for (int i = daySegments[0]; i < offsets.length; i++) {
+            if ((offsets[i] - offset) % level != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return seconds east of UTC in force at a time
+     */
+    public int offsetAt(long time) {
+        return offsets[segmentAt(time)];
+    }
+
+    /**
+     * @return index into offsets of the offset in force at a time
+     */
+    private int segmentAt(long time) {
+        if (transitions.length == 0) {
+            return 0;
+        }
+        final int day = dayIndex(time);
+        if (day < 0) {
+            int index = Arrays.binarySearch(transitions, time);
+            return index < 0 ? -index - 1 : index + 1;
+        }
+        int segment = daySegments[day];
+        while (segment < transitions.length && transitions[segment] <= time) {
+            segment++;
+        }
+        return segment;
+    }
+
+    /**
+     * @return index into dayStarts of the local day containing a time, -1 if outside of them
+     */
+    private int dayIndex(long time) {
+        if (time < dayStarts[0] || time >= dayStarts[dayStarts.length - 1]) {
+            return -1;
+        }
+        // standard and actual offset differ by less than a day
+        int day = (int) (Math.floorDiv(time + standardOffset, DAY) - FIRST_DAY);
+        day = Math.max(0, Math.min(dayStarts.length - 2, day));
+        if (time < dayStarts[day]) {
+            day--;
+        } else if (time >= dayStarts[day + 1]) {
+            day++;
+        }
+        return day;
+    }
+
+    /**
+     * @return the local day containing a time, in days since 1970-01-01
+     */
+    public long localDay(long time) {
+        final int day = dayIndex(time);
+        return day >= 0 ? FIRST_DAY + day : Math.floorDiv(time + offsetAt(time), DAY);
+    }
+
+    /**
+     * @param epochDay local day, in days since 1970-01-01
+     * @return start of the day, local midnight, or the end of the change of offset if midnight is skipped
+     */
+    public long dayStart(long epochDay) {
+        if (epochDay >= FIRST_DAY && epochDay <= END_DAY) {
+            return dayStarts[(int) (epochDay - FIRST_DAY)];
+        }
+        return toInstant(epochDay*DAY);
+    }
+
+    /**
+     * @param localTime local time as epoch seconds
+     * @return the instant of it, the earlier in an overlap, the end of the change in a gap
+     */
+    private long toInstant(long localTime) {
+        int index = Arrays.binarySearch(localTransitions, localTime);
+        final int segment = index < 0 ? -index - 1 : index + 1;
+        final long time = localTime - offsets[segment];
+        return segment > 0 ? Math.max(time, transitions[segment - 1]) : time;
+    }
+
+    /**
+     * @param interval seconds per bucket, dividing a day or a whole number of days or weeks
+     * @return start of the bucket containing a time
+     * @throws IllegalArgumentException the interval is none of them
+     */
+    public long floor(long time, int interval) {
+        if (interval > 0 && interval < DAY && DAY % interval == 0) {
+            int segment = segmentAt(time);
+            long start = time - Math.floorMod(time + offsets[segment], interval);
+            // no bucket starts in this offset before the time, take the last one of the offset before
+            while (segment > 0 && start < transitions[segment - 1]) {
+                final long before = transitions[--segment] - 1;
+                start = before - Math.floorMod(before + offsets[segment], interval);
+            }
+            return start;
+        }
+        if (interval > 0 && interval % WEEK == 0) {
+            final long day = localDay(time);
+            return dayStart(day - Math.floorMod(day - WEEK_ANCHOR_DAY, interval/DAY));
+        }
+        if (interval > 0 && interval % DAY == 0) {
+            final long day = localDay(time);
+            return dayStart(day - Math.floorMod(day, interval/DAY));
+        }
+        throw new IllegalArgumentException("Interval must divide a day or be whole days: " + interval);
+    }
+
+    /**
+     * @param start start of a bucket, see {@link #floor}
+     * @param interval seconds per bucket
+     * @return start of the bucket after it, a fixed interval later if the interval neither divides a day nor is whole
+     * days
+     */
+    public long next(long start, int interval) {
+        if (interval > 0 && interval < DAY && DAY % interval == 0) {
+            long end = start + interval;
+            int segment = segmentAt(start);
+            // the offset changes before the end, the bucket ends at the first start in the new offset
+            while (segment < transitions.length && transitions[segment] <= end) {
+                final long change = transitions[segment++];
+                end = change + Math.floorMod(-(change + offsets[segment]), interval);
+            }
+            return end;
+        }
+        if (interval > 0 && interval % DAY == 0) {
+            return dayStart(localDay(start) + interval/DAY);
+        }
+        if (interval > 0) {
+            return start + interval;
+        }
+        throw new IllegalArgumentException("Interval must be positive: " + interval);
+    }
+
+    /**
+     * @param weeks weeks per bucket
+     * @param firstDay day the weeks start on
+     * @return start of the bucket of whole weeks containing a time, counting from the first such day after 1970-01-01
+     */
+    public long floorToWeek(long time, int weeks, DayOfWeek firstDay) {
+        final long day = localDay(time);
+        return dayStart(day - Math.floorMod(day - WEEK_ANCHOR_DAY - firstDay.ordinal(), 7L*weeks));
+    }
+}
@@ -1,7 +1,9 @@
 package bx.cryptogui;
 
 import bx.cryptogui.control.*;
+import bx.cryptogui.data.CandleColumns;
 import bx.cryptogui.data.Order;
+import bx.cryptogui.data.OrderBook;
 import bx.cryptogui.data.Transaction;
 import javafx.application.Platform;
 import javafx.beans.property.*;
@@ -21,6 +23,7 @@ import java.net.URL;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.stream.Collectors;
@@ -30,6 +33,8 @@ public class ChartPaneController implements Initializable {
     public static final DateTimeFormatter INFO_DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("EEE dd/MM/yyyy HH:mm:ss");
     public static final int MIN_DISPLAYED_BARS = 20;
     public static final int MAX_DISPLAYED_BARS = 300;
+    /** Trades shown in the past trades table */
+    public static final int PAST_TRADES = 200;
 
     private final DoubleProperty dragStartX = new SimpleDoubleProperty();
     private final IntegerProperty dragStartOffset = new SimpleIntegerProperty();
@@ -91,6 +96,8 @@ public class ChartPaneController implements Initializable {
     @FXML protected TableView<Order> buyOrders;
     @FXML protected TableView<Order> sellOrders;
     @FXML private TableView<Transaction> pastTrades;
+    private OrderBookList buyOrderItems;
+    private OrderBookList sellOrderItems;
 
 
     @Override
@@ -256,24 +263,109 @@ public class ChartPaneController implements Initializable {
         firstBarOffset.set(0);
         refreshTimeAxis();
         for (int i = 0, max = prices.size(); i < max; i++) {
-            double open = prices.get(i).getYValue().doubleValue();
-            double close = ((CandleStickValues) prices.get(i).getExtraValue()).getClose();
-            ObservableList<String> styleClass = volumes.get(i).getNode().getStyleClass();
-            styleClass.removeAll("open-above-close", "close-above-close");
-            if (open > close) {
-                styleClass.add("open-above-close");
-            } else {
-                styleClass.add("close-above-open");
-            }
+            styleVolumeBar(i);
         }
         // past trades
         pastTrades.getItems().clear();
-        for (int i = data.size() - 1, count = 0; i >= 0 && count < 200; i--, count++) {
+        for (int i = data.size() - 1, count = 0; i >= 0 && count < PAST_TRADES; i--, count++) {
             pastTrades.getItems().add(data.get(i));
         }
         pastTrades.scrollTo(0);
     }
 
+    /**
+     * Updates the chart in place after new trades, without rebuilding the series: replaces the candles from an
+     * index on, appends the new ones and adds the trades to the past trades.
+     * @param from index of the first changed candle
+     * @param candles the changed candles, then the new ones
+     * @param trades new trades, ordered by time ascending
+     */
+    public void updateLiveData(int from, CandleColumns candles, List<Transaction> trades) {
+        assert Platform.isFxApplicationThread();
+        final ObservableList<XYChart.Data<Number, Number>> prices = priceData.getData();
+        final ObservableList<XYChart.Data<Number, Number>> volumes = volumeData.getData();
+        if (from > prices.size()) {     // not the candles shown
+            return;
+        }
+        List<XYChart.Data<Number, Number>> newPrices = new ArrayList<>();
+        List<XYChart.Data<Number, Number>> newVolumes = new ArrayList<>();
+        for (int i = 0, size = candles.size(); i < size; i++) {
+            final int index = from + i;
+            final CandleStickValues values = new CandleStickValues(candles.getClose(i), candles.getHigh(i),
+                    candles.getLow(i));
+            if (index < prices.size()) {
+                prices.get(index).setExtraValue(values);
+                prices.get(index).setYValue(candles.getOpen(i));
+                volumes.get(index).setExtraValue(candles.getQuoteVolume(i));
+                volumes.get(index).setYValue(candles.getVolume(i));
+            } else {
+                newPrices.add(new XYChart.Data<>(candles.getTime(i), candles.getOpen(i), values));
+                newVolumes.add(new XYChart.Data<>(candles.getTime(i), candles.getVolume(i),
+                        candles.getQuoteVolume(i)));
+            }
+        }
+        prices.addAll(newPrices);
+        volumes.addAll(newVolumes);
+        for (int i = from, max = prices.size(); i < max; i++) {
+            styleVolumeBar(i);
+        }
+        if (!newPrices.isEmpty()) {
+            refreshTimeAxis();
+        }
+        // past trades, newest first
+        final ObservableList<Transaction> items = pastTrades.getItems();
+        List<Transaction> newest = new ArrayList<>();
+        for (int i = trades.size() - 1; i >= 0 && newest.size() < PAST_TRADES; i--) {
+            newest.add(trades.get(i));
+        }
+        items.addAll(0, newest);
+        if (items.size() > PAST_TRADES) {
+            items.remove(PAST_TRADES, items.size());
+        }
+    }
+
+    private void styleVolumeBar(int index) {
+        final XYChart.Data<Number, Number> price = priceData.getData().get(index);
+        double open = price.getYValue().doubleValue();
+        double close = ((CandleStickValues) price.getExtraValue()).getClose();
+        ObservableList<String> styleClass = volumeData.getData().get(index).getNode().getStyleClass();
+        styleClass.removeAll("open-above-close", "close-above-open");
+        if (open > close) {
+            styleClass.add("open-above-close");
+        } else {
+            styleClass.add("close-above-open");
+        }
+    }
+
+    /**
+     * Shows the book in the order tables. The tables read the book directly, call {@link #refreshOrderBook()} after
+     * it changed.
+     * @param book order book, or null to clear the tables
+     * @param depth levels shown per side
+     */
+    public void setOrderBook(OrderBook book, int depth) {
+        assert Platform.isFxApplicationThread();
+        if (book == null) {
+            buyOrderItems = null;
+            sellOrderItems = null;
+            buyOrders.getItems().clear();
+            sellOrders.getItems().clear();
+        } else {
+            buyOrderItems = new OrderBookList(book, true, depth);
+            sellOrderItems = new OrderBookList(book, false, depth);
+            buyOrders.setItems(buyOrderItems);
+            sellOrders.setItems(sellOrderItems);
+        }
+    }
+
+    public void refreshOrderBook() {
+        assert Platform.isFxApplicationThread();
+        if (buyOrderItems != null) {
+            buyOrderItems.refresh();
+            sellOrderItems.refresh();
+        }
+    }
+
     public void refreshTimeAxis() {
         assert !tAxis.isAutoRanging();
 //        assert !yAxis.isAutoRanging();
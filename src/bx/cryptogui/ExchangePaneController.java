@@ -140,7 +140,7 @@ public class ExchangePaneController implements Initializable {
                 int slashIndex = string.indexOf('/');
                 Currency cur1 = Currency.valueOf(string.substring(0, slashIndex));
                 Currency cur2 = Currency.valueOf(string.substring(slashIndex+1));
-                return new CurrencyPair(cur1, cur2);
+                return CurrencyPair.of(cur1, cur2);
             }
         });
         lastUpdatedText.textProperty().bind(lastUpdated.asString("%ss ago"));
@@ -268,6 +268,10 @@ public class ExchangePaneController implements Initializable {
         chartCtrl.updateData(data, prices, volumes, interval);
     }
 
+    public void updateLiveData(int from, CandleColumns candles, List<Transaction> trades) {
+        chartCtrl.updateLiveData(from, candles, trades);
+    }
+
     public void refreshTimeAxis() {
         chartCtrl.refreshTimeAxis();
     }
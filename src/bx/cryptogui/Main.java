@@ -1,20 +1,27 @@
 package bx.cryptogui;
 
 import bx.cryptogui.manager.APIManager;
+import bx.cryptogui.manager.ConnectionManager;
 import bx.cryptogui.manager.DatabaseManager;
+import bx.cryptogui.manager.GroupCommitWriter;
+import bx.cryptogui.manager.PollScheduler;
 import javafx.application.Application;
 import javafx.beans.binding.Bindings;
-import javafx.collections.FXCollections;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.chart.XYChart;
 import javafx.stage.Stage;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import bx.cryptogui.data.*;
 
@@ -38,18 +45,39 @@ public class Main extends Application {
     }
 
     /**
-     * Columns: time INT, price REAL, volume REAL, type INT (0-buy, 1-sell, other-unknown).
+     * Trade table columns: see {@link bx.cryptogui.manager.SchemaManager}.
      */
-    private Connection conn;
+    private ConnectionManager connections;
     private MainController controller;
 
     private DatabaseManager databaseManager;
     private final APIManager apiManager = new APIManager();
 
     @Override
-    public void init() throws SQLException {
-        conn = DriverManager.getConnection("jdbc:sqlite:cryptoExchanges.db");
-        databaseManager = new DatabaseManager(conn);
+    public void init() throws IOException, SQLException {
+        connections = new ConnectionManager("jdbc:sqlite:cryptoExchanges.db");
+        // trade writes are committed one by one unless grouped, eg. -Dcryptogui.commitLatency=0 groups the writes
+        // queued meanwhile, worth it where commits sync the file, -Dcryptogui.commitLatency=50 waits 50 ms for more
+        databaseManager = new DatabaseManager(connections,
+                Long.getLong("cryptogui.commitLatency", GroupCommitWriter.DEFAULT_COMMIT_LATENCY));
+        databaseManager.migrateSchema();
+        // tables kept in column files, eg. -Dcryptogui.columnar=coinbase_btc_usd,bitstamp_btc_usd
+        List<String> columnarTables = Arrays.asList(System.getProperty("cryptogui.columnar", "").split(","));
+        for (DatabaseManager.ExchangeManager manager: databaseManager.getAllExchangeManagers()) {
+            for (Map.Entry<CurrencyPair, String> entry: manager.getTableNames().entrySet()) {
+                if (columnarTables.contains(entry.getValue())) {
+                    databaseManager.useColumnarStore(TradePlatform.of(manager.getExchange(), entry.getKey()),
+                            new File("columnar"));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop() throws IOException, SQLException {
+        databaseManager.stopScheduledUpdates();
+        databaseManager.closeTradeStores();
+        connections.close();
     }
 
     @Override
@@ -68,7 +96,7 @@ public class Main extends Application {
         primaryStage.show();
 
         controller.logMessage("Welcome");
-        requestDatabaseUpdate();
+        databaseManager.startScheduledUpdates();
     }
 
 
@@ -108,12 +136,18 @@ public class Main extends Application {
         settingsCtrl.kiwicoinUpdatePane.progressVisibleProperty().bind(kiwicoinManager.writingProperty());
         // Button action
         settingsCtrl.updateDatabaseButton.setOnAction(event -> requestDatabaseUpdate());
-        // Auto update
-        settingsCtrl.lastUpdatedProperty().addListener(observable -> {
-            if (settingsCtrl.getLastUpdated() >= settingsCtrl.getAutoUpdateDatabaseRate()) {
-                requestDatabaseUpdate();
-            }
-        });
+        // Auto update, polls busy pairs more often, the rate is the longest interval between polls
+        final PollScheduler pollScheduler = databaseManager.getPollScheduler();
+        pollScheduler.setMaxInterval(settingsCtrl.getAutoUpdateDatabaseRate()*1000L);
+        settingsCtrl.autoUpdateDatabaseRateProperty().addListener((observable, oldValue, newValue) ->
+                pollScheduler.setMaxInterval(newValue.intValue()*1000L));
+        for (DatabaseManager.ExchangeManager manager: databaseManager.getAllExchangeManagers()) {
+            manager.writingProperty().addListener((observable, oldValue, newValue) -> {
+                if (newValue) {
+                    settingsCtrl.resetLastUpdated();
+                }
+            });
+        }
         // Writer failed log message (instead of passing silently)
         for (Exchange exchange: databaseManager.getSupportedExchanges()) {
             DatabaseManager.ExchangeManager manager = databaseManager.getExchangeManager(exchange);
@@ -168,17 +202,26 @@ public class Main extends Application {
         // Time interval action, Update graph button
         for (Exchange exchange: databaseManager.getSupportedExchanges()) {
             final ExchangePaneController ctrl = controller.getController(exchange);
+            for (Duration duration: ctrl.chartCtrl.timeIntervalChoice.getItems()) {
+                databaseManager.getExchangeManager(exchange).getChartIntervals().add((int) duration.getSeconds());
+            }
             ctrl.updateButton.setOnAction(event -> {
-                plotFromDatabase(new TradePlatform(exchange, ctrl.getCurrencyPair()));
-                updateTickerAndOrders(new TradePlatform(exchange, ctrl.getCurrencyPair()));
+                plotFromDatabase(TradePlatform.of(exchange, ctrl.getCurrencyPair()));
+                updateTickerAndOrders(TradePlatform.of(exchange, ctrl.getCurrencyPair()));
             });
             ctrl.chartCtrl.timeIntervalChoice.valueProperty().addListener(observable -> {
-                calculateThenPlot(new TradePlatform(exchange, ctrl.getCurrencyPair()));
-                updateTickerAndOrders(new TradePlatform(exchange, ctrl.getCurrencyPair()));
+                calculateThenPlot(TradePlatform.of(exchange, ctrl.getCurrencyPair()));
+                updateTickerAndOrders(TradePlatform.of(exchange, ctrl.getCurrencyPair()));
             });
             ctrl.currencyChoice.getSelectionModel().selectedItemProperty().addListener(observable -> {
-                calculateThenPlot(new TradePlatform(exchange, ctrl.getCurrencyPair()));
-                updateTickerAndOrders(new TradePlatform(exchange, ctrl.getCurrencyPair()));
+                calculateThenPlot(TradePlatform.of(exchange, ctrl.getCurrencyPair()));
+                updateTickerAndOrders(TradePlatform.of(exchange, ctrl.getCurrencyPair()));
+            });
+            // New trades written, fold them into the chart shown
+            databaseManager.getExchangeManager(exchange).liveUpdateProperty().addListener((observable, oldValue, update) -> {
+                if (update != null) {
+                    ctrl.updateLiveData(update.getFrom(), update.getCandles(), update.getTrades().asList());
+                }
             });
         }
         // Loading Pane
@@ -271,14 +314,9 @@ public class Main extends Application {
                 return ticker == null ? null : Utils.formatDecimal(ticker.getVolume(), 8, true);
             }, retriever.tickerProperty()));
             // Order book
-            ctrl.chartCtrl.buyOrders.itemsProperty().bind(Bindings.createObjectBinding(() -> {
-                List<Order> orders = retriever.getBidOrders();
-                return orders == null ? FXCollections.observableArrayList() : FXCollections.observableArrayList(orders);
-            }, retriever.bidOrdersProperty()));
-            ctrl.chartCtrl.sellOrders.itemsProperty().bind(Bindings.createObjectBinding(() -> {
-                List<Order> orders = retriever.getAskOrders();
-                return orders == null ? FXCollections.observableArrayList() : FXCollections.observableArrayList(orders);
-            }, retriever.askOrdersProperty()));
+            retriever.orderBookProperty().addListener((observable, oldValue, book) ->
+                    ctrl.chartCtrl.setOrderBook(book, APIManager.APIRetriever.ORDER_BOOK_DEPTH));
+            retriever.orderBookVersionProperty().addListener(observable -> ctrl.chartCtrl.refreshOrderBook());
         }
 
         // Exception warning
@@ -289,6 +327,11 @@ public class Main extends Application {
                 controller.logMessage("Failed: " + exception, "API Retriever - " + exchange);
                 exception.printStackTrace();
             });
+            retriever.feedErrorProperty().addListener((observable, oldValue, exception) -> {
+                if (exception != null) {
+                    controller.logMessage("Feed failed: " + exception, "API Retriever - " + exchange);
+                }
+            });
         }
     }
 
@@ -310,8 +353,8 @@ public class Main extends Application {
         // Set on succeeded
         manager.setOnReadingSucceeded(event -> ctrl.resetLastUpdated());
         manager.setOnCalculatingSucceeded(event -> {
-            XYChart.Series<Number, Number>[] series = manager.getCalculatorValue();
-            ctrl.updateData(manager.getReaderValue(), series[0].getData(), series[1].getData(), interval);
+            XYChart.Series<Number, Number>[] series = manager.getChartSeries();
+            ctrl.updateData(manager.getChartTrades().asList(), series[0].getData(), series[1].getData(), interval);
         });
         // Start service
         databaseManager.startReadingThenCalculate(platform);
@@ -328,11 +371,14 @@ public class Main extends Application {
         manager.setMaxTime(Long.MAX_VALUE);
         // Set on succeeded
         manager.setOnCalculatingSucceeded(event -> {
-            XYChart.Series<Number, Number>[] series = manager.getCalculatorValue();
-            ctrl.updateData(manager.getReaderValue(), series[0].getData(), series[1].getData(), interval);
+            XYChart.Series<Number, Number>[] series = manager.getChartSeries();
+            ctrl.updateData(manager.getChartTrades().asList(), series[0].getData(), series[1].getData(), interval);
         });
-        // Start service
-        databaseManager.startCalculating(platform);
+        // Start service, or show the cached chart at once
+        if (databaseManager.startCalculating(platform)) {
+            XYChart.Series<Number, Number>[] series = manager.getChartSeries();
+            ctrl.updateData(manager.getChartTrades().asList(), series[0].getData(), series[1].getData(), interval);
+        }
     }
 
     private void updateTickerAndOrders(TradePlatform platform) {
@@ -156,7 +156,7 @@ public class MainController implements Initializable {
 
     public TradePlatform getSelectedPlatform() {
         Exchange selectedExchange = getSelectedExchange();
-        return new TradePlatform(selectedExchange, getController(selectedExchange).getCurrencyPair());
+        return TradePlatform.of(selectedExchange, getController(selectedExchange).getCurrencyPair());
     }
 
     public ExchangePaneController getController(Exchange exchange) {
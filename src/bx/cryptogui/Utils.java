@@ -98,7 +98,8 @@ public class Utils {
             throw new IllegalArgumentException("Seconds must be positive");
         }
         if (seconds < 60) {
-            return time - LocalDateTime.ofEpochSecond(time, 0, zoneOffset).getSecond() % seconds;
+            final long localTime = time + CalendarBuckets.local().offsetAt(time);
+            return time - Math.floorMod(localTime, 60) % seconds;
         }
         double minutes = seconds/60.0;
         if (Math.rint(minutes) == minutes) {
@@ -112,8 +113,9 @@ public class Utils {
             throw new IllegalArgumentException("Minutes must be positive");
         }
         if (minutes < 60) {
-            LocalDateTime roundedTime = LocalDateTime.ofEpochSecond(time, 0, zoneOffset).withSecond(0);
-            return roundedTime.toEpochSecond(zoneOffset) - 60*(roundedTime.getMinute() % minutes);
+            final long localTime = time + CalendarBuckets.local().offsetAt(time);
+            final long roundedTime = time - Math.floorMod(localTime, 60);
+            return roundedTime - 60*(Math.floorMod(Math.floorDiv(localTime, 60), 60) % minutes);
         }
         double hours = minutes/60.0;
         if (Math.rint(hours) == hours) {
@@ -127,9 +129,9 @@ public class Utils {
             throw new IllegalArgumentException("Hours must be positive");
         }
         if (hours < 24) {
-            LocalDateTime roundedTime = LocalDateTime.ofEpochSecond(time, 0, zoneOffset)
-                    .withSecond(0).withMinute(0);
-            return roundedTime.toEpochSecond(zoneOffset) - 3600*(roundedTime.getHour() % hours);
+            final long localTime = time + CalendarBuckets.local().offsetAt(time);
+            final long roundedTime = time - Math.floorMod(localTime, 3600);
+            return roundedTime - 3600*(Math.floorMod(Math.floorDiv(localTime, 3600), 24) % hours);
         }
         double days = hours/24.0;
         if (Math.rint(days) == days) {
@@ -138,21 +140,23 @@ public class Utils {
         throw new IllegalArgumentException("Hours is invalid: " + hours);
     }
 
+    /**
+     * @return start of the local day, counted in days since 1970-01-01, see {@link CalendarBuckets#floor}
+     */
     public static long snapToPreviousDay(long time, int days) {
         if (days <= 0) {
             throw new IllegalArgumentException("Days must be positive");
         }
-        long daysSinceEpoch = time / 86400;
-        LocalDateTime roundedTime = LocalDateTime.ofEpochSecond(time, 0, zoneOffset)
-                .withSecond(0).withMinute(0).withHour(0);
-        return roundedTime.toEpochSecond(zoneOffset) - 86400*(daysSinceEpoch % days);
+        return CalendarBuckets.local().floor(time, days*CalendarBuckets.DAY);
     }
 
+    /**
+     * @see CalendarBuckets#floorToWeek
+     */
     public static long snapToPreviousWeek(long time, int weeks, DayOfWeek startWeek) {
-        LocalDateTime roundedLastTime = LocalDateTime.ofEpochSecond(time, 0, zoneOffset)
-                .withSecond(0).withMinute(0).withHour(0);
-        int firstDayOfWeek = startWeek.getValue();  // 1-7
-        // offset = (7 + day - firstDay) % 7
-        return roundedLastTime.toEpochSecond(zoneOffset) - 86400*((roundedLastTime.getDayOfWeek().getValue()+7-firstDayOfWeek) % 7);
+        if (weeks <= 0) {
+            throw new IllegalArgumentException("Weeks must be positive");
+        }
+        return CalendarBuckets.local().floorToWeek(time, weeks, startWeek);
     }
 }
@@ -0,0 +1,139 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.control.CandleStickValues;
+import bx.cryptogui.data.CandleColumns;
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.data.Transaction;
+import bx.cryptogui.manager.CandleAggregator;
+import javafx.scene.chart.XYChart;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Times merging synthetic trades into candles of an interval: the former calculator, collecting each interval's
+ * transactions in a list and then boxed prices and volumes through streams, against the one pass kernel of
+ * {@link CandleAggregator} over primitive arrays into reused {@link CandleColumns}, alone and with the chart series
+ * built at the end. Each is run a few times first to warm up. Needs a heap of about 2 GB for 10M trades.
+ * <p>Usage: AggregationBenchmark [trades] [interval s] [repeats]</p>
+ */
+public class AggregationBenchmark {
+
+    private static final long FIRST_TIME = 1500000000L;
+
+    public static void main(String[] args) {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        final int interval = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        final int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        System.out.println(String.format("trades=%s, interval=%ss, repeats=%s", count, interval, repeats));
+        final TradePlatform platform = TradePlatform.of(Exchange.COINBASE, CurrencyPair.BTC_USD);
+        final long[] times = new long[count];
+        final double[] prices = new double[count], volumes = new double[count];
+        final Random random = new Random(0);
+        double price = 1000;
+        long time = FIRST_TIME;
+        for (int i = 0; i < count; i++) {
+            price = Math.max(1, price + random.nextGaussian()*0.1);
+            time += random.nextInt(3);  // about 1 trade a second, some seconds empty, some with several
+            times[i] = time;
+            prices[i] = price;
+            volumes[i] = random.nextDouble();
+        }
+        final long until = time;
+        final long start = FIRST_TIME - FIRST_TIME % interval;
+
+        final CandleColumns candles = new CandleColumns();
+        long kernel = time(repeats, () -> CandleAggregator.fromTrades(times, prices, volumes, 0, count, start,
+                interval, until, candles));
+        final int bars = candles.size();
+        long kernelSeries = time(repeats, () -> {
+            CandleAggregator.fromTrades(times, prices, volumes, 0, count, start, interval, until, candles);
+            CandleAggregator.toSeries(candles);
+        });
+
+        List<Transaction> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            trades.add(new Transaction(i, times[i], prices[i], volumes[i], Transaction.BUY, platform));
+        }
+        final int[] boxedBars = {0};
+        long boxed = time(repeats, () -> boxedBars[0] = boxed(trades, start, interval, until)[0].getData().size());
+
+        System.out.println(String.format("%s candles (boxed %s)", bars, boxedBars[0]));
+        System.out.println(String.format("boxed lists:     %8.1f ms", boxed/1e6));
+        System.out.println(String.format("kernel:          %8.1f ms  %.1fx", kernel/1e6, (double) boxed/kernel));
+        System.out.println(String.format("kernel + series: %8.1f ms  %.1fx", kernelSeries/1e6,
+                (double) boxed/kernelSeries));
+    }
+
+    /**
+     * @return best time in nanoseconds, after as many warm up runs
+     */
+    private static long time(int repeats, Runnable run) {
+        for (int i = 0; i < repeats; i++) {
+            run.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repeats; i++) {
+            long t0 = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return best;
+    }
+
+    /**
+     * The former calculator's merge, without its progress updates.
+     */
+    @SuppressWarnings("unchecked")
+    private static XYChart.Series<Number, Number>[] boxed(List<Transaction> trades, long startTime, int interval,
+                                                          long currentTime) {
+        XYChart.Series<Number, Number> priceSeries = new XYChart.Series<>();
+        XYChart.Series<Number, Number> volumeSeries = new XYChart.Series<>();
+        List<Transaction> data = new ArrayList<>(trades);
+        Collections.sort(data);
+        List<Transaction> intervalTrades = new ArrayList<>();
+        double lastPrice = data.get(0).getPrice();
+        long intervalStartTime = startTime;
+        for (Transaction item: data) {
+            while (item.getTime() >= intervalStartTime + interval) {
+                addInterval(priceSeries, volumeSeries, intervalTrades, intervalStartTime, lastPrice);
+                intervalStartTime += interval;
+            }
+            intervalTrades.add(item);
+            lastPrice = item.getPrice();
+        }
+        do {
+            addInterval(priceSeries, volumeSeries, intervalTrades, intervalStartTime, lastPrice);
+            intervalStartTime += interval;
+        } while (currentTime >= intervalStartTime + interval);
+        return (XYChart.Series<Number, Number>[]) new XYChart.Series<?, ?>[] {priceSeries, volumeSeries};
+    }
+
+    private static void addInterval(XYChart.Series<Number, Number> priceSeries,
+                                    XYChart.Series<Number, Number> volumeSeries, List<Transaction> intervalTrades,
+                                    long intervalStartTime, double lastPrice) {
+        if (intervalTrades.isEmpty()) {
+            priceSeries.getData().add(new XYChart.Data<>(intervalStartTime, lastPrice,
+                    new CandleStickValues(lastPrice, lastPrice, lastPrice)));
+            volumeSeries.getData().add(new XYChart.Data<>(intervalStartTime, 0, 0.0));
+            return;
+        }
+        List<Double> prices = intervalTrades.stream().map(Transaction::getPrice).collect(Collectors.toList());
+        List<Double> volumes = intervalTrades.stream().map(Transaction::getVolume).collect(Collectors.toList());
+        List<Double> qVolumes = intervalTrades.stream().map(
+                transaction -> transaction.getPrice()*transaction.getVolume()).collect(Collectors.toList());
+        double open = intervalTrades.get(0).getPrice();
+        double close = intervalTrades.get(intervalTrades.size() - 1).getPrice();
+        priceSeries.getData().add(new XYChart.Data<>(intervalStartTime, open,
+                new CandleStickValues(close, Collections.max(prices), Collections.min(prices))));
+        volumeSeries.getData().add(new XYChart.Data<>(intervalStartTime,
+                volumes.stream().mapToDouble(Double::doubleValue).sum(),
+                qVolumes.stream().mapToDouble(Double::doubleValue).sum()));
+        intervalTrades.clear();
+    }
+}
@@ -0,0 +1,127 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.CalendarBuckets;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Random;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Times finding the bucket of random times over a few years in a zone with summer time: the former snapping through
+ * {@link LocalDateTime} at the fixed offset of the start, against {@link CalendarBuckets#floor}. Each result is
+ * checked against {@link ZonedDateTime}, the former snapping is wrong for the part of the year in the other offset.
+ * <p>Usage: BucketingBenchmark [times] [zone] [repeats]</p>
+ */
+public class BucketingBenchmark {
+
+    private static final long FIRST_TIME = 1500000000L;
+    private static final long SPAN = 3*365*86400L;
+    private static final int[] INTERVALS = {900, 3600, 86400, 604800};
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        final ZoneId zone = ZoneId.of(args.length > 1 ? args[1] : "Europe/London");
+        final int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        System.out.println(String.format("times=%s, zone=%s, repeats=%s", count, zone, repeats));
+        final long[] times = new long[count];
+        final Random random = new Random(0);
+        for (int i = 0; i < count; i++) {
+            times[i] = FIRST_TIME + (long) (random.nextDouble()*SPAN);
+        }
+        final ZoneOffset offset = zone.getRules().getOffset(Instant.ofEpochSecond(FIRST_TIME));
+        long start = System.nanoTime();
+        final CalendarBuckets buckets = CalendarBuckets.of(zone);
+        System.out.println(String.format("tables built in %.1f ms", (System.nanoTime() - start)/1e6));
+
+        for (int interval: INTERVALS) {
+            final LongUnaryOperator former = time -> formerSnap(time, interval, offset);
+            final LongUnaryOperator engine = time -> buckets.floor(time, interval);
+            final long formerTime = time(repeats, times, former);
+            final long engineTime = time(repeats, times, engine);
+            System.out.println(String.format("interval %6ss: former %7.1f ms %5.1f ns/time %7s wrong | " +
+                            "engine %7.1f ms %5.1f ns/time %7s wrong | %.1fx", interval,
+                    formerTime/1e6, (double) formerTime/count, wrong(times, former, interval, zone),
+                    engineTime/1e6, (double) engineTime/count, wrong(times, engine, interval, zone),
+                    (double) formerTime/engineTime));
+        }
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    /**
+     * @return best time in nanoseconds to find the buckets of every time, after as many warm up runs
+     */
+    private static long time(int repeats, long[] times, LongUnaryOperator floor) {
+        for (int i = 0; i < repeats; i++) {
+            run(times, floor);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repeats; i++) {
+            long t0 = System.nanoTime();
+            run(times, floor);
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return best;
+    }
+
+    private static void run(long[] times, LongUnaryOperator floor) {
+        long sum = 0;
+        for (long time: times) {
+            sum += floor.applyAsLong(time);
+        }
+        sink += sum;
+    }
+
+    /**
+     * @return number of times, of every 100th, whose bucket is not the local one
+     */
+    private static int wrong(long[] times, LongUnaryOperator floor, int interval, ZoneId zone) {
+        int wrong = 0;
+        for (int i = 0; i < times.length; i += 100) {
+            if (floor.applyAsLong(times[i]) != expected(times[i], interval, zone)) {
+                wrong++;
+            }
+        }
+        return wrong;
+    }
+
+    private static long expected(long time, int interval, ZoneId zone) {
+        final ZonedDateTime dateTime = Instant.ofEpochSecond(time).atZone(zone);
+        if (interval < 86400) {
+            final ZonedDateTime hour = dateTime.truncatedTo(ChronoUnit.HOURS);
+            return hour.toEpochSecond() + (dateTime.getMinute()*60/interval)*(long) interval;
+        }
+        ZonedDateTime day = dateTime.truncatedTo(ChronoUnit.DAYS);
+        if (interval == 604800) {
+            day = day.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay(zone);
+        }
+        return day.toEpochSecond();
+    }
+
+    /**
+     * The bucket of a time as found before {@link CalendarBuckets}, at a fixed offset.
+     */
+    private static long formerSnap(long time, int interval, ZoneOffset offset) {
+        final LocalDateTime dateTime = LocalDateTime.ofEpochSecond(time, 0, offset).withSecond(0);
+        if (interval < 3600) {
+            return dateTime.toEpochSecond(offset) - 60*(dateTime.getMinute() % (interval/60));
+        }
+        if (interval < 86400) {
+            final LocalDateTime hour = dateTime.withMinute(0);
+            return hour.toEpochSecond(offset) - 3600*(hour.getHour() % (interval/3600));
+        }
+        final LocalDateTime day = dateTime.withMinute(0).withHour(0);
+        if (interval < 604800) {
+            return day.toEpochSecond(offset) - 86400*((time/86400) % (interval/86400));
+        }
+        return day.toEpochSecond(offset) - 86400*((day.getDayOfWeek().getValue() + 7 - 1) % 7);
+    }
+}
@@ -0,0 +1,129 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.exchangeapi.CoinbaseAPI;
+import bx.cryptogui.exchangeapi.ExchangeAPI;
+import bx.cryptogui.exchangeapi.RateLimiter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times {@link CoinbaseAPI#streamTradePages} against a local stub of the paginated trades endpoint, sequentially
+ * (1 page in flight) and pipelined.
+ * <p>Usage: CoinbasePagingBenchmark [latency ms] [pages] [requests per second]</p>
+ */
+public class CoinbasePagingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int latency = args.length > 0 ? Integer.parseInt(args[0]) : 150;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : CoinbaseAPI.MAX_TRADE_PAGES;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 1000;
+        TradesStub stub = new TradesStub(latency);
+        RateLimiter previousLimit = ExchangeAPI.getRateLimiter(Exchange.COINBASE);
+        try {
+            CoinbaseAPI api = new CoinbaseAPI();
+            api.setBaseUrl(stub.getBaseUrl());
+            ExchangeAPI.setRateLimit(Exchange.COINBASE, rate, (int) Math.max(1, rate));
+            // minTime reached after the requested number of pages, 1 trade per second
+            long minTime = TradesStub.NEWEST_TIME - (long) (pages - 1)*CoinbaseAPI.TRADES_PAGE_SIZE;
+            System.out.println(String.format("latency=%sms, pages=%s, rate=%s/s", latency, pages, rate));
+            for (int inFlight: new int[] {1, 2, 4, 8}) {
+                api.setPagesInFlight(inFlight);
+                run(api, minTime, stub);    // warm up
+                long best = Long.MAX_VALUE;
+                int requests = 0;
+                for (int i = 0; i < 3; i++) {
+                    stub.requests.set(0);
+                    long start = System.nanoTime();
+                    run(api, minTime, stub);
+                    best = Math.min(best, System.nanoTime() - start);
+                    requests = stub.requests.get();
+                }
+                System.out.println(String.format("in flight %s: %6.0f ms, %s requests", inFlight, best/1e6, requests));
+            }
+        } finally {
+            ExchangeAPI.setRateLimit(Exchange.COINBASE, previousLimit.getPermitsPerSecond(), previousLimit.getBurst());
+            stub.stop();
+        }
+    }
+
+    private static void run(CoinbaseAPI api, long minTime, TradesStub stub) throws Exception {
+        final AtomicInteger trades = new AtomicInteger();
+        api.streamTradePages(CurrencyPair.BTC_USD, minTime, page -> trades.addAndGet(page.size()));
+        if (trades.get() == 0) {
+            throw new AssertionError("No trades");
+        }
+    }
+
+    /**
+     * Serves /products/{id}/trades[?after=n] with sequential trade ids, one trade per second, newest first.
+     */
+    private static class TradesStub {
+
+        static final long NEWEST_ID = 10000000;
+        static final long NEWEST_TIME = 1500000000;
+
+        final AtomicInteger requests = new AtomicInteger();
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final int latency;
+
+        TradesStub(int latency) throws IOException {
+            this.latency = latency;
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/products/", this::handle);
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        String getBaseUrl() {
+            return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            long after = query != null && query.startsWith("after=") ? Long.parseLong(query.substring(6)) : NEWEST_ID + 1;
+            StringBuilder body = new StringBuilder(12000).append('[');
+            long id = after - 1;
+            for (int i = 0; i < CoinbaseAPI.TRADES_PAGE_SIZE && id > 0; i++, id--) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append("{\"time\":\"").append(Instant.ofEpochSecond(NEWEST_TIME - (NEWEST_ID - id)))
+                        .append("\",\"trade_id\":").append(id)
+                        .append(",\"price\":\"10000.01000000\",\"size\":\"0.01000000\",\"side\":\"")
+                        .append(id % 2 == 0 ? "buy" : "sell").append("\"}");
+            }
+            body.append(']');
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("cb-after", String.valueOf(id + 1));
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
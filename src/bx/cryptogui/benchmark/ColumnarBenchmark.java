@@ -0,0 +1,120 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.manager.CandlePyramid;
+import bx.cryptogui.manager.ColumnarMigration;
+import bx.cryptogui.manager.ColumnarTradeStore;
+import bx.cryptogui.manager.ConnectionManager;
+import bx.cryptogui.manager.SQLiteTradeStore;
+import bx.cryptogui.manager.SchemaManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Times range reads of the trades into primitive arrays from a {@link SQLiteTradeStore} and from a
+ * {@link ColumnarTradeStore} migrated from it: the latest hour, the latest day and every trade. The trades are one a
+ * second.
+ * <p>Usage: ColumnarBenchmark [rows] [repeats]</p>
+ */
+public class ColumnarBenchmark {
+
+    private static final String TABLE = "bench_btc_usd";
+    private static final long FIRST_TIME = 1400000000L;
+
+    public static void main(String[] args) throws Exception {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        final int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        System.out.println(String.format("rows=%s, repeats=%s", rows, repeats));
+        File file = File.createTempFile("columnar-benchmark", ".db");
+        File directory = new File(file.getPath() + ".columns");
+        try (ConnectionManager connections = new ConnectionManager("jdbc:sqlite:" + file.getPath())) {
+            final Connection writer = connections.getWriter();
+            new SchemaManager(writer).migrate(Collections.singletonList(TABLE));
+            populate(writer, rows);
+            final CandlePyramid candlePyramid = new CandlePyramid(writer);
+            final SQLiteTradeStore sqlite = new SQLiteTradeStore(connections, TABLE, candlePyramid);
+            try (ColumnarTradeStore columnar = new ColumnarTradeStore(directory, TABLE, writer, candlePyramid)) {
+                long start = System.nanoTime();
+                ColumnarMigration.copy(sqlite, columnar);
+                System.out.println(String.format("migrated in %.1f s", (System.nanoTime() - start)/1e9));
+
+                final long end = FIRST_TIME + rows;
+                final long[] times = new long[rows];
+                final double[] prices = new double[rows], volumes = new double[rows];
+                for (long span: new long[] {3600, 86400, rows}) {
+                    final long from = end - span;
+                    long bestSQLite = Long.MAX_VALUE, bestColumnar = Long.MAX_VALUE;
+                    long sqliteRows = 0, columnarRows = 0;
+                    for (int i = 0; i < repeats; i++) {
+                        long t0 = System.nanoTime();
+                        final int[] count = {0};
+                        sqliteRows = sqlite.scan(from, end, (id, time, price, volume, type) -> {
+                            times[count[0]] = time;
+                            prices[count[0]] = price;
+                            volumes[count[0]++] = volume;
+                        });
+                        long t1 = System.nanoTime();
+                        final int first = columnar.indexOf(from);
+                        columnarRows = columnar.read(first, columnar.indexOf(end) - first, times, null, prices,
+                                volumes, null);
+                        long t2 = System.nanoTime();
+                        bestSQLite = Math.min(bestSQLite, t1 - t0);
+                        bestColumnar = Math.min(bestColumnar, t2 - t1);
+                    }
+                    System.out.println(String.format("%9s s: SQLite %9.2f ms %9s rows | columnar %8.2f ms %9s rows",
+                            span, bestSQLite/1e6, sqliteRows, bestColumnar/1e6, columnarRows));
+                }
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < repeats; i++) {
+                    long t0 = System.nanoTime();
+                    sqlite.getLatestTime();
+                    best = Math.min(best, System.nanoTime() - t0);
+                }
+                long t0 = System.nanoTime();
+                columnar.getLatestTime();
+                System.out.println(String.format("latest time: SQLite %.3f ms | columnar %.3f ms", best/1e6,
+                        (System.nanoTime() - t0)/1e6));
+            }
+        } finally {
+            for (String suffix: new String[] {"", "-wal", "-shm"}) {
+                new File(file.getPath() + suffix).delete();
+            }
+            File[] columns = directory.listFiles();
+            if (columns != null) {
+                for (File column: columns) {
+                    column.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    private static void populate(Connection connection, int rows) throws SQLException {
+        connection.setAutoCommit(false);
+        Random random = new Random(0);
+        double price = 1000;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                price = Math.max(1, price + random.nextGaussian());
+                statement.setLong(1, i + 1);
+                statement.setLong(2, FIRST_TIME + i);
+                statement.setDouble(3, price);
+                statement.setDouble(4, random.nextDouble());
+                statement.setInt(5, random.nextInt(2));
+                statement.addBatch();
+                if (i % 100000 == 99999) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
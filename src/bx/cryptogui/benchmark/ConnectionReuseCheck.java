@@ -0,0 +1,87 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.exchangeapi.HTTPResponse;
+import bx.cryptogui.exchangeapi.HTTPStream;
+import bx.cryptogui.exchangeapi.URLConnectionTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks {@link URLConnectionTransport} keeps its connection alive: sends GETs, POSTs, error responses and streamed
+ * GETs closed part read to a local stub, one after another, and fails unless they all came over one connection. The
+ * stub tells connections apart by their client port.
+ * <p>Usage: ConnectionReuseCheck [requests of each kind]</p>
+ */
+public class ConnectionReuseCheck {
+
+    public static void main(String[] args) throws Exception {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final Set<Integer> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final AtomicInteger requests = new AtomicInteger();
+        final byte[] body = new byte[16*1024];
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            requests.incrementAndGet();
+            serve(exchange, body);
+        });
+        server.start();
+        try {
+            final String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            final URLConnectionTransport transport = new URLConnectionTransport();
+            for (int i = 0; i < rounds; i++) {
+                check(transport.get(new URL(base + "/ok"), null), 200);
+                check(transport.post(new URL(base + "/ok"), Collections.singletonMap("Content-Type",
+                        "application/x-www-form-urlencoded"), "a=1".getBytes(StandardCharsets.US_ASCII)), 200);
+                check(transport.get(new URL(base + "/missing"), null), 404);
+                try (HTTPStream stream = transport.openStream(new URL(base + "/ok"), null)) {
+                    final InputStream in = stream.getBody();
+                    if (stream.getResponseCode() != 200 || in.read(new byte[100]) <= 0) {
+                        throw new AssertionError("Bad streamed response " + stream.getResponseCode());
+                    }
+                }   // closed part read, drained
+            }
+            System.out.println(String.format("%s requests over %s connection%s", requests.get(), connections.size(),
+                    connections.size() == 1 ? "" : "s"));
+            if (requests.get() != 4*rounds) {
+                throw new AssertionError("Expected " + 4*rounds + " requests, got " + requests.get());
+            }
+            if (connections.size() != 1) {
+                throw new AssertionError("Connections were not reused: " + connections.size());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void check(HTTPResponse response, int code) {
+        if (response.getResponseCode() != code) {
+            throw new AssertionError("Expected " + code + ", got " + response.getResponseCode());
+        }
+    }
+
+    private static void serve(HttpExchange exchange, byte[] body) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() != -1) {
+                // request body read to the end
+            }
+        }
+        final boolean found = exchange.getRequestURI().getPath().equals("/ok");
+        exchange.sendResponseHeaders(found ? 200 : 404, found ? body.length : 9);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(found ? body : "not found".getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
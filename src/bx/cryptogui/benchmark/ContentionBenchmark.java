@@ -0,0 +1,180 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.manager.ConnectionManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the latency of trade writes while other threads scan a trade table, as chart reads do. Runs once with the
+ * old layout, one connection shared by the writer and the readers, then with a {@link ConnectionManager}: WAL, one
+ * writer connection and read-only connections.
+ * <p>Usage: ContentionBenchmark [seconds] [readers] [table rows] [trades per write] [ms between writes]</p>
+ */
+public class ContentionBenchmark {
+
+    private static final String TABLE = "trades";
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int tableRows = args.length > 2 ? Integer.parseInt(args[2]) : 500000;
+        int batch = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int pause = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        System.out.println(String.format("seconds=%s, readers=%s, rows=%s, batch=%s, pause=%sms",
+                seconds, readers, tableRows, batch, pause));
+
+        File file = File.createTempFile("contention-benchmark", ".db");
+        try {
+            String url = "jdbc:sqlite:" + file.getPath();
+            try (Connection connection = DriverManager.getConnection(url)) {
+                populate(connection, tableRows);
+                final Object writeLock = new Object();
+                run("shared connection", seconds, readers, batch, pause, () -> connection, () -> connection, writeLock);
+            }
+            try (ConnectionManager connections = new ConnectionManager(url, readers)) {
+                final List<ConnectionManager.Lease> leases = new ArrayList<>();
+                final Object writeLock = new Object();
+                run("WAL + reader pool", seconds, readers, batch, pause, connections::getWriter, () -> {
+                    ConnectionManager.Lease lease = connections.openReader();
+                    synchronized (leases) {
+                        leases.add(lease);
+                    }
+                    return lease.getConnection();
+                }, writeLock);
+                for (ConnectionManager.Lease lease: leases) {
+                    lease.close();
+                }
+            }
+        } finally {
+            for (String suffix: new String[] {"", "-wal", "-shm"}) {
+                new File(file.getPath() + suffix).delete();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection get() throws Exception;
+    }
+
+    private static void run(String name, int seconds, int readers, int batch, int pause, ConnectionSource writer,
+                            ConnectionSource reader, Object writeLock) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong scans = new AtomicLong();
+        final AtomicLong scannedRows = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    Connection connection = reader.get();
+                    while (running.get()) {
+                        scannedRows.addAndGet(scan(connection));
+                        scans.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "reader-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+
+        Connection connection = writer.get();
+        long nextId = maxId(connection) + 1;
+        long[] latencies = new long[seconds*1000/Math.max(1, pause) + 1];
+        int writes = 0;
+        long end = System.nanoTime() + seconds*1000000000L;
+        Random random = new Random(1);
+        while (System.nanoTime() < end && writes < latencies.length) {
+            long start = System.nanoTime();
+            synchronized (writeLock) {  // as DatabaseManager, one transaction at a time on the writer
+                write(connection, nextId, batch, random);
+            }
+            latencies[writes++] = System.nanoTime() - start;
+            nextId += batch;
+            Thread.sleep(pause);
+        }
+        running.set(false);
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, writes);
+        Arrays.sort(sorted);
+        System.out.println(String.format("%s: %s writes, latency p50 %.1f ms, p99 %.1f ms, max %.1f ms; " +
+                        "%s scans, %.0f rows/s read", name, writes, percentile(sorted, 0.5)/1e6,
+                percentile(sorted, 0.99)/1e6, sorted.length == 0 ? 0 : sorted[sorted.length - 1]/1e6,
+                scans.get(), scannedRows.get()/(double) seconds));
+    }
+
+    private static void populate(Connection connection, int rows) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + TABLE +
+                    " (id INTEGER, time INTEGER, price REAL, volume REAL, type INTEGER)");
+        }
+        write(connection, 1, rows, new Random(0));
+    }
+
+    private static void write(Connection connection, long firstId, int count, Random random) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?)")) {
+            for (long id = firstId; id < firstId + count; id++) {
+                statement.setLong(1, id);
+                statement.setLong(2, 1500000000L + id);
+                statement.setDouble(3, 1000 + random.nextGaussian());
+                statement.setDouble(4, random.nextDouble());
+                statement.setInt(5, random.nextInt(2));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Reads the whole table in time order, as ReaderService does with no time limits.
+     * @return rows read
+     */
+    private static long scan(Connection connection) throws SQLException {
+        long rows = 0;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM " + TABLE + " ORDER BY time");
+             ResultSet set = statement.executeQuery()) {
+            while (set.next()) {
+                set.getLong(1);
+                set.getDouble(3);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static long maxId(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet set = statement.executeQuery("SELECT MAX(id) FROM " + TABLE)) {
+            set.next();
+            return set.getLong(1);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction*sorted.length))];
+    }
+}
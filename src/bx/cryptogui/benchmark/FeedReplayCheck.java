@@ -0,0 +1,203 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.data.OrderBook;
+import bx.cryptogui.data.Ticker;
+import bx.cryptogui.exchangeapi.BitstampFeed;
+import bx.cryptogui.exchangeapi.CoinbaseFeed;
+import bx.cryptogui.exchangeapi.ExchangeAPI;
+import bx.cryptogui.exchangeapi.MarketDataFeed;
+import bx.cryptogui.exchangeapi.MarketDataListener;
+import bx.cryptogui.exchangeapi.ReplayWebSocketServer;
+import bx.cryptogui.simulator.ExchangeSimulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link CoinbaseFeed} and {@link BitstampFeed} end to end against a {@link ReplayWebSocketServer} replaying the
+ * frames in {@code simulator/recordings}, with the REST snapshots served by an {@link ExchangeSimulator}, and fails
+ * unless the published order book and ticker go through the expected states:
+ * <ul>
+ *     <li>Coinbase: the level2 snapshot with its updates applied, a dropped connection, the new snapshot after
+ *     reconnecting and resubscribing, then a reconnect for a new level2 snapshot after a gap in the trade ids.</li>
+ *     <li>Bitstamp: the newest book snapshot with a stale one ignored, a closed connection, the REST book after
+ *     reconnecting, the next snapshot, then a reconnect requested by the server.</li>
+ * </ul>
+ * <p>Usage: FeedReplayCheck</p>
+ */
+public class FeedReplayCheck {
+
+    private static final long TIMEOUT = 10000;
+
+    public static void main(String[] args) throws Exception {
+        try (ExchangeSimulator simulator = new ExchangeSimulator()) {
+            simulator.addDefaultMarkets(1, 60);     // REST tickers
+            simulator.addRecording(Exchange.BITSTAMP, "/api/v2/order_book/btcusd",
+                    resource("bitstamp-btc-usd-book.json"));
+            checkCoinbase(simulator);
+            checkBitstamp(simulator);
+        }
+        System.out.println("feeds replayed as expected");
+    }
+
+    private static void checkCoinbase(ExchangeSimulator simulator) throws Exception {
+        try (ReplayWebSocketServer server = replay("coinbase-btc-usd.frames")) {
+            ExchangeAPI api = ExchangeSimulator.createAPI(Exchange.COINBASE);
+            api.setBaseUrl(simulator.getBaseUrl(Exchange.COINBASE));
+            Recorder recorder = new Recorder();
+            MarketDataFeed feed = new CoinbaseFeed(api, CurrencyPair.BTC_USD, recorder, server.getUri());
+            feed.start();
+            try {
+                await("coinbase snapshot and updates", recorder::getBook,
+                        book(levels(6500.00, 1.75, 6499.50, 2.25, 6499.00, 0.8, 6498.50, 0.6),
+                                levels(6500.50, 1.1, 6502.00, 0.4)));
+                await("coinbase trade", recorder::getLast, 6500.0);
+                await("coinbase snapshot after reconnecting", recorder::getBook,
+                        book(levels(6510.00, 0.5, 6509.00, 1.0), levels(6511.00, 0.7, 6512.50, 2.0)));
+                await("coinbase trade after reconnecting", recorder::getLast, 6511.0);
+                await("coinbase reconnect after a trade id gap", server::getConnectionCount, 3);
+                await("coinbase level2 snapshot after the gap", recorder::getBook,
+                        book(levels(6507.50, 1.2, 6507.00, 0.9), levels(6508.50, 0.3, 6509.00, 1.4)));
+                await("coinbase trade after the gap", recorder::getLast, 6508.5);
+                check("coinbase subscriptions", server.getReceivedMessages().size(), 3);
+            } finally {
+                feed.stop();
+            }
+        }
+    }
+
+    private static void checkBitstamp(ExchangeSimulator simulator) throws Exception {
+        try (ReplayWebSocketServer server = replay("bitstamp-btc-usd.frames")) {
+            ExchangeAPI api = ExchangeSimulator.createAPI(Exchange.BITSTAMP);
+            api.setBaseUrl(simulator.getBaseUrl(Exchange.BITSTAMP));
+            Recorder recorder = new Recorder();
+            MarketDataFeed feed = new BitstampFeed(api, CurrencyPair.BTC_USD, recorder, server.getUri());
+            feed.start();
+            try {
+                await("bitstamp newest snapshot, stale one ignored", recorder::getBook,
+                        book(levels(6500.00, 1.75, 6499.50, 2.25), levels(6500.50, 0.85, 6501.00, 3.0)));
+                await("bitstamp trade", recorder::getLast, 6500.5);
+                Thread.sleep(2*MarketDataFeed.PUBLISH_INTERVAL);
+                check("bitstamp stale snapshot still ignored", recorder.getBook(),
+                        book(levels(6500.00, 1.75, 6499.50, 2.25), levels(6500.50, 0.85, 6501.00, 3.0)));
+                await("bitstamp REST book after reconnecting", recorder::getBook,
+                        book(levels(6495.00, 4.0, 6494.00, 1.0), levels(6496.00, 2.0, 6497.00, 0.5)));
+                await("bitstamp snapshot after reconnecting", recorder::getBook,
+                        book(levels(6510.00, 0.5), levels(6511.00, 0.7)));
+                await("bitstamp reconnect requested by the server", server::getConnectionCount, 3);
+                await("bitstamp subscriptions", () -> server.getReceivedMessages().size(), 6);
+            } finally {
+                feed.stop();
+            }
+        }
+    }
+
+    // ------------------ HELPERS --------------------------------------------------------------------------------------
+
+    private static ReplayWebSocketServer replay(String name) throws IOException {
+        List<String> frames = Arrays.asList(new String(resource(name), StandardCharsets.UTF_8).split("\r?\n"));
+        return new ReplayWebSocketServer(frames);
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = ExchangeSimulator.class.getResourceAsStream("recordings/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing recording " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Waits until a published value equals the expected one.
+     */
+    private static void await(String name, Supplier<Object> actual, Object expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        Object value = actual.get();
+        while (!expected.equals(value)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError(name + ": expected " + expected + ", got " + value);
+            }
+            Thread.sleep(20);
+            value = actual.get();
+        }
+        System.out.println(name + ": " + value);
+    }
+
+    private static void check(String name, Object actual, Object expected) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(name + ": expected " + expected + ", got " + actual);
+        }
+        System.out.println(name + ": " + actual);
+    }
+
+    /**
+     * @param levels price, volume, ... best first
+     */
+    private static String levels(double... levels) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < levels.length; i += 2) {
+            builder.append(i == 0 ? "" : " ").append(levels[i]).append('x').append(levels[i + 1]);
+        }
+        return builder.toString();
+    }
+
+    private static String book(String bids, String asks) {
+        return "bids " + bids + " | asks " + asks;
+    }
+
+    /**
+     * Keeps the last published book, as text, and ticker.
+     */
+    private static final class Recorder implements MarketDataListener {
+
+        private volatile String book;
+        private volatile Ticker ticker;
+
+        @Override
+        public void tickerUpdated(Ticker ticker) {
+            this.ticker = ticker;
+        }
+
+        @Override
+        public void orderBookUpdated(OrderBook book) {
+            this.book = book(describe(book.getBidSide()), describe(book.getAskSide()));
+        }
+
+        @Override
+        public void feedFailed(Throwable exception) {
+            System.out.println("feed failed, expected when the connection is dropped or closed: " + exception);
+        }
+
+        Object getBook() {
+            return book;
+        }
+
+        Object getLast() {
+            Ticker current = ticker;
+            return current == null ? null : current.getLast();
+        }
+
+        private static String describe(OrderBook.Side side) {
+            double[] levels = new double[side.size()*2];
+            for (int i = 0; i < side.size(); i++) {
+                levels[2*i] = side.getPrice(i);
+                levels[2*i + 1] = side.getVolume(i);
+            }
+            return levels(levels);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.TradeColumns;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.manager.CandlePyramid;
+import bx.cryptogui.manager.ConnectionManager;
+import bx.cryptogui.manager.GroupCommitWriter;
+import bx.cryptogui.manager.SQLiteTradeStore;
+import bx.cryptogui.manager.SchemaManager;
+import bx.cryptogui.simulator.ExchangeSimulator;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+/**
+ * Times writing the fetches of every exchange, one producer thread per exchange as its writer service, each cycle
+ * a batch of new trades per pair: first each batch committed alone as before {@link GroupCommitWriter}, then through
+ * it committing each batch alone as it does by default, then queued together and committed in groups.
+ * <p>Usage: GroupCommitBenchmark [cycles] [trades per batch] [commit latency ms] [synchronous]</p>
+ */
+public class GroupCommitBenchmark {
+
+    private static final CurrencyPair[] PAIRS = {CurrencyPair.BTC_USD, CurrencyPair.LTC_USD, CurrencyPair.ETH_USD};
+
+    public static void main(String[] args) throws Exception {
+        final int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final int batch = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final long latency = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        final String synchronous = args.length > 3 ? args[3] : "NORMAL";
+        System.out.println(String.format("cycles=%s, batch=%s, latency=%sms, synchronous=%s, tables=%s",
+                cycles, batch, latency, synchronous, ExchangeSimulator.EXCHANGES.length*PAIRS.length));
+        run("per table", cycles, batch, false, GroupCommitWriter.NO_GROUPING, synchronous);
+        run("writer", cycles, batch, true, GroupCommitWriter.NO_GROUPING, synchronous);
+        run("group", cycles, batch, true, latency, synchronous);
+    }
+
+    /**
+     * @param queued whether the batches go through a group writer, otherwise each producer commits its own
+     * @param latency commit latency of the group writer, see {@link GroupCommitWriter#NO_GROUPING}
+     */
+    private static void run(String name, final int cycles, final int batch, boolean queued, long latency,
+                            String synchronous) throws Exception {
+        File file = File.createTempFile("group-commit-benchmark", ".db");
+        try (ConnectionManager connections = new ConnectionManager("jdbc:sqlite:" + file.getPath())) {
+            final Connection connection = connections.getWriter();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA synchronous = " + synchronous);
+            }
+            final int exchanges = ExchangeSimulator.EXCHANGES.length;
+            final List<String> tables = new ArrayList<>();
+            for (int e = 0; e < exchanges; e++) {
+                for (CurrencyPair pair: PAIRS) {
+                    tables.add(("bench_" + ExchangeSimulator.EXCHANGES[e] + "_" + pair.getBaseCurrency() + "_" +
+                            pair.getQuoteCurrency()).toLowerCase());
+                }
+            }
+            new SchemaManager(connection).migrate(tables);
+            final CandlePyramid candlePyramid = new CandlePyramid(connection);
+            final Object lock = new Object();
+            final GroupCommitWriter writer = !queued ? null :
+                    new GroupCommitWriter(connection, lock, GroupCommitWriter.DEFAULT_CAPACITY, latency);
+            final Exception[] failure = {null};
+            Thread[] producers = new Thread[exchanges];
+            long start = System.nanoTime();
+            for (int e = 0; e < exchanges; e++) {
+                final int exchange = e;
+                producers[e] = new Thread(() -> {
+                    try {
+                        produce(connections, candlePyramid, tables, exchange, cycles, batch, lock, writer);
+                    } catch (Exception ex) {
+                        failure[0] = ex;
+                    }
+                });
+                producers[e].start();
+            }
+            for (Thread producer: producers) {
+                producer.join();
+            }
+            long nanos = System.nanoTime() - start;
+            long commits = (long) cycles*tables.size();
+            if (writer != null) {
+                writer.close();
+                commits = writer.getCommits();
+            }
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            long rows = (long) cycles*batch*tables.size();
+            System.out.println(String.format("%9s: %s trades in %.0f ms, %.0f trades/s, %s commits, %.0f batches/s",
+                    name, rows, nanos/1e6, rows/(nanos/1e9), commits, cycles*tables.size()/(nanos/1e9)));
+        } finally {
+            for (String suffix: new String[] {"", "-wal", "-shm"}) {
+                new File(file.getPath() + suffix).delete();
+            }
+        }
+    }
+
+    private static void produce(ConnectionManager connections, CandlePyramid candlePyramid, List<String> tables,
+                                int exchange, int cycles, int batch, Object lock, GroupCommitWriter writer)
+            throws Exception {
+        final Connection connection = connections.getWriter();
+        final Random random = new Random(exchange);
+        final SQLiteTradeStore[] stores = new SQLiteTradeStore[PAIRS.length];
+        for (int p = 0; p < PAIRS.length; p++) {
+            stores[p] = new SQLiteTradeStore(connections, tables.get(exchange*PAIRS.length + p), candlePyramid);
+        }
+        long id = 0;
+        long time = 1500000000L;
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            List<Future<Integer>> writes = new ArrayList<>();
+            for (int p = 0; p < PAIRS.length; p++) {
+                final TradeColumns trades = new TradeColumns(
+                        TradePlatform.of(ExchangeSimulator.EXCHANGES[exchange], PAIRS[p]), batch);
+                for (int i = batch - 1; i >= 0; i--) {   // newest first, as exchanges give them
+                    trades.add(id + i + 1, time + i, 1000 + random.nextGaussian(), random.nextDouble(), i & 1);
+                }
+                final SQLiteTradeStore store = stores[p];
+                if (writer == null) {
+                    synchronized (lock) {
+                        connection.setAutoCommit(false);
+                        try {
+                            store.writeNew(trades);
+                            connection.commit();
+                        } catch (SQLException e) {
+                            connection.rollback();
+                            throw e;
+                        } finally {
+                            connection.setAutoCommit(true);
+                        }
+                    }
+                } else {
+                    writes.add(writer.submit(() -> store.writeNew(trades)));
+                }
+            }
+            for (Future<Integer> write: writes) {
+                GroupCommitWriter.await(write);
+            }
+            id += batch;
+            time += batch;
+        }
+    }
+}
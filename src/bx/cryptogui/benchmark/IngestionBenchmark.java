@@ -0,0 +1,152 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.exchangeapi.ExchangeAPI;
+import bx.cryptogui.exchangeapi.HTTPCache;
+import bx.cryptogui.manager.ConnectionManager;
+import bx.cryptogui.manager.DatabaseManager;
+import bx.cryptogui.simulator.ExchangeSimulator;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives {@link DatabaseManager#requestDatabaseUpdate()} end to end against an {@link ExchangeSimulator} and a new
+ * SQLite database, and reports the trades ingested per second. The first update downloads the simulated backlog, the
+ * following ones the trades generated since the previous update.
+ * <p>Usage: IngestionBenchmark [seconds] [trades per second per pair] [backlog seconds] [latency ms] [error rate]</p>
+ */
+public class IngestionBenchmark extends Application {
+
+    @Override
+    public void start(Stage primaryStage) {
+        Thread thread = new Thread(() -> {
+            try {
+                run(getParameters().getRaw().toArray(new String[0]));
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                Platform.exit();
+            }
+        }, "ingestion-benchmark");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void run(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+        long backlog = args.length > 2 ? Long.parseLong(args[2]) : 3600;
+        int latency = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        System.out.println(String.format("seconds=%s, rate=%s/s per pair, backlog=%ss, latency=%sms, errors=%s",
+                seconds, rate, backlog, latency, errorRate));
+
+        File databaseFile = File.createTempFile("ingestion-benchmark", ".db");
+        try (ExchangeSimulator simulator = new ExchangeSimulator();
+             ConnectionManager connections = new ConnectionManager("jdbc:sqlite:" + databaseFile.getPath())) {
+            final Connection connection = connections.getWriter();
+            simulator.setLatency(latency, latency/2);
+            simulator.setErrorRate(errorRate);
+            simulator.addDefaultMarkets(rate, backlog);
+            simulator.install();
+            for (Exchange exchange: ExchangeSimulator.EXCHANGES) {
+                ExchangeAPI.setRateLimit(exchange, 1000, 1000);     // measure ingestion, not the exchanges' limits
+            }
+            ExchangeAPI.getHTTPCache().setTTL(HTTPCache.Endpoint.TRADES, 0);
+
+            final DatabaseManager databaseManager = onFXThread(() -> new DatabaseManager(connections));
+            final AtomicInteger failures = new AtomicInteger();
+            onFXThread(() -> {
+                for (DatabaseManager.ExchangeManager manager: databaseManager.getAllExchangeManagers()) {
+                    manager.setOnWritingFailed(event -> failures.incrementAndGet());
+                }
+                return null;
+            });
+            databaseManager.migrateSchema();
+
+            long start = System.nanoTime();
+            update(databaseManager);
+            long backlogNanos = System.nanoTime() - start;
+            long backlogRows = countRows(connection, databaseManager);
+            report("backlog", backlogRows, backlogNanos);
+
+            int updates = 0;
+            long steadyStart = System.nanoTime();
+            while (System.nanoTime() - start < seconds*1000000000L) {
+                update(databaseManager);
+                updates++;
+            }
+            long steadyRows = countRows(connection, databaseManager) - backlogRows;
+            report("steady (" + updates + " updates)", steadyRows, System.nanoTime() - steadyStart);
+            System.out.println(String.format("%s requests, %s simulated errors, %s failed updates",
+                    simulator.getRequestCount(), simulator.getErrorCount(), failures.get()));
+            for (Exchange exchange: ExchangeSimulator.EXCHANGES) {
+                System.out.println(exchange + ": " + ExchangeAPI.getRequestMetrics(exchange));
+            }
+        } finally {
+            if (!databaseFile.delete()) {
+                databaseFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Updates every table and waits for all the writers to finish.
+     */
+    private static void update(DatabaseManager databaseManager) throws Exception {
+        onFXThread(() -> {
+            databaseManager.requestDatabaseUpdate();
+            return null;
+        });
+        while (onFXThread(() -> {
+            for (DatabaseManager.ExchangeManager manager: databaseManager.getAllExchangeManagers()) {
+                if (manager.isWriting()) {
+                    return true;
+                }
+            }
+            return false;
+        })) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static long countRows(Connection connection, DatabaseManager databaseManager) throws SQLException {
+        long rows = 0;
+        try (Statement statement = connection.createStatement()) {
+            for (DatabaseManager.ExchangeManager manager: databaseManager.getAllExchangeManagers()) {
+                for (String table: manager.getTableNames().values()) {
+                    try (ResultSet set = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                        set.next();
+                        rows += set.getLong(1);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void report(String name, long rows, long nanos) {
+        System.out.println(String.format("%s: %s trades in %.0f ms, %.0f trades/s", name, rows, nanos/1e6,
+                rows/(nanos/1e9)));
+    }
+
+    private static <T> T onFXThread(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        Platform.runLater(task);
+        return task.get();
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -0,0 +1,125 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.data.CandleColumns;
+import bx.cryptogui.data.ChartData;
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.manager.CandleAggregator;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times merging synthetic trades into candles on this thread against a {@link ForkJoinPool} of 1 to as many threads as
+ * there are processors, checking each result equals the serial one. Then the same for the 1 minute candles of the
+ * trades, as the calculator merges those read for a chart, also at the {@link CandleAggregator#PARALLEL_THRESHOLD}.
+ * Needs a heap of about 2 GB for 50M trades, about 830K traded minutes.
+ * <p>Usage: ParallelAggregationBenchmark [trades] [interval s] [repeats]</p>
+ */
+public class ParallelAggregationBenchmark {
+
+    private static final long FIRST_TIME = 1500000000L;
+
+    public static void main(String[] args) {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+        final int interval = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        final int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        final int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("trades=%s, interval=%ss, repeats=%s, processors=%s", count, interval,
+                repeats, processors));
+        final long[] times = new long[count];
+        final double[] prices = new double[count], volumes = new double[count];
+        final Random random = new Random(0);
+        double price = 1000;
+        long time = FIRST_TIME;
+        for (int i = 0; i < count; i++) {
+            price = Math.max(1, price + random.nextGaussian()*0.1);
+            time += random.nextInt(3);  // about 1 trade a second, some seconds empty, some with several
+            times[i] = time;
+            prices[i] = price;
+            volumes[i] = random.nextDouble();
+        }
+        final long until = time;
+        final long start = FIRST_TIME - FIRST_TIME % interval;
+
+        System.out.println("trades:");
+        compare(repeats, processors, (out, pool) -> CandleAggregator.fromTrades(times, prices, volumes, 0, count,
+                start, interval, until, out, pool));
+
+        final CandleColumns minutes = new CandleColumns();
+        CandleAggregator.fromTrades(times, prices, volumes, 0, count, FIRST_TIME - FIRST_TIME % 60, 60, until,
+                minutes, null);
+        final ChartData data = new ChartData(TradePlatform.of(Exchange.COINBASE, CurrencyPair.BTC_USD),
+                Long.MIN_VALUE, Long.MAX_VALUE, 60, minutes.size());
+        for (int i = 0; i < minutes.size(); i++) {
+            if (minutes.getVolume(i) > 0) {     // as stored, periods without trades have no candle
+                data.addCandle(minutes.getTime(i), minutes.getOpen(i), minutes.getHigh(i), minutes.getLow(i),
+                        minutes.getClose(i), minutes.getVolume(i), minutes.getQuoteVolume(i));
+            }
+        }
+        final int candles = data.size(), threshold = Math.min(candles, CandleAggregator.PARALLEL_THRESHOLD);
+        System.out.println(String.format("%s 1 minute candles:", candles));
+        compare(repeats, processors, (out, pool) -> CandleAggregator.fromCandles(data, 0, candles, start, interval,
+                until, out, pool));
+        System.out.println(String.format("last %s 1 minute candles:", threshold));
+        final int from = candles - threshold;
+        final long thresholdStart = data.getTime(from) - data.getTime(from) % interval;
+        compare(repeats, processors, (out, pool) -> CandleAggregator.fromCandles(data, from, candles, thresholdStart,
+                interval, until, out, pool));
+    }
+
+    /**
+     * Prints the best time of an aggregation on this thread, then on pools of 1 to as many threads as there are
+     * processors, and whether each gave the same candles.
+     */
+    private static void compare(int repeats, int processors, Aggregation aggregation) {
+        final CandleColumns serial = new CandleColumns();
+        final long serialTime = time(repeats, () -> aggregation.run(serial, null));
+        System.out.println(String.format("%s candles", serial.size()));
+        System.out.println(String.format("serial:    %8.2f ms", serialTime/1e6));
+        final CandleColumns parallel = new CandleColumns();
+        for (int threads = 1; threads <= processors; threads++) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            final long parallelTime = time(repeats, () -> aggregation.run(parallel, pool));
+            pool.shutdown();
+            System.out.println(String.format("%2d thread%s %8.2f ms  %.2fx%s", threads, threads == 1 ? ": " : "s:",
+                    parallelTime/1e6, (double) serialTime/parallelTime, same(serial, parallel) ? "" : "  DIFFERS"));
+        }
+    }
+
+    /**
+     * @return best time in nanoseconds, after as many warm up runs
+     */
+    private static long time(int repeats, Runnable run) {
+        for (int i = 0; i < repeats; i++) {
+            run.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repeats; i++) {
+            long t0 = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return best;
+    }
+
+    @FunctionalInterface
+    private interface Aggregation {
+        void run(CandleColumns out, ForkJoinPool pool);
+    }
+
+    private static boolean same(CandleColumns a, CandleColumns b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.getTime(i) != b.getTime(i) || a.getOpen(i) != b.getOpen(i) || a.getHigh(i) != b.getHigh(i)
+                    || a.getLow(i) != b.getLow(i) || a.getClose(i) != b.getClose(i)
+                    || a.getVolume(i) != b.getVolume(i) || a.getQuoteVolume(i) != b.getQuoteVolume(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
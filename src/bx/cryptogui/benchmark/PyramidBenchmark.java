@@ -0,0 +1,135 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.manager.CandlePyramid;
+import bx.cryptogui.manager.ConnectionManager;
+import bx.cryptogui.manager.SchemaManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Times building the {@link CandlePyramid} levels of years of trades, and the longest transaction it holds the writer
+ * for. Then times switching the chart interval: bringing the chosen level up to date and reading a window of bars from
+ * it, against reading the same window from the 1 minute candles. Then times the repair after a late trade lands in a
+ * closed bucket.
+ * <p>Usage: PyramidBenchmark [years] [seconds between trades] [bars]</p>
+ */
+public class PyramidBenchmark {
+
+    private static final String TABLE = "bench_btc_usd";
+    private static final int[] INTERVALS = {60, 120, 180, 300, 900, 1800, 3600, 7200, 10800, 21600, 43200, 86400,
+            3*86400, 7*86400};
+
+    public static void main(String[] args) throws Exception {
+        double years = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+        int spacing = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int bars = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        System.out.println(String.format("years=%s, seconds between trades=%s, bars=%s", years, spacing, bars));
+        final TradePlatform platform = TradePlatform.of(Exchange.COINBASE, CurrencyPair.BTC_USD);
+        File file = File.createTempFile("pyramid-benchmark", ".db");
+        try (ConnectionManager connections = new ConnectionManager("jdbc:sqlite:" + file.getPath())) {
+            final Connection writer = connections.getWriter();
+            new SchemaManager(writer).migrate(Collections.singletonList(TABLE));
+            final long now = System.currentTimeMillis()/1000;
+            final long first = now - (long) (years*365*86400);
+            long start = System.nanoTime();
+            long trades = populate(writer, first, now, spacing);
+            System.out.println(String.format("%s trades and 1m candles written in %.1f s", trades,
+                    (System.nanoTime() - start)/1e9));
+
+            CandlePyramid pyramid = new CandlePyramid(writer);
+            final int top = CandlePyramid.LEVELS[CandlePyramid.LEVELS.length - 1];
+            start = System.nanoTime();
+            long longestStep = 0;
+            int steps = 0;
+            for (boolean upToDate = false; !upToDate; steps++) {
+                long t0 = System.nanoTime();
+                upToDate = pyramid.refreshStep(TABLE, top);
+                longestStep = Math.max(longestStep, System.nanoTime() - t0);
+            }
+            System.out.println(String.format("levels built in %.0f ms, %s transactions, longest %.0f ms",
+                    (System.nanoTime() - start)/1e6, steps, longestStep/1e6));
+
+            try (ConnectionManager.Lease lease = connections.openReader()) {
+                for (int interval: INTERVALS) {
+                    final long minTime = now - (long) bars*interval;
+                    final int level = pyramid.selectLevel(interval);
+                    long best = Long.MAX_VALUE, bestMinute = Long.MAX_VALUE;
+                    int rows = 0, minuteRows = 0;
+                    for (int i = 0; i < 5; i++) {
+                        long t0 = System.nanoTime();
+                        pyramid.refresh(TABLE, level);
+                        rows = CandlePyramid.read(lease.getConnection(), TABLE, platform, level, minTime,
+                                Long.MAX_VALUE).size();
+                        long t1 = System.nanoTime();
+                        minuteRows = CandlePyramid.read(lease.getConnection(), TABLE, platform, 60, minTime,
+                                Long.MAX_VALUE).size();
+                        best = Math.min(best, t1 - t0);
+                        bestMinute = Math.min(bestMinute, System.nanoTime() - t1);
+                    }
+                    System.out.println(String.format("interval %7ss: level %6ss %6.1f ms %6s rows | 1m %7.1f ms %7s rows",
+                            interval, level, best/1e6, rows, bestMinute/1e6, minuteRows));
+                }
+            }
+
+            // a trade half the history ago, its buckets at every level are closed
+            final long late = (first + now)/2;
+            writer.setAutoCommit(false);
+            try (PreparedStatement statement = writer.prepareStatement(
+                    "INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?)")) {
+                statement.setLong(1, trades + 1);
+                statement.setLong(2, late);
+                statement.setDouble(3, 1e6);
+                statement.setDouble(4, 1);
+                statement.setInt(5, 0);
+                statement.executeUpdate();
+            }
+            SchemaManager.updateRollup(writer, TABLE, late, late);
+            pyramid.markDirty(TABLE, late, late);
+            writer.commit();
+            writer.setAutoCommit(true);
+            start = System.nanoTime();
+            pyramid.refresh(TABLE, CandlePyramid.LEVELS[CandlePyramid.LEVELS.length - 1]);
+            System.out.println(String.format("late trade repaired in %.0f ms", (System.nanoTime() - start)/1e6));
+        } finally {
+            for (String suffix: new String[] {"", "-wal", "-shm"}) {
+                new File(file.getPath() + suffix).delete();
+            }
+        }
+    }
+
+    private static long populate(Connection connection, long first, long last, int spacing) throws SQLException {
+        connection.setAutoCommit(false);
+        Random random = new Random(0);
+        double price = 1000;
+        long id = 0;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?)")) {
+            for (long time = first; time <= last; time += spacing) {
+                price = Math.max(1, price*Math.exp(0.001*random.nextGaussian()));
+                statement.setLong(1, ++id);
+                statement.setLong(2, time);
+                statement.setDouble(3, price);
+                statement.setDouble(4, random.nextDouble());
+                statement.setInt(5, random.nextInt(2));
+                statement.addBatch();
+                if (id % 100000 == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            SchemaManager.updateRollup(connection, TABLE, first, last);
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return id;
+    }
+}
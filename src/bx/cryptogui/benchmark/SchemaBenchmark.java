@@ -0,0 +1,110 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.manager.SchemaManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Times the lookups of a trade table before and after {@link SchemaManager} migrates it in place: the latest time and
+ * id, read on every update, and a one hour range read, as a chart does. The table starts in the version 0 layout, a
+ * rowid table with no indexes, with one trade per second.
+ * <p>Usage: SchemaBenchmark [rows] [repeats]</p>
+ */
+public class SchemaBenchmark {
+
+    private static final String TABLE = "bench_btc_usd";
+    private static final long FIRST_TIME = 1400000000L;
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 50000000L;
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        System.out.println(String.format("rows=%s, repeats=%s", rows, repeats));
+        File file = File.createTempFile("schema-benchmark", ".db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+            long start = System.nanoTime();
+            populate(connection, rows);
+            System.out.println(String.format("populated in %.1f s", (System.nanoTime() - start)/1e9));
+            final long end = FIRST_TIME + rows;
+            final String[] queries = {
+                    "SELECT MAX(time) FROM " + TABLE,
+                    "SELECT MAX(id) FROM " + TABLE + " WHERE id >= 0",
+                    "SELECT * FROM " + TABLE + " WHERE time BETWEEN " + (end - 3600) + " AND " + end + " ORDER BY time"
+            };
+
+            System.out.println("version 0:");
+            time(connection, queries, repeats);
+            start = System.nanoTime();
+            new SchemaManager(connection).migrate(Collections.singletonList(TABLE));
+            System.out.println(String.format("migrated in %.1f s", (System.nanoTime() - start)/1e9));
+            System.out.println("version " + SchemaManager.CURRENT_VERSION + ":");
+            time(connection, queries, repeats);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void populate(Connection connection, long rows) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + TABLE +
+                    " (id INTEGER, time INTEGER, price REAL, volume REAL, type INTEGER)");
+        }
+        connection.setAutoCommit(false);
+        Random random = new Random(0);
+        double price = 1000;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?)")) {
+            for (long i = 0; i < rows; i++) {
+                price = Math.max(1, price + random.nextGaussian());
+                statement.setLong(1, i + 1);
+                statement.setLong(2, FIRST_TIME + i);
+                statement.setDouble(3, price);
+                statement.setDouble(4, random.nextDouble());
+                statement.setInt(5, random.nextInt(2));
+                statement.addBatch();
+                if (i % 100000 == 99999) {
+                    statement.executeBatch();
+                    connection.commit();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void time(Connection connection, String[] queries, int repeats) throws SQLException {
+        for (String query: queries) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet plan = statement.executeQuery("EXPLAIN QUERY PLAN " + query)) {
+                StringBuilder builder = new StringBuilder();
+                while (plan.next()) {
+                    builder.append(builder.length() == 0 ? "" : "; ").append(plan.getString(4));
+                }
+                long best = Long.MAX_VALUE;
+                long rows = 0;
+                for (int i = 0; i < repeats; i++) {
+                    long start = System.nanoTime();
+                    rows = 0;
+                    try (ResultSet set = statement.executeQuery(query)) {
+                        while (set.next()) {
+                            set.getLong(1);
+                            rows++;
+                        }
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.println(String.format("  %9.3f ms, %s rows: %s%n             plan: %s", best/1e6, rows,
+                        query, builder));
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package bx.cryptogui.benchmark;
+
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.exchangeapi.BitstampAPI;
+import bx.cryptogui.exchangeapi.ExchangeAPI;
+import bx.cryptogui.exchangeapi.HTTPCache;
+import bx.cryptogui.exchangeapi.HTTPResponse;
+import bx.cryptogui.exchangeapi.HTTPStream;
+import bx.cryptogui.exchangeapi.HTTPTransport;
+import bx.cryptogui.exchangeapi.JSONStreamReader;
+import bx.cryptogui.exchangeapi.RateLimiter;
+import bx.cryptogui.simulator.ExchangeSimulator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.file.Paths;
+
+/**
+ * Times decoding Bitstamp order book and trade bodies served by a local {@link ExchangeSimulator}: the former path,
+ * reading an {@link HTTPResponse} then building {@link JSONObject}s, against {@link JSONStreamReader} on an
+ * {@link HTTPStream} straight from the connection, and through {@link BitstampAPI#streamOrderBook} and
+ * {@link BitstampAPI#streamTrades} as the app does: the book through the {@link HTTPCache}, TTL 0, which copies the
+ * body into its entry as it is decoded, the trades uncached. Each body is recorded once so every request gets the
+ * same bytes, and each path must decode the same levels and trades. Allocation per request is that of this thread,
+ * where the JVM reports it.
+ * <p>
+ *     Usage: StreamingDecodeBenchmark [book depth] [trades per second] [repeats] [recordings directory]. A recordings
+ *     directory, laid out as for {@link ExchangeSimulator#loadRecordings}, replaces the synthetic bodies, eg. with
+ *     bitstamp/api/v2/order_book/btcusd and bitstamp/api/v2/transactions/btcusd saved from the exchange.
+ * </p>
+ */
+public class StreamingDecodeBenchmark {
+
+    private static final String[] BOOK_KEYS = {"bids", "asks"};
+    private static final String[] TRADE_KEYS = {"tid", "date", "price", "amount", "type"};
+
+    public static void main(String[] args) throws Exception {
+        final int depth = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        final double rate = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+        final int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        final RateLimiter previousLimit = ExchangeAPI.getRateLimiter(Exchange.BITSTAMP);
+        final HTTPCache cache = ExchangeAPI.getHTTPCache();
+        final long previousBookTTL = cache.getTTL(HTTPCache.Endpoint.ORDER_BOOK);
+        final long previousTradesTTL = cache.getTTL(HTTPCache.Endpoint.TRADES);
+        try (ExchangeSimulator simulator = new ExchangeSimulator()) {
+            simulator.setBookDepth(depth);
+            simulator.addDefaultMarkets(rate, 3600);
+            ExchangeAPI.setRateLimit(Exchange.BITSTAMP, 1e6, 1000000);
+            cache.setTTL(HTTPCache.Endpoint.ORDER_BOOK, 0);
+            cache.setTTL(HTTPCache.Endpoint.TRADES, 0);
+            final HTTPTransport transport = ExchangeAPI.getTransport();
+            final String base = simulator.getBaseUrl(Exchange.BITSTAMP);
+            final BitstampAPI api = new BitstampAPI();
+            api.setBaseUrl(base);
+            final String pair = api.convertCurrencyPair(CurrencyPair.BTC_USD);
+            final URL bookUrl = new URL(base + "/api/v2/order_book/" + pair);
+            final URL tradesUrl = new URL(base + "/api/v2/transactions/" + pair);
+            if (args.length > 3) {
+                simulator.loadRecordings(Paths.get(args[3]));
+            } else {
+                record(simulator, transport, bookUrl);
+                record(simulator, transport, tradesUrl);
+            }
+            System.out.println(String.format("book %.2f MB, trades %.2f MB, repeats=%s",
+                    transport.get(bookUrl, null).getBody().length()/1e6,
+                    transport.get(tradesUrl, null).getBody().length()/1e6, repeats));
+
+            final Checksum expected = new Checksum();
+            orgJsonBook(transport, bookUrl, expected);
+            run("book   HTTPResponse + org.json", repeats, expected, sum -> orgJsonBook(transport, bookUrl, sum));
+            run("book   HTTPStream + reader", repeats, expected, sum -> streamBook(transport, bookUrl, sum));
+            run("book   BitstampAPI.streamOrderBook", repeats, expected,
+                    sum -> api.streamOrderBook(CurrencyPair.BTC_USD, (bid, price, volume) -> sum.add(price, volume)));
+
+            final Checksum expectedTrades = new Checksum();
+            orgJsonTrades(transport, tradesUrl, expectedTrades);
+            run("trades HTTPResponse + org.json", repeats, expectedTrades,
+                    sum -> orgJsonTrades(transport, tradesUrl, sum));
+            run("trades HTTPStream + reader", repeats, expectedTrades, sum -> streamTrades(transport, tradesUrl, sum));
+            run("trades BitstampAPI.streamTrades", repeats, expectedTrades,
+                    sum -> api.streamTrades(CurrencyPair.BTC_USD, (id, time, price, volume, type) ->
+                            sum.add(price + id + time + type, volume)));
+        } finally {
+            ExchangeAPI.setRateLimit(Exchange.BITSTAMP, previousLimit.getPermitsPerSecond(), previousLimit.getBurst());
+            cache.setTTL(HTTPCache.Endpoint.ORDER_BOOK, previousBookTTL);
+            cache.setTTL(HTTPCache.Endpoint.TRADES, previousTradesTTL);
+        }
+    }
+
+    /**
+     * Serves the body the simulator generates now for every later request of the URL.
+     */
+    private static void record(ExchangeSimulator simulator, HTTPTransport transport, URL url) throws IOException {
+        HTTPResponse response = transport.get(url, null);
+        if (response.getResponseCode() != 200) {
+            throw new IOException("Recording " + url + " failed: " + response.getResponseCode());
+        }
+        String path = url.getPath().substring(("/" + Exchange.BITSTAMP.name().toLowerCase()).length());
+        simulator.addRecording(Exchange.BITSTAMP, path, response.getBody().getBytes("UTF-8"));
+    }
+
+    private static void run(String name, int repeats, Checksum expected, Decode decode) throws Exception {
+        for (int i = 0; i < repeats; i++) {
+            decode.run(new Checksum());
+        }
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final boolean allocation = threads instanceof com.sun.management.ThreadMXBean;
+        long best = Long.MAX_VALUE, bytes = Long.MAX_VALUE;
+        for (int i = 0; i < repeats; i++) {
+            final Checksum sum = new Checksum();
+            final long allocated = allocation ? allocatedBytes(threads) : 0;
+            final long start = System.nanoTime();
+            decode.run(sum);
+            best = Math.min(best, System.nanoTime() - start);
+            bytes = Math.min(bytes, allocation ? allocatedBytes(threads) - allocated : 0);
+            if (!sum.equals(expected)) {
+                throw new AssertionError(name + " decoded " + sum + ", expected " + expected);
+            }
+        }
+        System.out.println(String.format("%-36s %7.2f ms/op %8.2f MB/op  %s", name, best/1e6,
+                allocation ? bytes/1e6 : Double.NaN, expected));
+    }
+
+    private static long allocatedBytes(java.lang.management.ThreadMXBean threads) {
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // ------------------ DECODERS -------------------------------------------------------------------------------------
+
+    private static void orgJsonBook(HTTPTransport transport, URL url, Checksum sum) throws IOException {
+        JSONObject json = new JSONObject(transport.get(url, null).getBody());
+        for (String side: BOOK_KEYS) {
+            JSONArray levels = json.getJSONArray(side);
+            for (int i = 0; i < levels.length(); i++) {
+                JSONArray level = levels.getJSONArray(i);
+                sum.add(level.getDouble(0), level.getDouble(1));
+            }
+        }
+    }
+
+    private static void streamBook(HTTPTransport transport, URL url, Checksum sum) throws IOException {
+        try (HTTPStream response = transport.openStream(url, null)) {
+            JSONStreamReader reader = new JSONStreamReader(response.getBody());
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.selectName(BOOK_KEYS) < 0) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginArray();
+                    final double price = reader.nextDouble(), volume = reader.nextDouble();
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    sum.add(price, volume);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+    }
+
+    private static void orgJsonTrades(HTTPTransport transport, URL url, Checksum sum) throws IOException {
+        JSONArray json = new JSONArray(transport.get(url, null).getBody());
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject trade = json.getJSONObject(i);
+            sum.add(trade.getDouble("price") + trade.getLong("tid") + trade.getLong("date") + trade.getInt("type"),
+                    trade.getDouble("amount"));
+        }
+    }
+
+    private static void streamTrades(HTTPTransport transport, URL url, Checksum sum) throws IOException {
+        try (HTTPStream response = transport.openStream(url, null)) {
+            JSONStreamReader reader = new JSONStreamReader(response.getBody());
+            reader.beginArray();
+            while (reader.hasNext()) {
+                long id = -1, time = -1;
+                double price = 0, volume = 0;
+                int type = -1;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.selectName(TRADE_KEYS)) {
+                        case 0: id = reader.nextLong(); break;
+                        case 1: time = reader.nextLong(); break;
+                        case 2: price = reader.nextDouble(); break;
+                        case 3: volume = reader.nextDouble(); break;
+                        case 4: type = reader.nextInt(); break;
+                        default: reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                sum.add(price + id + time + type, volume);
+            }
+            reader.endArray();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Decode {
+        void run(Checksum sum) throws Exception;
+    }
+
+    /**
+     * Count and order sensitive hash of the decoded values, equal only if every path decoded the same.
+     */
+    private static final class Checksum {
+
+        private long count;
+        private long hash;
+
+        void add(double a, double b) {
+            count++;
+            hash = (hash*31 + Double.doubleToLongBits(a))*31 + Double.doubleToLongBits(b);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Checksum)) {
+                return false;
+            }
+            Checksum other = (Checksum) o;
+            return count == other.count && hash == other.hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+
+        @Override
+        public String toString() {
+            return count + " values";
+        }
+    }
+}
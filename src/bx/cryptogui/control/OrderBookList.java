@@ -0,0 +1,50 @@
+package bx.cryptogui.control;
+
+import bx.cryptogui.data.Order;
+import bx.cryptogui.data.OrderBook;
+import javafx.collections.ObservableListBase;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Observable view of the best levels of one side of an {@link OrderBook}, for the items of a TableView. The levels
+ * are read from the book on demand, call {@link #refresh()} (on the FX thread) after the book changed.
+ */
+public class OrderBookList extends ObservableListBase<Order> {
+
+    private final List<Order> view;
+    private int lastSize;
+
+    /**
+     * @param book book, only changed on the FX thread
+     * @param bid true for the bids, false for the asks
+     * @param depth maximum number of levels shown
+     */
+    public OrderBookList(OrderBook book, boolean bid, int depth) {
+        this.view = book.getSide(bid).top(depth);
+        this.lastSize = view.size();
+    }
+
+    @Override
+    public Order get(int index) {
+        return view.get(index);
+    }
+
+    @Override
+    public int size() {
+        return view.size();
+    }
+
+    public void refresh() {
+        int size = view.size();
+        if (size == 0 && lastSize == 0) {
+            return;
+        }
+        // removed levels are not kept, the book has already changed
+        beginChange();
+        nextReplace(0, size, Collections.nCopies(lastSize, (Order) null));
+        lastSize = size;
+        endChange();
+    }
+}
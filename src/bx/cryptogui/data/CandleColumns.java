@@ -0,0 +1,201 @@
+package bx.cryptogui.data;
+
+import java.util.Arrays;
+
+/**
+ * Candles held column by column in growable primitive arrays, the output of
+ * {@link bx.cryptogui.manager.CandleAggregator}. {@link #clear} keeps the arrays, so one instance is reused for each
+ * aggregation without allocating.
+ * <p>Not thread safe, fill it on one thread then only read it.</p>
+ */
+public class CandleColumns {
+
+    private long[] times;
+    private double[] opens;
+    private double[] highs;
+    private double[] lows;
+    private double[] closes;
+    private double[] volumes;
+    private double[] quoteVolumes;
+    private int size = 0;
+
+    public CandleColumns() {
+        this(16);
+    }
+
+    /**
+     * @param capacity expected number of candles
+     */
+    public CandleColumns(int capacity) {
+        capacity = Math.max(capacity, 16);
+        times = new long[capacity];
+        opens = new double[capacity];
+        highs = new double[capacity];
+        lows = new double[capacity];
+        closes = new double[capacity];
+        volumes = new double[capacity];
+        quoteVolumes = new double[capacity];
+    }
+
+    private CandleColumns(CandleColumns other) {
+        times = Arrays.copyOf(other.times, other.size);
+        opens = Arrays.copyOf(other.opens, other.size);
+        highs = Arrays.copyOf(other.highs, other.size);
+        lows = Arrays.copyOf(other.lows, other.size);
+        closes = Arrays.copyOf(other.closes, other.size);
+        volumes = Arrays.copyOf(other.volumes, other.size);
+        quoteVolumes = Arrays.copyOf(other.quoteVolumes, other.size);
+        size = other.size;
+    }
+
+    /**
+     * @param time start of the candle, after the previous candle's
+     */
+    public void add(long time, double open, double high, double low, double close, double volume,
+                    double quoteVolume) {
+        if (size == times.length) {
+            grow(size + 1);
+        }
+        times[size] = time;
+        opens[size] = open;
+        highs[size] = high;
+        lows[size] = low;
+        closes[size] = close;
+        volumes[size] = volume;
+        quoteVolumes[size] = quoteVolume;
+        size++;
+    }
+
+    /**
+     * Makes room for more candles, so a known number of them are added without growing on the way.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > times.length) {
+            grow(capacity);
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, times.length*2);
+        times = Arrays.copyOf(times, capacity);
+        opens = Arrays.copyOf(opens, capacity);
+        highs = Arrays.copyOf(highs, capacity);
+        lows = Arrays.copyOf(lows, capacity);
+        closes = Arrays.copyOf(closes, capacity);
+        volumes = Arrays.copyOf(volumes, capacity);
+        quoteVolumes = Arrays.copyOf(quoteVolumes, capacity);
+    }
+
+    /**
+     * Sets the number of candles, the candles added are undefined until {@link #set}.
+     */
+    public void setSize(int size) {
+        ensureCapacity(size);
+        this.size = size;
+    }
+
+    /**
+     * Replaces a candle. Threads may set different candles at once, and are seen by a thread that joins them.
+     */
+    public void set(int index, long time, double open, double high, double low, double close, double volume,
+                    double quoteVolume) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        times[index] = time;
+        opens[index] = open;
+        highs[index] = high;
+        lows[index] = low;
+        closes[index] = close;
+        volumes[index] = volume;
+        quoteVolumes[index] = quoteVolume;
+    }
+
+    /**
+     * Replaces the prices and volumes of a candle, keeping its time.
+     * @see #set(int, long, double, double, double, double, double, double)
+     */
+    public void set(int index, double open, double high, double low, double close, double volume,
+                    double quoteVolume) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        opens[index] = open;
+        highs[index] = high;
+        lows[index] = low;
+        closes[index] = close;
+        volumes[index] = volume;
+        quoteVolumes[index] = quoteVolume;
+    }
+
+    /**
+     * Removes the first candles, moving the others to the front.
+     */
+    public void removeFirst(int count) {
+        if (count > size) {
+            throw new IndexOutOfBoundsException("Count: " + count + ", Size: " + size);
+        }
+        final int remaining = size - count;
+        System.arraycopy(times, count, times, 0, remaining);
+        System.arraycopy(opens, count, opens, 0, remaining);
+        System.arraycopy(highs, count, highs, 0, remaining);
+        System.arraycopy(lows, count, lows, 0, remaining);
+        System.arraycopy(closes, count, closes, 0, remaining);
+        System.arraycopy(volumes, count, volumes, 0, remaining);
+        System.arraycopy(quoteVolumes, count, quoteVolumes, 0, remaining);
+        size = remaining;
+    }
+
+    /**
+     * @return a copy holding the candles in arrays of just their size
+     */
+    public CandleColumns copy() {
+        return new CandleColumns(this);
+    }
+
+    /**
+     * Removes every candle, keeping the arrays.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return number of candles
+     */
+    public final int size() {
+        return size;
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    public final long getTime(int index) {
+        return times[index];
+    }
+
+    public final double getOpen(int index) {
+        return opens[index];
+    }
+
+    public final double getHigh(int index) {
+        return highs[index];
+    }
+
+    public final double getLow(int index) {
+        return lows[index];
+    }
+
+    public final double getClose(int index) {
+        return closes[index];
+    }
+
+    public final double getVolume(int index) {
+        return volumes[index];
+    }
+
+    public final double getQuoteVolume(int index) {
+        return quoteVolumes[index];
+    }
+}
@@ -0,0 +1,145 @@
+package bx.cryptogui.data;
+
+import java.util.Arrays;
+
+/**
+ * Chart data of a trade platform read from the database: the candles of a time window at one stored resolution, in
+ * primitive arrays in time order, and the most recent trades. Periods without trades have no candle.
+ * <p>Not thread safe, build it on one thread then only read it.</p>
+ */
+public class ChartData {
+
+    private final TradePlatform tradePlatform;
+    private final long minTime;
+    private final long maxTime;
+    private final int candleInterval;
+    private long[] times;
+    private double[] opens;
+    private double[] highs;
+    private double[] lows;
+    private double[] closes;
+    private double[] volumes;
+    private double[] quoteVolumes;
+    private int size = 0;
+    private TradeColumns recentTrades;
+
+    /**
+     * @param minTime start of the window read, Long.MIN_VALUE for no limit
+     * @param maxTime end of the window read, Long.MAX_VALUE for no limit
+     * @param candleInterval seconds per candle
+     * @param capacity expected number of candles
+     */
+    public ChartData(TradePlatform tradePlatform, long minTime, long maxTime, int candleInterval, int capacity) {
+        this.tradePlatform = tradePlatform;
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+        this.candleInterval = candleInterval;
+        this.recentTrades = new TradeColumns(tradePlatform, 0);
+        capacity = Math.max(capacity, 16);
+        this.times = new long[capacity];
+        this.opens = new double[capacity];
+        this.highs = new double[capacity];
+        this.lows = new double[capacity];
+        this.closes = new double[capacity];
+        this.volumes = new double[capacity];
+        this.quoteVolumes = new double[capacity];
+    }
+
+    /**
+     * @param time start of the candle, after the previous candle's
+     */
+    public void addCandle(long time, double open, double high, double low, double close, double volume,
+                          double quoteVolume) {
+        if (size == times.length) {
+            int capacity = size*2;
+            times = Arrays.copyOf(times, capacity);
+            opens = Arrays.copyOf(opens, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            closes = Arrays.copyOf(closes, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+            quoteVolumes = Arrays.copyOf(quoteVolumes, capacity);
+        }
+        times[size] = time;
+        opens[size] = open;
+        highs[size] = high;
+        lows[size] = low;
+        closes[size] = close;
+        volumes[size] = volume;
+        quoteVolumes[size] = quoteVolume;
+        size++;
+    }
+
+    public final TradePlatform getTradePlatform() {
+        return tradePlatform;
+    }
+
+    public final long getMinTime() {
+        return minTime;
+    }
+
+    public final long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @return seconds per candle
+     */
+    public final int getCandleInterval() {
+        return candleInterval;
+    }
+
+    /**
+     * @return number of candles
+     */
+    public final int size() {
+        return size;
+    }
+
+    public final long getTime(int index) {
+        return times[index];
+    }
+
+    public final double getOpen(int index) {
+        return opens[index];
+    }
+
+    public final double getHigh(int index) {
+        return highs[index];
+    }
+
+    public final double getLow(int index) {
+        return lows[index];
+    }
+
+    public final double getClose(int index) {
+        return closes[index];
+    }
+
+    public final double getVolume(int index) {
+        return volumes[index];
+    }
+
+    public final double getQuoteVolume(int index) {
+        return quoteVolumes[index];
+    }
+
+    /**
+     * @return index of the first candle at or after the time, {@link #size()} if there is none
+     */
+    public final int indexOf(long time) {
+        int index = Arrays.binarySearch(times, 0, size, time);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * @return most recent trades of the window, ordered by time ascending
+     */
+    public final TradeColumns getRecentTrades() {
+        return recentTrades;
+    }
+
+    public void setRecentTrades(TradeColumns trades) {
+        recentTrades = trades;
+    }
+}
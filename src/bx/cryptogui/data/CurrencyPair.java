@@ -1,24 +1,68 @@
 package bx.cryptogui.data;
 
+/**
+ * Interned: there is one instance per pair of currencies, got with {@link #of}, so pairs compare by identity, and
+ * each has a dense id below {@link #COUNT} for indexing arrays.
+ */
 public class CurrencyPair {
 
-    public static final CurrencyPair BTC_USD = new CurrencyPair(Currency.BTC, Currency.USD);
-    public static final CurrencyPair BTC_NZD = new CurrencyPair(Currency.BTC, Currency.NZD);
-    public static final CurrencyPair LTC_USD = new CurrencyPair(Currency.LTC, Currency.USD);
-    public static final CurrencyPair LTC_NZD = new CurrencyPair(Currency.LTC, Currency.NZD);
-    public static final CurrencyPair ETH_USD = new CurrencyPair(Currency.ETH, Currency.USD);
-    public static final CurrencyPair ETH_NZD = new CurrencyPair(Currency.ETH, Currency.NZD);
-    public static final CurrencyPair USD_NZD = new CurrencyPair(Currency.USD, Currency.NZD);
+    /** Number of pair ids, the ids of pairs of the same currency are unused */
+    public static final int COUNT = Currency.values().length*Currency.values().length;
+    private static final int CURRENCIES = Currency.values().length;
+    private static final CurrencyPair[] PAIRS = new CurrencyPair[COUNT];
+    static {
+        for (Currency base: Currency.values()) {
+            for (Currency quote: Currency.values()) {
+                if (base != quote) {
+                    CurrencyPair pair = new CurrencyPair(base, quote);
+                    PAIRS[pair.id] = pair;
+                }
+            }
+        }
+    }
+
+    public static final CurrencyPair BTC_USD = of(Currency.BTC, Currency.USD);
+    public static final CurrencyPair BTC_NZD = of(Currency.BTC, Currency.NZD);
+    public static final CurrencyPair LTC_USD = of(Currency.LTC, Currency.USD);
+    public static final CurrencyPair LTC_NZD = of(Currency.LTC, Currency.NZD);
+    public static final CurrencyPair ETH_USD = of(Currency.ETH, Currency.USD);
+    public static final CurrencyPair ETH_NZD = of(Currency.ETH, Currency.NZD);
+    public static final CurrencyPair USD_NZD = of(Currency.USD, Currency.NZD);
 
     private final Currency baseCurrency;
     private final Currency quoteCurrency;
+    private final int id;
 
-    public CurrencyPair(Currency baseCurrency, Currency quoteCurrency) throws IllegalArgumentException {
+    private CurrencyPair(Currency baseCurrency, Currency quoteCurrency) {
         this.baseCurrency = baseCurrency;
         this.quoteCurrency = quoteCurrency;
+        this.id = baseCurrency.ordinal()*CURRENCIES + quoteCurrency.ordinal();
+    }
+
+    /**
+     * @return the instance of the pair
+     * @throws IllegalArgumentException the currencies are the same
+     */
+    public static CurrencyPair of(Currency baseCurrency, Currency quoteCurrency) throws IllegalArgumentException {
         if (baseCurrency == quoteCurrency) {
             throw new IllegalArgumentException("Currencies must be different");
         }
+        return PAIRS[baseCurrency.ordinal()*CURRENCIES + quoteCurrency.ordinal()];
+    }
+
+    /**
+     * @param id id of a pair, see {@link #getId()}
+     * @return the pair, null if the id is of no pair
+     */
+    public static CurrencyPair byId(int id) {
+        return PAIRS[id];
+    }
+
+    /**
+     * @return dense id, below {@link #COUNT}
+     */
+    public final int getId() {
+        return id;
     }
 
     public Currency getBaseCurrency() {
@@ -36,12 +80,11 @@ public class CurrencyPair {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof CurrencyPair &&
-                baseCurrency == ((CurrencyPair) obj).baseCurrency && quoteCurrency == ((CurrencyPair) obj).quoteCurrency;
+        return this == obj;     // interned
     }
 
     @Override
     public int hashCode() {
-        return baseCurrency.hashCode() + quoteCurrency.hashCode()*11;
+        return id;
     }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package bx.cryptogui.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Level 2 order book of a trade platform. Each side keeps its price levels in primitive arrays sorted best first
+ * (bids highest first, asks lowest first), and snapshots and incremental changes are applied in place, so the
+ * memory used only grows with the deepest book seen.
+ * <p>
+ *     Not thread safe. {@link Order} views ({@link #getBids()}, {@link #getTopBids(int)} etc.) read the arrays
+ *     directly and create an {@link Order} for each {@link List#get(int)}.
+ * </p>
+ */
+public class OrderBook {
+
+    private final TradePlatform tradePlatform;
+    private final Side bids = new Side(true);
+    private final Side asks = new Side(false);
+
+    public OrderBook(TradePlatform tradePlatform) {
+        this.tradePlatform = tradePlatform;
+    }
+
+    public final TradePlatform getTradePlatform() {
+        return tradePlatform;
+    }
+
+    public final Side getBidSide() {
+        return bids;
+    }
+
+    public final Side getAskSide() {
+        return asks;
+    }
+
+    public final Side getSide(boolean bid) {
+        return bid ? bids : asks;
+    }
+
+    /**
+     * @return highest bid price, or NaN if there are no bids
+     */
+    public final double getBestBid() {
+        return bids.size == 0 ? Double.NaN : bids.prices[0];
+    }
+
+    /**
+     * @return lowest ask price, or NaN if there are no asks
+     */
+    public final double getBestAsk() {
+        return asks.size == 0 ? Double.NaN : asks.prices[0];
+    }
+
+    /**
+     * @return volume at the price, 0 if there is no level at the price
+     */
+    public final double getVolume(boolean bid, double price) {
+        Side side = getSide(bid);
+        int index = side.indexOf(price);
+        return index < 0 ? 0 : side.volumes[index];
+    }
+
+    /**
+     * Sets the total volume at a price level.
+     * @param volume new volume, 0 or less removes the level
+     */
+    public void set(boolean bid, double price, double volume) {
+        getSide(bid).set(price, volume);
+    }
+
+    public void clear() {
+        bids.size = 0;
+        asks.size = 0;
+    }
+
+    /**
+     * Replaces this book with the best levels of another book.
+     * @param depth maximum number of levels copied per side
+     */
+    public void copyFrom(OrderBook other, int depth) {
+        bids.copyFrom(other.bids, depth);
+        asks.copyFrom(other.asks, depth);
+    }
+
+    public final List<Order> getBids() {
+        return bids.view;
+    }
+
+    public final List<Order> getAsks() {
+        return asks.view;
+    }
+
+    /**
+     * @return view of the best n bids
+     */
+    public final List<Order> getTopBids(int n) {
+        return bids.top(n);
+    }
+
+    /**
+     * @return view of the best n asks
+     */
+    public final List<Order> getTopAsks(int n) {
+        return asks.top(n);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OrderBook[%s,%s bids,%s asks,%s/%s]",
+                tradePlatform, bids.size, asks.size, getBestBid(), getBestAsk());
+    }
+
+    /**
+     * One side of the book.
+     */
+    public final class Side {
+
+        private final boolean bid;
+        private double[] prices = new double[64];
+        private double[] volumes = new double[64];
+        private int size = 0;
+        private final List<Order> view = top(Integer.MAX_VALUE);
+
+        private Side(boolean bid) {
+            this.bid = bid;
+        }
+
+        public boolean isBid() {
+            return bid;
+        }
+
+        /**
+         * @return number of price levels
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param level index, 0 is the best price
+         */
+        public double getPrice(int level) {
+            checkIndex(level, size);
+            return prices[level];
+        }
+
+        /**
+         * @param level index, 0 is the best price
+         */
+        public double getVolume(int level) {
+            checkIndex(level, size);
+            return volumes[level];
+        }
+
+        /**
+         * @return index of the level at the price, or (-(insertion point) - 1) if there is none
+         */
+        public int indexOf(double price) {
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                double midPrice = prices[mid];
+                if (midPrice == price) {
+                    return mid;
+                } else if (bid ? midPrice > price : midPrice < price) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * @return view of the best n levels, its size follows the side
+         */
+        public List<Order> top(final int n) {
+            return new AbstractList<Order>() {
+                @Override
+                public Order get(int index) {
+                    checkIndex(index, size());
+                    return new Order(-1, -1, prices[index], volumes[index], bid, tradePlatform);
+                }
+                @Override
+                public int size() {
+                    return Math.min(n, size);
+                }
+            };
+        }
+
+        private void set(double price, double volume) {
+            int index = indexOf(price);
+            if (index >= 0) {
+                if (volume > 0) {
+                    volumes[index] = volume;
+                } else {
+                    System.arraycopy(prices, index + 1, prices, index, size - index - 1);
+                    System.arraycopy(volumes, index + 1, volumes, index, size - index - 1);
+                    size--;
+                }
+            } else if (volume > 0) {
+                index = -index - 1;
+                ensureCapacity(size + 1);
+                if (index < size) {     // appending is the common case for sorted snapshots
+                    System.arraycopy(prices, index, prices, index + 1, size - index);
+                    System.arraycopy(volumes, index, volumes, index + 1, size - index);
+                }
+                prices[index] = price;
+                volumes[index] = volume;
+                size++;
+            }
+        }
+
+        private void copyFrom(Side other, int depth) {
+            int length = Math.min(other.size, depth);
+            ensureCapacity(length);
+            System.arraycopy(other.prices, 0, prices, 0, length);
+            System.arraycopy(other.volumes, 0, volumes, 0, length);
+            size = length;
+        }
+
+        private void checkIndex(int index, int length) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > prices.length) {
+                int newLength = Math.max(capacity, prices.length*2);
+                prices = Arrays.copyOf(prices, newLength);
+                volumes = Arrays.copyOf(volumes, newLength);
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package bx.cryptogui.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntPredicate;
+
+/**
+ * Trades of one trade platform held column by column in growable primitive arrays, about 33 bytes a trade, instead
+ * of a {@link Transaction} object per trade. {@link #add} has the shape of a
+ * {@link bx.cryptogui.exchangeapi.TradeSink}, so trades are decoded straight into it, and {@link #asList} views it as
+ * transactions for tables, creating them as they are shown.
+ * <p>Not thread safe, fill it on one thread then only read it.</p>
+ */
+public class TradeColumns {
+
+    private final TradePlatform tradePlatform;
+    private long[] ids;
+    private long[] times;
+    private double[] prices;
+    private double[] volumes;
+    private byte[] types;
+    private int size = 0;
+
+    public TradeColumns(TradePlatform tradePlatform) {
+        this(tradePlatform, 16);
+    }
+
+    /**
+     * @param capacity expected number of trades
+     */
+    public TradeColumns(TradePlatform tradePlatform, int capacity) {
+        this.tradePlatform = tradePlatform;
+        ids = new long[capacity];
+        times = new long[capacity];
+        prices = new double[capacity];
+        volumes = new double[capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * @return trades of the list in the same order
+     */
+    public static TradeColumns of(TradePlatform tradePlatform, List<Transaction> trades) {
+        TradeColumns columns = new TradeColumns(tradePlatform, trades.size());
+        for (Transaction trans: trades) {
+            columns.add(trans.getId(), trans.getTime(), trans.getPrice(), trans.getVolume(), trans.getTradeType());
+        }
+        return columns;
+    }
+
+    /**
+     * @param id trade id, -1 if the exchange does not give one
+     * @param type {@link Transaction#BUY}, {@link Transaction#SELL} or -1
+     */
+    public void add(long id, long time, double price, double volume, int type) {
+        if (size == ids.length) {
+            grow(size + 1);
+        }
+        ids[size] = id;
+        times[size] = time;
+        prices[size] = price;
+        volumes[size] = volume;
+        types[size] = (byte) type;
+        size++;
+    }
+
+    public void addAll(TradeColumns trades) {
+        if (size + trades.size > ids.length) {
+            grow(size + trades.size);
+        }
+        System.arraycopy(trades.ids, 0, ids, size, trades.size);
+        System.arraycopy(trades.times, 0, times, size, trades.size);
+        System.arraycopy(trades.prices, 0, prices, size, trades.size);
+        System.arraycopy(trades.volumes, 0, volumes, size, trades.size);
+        System.arraycopy(trades.types, 0, types, size, trades.size);
+        size += trades.size;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, Math.max(16, ids.length*2));
+        ids = Arrays.copyOf(ids, capacity);
+        times = Arrays.copyOf(times, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        volumes = Arrays.copyOf(volumes, capacity);
+        types = Arrays.copyOf(types, capacity);
+    }
+
+    public final TradePlatform getTradePlatform() {
+        return tradePlatform;
+    }
+
+    /**
+     * @return number of trades
+     */
+    public final int size() {
+        return size;
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    public final long getId(int index) {
+        return ids[index];
+    }
+
+    public final long getTime(int index) {
+        return times[index];
+    }
+
+    public final double getPrice(int index) {
+        return prices[index];
+    }
+
+    public final double getVolume(int index) {
+        return volumes[index];
+    }
+
+    public final double getQuoteVolume(int index) {
+        return volumes[index]*prices[index];
+    }
+
+    public final int getTradeType(int index) {
+        return types[index];
+    }
+
+    /**
+     * @return new transaction of a trade
+     */
+    public final Transaction get(int index) {
+        return new Transaction(ids[index], times[index], prices[index], volumes[index], types[index], tradePlatform);
+    }
+
+    /**
+     * Keeps only the trades passing a test, in order.
+     * @param keep tests the index of each trade
+     */
+    public void retain(IntPredicate keep) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep.test(i)) {
+                move(i, kept++);
+            }
+        }
+        size = kept;
+    }
+
+    public void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            long id = ids[i];
+            long time = times[i];
+            double price = prices[i];
+            double volume = volumes[i];
+            byte type = types[i];
+            move(j, i);
+            ids[j] = id;
+            times[j] = time;
+            prices[j] = price;
+            volumes[j] = volume;
+            types[j] = type;
+        }
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        times[to] = times[from];
+        prices[to] = prices[from];
+        volumes[to] = volumes[from];
+        types[to] = types[from];
+    }
+
+    /**
+     * Sorts the trades by time then id, keeping the order of equal trades, as trades without an id (-1) within a
+     * second are. Costs one pass when already sorted.
+     */
+    public void sort() {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = times[i - 1] < times[i] || times[i - 1] == times[i] && ids[i - 1] <= ids[i];
+        }
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> times[i]).thenComparingLong(i -> ids[i]));
+        long[] sortedIds = new long[ids.length], sortedTimes = new long[ids.length];
+        double[] sortedPrices = new double[ids.length], sortedVolumes = new double[ids.length];
+        byte[] sortedTypes = new byte[ids.length];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            sortedIds[i] = ids[from];
+            sortedTimes[i] = times[from];
+            sortedPrices[i] = prices[from];
+            sortedVolumes[i] = volumes[from];
+            sortedTypes[i] = types[from];
+        }
+        ids = sortedIds;
+        times = sortedTimes;
+        prices = sortedPrices;
+        volumes = sortedVolumes;
+        types = sortedTypes;
+    }
+
+    /**
+     * @return read-only view of the trades as transactions, each created when it is got, for tables
+     */
+    public List<Transaction> asList() {
+        return new TransactionList();
+    }
+
+    private class TransactionList extends AbstractList<Transaction> implements RandomAccess {
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return TradeColumns.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -4,14 +4,33 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Interned: there is one instance per exchange and currency pair, got with {@link #of}, so platforms compare by
+ * identity, and each has a dense id below {@link #COUNT} for keeping per platform state in arrays. The platforms of an
+ * exchange have consecutive ids, from {@link #firstId}.
+ */
 public class TradePlatform {
 
-    public static final TradePlatform WEX_BTC_USD = new TradePlatform(Exchange.WEX, CurrencyPair.BTC_USD);
-    public static final TradePlatform BITSTAMP_BTC_USD = new TradePlatform(Exchange.BITSTAMP, CurrencyPair.BTC_USD);
-    public static final TradePlatform COINBASE_BTC_USD = new TradePlatform(Exchange.COINBASE, CurrencyPair.BTC_USD);
-    public static final TradePlatform CRYPTOPIA_BTC_USD = new TradePlatform(Exchange.CRYPTOPIA, CurrencyPair.BTC_USD);
-    public static final TradePlatform CRYPTOPIA_BTC_NZD = new TradePlatform(Exchange.CRYPTOPIA, CurrencyPair.BTC_NZD);
-    public static final TradePlatform KIWICOIN_BTC_NZD = new TradePlatform(Exchange.KIWICOIN, CurrencyPair.BTC_NZD);
+    /** Number of platform ids */
+    public static final int COUNT = Exchange.values().length*CurrencyPair.COUNT;
+    private static final TradePlatform[] PLATFORMS = new TradePlatform[COUNT];
+    static {
+        for (Exchange exchange: Exchange.values()) {
+            for (int pair = 0; pair < CurrencyPair.COUNT; pair++) {
+                if (CurrencyPair.byId(pair) != null) {
+                    TradePlatform platform = new TradePlatform(exchange, CurrencyPair.byId(pair));
+                    PLATFORMS[platform.id] = platform;
+                }
+            }
+        }
+    }
+
+    public static final TradePlatform WEX_BTC_USD = of(Exchange.WEX, CurrencyPair.BTC_USD);
+    public static final TradePlatform BITSTAMP_BTC_USD = of(Exchange.BITSTAMP, CurrencyPair.BTC_USD);
+    public static final TradePlatform COINBASE_BTC_USD = of(Exchange.COINBASE, CurrencyPair.BTC_USD);
+    public static final TradePlatform CRYPTOPIA_BTC_USD = of(Exchange.CRYPTOPIA, CurrencyPair.BTC_USD);
+    public static final TradePlatform CRYPTOPIA_BTC_NZD = of(Exchange.CRYPTOPIA, CurrencyPair.BTC_NZD);
+    public static final TradePlatform KIWICOIN_BTC_NZD = of(Exchange.KIWICOIN, CurrencyPair.BTC_NZD);
     public static final Map<TradePlatform, String> TYPE_2_TABLE;    // TODO remove this
     static {
         HashMap<TradePlatform, String> tempMap = new HashMap<>();
@@ -23,10 +42,41 @@ public class TradePlatform {
 
     private final Exchange exchange;
     private final CurrencyPair currencyPair;
+    private final int id;
 
-    public TradePlatform(Exchange exchange, CurrencyPair currencyPair) {
+    private TradePlatform(Exchange exchange, CurrencyPair currencyPair) {
         this.exchange = exchange;
         this.currencyPair = currencyPair;
+        this.id = firstId(exchange) + currencyPair.getId();
+    }
+
+    /**
+     * @return the instance of the platform
+     */
+    public static TradePlatform of(Exchange exchange, CurrencyPair currencyPair) {
+        return PLATFORMS[firstId(exchange) + currencyPair.getId()];
+    }
+
+    /**
+     * @param id id of a platform, see {@link #getId()}
+     * @return the platform, null if the id is of no platform
+     */
+    public static TradePlatform byId(int id) {
+        return PLATFORMS[id];
+    }
+
+    /**
+     * @return id of the first platform of an exchange, its platforms' ids are below this plus {@link CurrencyPair#COUNT}
+     */
+    public static int firstId(Exchange exchange) {
+        return exchange.ordinal()*CurrencyPair.COUNT;
+    }
+
+    /**
+     * @return dense id, below {@link #COUNT}
+     */
+    public final int getId() {
+        return id;
     }
 
     public Exchange getExchange() {
@@ -52,12 +102,11 @@ public class TradePlatform {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof TradePlatform &&
-                exchange == ((TradePlatform) obj).exchange && currencyPair.equals(((TradePlatform) obj).currencyPair);
+        return this == obj;     // interned
     }
 
     @Override
     public int hashCode() {
-        return exchange.hashCode()^3 + currencyPair.hashCode();
+        return id;
     }
 }
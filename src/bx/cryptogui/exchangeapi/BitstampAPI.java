@@ -1,7 +1,6 @@
 package bx.cryptogui.exchangeapi;
 
 import bx.cryptogui.data.*;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -14,6 +13,10 @@ import java.util.Map;
 
 public class BitstampAPI extends ExchangeAPI {
 
+    public static final String DEFAULT_BASE_URL = "https://www.bitstamp.net";
+
+    private static final String[] TRANSACTION_KEYS = {"tid", "date", "price", "amount", "type"};
+
     public BitstampAPI() {
         super();
     }
@@ -31,6 +34,11 @@ public class BitstampAPI extends ExchangeAPI {
         return Exchange.BITSTAMP;
     }
 
+    @Override
+    protected String getDefaultBaseUrl() {
+        return DEFAULT_BASE_URL;
+    }
+
     @Override
     public String convertCurrencyPair(CurrencyPair currencyPair) {
         if (currencyPair.equals(CurrencyPair.BTC_USD)) {
@@ -47,7 +55,8 @@ public class BitstampAPI extends ExchangeAPI {
     public Ticker getTicker(CurrencyPair currencyPair) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
         if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://www.bitstamp.net/api/v2/ticker/" + pairString));
+        HTTPResponse response = getCachedRequest(new URL(getBaseUrl() + "/api/v2/ticker/" + pairString),
+                HTTPCache.Endpoint.TICKER);
         if (response.getResponseCode() == 200) {
             JSONObject json = response.getJSONObject();
             long time = json.getLong("timestamp");
@@ -66,61 +75,74 @@ public class BitstampAPI extends ExchangeAPI {
     @Override
     public List<Order>[] getOrderBook(CurrencyPair currencyPair) throws IOException, HTTPException {
         List<Order>[] orders = new List[] {new ArrayList<>(), new ArrayList<>()};
+        if (!streamOrderBook(currencyPair, orderListSink(orders, TradePlatform.of(Exchange.BITSTAMP, currencyPair)))) {
+            return null;
+        }
+        return orders;
+    }
+
+    @Override
+    public boolean streamOrderBook(CurrencyPair currencyPair, PriceLevelSink sink) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
-        if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://www.bitstamp.net/api/v2/order_book/" + pairString));
-        if (response.getResponseCode() == 200) {
-            JSONObject json = response.getJSONObject();
-            JSONArray bids = json.getJSONArray("bids");
-            JSONArray asks = json.getJSONArray("asks");
-            for (int i = 0; i < bids.length(); i++) {
-                JSONArray array = bids.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[0].add(new Order(-1, -1, price, volume, true, new TradePlatform(Exchange.BITSTAMP, currencyPair)));
-            }
-            for (int i = 0; i < asks.length(); i++) {
-                JSONArray array = asks.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[1].add(new Order(-1, -1, price, volume, false, new TradePlatform(Exchange.BITSTAMP, currencyPair)));
+        if (pairString == null) return false;
+        try (HTTPStream response = openCachedStream(new URL(getBaseUrl() + "/api/v2/order_book/" + pairString),
+                HTTPCache.Endpoint.ORDER_BOOK)) {
+            if (response.getResponseCode() == 200) {
+                readBidsAndAsks(new JSONStreamReader(response.getBody()), sink);
+            } else {
+                throw new HTTPException(response);
             }
-        } else {
-            throw new HTTPException(response);
         }
-        return orders;
+        return true;
     }
 
     @Override
     public List<Transaction> getTrades(CurrencyPair currencyPair) throws IOException, HTTPException {
         List<Transaction> trades = new ArrayList<>();
+        if (!streamTrades(currencyPair, tradeListSink(trades, TradePlatform.of(Exchange.BITSTAMP, currencyPair)))) {
+            return null;
+        }
+        return trades;
+    }
+
+    @Override
+    public boolean streamTrades(CurrencyPair currencyPair, TradeSink sink) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
-        if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://www.bitstamp.net/api/v2/transactions/" + pairString));
-        if (response.getResponseCode() == 200) {
-            JSONArray json = response.getJSONArray();
-            for (int i = 0; i < json.length(); i++) {
-                JSONObject transaction = json.getJSONObject(i);
-                long id = transaction.getLong("tid");
-                long time = transaction.getLong("date");
-                double price = transaction.getDouble("price");
-                double volume = transaction.getDouble("amount");
-                int type = transaction.getInt("type");
-                trades.add(new Transaction(id, time, price, volume, type, new TradePlatform(Exchange.BITSTAMP, currencyPair)));
+        if (pairString == null) return false;
+        // not cached, the trades change with every poll
+        try (HTTPStream response = openStream(new URL(getBaseUrl() + "/api/v2/transactions/" + pairString))) {
+            if (response.getResponseCode() == 200) {
+                JSONStreamReader reader = new JSONStreamReader(response.getBody());
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    long id = -1, time = -1;
+                    double price = 0, volume = 0;
+                    int type = -1;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.selectName(TRANSACTION_KEYS)) {
+                            case 0: id = reader.nextLong(); break;
+                            case 1: time = reader.nextLong(); break;
+                            case 2: price = reader.nextDouble(); break;
+                            case 3: volume = reader.nextDouble(); break;
+                            case 4: type = reader.nextInt(); break;
+                            default: reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    sink.trade(id, time, price, volume, type);
+                }
+                reader.endArray();
+            } else {
+                throw new HTTPException(response);
             }
-        } else {
-            throw new HTTPException(response);
         }
-        return trades;
+        return true;
     }
 
     @Override
-    public Map<TradePlatform, List<Transaction>> getAllTrades() throws IOException, HTTPException {
-        Map<TradePlatform, List<Transaction>> trades = new HashMap<>();
-        trades.put(TradePlatform.BITSTAMP_BTC_USD, getTrades(CurrencyPair.BTC_USD));
-        trades.put(new TradePlatform(Exchange.BITSTAMP, CurrencyPair.LTC_USD), getTrades(CurrencyPair.LTC_USD));
-        trades.put(new TradePlatform(Exchange.BITSTAMP, CurrencyPair.ETH_USD), getTrades(CurrencyPair.ETH_USD));
-        return trades;
+    public Map<TradePlatform, List<Transaction>> getAllTrades() throws RequestException, InterruptedException {
+        return getAllTrades(CurrencyPair.BTC_USD, CurrencyPair.LTC_USD, CurrencyPair.ETH_USD);
     }
 
     @Override
@@ -0,0 +1,92 @@
+package bx.cryptogui.exchangeapi;
+
+import bx.cryptogui.data.CurrencyPair;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bitstamp feed. The order_book channel sends the top of the book as a full snapshot on every change, so a missed
+ * message is simply replaced by the next one. Trades come from the live_trades channel.
+ */
+public class BitstampFeed extends MarketDataFeed {
+
+    public static final URI DEFAULT_URI = URI.create("wss://ws.bitstamp.net");
+
+    private final String pairString;
+    private long lastBookTime = -1;     // microseconds, guarded by this
+
+    public BitstampFeed(ExchangeAPI api, CurrencyPair currencyPair, MarketDataListener listener) {
+        this(api, currencyPair, listener, DEFAULT_URI);
+    }
+
+    public BitstampFeed(ExchangeAPI api, CurrencyPair currencyPair, MarketDataListener listener, URI uri) {
+        super(api, currencyPair, listener, uri);
+        this.pairString = api.convertCurrencyPair(currencyPair);
+    }
+
+    @Override
+    protected List<String> getSubscribeMessages() {
+        return Arrays.asList(subscribeMessage("order_book_" + pairString), subscribeMessage("live_trades_" + pairString));
+    }
+
+    @Override
+    protected void onConnected() throws Exception {
+        synchronized (this) {
+            lastBookTime = -1;
+        }
+        super.onConnected();
+    }
+
+    @Override
+    protected void handleMessage(String message) throws Exception {
+        JSONObject json = new JSONObject(message);
+        String event = json.optString("event");
+        String channel = json.optString("channel");
+        switch (event) {
+            case "data":
+                JSONObject data = json.getJSONObject("data");
+                if (channel.startsWith("order_book_")) {
+                    long bookTime = data.optLong("microtimestamp", data.optLong("timestamp")*1000000);
+                    synchronized (this) {
+                        if (bookTime < lastBookTime) {     // stale snapshot
+                            return;
+                        }
+                        lastBookTime = bookTime;
+                        clearOrderBook();
+                        setLevels(true, data.getJSONArray("bids"));
+                        setLevels(false, data.getJSONArray("asks"));
+                    }
+                }
+                break;
+            case "trade":
+                JSONObject trade = json.getJSONObject("data");
+                applyTrade(trade.getLong("timestamp"), trade.getDouble("price"), trade.getDouble("amount"), trade.getInt("type"));
+                break;
+            case "bts:request_reconnect":
+                reconnect();
+                break;
+            case "bts:error":
+                throw new RequestException("Bitstamp feed error: " + json.optJSONObject("data"));
+            default:
+                // subscription succeeded, ignore
+        }
+    }
+
+    private static String subscribeMessage(String channel) {
+        JSONObject subscribe = new JSONObject();
+        subscribe.put("event", "bts:subscribe");
+        subscribe.put("data", new JSONObject().put("channel", channel));
+        return subscribe.toString();
+    }
+
+    private void setLevels(boolean bid, JSONArray levels) {
+        for (int i = 0; i < levels.length(); i++) {
+            JSONArray level = levels.getJSONArray(i);
+            setLevel(bid, level.getDouble(0), level.getDouble(1));
+        }
+    }
+}
@@ -1,19 +1,28 @@
 package bx.cryptogui.exchangeapi;
 
 import bx.cryptogui.data.*;
-import org.json.JSONArray;
+import bx.cryptogui.data.Currency;
 import org.json.JSONObject;
 
 import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class CoinbaseAPI extends ExchangeAPI {
 
+    public static final String DEFAULT_BASE_URL = "https://api.gdax.com";
+    public static final int TRADES_PAGE_SIZE = 100;
+    public static final int MAX_TRADE_PAGES = 50;
+    public static final int DEFAULT_PAGES_IN_FLIGHT = 4;
+
+    private static final String[] TRADE_KEYS = {"trade_id", "time", "price", "size", "side"};
+    private static final String[] TRADE_SIDES = {"buy", "sell"};
+
+    private volatile int pagesInFlight = DEFAULT_PAGES_IN_FLIGHT;
+
     public CoinbaseAPI() {
         super();
     }
@@ -26,11 +35,30 @@ public class CoinbaseAPI extends ExchangeAPI {
         super(key, secret);
     }
 
+    public final int getPagesInFlight() {
+        return pagesInFlight;
+    }
+
+    /**
+     * @param pagesInFlight pages {@link #streamTradePages} requests ahead, 1 pages sequentially
+     */
+    public final void setPagesInFlight(int pagesInFlight) {
+        if (pagesInFlight < 1) {
+            throw new IllegalArgumentException("Must allow at least 1 page");
+        }
+        this.pagesInFlight = pagesInFlight;
+    }
+
     @Override
     public Exchange getExchange() {
         return Exchange.COINBASE;
     }
 
+    @Override
+    protected String getDefaultBaseUrl() {
+        return DEFAULT_BASE_URL;
+    }
+
     @Override
     public String convertCurrencyPair(CurrencyPair currencyPair) {
         if (currencyPair.equals(CurrencyPair.BTC_USD)) {
@@ -47,7 +75,8 @@ public class CoinbaseAPI extends ExchangeAPI {
     public Ticker getTicker(CurrencyPair currencyPair) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
         if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://api.gdax.com/products/" + pairString + "/ticker"));
+        HTTPResponse response = getCachedRequest(new URL(getBaseUrl() + "/products/" + pairString + "/ticker"),
+                HTTPCache.Endpoint.TICKER);
         if (response.getResponseCode() == 200) {
             JSONObject json = response.getJSONObject();
             long time = DatatypeConverter.parseDateTime(json.getString("time")).toInstant().getEpochSecond();
@@ -63,73 +92,209 @@ public class CoinbaseAPI extends ExchangeAPI {
     @Override
     public List<Order>[] getOrderBook(CurrencyPair currencyPair) throws IOException, HTTPException {
         List<Order>[] orders = new List[] {new ArrayList<>(), new ArrayList<>()};
-        String pairString = convertCurrencyPair(currencyPair);
-        if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://api.gdax.com/products/" + pairString + "/book?level=2"));
-        if (response.getResponseCode() == 200) {
-            JSONObject json = response.getJSONObject();
-            JSONArray bids = json.getJSONArray("bids");
-            JSONArray asks = json.getJSONArray("asks");
-            for (int i = 0; i < bids.length(); i++) {
-                JSONArray array = bids.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[0].add(new Order(-1, -1, price, volume, true, new TradePlatform(Exchange.COINBASE, currencyPair)));
-            }
-            for (int i = 0; i < asks.length(); i++) {
-                JSONArray array = asks.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[1].add(new Order(-1, -1, price, volume, false, new TradePlatform(Exchange.COINBASE, currencyPair)));
-            }
-        } else {
-            throw new HTTPException(response);
+        if (!streamOrderBook(currencyPair, orderListSink(orders, TradePlatform.of(Exchange.COINBASE, currencyPair)))) {
+            return null;
         }
         return orders;
     }
 
-    public List<Transaction> getTrades(CurrencyPair currencyPair, long minTime) throws IOException, HTTPException {
-        List<Transaction> trades = new ArrayList<>();
+    @Override
+    public boolean streamOrderBook(CurrencyPair currencyPair, PriceLevelSink sink) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
-        if (pairString == null) return null;
-        // Start pagination loop, 100 per page, get 10 pages
-        int count = 0;
-        String urlString = "https://api.gdax.com/products/" + pairString + "/trades";   // Init first page
-        do {
-            HTTPResponse response = getRequest(new URL(urlString));
+        if (pairString == null) return false;
+        try (HTTPStream response = openCachedStream(new URL(getBaseUrl() + "/products/" + pairString + "/book?level=2"),
+                HTTPCache.Endpoint.ORDER_BOOK)) {
             if (response.getResponseCode() == 200) {
-                int page = Integer.valueOf(response.getHeaderField("cb-after").get(0));
-                JSONArray json = response.getJSONArray();
-                for (int i = 0; i < json.length(); i++) {
-                    JSONObject transaction = json.getJSONObject(i);
-                    long id = transaction.getLong("trade_id");
-                    long time = DatatypeConverter.parseDateTime(transaction.getString("time")).toInstant().getEpochSecond();
-                    double price = transaction.getDouble("price");
-                    double volume = transaction.getDouble("size");
-                    int type = transaction.getString("side").equals("buy") ? 1 : 0;     // OPPOSITE, 'side' is maker order side
-                    trades.add(new Transaction(id, time, price, volume, type, new TradePlatform(Exchange.COINBASE, currencyPair)));
-                }
-                // Update URL!!!
-                urlString = "https://api.gdax.com/products/" + pairString + "/trades?after=" + page;
+                readBidsAndAsks(new JSONStreamReader(response.getBody()), sink);
             } else {
                 throw new HTTPException(response);
             }
-        } while (count++ < 50 && trades.get(trades.size()-1).getTime() >= minTime);
+        }
+        return true;
+    }
+
+    /**
+     * @return trades from the newest back to the first page older than minTime, at most {@link #MAX_TRADE_PAGES} pages
+     */
+    public List<Transaction> getTrades(CurrencyPair currencyPair, long minTime) throws IOException, HTTPException,
+            InterruptedException {
+        List<Transaction> trades = new ArrayList<>();
+        try {
+            if (!streamTradePages(currencyPair, minTime, page -> trades.addAll(page.asList()))) {
+                return null;
+            }
+        } catch (IOException | HTTPException | InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {     // the sink never throws
+            throw new IllegalStateException(e);
+        }
         return trades;
     }
 
+    /**
+     * Pages back through the trades from the newest, stopping after the first page with a trade older than minTime,
+     * or after {@link #MAX_TRADE_PAGES} pages.
+     * <p>
+     *     Trade ids are sequential, so the {@code after} cursor of each page is predicted from the first page and up to
+     *     {@link #getPagesInFlight()} pages are requested ahead, paced by the Coinbase {@link RateLimiter}. Pages are
+     *     given to the sink in order as they arrive. If a page's {@code cb-after} cursor is not the predicted one (a gap
+     *     in the ids), the pages requested ahead are dropped and paging carries on from the real cursor.
+     * </p>
+     * @param sink receives each page, newest first, on the calling thread
+     * @return false if the currency pair is not supported
+     * @throws Exception thrown by a request or the sink, pages requested ahead are cancelled
+     */
+    public boolean streamTradePages(final CurrencyPair currencyPair, long minTime, TradePageSink sink) throws Exception {
+        final String pairString = convertCurrencyPair(currencyPair);
+        if (pairString == null) return false;
+        TradePage page = fetchTradePage(currencyPair, pairString, -1);
+        sink.page(page.trades);
+        int pages = 1;
+        if (page.isLast(minTime)) {
+            return true;
+        }
+        final int maxInFlight = pagesInFlight;
+        Deque<Future<TradePage>> inFlight = new ArrayDeque<>();
+        long nextAfter = page.after;
+        try {
+            while (true) {
+                while (inFlight.size() < maxInFlight && pages + inFlight.size() < MAX_TRADE_PAGES) {
+                    final long after = nextAfter;
+                    inFlight.add(submitPageRequest(() -> fetchTradePage(currencyPair, pairString, after)));
+                    nextAfter -= TRADES_PAGE_SIZE;
+                }
+                if (inFlight.isEmpty()) {
+                    return true;
+                }
+                try {
+                    page = inFlight.poll().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+                }
+                sink.page(page.trades);
+                pages++;
+                if (page.isLast(minTime)) {
+                    return true;
+                }
+                if (page.after != page.requestedAfter - TRADES_PAGE_SIZE) {    // gap in the ids, prediction is off
+                    cancelAll(inFlight);
+                    nextAfter = page.after;
+                }
+            }
+        } finally {
+            cancelAll(inFlight);
+        }
+    }
+
+    /**
+     * Pages back from beforeId towards afterId, to fill a gap in downloaded trades. Pages are requested one after the
+     * other, as each cursor comes from the previous page.
+     * @param afterId newest trade id already downloaded below the gap, trades up to it are not given to the sink
+     * @param beforeId oldest trade id already downloaded above the gap
+     * @param maxPages maximum number of pages
+     * @param sink receives each page, newest first, on the calling thread
+     * @return lowest trade id fetched, at most afterId + 1 once the gap is filled, or beforeId if the pair is not
+     *         supported
+     * @throws Exception thrown by a request or the sink
+     */
+    public long streamTradesBetween(CurrencyPair currencyPair, long afterId, long beforeId, int maxPages,
+                                    TradePageSink sink) throws Exception {
+        final String pairString = convertCurrencyPair(currencyPair);
+        if (pairString == null) return beforeId;
+        long lowest = beforeId;
+        long after = beforeId;
+        for (int pages = 0; pages < maxPages && lowest > afterId + 1; pages++) {
+            TradePage page = fetchTradePage(currencyPair, pairString, after);
+            final int fetched = page.trades.size();
+            final TradeColumns trades = page.trades;
+            trades.retain(i -> trades.getId(i) > afterId);
+            for (int i = 0; i < trades.size(); i++) {
+                lowest = Math.min(lowest, trades.getId(i));
+            }
+            sink.page(trades);
+            if (trades.size() < fetched || fetched < TRADES_PAGE_SIZE || page.after == -1) {
+                return afterId + 1;     // reached the trades below the gap, or the first trade
+            }
+            after = page.after;
+        }
+        return lowest;
+    }
+
     @Override
-    public List<Transaction> getTrades(CurrencyPair currencyPair) throws IOException, HTTPException {
+    public List<Transaction> getTrades(CurrencyPair currencyPair) throws IOException, HTTPException,
+            InterruptedException {
         return getTrades(currencyPair, Long.MIN_VALUE);
     }
 
+    /**
+     * @param after cursor, -1 for the newest page
+     */
+    private TradePage fetchTradePage(CurrencyPair currencyPair, String pairString, long after) throws IOException, HTTPException {
+        String urlString = getBaseUrl() + "/products/" + pairString + "/trades" + (after == -1 ? "" : "?after=" + after);
+        TradePlatform platform = TradePlatform.of(Exchange.COINBASE, currencyPair);
+        TradeColumns trades = new TradeColumns(platform, TRADES_PAGE_SIZE);
+        try (HTTPStream response = openStream(new URL(urlString))) {
+            if (response.getResponseCode() == 200) {
+                JSONStreamReader reader = new JSONStreamReader(response.getBody());
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    long id = -1, time = -1;
+                    double price = 0, volume = 0;
+                    int type = -1;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.selectName(TRADE_KEYS)) {
+                            case 0: id = reader.nextLong(); break;
+                            case 1: time = DatatypeConverter.parseDateTime(reader.nextString()).toInstant().getEpochSecond(); break;
+                            case 2: price = reader.nextDouble(); break;
+                            case 3: volume = reader.nextDouble(); break;
+                            case 4: type = reader.selectString(TRADE_SIDES) == 0 ? 1 : 0; break;    // OPPOSITE, 'side' is maker order side
+                            default: reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    trades.add(id, time, price, volume, type);
+                }
+                reader.endArray();
+                List<String> cursor = response.getHeaderField("cb-after");
+                long next = cursor == null || cursor.isEmpty() ? -1 : Long.parseLong(cursor.get(0));
+                return new TradePage(trades, after, next);
+            } else {
+                throw new HTTPException(response);
+            }
+        }
+    }
+
+    private static void cancelAll(Deque<? extends Future<?>> futures) {
+        for (Future<?> future: futures) {
+            future.cancel(true);
+        }
+        futures.clear();
+    }
+
+    private static final class TradePage {
+        final TradeColumns trades;
+        final long requestedAfter;
+        final long after;
+
+        TradePage(TradeColumns trades, long requestedAfter, long after) {
+            this.trades = trades;
+            this.requestedAfter = requestedAfter;
+            this.after = after;
+        }
+
+        /**
+         * @return true if no page should follow this one
+         */
+        boolean isLast(long minTime) {
+            return trades.size() < TRADES_PAGE_SIZE || after == -1 || trades.getTime(trades.size() - 1) < minTime;
+        }
+    }
+
     @Override
-    public Map<TradePlatform, List<Transaction>> getAllTrades() throws IOException, HTTPException {
-        Map<TradePlatform, List<Transaction>> trades = new HashMap<>();
-        trades.put(TradePlatform.COINBASE_BTC_USD, getTrades(CurrencyPair.BTC_USD));
-        trades.put(new TradePlatform(Exchange.COINBASE, CurrencyPair.LTC_USD), getTrades(CurrencyPair.LTC_USD));
-        trades.put(new TradePlatform(Exchange.COINBASE, CurrencyPair.ETH_USD), getTrades(CurrencyPair.ETH_USD));
-        return trades;
+    public Map<TradePlatform, List<Transaction>> getAllTrades() throws RequestException, InterruptedException {
+        return getAllTrades(CurrencyPair.BTC_USD, CurrencyPair.LTC_USD, CurrencyPair.ETH_USD);
     }
 
     @Override
@@ -0,0 +1,106 @@
+package bx.cryptogui.exchangeapi;
+
+import bx.cryptogui.data.CurrencyPair;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.xml.bind.DatatypeConverter;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coinbase (GDAX) feed. The level2 channel starts with a full snapshot and then sends changed levels, the matches
+ * channel sends every trade with a sequential trade id, and the heartbeat channel announces the last trade id so
+ * missed trades are noticed even when the market is quiet.
+ */
+public class CoinbaseFeed extends MarketDataFeed {
+
+    public static final URI DEFAULT_URI = URI.create("wss://ws-feed.gdax.com");
+
+    private final String productId;
+
+    public CoinbaseFeed(ExchangeAPI api, CurrencyPair currencyPair, MarketDataListener listener) {
+        this(api, currencyPair, listener, DEFAULT_URI);
+    }
+
+    public CoinbaseFeed(ExchangeAPI api, CurrencyPair currencyPair, MarketDataListener listener, URI uri) {
+        super(api, currencyPair, listener, uri);
+        this.productId = api.convertCurrencyPair(currencyPair);
+    }
+
+    @Override
+    protected List<String> getSubscribeMessages() {
+        JSONObject subscribe = new JSONObject();
+        subscribe.put("type", "subscribe");
+        subscribe.put("product_ids", new JSONArray().put(productId));
+        subscribe.put("channels", new JSONArray().put("level2").put("matches").put("heartbeat"));
+        return Collections.singletonList(subscribe.toString());
+    }
+
+    /**
+     * The order book comes from the level2 snapshot, only the ticker is fetched over REST.
+     */
+    @Override
+    protected void onConnected() throws Exception {
+        resynchronise(false);
+    }
+
+    /**
+     * Missed trades mean missed frames, the level2 updates of the book too. The REST book is only the top 50
+     * aggregated levels, with nothing to line it up with the updates, so the feed reconnects instead for a new
+     * level2 snapshot.
+     */
+    @Override
+    protected void onSequenceGap() {
+        reconnect();
+    }
+
+    @Override
+    protected void handleMessage(String message) throws Exception {
+        JSONObject json = new JSONObject(message);
+        if (!productId.equals(json.optString("product_id", productId))) {
+            return;
+        }
+        switch (json.optString("type")) {
+            case "snapshot":
+                synchronized (this) {
+                    clearOrderBook();
+                    setLevels(true, json.getJSONArray("bids"));
+                    setLevels(false, json.getJSONArray("asks"));
+                }
+                break;
+            case "l2update":
+                JSONArray changes = json.getJSONArray("changes");
+                synchronized (this) {
+                    for (int i = 0; i < changes.length(); i++) {
+                        JSONArray change = changes.getJSONArray(i);
+                        setLevel(change.getString(0).equals("buy"), change.getDouble(1), change.getDouble(2));
+                    }
+                }
+                break;
+            case "last_match":
+            case "match":
+                if (checkSequence(json.getLong("trade_id"))) {
+                    long time = DatatypeConverter.parseDateTime(json.getString("time")).toInstant().getEpochSecond();
+                    int type = json.getString("side").equals("buy") ? 1 : 0;     // OPPOSITE, 'side' is maker order side
+                    applyTrade(time, json.getDouble("price"), json.getDouble("size"), type);
+                }
+                break;
+            case "heartbeat":
+                checkLatestSequence(json.getLong("last_trade_id"));
+                break;
+            case "error":
+                throw new RequestException("Coinbase feed error: " + json.optString("message", message));
+            default:
+                // subscriptions, ignore
+        }
+    }
+
+    private void setLevels(boolean bid, JSONArray levels) {
+        for (int i = 0; i < levels.length(); i++) {
+            JSONArray level = levels.getJSONArray(i);
+            setLevel(bid, level.getDouble(0), level.getDouble(1));
+        }
+    }
+}
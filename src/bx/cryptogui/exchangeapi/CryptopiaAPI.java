@@ -13,6 +13,8 @@ import java.util.Map;
 
 public class CryptopiaAPI extends ExchangeAPI {
 
+    public static final String DEFAULT_BASE_URL = "https://www.cryptopia.co.nz";
+
     public CryptopiaAPI() {
         super();
     }
@@ -27,7 +29,12 @@ public class CryptopiaAPI extends ExchangeAPI {
 
     @Override
     public Exchange getExchange() {
-        return null;
+        return Exchange.CRYPTOPIA;
+    }
+
+    @Override
+    protected String getDefaultBaseUrl() {
+        return DEFAULT_BASE_URL;
     }
 
     @Override
@@ -52,7 +59,8 @@ public class CryptopiaAPI extends ExchangeAPI {
     public Ticker getTicker(CurrencyPair currencyPair) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
         if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://www.cryptopia.co.nz/api/GetMarket/" + pairString));
+        HTTPResponse response = getCachedRequest(new URL(getBaseUrl() + "/api/GetMarket/" + pairString),
+                HTTPCache.Endpoint.TICKER);
         if (response.getResponseCode() == 200) {
             JSONObject json = response.getJSONObject().getJSONObject("Data");
             long time = System.currentTimeMillis()/1000;
@@ -72,7 +80,8 @@ public class CryptopiaAPI extends ExchangeAPI {
         List<Order>[] orders = new List[] {new ArrayList<>(), new ArrayList<>()};
         String pairString = convertCurrencyPair(currencyPair);
         if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://www.cryptopia.co.nz/api/GetMarketOrders/" + pairString));
+        HTTPResponse response = getCachedRequest(new URL(getBaseUrl() + "/api/GetMarketOrders/" + pairString),
+                HTTPCache.Endpoint.ORDER_BOOK);
         if (response.getResponseCode() == 200) {
             JSONObject json = response.getJSONObject();
             JSONArray bids = json.getJSONObject("Data").getJSONArray("Buy");
@@ -81,13 +90,13 @@ public class CryptopiaAPI extends ExchangeAPI {
                 JSONObject order = bids.getJSONObject(i);
                 double price = order.getDouble("Price");
                 double volume = order.getDouble("Volume");
-                orders[0].add(new Order(-1, -1, price, volume, true, new TradePlatform(Exchange.CRYPTOPIA, currencyPair)));
+                orders[0].add(new Order(-1, -1, price, volume, true, TradePlatform.of(Exchange.CRYPTOPIA, currencyPair)));
             }
             for (int i = 0; i < asks.length(); i++) {
                 JSONObject order = asks.getJSONObject(i);
                 double price = order.getDouble("Price");
                 double volume = order.getDouble("Volume");
-                orders[1].add(new Order(-1, -1, price, volume, false, new TradePlatform(Exchange.CRYPTOPIA, currencyPair)));
+                orders[1].add(new Order(-1, -1, price, volume, false, TradePlatform.of(Exchange.CRYPTOPIA, currencyPair)));
             }
         } else {
             throw new HTTPException(response);
@@ -100,7 +109,8 @@ public class CryptopiaAPI extends ExchangeAPI {
         List<Transaction> trades = new ArrayList<>();
         String pairString = convertCurrencyPair(currencyPair);
         if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://www.cryptopia.co.nz/api/GetMarketHistory/" + pairString));
+        HTTPResponse response = getCachedRequest(new URL(getBaseUrl() + "/api/GetMarketHistory/" + pairString),
+                HTTPCache.Endpoint.TRADES);
         if (response.getResponseCode() == 200) {
             JSONObject json = response.getJSONObject();
             JSONArray array = json.getJSONArray("Data");
@@ -110,7 +120,7 @@ public class CryptopiaAPI extends ExchangeAPI {
                 double price = transaction.getDouble("Price");
                 double volume = transaction.getDouble("Amount");
                 int type = transaction.getString("Type").equals("Buy") ? 0 : 1;
-                trades.add(new Transaction(-1, time, price, volume, type, new TradePlatform(Exchange.CRYPTOPIA, currencyPair)));
+                trades.add(new Transaction(-1, time, price, volume, type, TradePlatform.of(Exchange.CRYPTOPIA, currencyPair)));
             }
         } else {
             throw new HTTPException(response);
@@ -119,15 +129,9 @@ public class CryptopiaAPI extends ExchangeAPI {
     }
 
     @Override
-    public Map<TradePlatform, List<Transaction>> getAllTrades() throws IOException, HTTPException {
-        Map<TradePlatform, List<Transaction>> trades = new HashMap<>();
-        trades.put(TradePlatform.CRYPTOPIA_BTC_USD, getTrades(CurrencyPair.BTC_USD));
-        trades.put(TradePlatform.CRYPTOPIA_BTC_NZD, getTrades(CurrencyPair.BTC_NZD));
-        trades.put(new TradePlatform(Exchange.CRYPTOPIA, CurrencyPair.LTC_USD), getTrades(CurrencyPair.LTC_USD));
-        trades.put(new TradePlatform(Exchange.CRYPTOPIA, CurrencyPair.LTC_NZD), getTrades(CurrencyPair.LTC_NZD));
-        trades.put(new TradePlatform(Exchange.CRYPTOPIA, CurrencyPair.ETH_USD), getTrades(CurrencyPair.ETH_USD));
-        trades.put(new TradePlatform(Exchange.CRYPTOPIA, CurrencyPair.ETH_NZD), getTrades(CurrencyPair.ETH_NZD));
-        return trades;
+    public Map<TradePlatform, List<Transaction>> getAllTrades() throws RequestException, InterruptedException {
+        return getAllTrades(CurrencyPair.BTC_USD, CurrencyPair.BTC_NZD, CurrencyPair.LTC_USD,
+                CurrencyPair.LTC_NZD, CurrencyPair.ETH_USD, CurrencyPair.ETH_NZD);
     }
 
     @Override
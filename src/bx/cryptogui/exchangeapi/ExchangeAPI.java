@@ -2,29 +2,60 @@ package bx.cryptogui.exchangeapi;
 
 import bx.cryptogui.data.*;
 import bx.cryptogui.data.Currency;
-import org.apache.commons.codec.binary.Hex;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 public abstract class ExchangeAPI {
 
-    private static Long nonce;
-
-    private Authorisation authorisation;
+    /** Keys of the bid and ask arrays, for order books in the common {"bids": [...], "asks": [...]} shape. */
+    protected static final String[] BID_ASK_KEYS = {"bids", "asks"};
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 3;
+
+    private static volatile HTTPTransport transport = new URLConnectionTransport();
+    /** Runs the per-pair requests of {@link #requestAll}, shared by all exchanges. */
+    private static final ExecutorService REQUEST_EXECUTOR;
+    static {
+        final AtomicInteger threadCount = new AtomicInteger();
+        REQUEST_EXECUTOR = Executors.newFixedThreadPool(16, runnable -> {
+            Thread thread = new Thread(runnable, "exchange-request-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    /**
+     * Runs speculative page requests of a paging request. Separate from {@link #REQUEST_EXECUTOR} so a paging
+     * request running on that pool never waits on its own pool.
+     */
+    private static final ExecutorService PAGE_EXECUTOR;
+    static {
+        final AtomicInteger threadCount = new AtomicInteger();
+        PAGE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "exchange-page-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    /** Concurrent request cap of each exchange, across all API instances of that exchange. */
+    private static final Map<Exchange, Semaphore> requestPermits = new ConcurrentHashMap<>();
+    private static final Map<Exchange, Integer> requestLimits = new ConcurrentHashMap<>();
+    /** Request rate limit of each exchange, every request goes through it. */
+    private static final Map<Exchange, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    /** Public GET responses, shared by all exchanges. */
+    private static final HTTPCache httpCache = new HTTPCache();
+    /** Base URLs replacing the default of every API instance of an exchange, eg. a local simulator. */
+    private static final Map<Exchange, String> baseUrlOverrides = new ConcurrentHashMap<>();
+
+    private volatile String baseUrl;    // null for the override or default
+    private volatile Authorisation authorisation;
+    private volatile RequestSigner signer;
     private final Map<CurrencyPair, PairInfo> pairInfoMap = new HashMap<>();
 
-    private long lastNonce = 0;
-
     public ExchangeAPI() {}
 
     public ExchangeAPI(Authorisation authorisation) {
@@ -37,6 +68,11 @@ public abstract class ExchangeAPI {
 
     public abstract Exchange getExchange();
     public abstract String convertCurrencyPair(CurrencyPair currencyPair);
+
+    /**
+     * @return REST endpoint of the live exchange, without the trailing '/'
+     */
+    protected abstract String getDefaultBaseUrl();
 //    public abstract PairInfo getPairInfo(CurrencyPair currencyPair);
 
     /**
@@ -66,6 +102,57 @@ public abstract class ExchangeAPI {
      * @throws Exception Exception
      */
     public abstract Map<TradePlatform, List<Transaction>> getAllTrades() throws Exception;
+    /**
+     * Fetches the trades of each pair concurrently, see {@link #requestAll}.
+     * @param pairs currency pairs
+     * @return Map of platforms to lists of trades
+     * @throws MultipleRequestException if any pair failed, holding the trades of the other pairs
+     * @throws InterruptedException interrupted while waiting
+     */
+    protected Map<TradePlatform, List<Transaction>> getAllTrades(CurrencyPair... pairs)
+            throws MultipleRequestException, InterruptedException {
+        Map<CurrencyPair, List<Transaction>> results = requestAll(Arrays.asList(pairs), this::getTrades);
+        Map<TradePlatform, List<Transaction>> trades = new HashMap<>();
+        for (Map.Entry<CurrencyPair, List<Transaction>> entry: results.entrySet()) {
+            trades.put(TradePlatform.of(getExchange(), entry.getKey()), entry.getValue());
+        }
+        return trades;
+    }
+    /**
+     * Public API method. Decodes the order book straight into the sink, without building a list of orders.
+     * The default implementation goes through {@link #getOrderBook(CurrencyPair)}.
+     * @param currencyPair currency pair
+     * @param sink receives every bid and ask level
+     * @return false if the currency pair is not supported
+     * @throws Exception Exception
+     */
+    public boolean streamOrderBook(CurrencyPair currencyPair, PriceLevelSink sink) throws Exception {
+        List<Order>[] orders = getOrderBook(currencyPair);
+        if (orders == null) return false;
+        for (Order order: orders[0]) {
+            sink.level(true, order.getPrice(), order.getVolume());
+        }
+        for (Order order: orders[1]) {
+            sink.level(false, order.getPrice(), order.getVolume());
+        }
+        return true;
+    }
+    /**
+     * Public API method. Decodes trades straight into the sink, ordered descending by time.
+     * The default implementation goes through {@link #getTrades(CurrencyPair)}.
+     * @param currencyPair currency pair
+     * @param sink receives every trade
+     * @return false if there are no trades for that currency pair
+     * @throws Exception Exception
+     */
+    public boolean streamTrades(CurrencyPair currencyPair, TradeSink sink) throws Exception {
+        List<Transaction> trades = getTrades(currencyPair);
+        if (trades == null) return false;
+        for (Transaction trade: trades) {
+            sink.trade(trade.getId(), trade.getTime(), trade.getPrice(), trade.getVolume(), trade.getTradeType());
+        }
+        return true;
+    }
     /**
      * Private API method.
      * @return account balance
@@ -85,6 +172,21 @@ public abstract class ExchangeAPI {
      */
     public abstract List<Transaction> getTradeHistory() throws Exception;
 
+    /**
+     * @return base URL of the requests: this instance's, else the exchange's override, else the default
+     */
+    public final String getBaseUrl() {
+        String url = baseUrl;
+        return url != null ? url : baseUrlOverrides.getOrDefault(getExchange(), getDefaultBaseUrl());
+    }
+
+    /**
+     * @param baseUrl REST endpoint without the trailing '/', eg. a local stub server, or null for the default
+     */
+    public final void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
     public final Authorisation getAuthorisation() {
         return authorisation;
     }
@@ -98,6 +200,7 @@ public abstract class ExchangeAPI {
     }
 
     public final void setAuthorisation(Authorisation authorisation) {
+        this.signer = authorisation == null ? null : new RequestSigner(authorisation, getSignatureAlgorithm());
         this.authorisation = authorisation;
     }
 
@@ -105,84 +208,367 @@ public abstract class ExchangeAPI {
         return authorisation != null;
     }
 
-    public String getSignature(byte[] data) {   // TODO abstract this
-        try {
-            Mac sha512 = Mac.getInstance("HMACSHA512");
-            SecretKeySpec secretKey = new SecretKeySpec(authorisation.getSecret().getBytes("UTF-8"), "HmacSHA512");
-            sha512.init(secretKey);
-            return new String(Hex.encodeHex(sha512.doFinal(data)));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+    /**
+     * @return MAC algorithm of private requests
+     */
+    protected String getSignatureAlgorithm() {
+        return RequestSigner.HMAC_SHA512;
+    }
+
+    /**
+     * @return signer of the authorisation, safe to use from several threads
+     * @throws IllegalStateException not authorised
+     */
+    protected final RequestSigner getSigner() throws IllegalStateException {
+        RequestSigner signer = this.signer;
+        if (signer == null) {
+            throw new IllegalStateException("Not authorised");
         }
+        return signer;
+    }
+
+    public String getSignature(byte[] data) {
+        return getSigner().sign(data);
+    }
+
+    public String getSignature(FormEncoder form) {
+        return getSigner().sign(form);
+    }
+
+    /**
+     * @return next nonce of the API key, strictly increasing across threads, API instances and restarts
+     * @throws IllegalStateException not authorised, or the nonces could not be stored
+     */
+    public long getNonce() throws IllegalStateException {
+        return getSigner().nextNonce();
     }
 
     public static byte[] urlEncode(Map<String, String> parameters) {
-        List<String> params = new ArrayList<>();
+        FormEncoder form = new FormEncoder();
+        for (Map.Entry<String, String> entry: parameters.entrySet()) {
+            form.add(entry.getKey(), entry.getValue());
+        }
+        return form.toByteArray();
+    }
+
+    /**
+     * Runs a request for each pair concurrently on a shared bounded executor, with at most
+     * {@link #getMaxConcurrentRequests(Exchange)} of this exchange's requests in flight. Waits for all of them.
+     * @param pairs currency pairs
+     * @param request request to run for each pair
+     * @param <T> result type
+     * @return results in the order of the pairs
+     * @throws MultipleRequestException if any request failed, holding the results of the others
+     * @throws InterruptedException interrupted while waiting, outstanding requests are cancelled
+     */
+    public final <T> Map<CurrencyPair, T> requestAll(Collection<CurrencyPair> pairs, PairRequest<T> request)
+            throws MultipleRequestException, InterruptedException {
+        final Semaphore permits = getRequestPermits(getExchange());
+        Map<CurrencyPair, Future<T>> futures = new LinkedHashMap<>();
         try {
-            for (Map.Entry<String, String> entry: parameters.entrySet()) {
-                String keyWord = URLEncoder.encode(entry.getKey(), "UTF-8");
-                String arg = URLEncoder.encode(entry.getValue(), "UTF-8");
-                params.add(keyWord + "=" + arg);
+            for (final CurrencyPair pair: pairs) {
+                permits.acquire();  // released by the task
+                try {
+                    futures.put(pair, REQUEST_EXECUTOR.submit(() -> {
+                        try {
+                            return request.request(pair);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
             }
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+            Map<CurrencyPair, T> results = new LinkedHashMap<>();
+            Map<CurrencyPair, Throwable> failures = new LinkedHashMap<>();
+            for (Map.Entry<CurrencyPair, Future<T>> entry: futures.entrySet()) {
+                try {
+                    results.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    failures.put(entry.getKey(), e.getCause());
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new MultipleRequestException(getExchange(), results, failures);
+            }
+            return results;
+        } catch (InterruptedException e) {
+            for (Future<T> future: futures.values()) {
+                future.cancel(true);
+            }
+            throw e;
         }
-        try {
-            return String.join("&", params).getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace(System.out);
-            return new byte[] {};
+    }
+
+    /**
+     * Submits one page request of a pipelined paging request, see {@link CoinbaseAPI#streamTradePages}.
+     */
+    protected static <T> Future<T> submitPageRequest(Callable<T> request) {
+        return PAGE_EXECUTOR.submit(request);
+    }
+
+    public static int getMaxConcurrentRequests(Exchange exchange) {
+        return requestLimits.getOrDefault(exchange, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Sets the number of requests of an exchange {@link #requestAll} keeps in flight at once.
+     * Requests already waiting keep the previous limit.
+     * @param exchange exchange
+     * @param maxConcurrentRequests at least 1
+     */
+    public static void setMaxConcurrentRequests(Exchange exchange, int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("Must allow at least 1 request");
         }
+        requestLimits.put(Objects.requireNonNull(exchange), maxConcurrentRequests);
+        requestPermits.put(exchange, new Semaphore(maxConcurrentRequests));
     }
 
-    public static HTTPResponse getRequest(URL url, Map<String, String> headers) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        // Headers
-        if (headers != null) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                connection.setRequestProperty(entry.getKey(), entry.getValue());
-            }
+    private static Semaphore getRequestPermits(Exchange exchange) {
+        return requestPermits.computeIfAbsent(Objects.requireNonNull(exchange),
+                key -> new Semaphore(getMaxConcurrentRequests(key)));
+    }
+
+    /**
+     * Points every API instance of the exchange without its own base URL at another server.
+     * @param baseUrl REST endpoint without the trailing '/', or null to go back to the default
+     */
+    public static void setBaseUrlOverride(Exchange exchange, String baseUrl) {
+        if (baseUrl == null) {
+            baseUrlOverrides.remove(Objects.requireNonNull(exchange));
+        } else {
+            baseUrlOverrides.put(Objects.requireNonNull(exchange), baseUrl);
         }
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"))) {
-            StringBuilder s = new StringBuilder();
-            reader.lines().forEachOrdered(s::append);
-            return new HTTPResponse(connection.getHeaderFields(), s.toString(), connection.getResponseCode(), connection.getResponseMessage());
+    }
+
+    public static HTTPTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Replaces the transport used by all exchange APIs, eg. to change timeouts.
+     * @param transport transport
+     */
+    public static void setTransport(HTTPTransport transport) {
+        ExchangeAPI.transport = Objects.requireNonNull(transport);
+    }
+
+    /**
+     * @return rate limiter shared by all requests of the exchange
+     */
+    public static RateLimiter getRateLimiter(Exchange exchange) {
+        return rateLimiters.computeIfAbsent(Objects.requireNonNull(exchange), ExchangeAPI::defaultRateLimiter);
+    }
+
+    /**
+     * Replaces the rate limit of an exchange. Requests already waiting keep the previous limit.
+     * @param permitsPerSecond sustained requests per second
+     * @param burst requests that may start at once after being idle
+     */
+    public static void setRateLimit(Exchange exchange, double permitsPerSecond, int burst) {
+        rateLimiters.put(Objects.requireNonNull(exchange), new RateLimiter(permitsPerSecond, burst));
+    }
+
+    /**
+     * @return queue wait, request rate and throttled responses of the exchange's current rate limiter
+     */
+    public static RequestMetrics getRequestMetrics(Exchange exchange) {
+        return getRateLimiter(exchange).getMetrics();
+    }
+
+    /**
+     * @return cache of public GET responses, eg. to change the TTL of an endpoint
+     */
+    public static HTTPCache getHTTPCache() {
+        return httpCache;
+    }
+
+    /**
+     * Published public API limits, kept a little under where they are known.
+     */
+    private static RateLimiter defaultRateLimiter(Exchange exchange) {
+        switch (exchange) {
+            case COINBASE:
+                return new RateLimiter(3, 6);       // 3 per second per IP, bursts of 6
+            case BITSTAMP:
+                return new RateLimiter(1, 5);       // 600 per 10 minutes
+            case BITFINEX:
+                return new RateLimiter(1, 3);       // about 90 per minute
+            case CRYPTOPIA:
+                return new RateLimiter(2, 6);
+            case WEX:
+                return new RateLimiter(2, 4);
+            default:
+                return new RateLimiter(1, 2);
         }
     }
 
-    public static HTTPResponse getRequest(URL url) throws IOException {
+    protected HTTPResponse getRequest(URL url, Map<String, String> headers) throws IOException {
+        RateLimiter limiter = getRateLimiter(getExchange());
+        limiter.acquire();
+        HTTPResponse response = transport.get(url, headers);
+        limiter.recordResponse(response.getResponseCode(), getRetryAfter(response.getHeaderField("Retry-After")));
+        return response;
+    }
+
+    protected HTTPResponse getRequest(URL url) throws IOException {
         return getRequest(url, new HashMap<>());
     }
 
-    public static HTTPResponse postRequest(URL url, Map<String, String> headers, Map<String, String> parameters) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        // headers
-        connection.setRequestProperty("Content-type", "application/x-www-form-urlencoded");
-        for (Map.Entry<String, String> entry: headers.entrySet()) {
-            connection.setRequestProperty(entry.getKey(), entry.getValue());
+    protected HTTPStream openStream(URL url, Map<String, String> headers) throws IOException {
+        RateLimiter limiter = getRateLimiter(getExchange());
+        limiter.acquire();
+        HTTPStream response = transport.openStream(url, headers);
+        limiter.recordResponse(response.getResponseCode(), getRetryAfter(response.getHeaderField("Retry-After")));
+        return response;
+    }
+
+    protected HTTPStream openStream(URL url) throws IOException {
+        return openStream(url, null);
+    }
+
+    /**
+     * GET request through the {@link HTTPCache}, for public endpoints whose response only depends on the URL.
+     * @param endpoint kind of request, sets how long the response is reused
+     */
+    protected HTTPResponse getCachedRequest(URL url, Map<String, String> headers, HTTPCache.Endpoint endpoint)
+            throws IOException {
+        return httpCache.get(url, endpoint, conditional -> openStream(url, withHeaders(headers, conditional)))
+                .toResponse();
+    }
+
+    protected HTTPResponse getCachedRequest(URL url, HTTPCache.Endpoint endpoint) throws IOException {
+        return getCachedRequest(url, null, endpoint);
+    }
+
+    /**
+     * {@link #openStream} through the {@link HTTPCache}. A downloaded body is streamed as it arrives and copied into
+     * the cache on the way, see {@link HTTPCache#open}.
+     * @param endpoint kind of request, sets how long the response is reused
+     */
+    protected HTTPStream openCachedStream(URL url, Map<String, String> headers, HTTPCache.Endpoint endpoint)
+            throws IOException {
+        return httpCache.open(url, endpoint, conditional -> openStream(url, withHeaders(headers, conditional)));
+    }
+
+    protected HTTPStream openCachedStream(URL url, HTTPCache.Endpoint endpoint) throws IOException {
+        return openCachedStream(url, null, endpoint);
+    }
+
+    private static Map<String, String> withHeaders(Map<String, String> headers, Map<String, String> extraHeaders) {
+        if (extraHeaders.isEmpty()) {
+            return headers;
         }
-        // parameters
-        if (parameters != null && !parameters.isEmpty()) {
-            connection.setDoOutput(true);
-            connection.getOutputStream().write(urlEncode(parameters));
+        Map<String, String> allHeaders = headers == null ? new HashMap<>() : new HashMap<>(headers);
+        allHeaders.putAll(extraHeaders);
+        return allHeaders;
+    }
+
+    protected HTTPResponse postRequest(URL url, Map<String, String> headers, Map<String, String> parameters) throws IOException {
+        return postRequest(url, headers, parameters != null && !parameters.isEmpty() ? urlEncode(parameters) : null);
+    }
+
+    /**
+     * Posts the form as it was signed.
+     */
+    protected HTTPResponse postRequest(URL url, Map<String, String> headers, FormEncoder form) throws IOException {
+        return postRequest(url, headers, form.isEmpty() ? null : form.toByteArray());
+    }
+
+    private HTTPResponse postRequest(URL url, Map<String, String> headers, byte[] body) throws IOException {
+        Map<String, String> allHeaders = new HashMap<>();
+        allHeaders.put("Content-type", "application/x-www-form-urlencoded");
+        if (headers != null) {
+            allHeaders.putAll(headers);
         }
-        // get response
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"))) {
-            StringBuilder s = new StringBuilder();
-            reader.lines().forEachOrdered(s::append);
-            return new HTTPResponse(connection.getHeaderFields(), s.toString(), connection.getResponseCode(), connection.getResponseMessage());
+        RateLimiter limiter = getRateLimiter(getExchange());
+        limiter.acquire();
+        HTTPResponse response = transport.post(url, allHeaders, body);
+        limiter.recordResponse(response.getResponseCode(), getRetryAfter(response.getHeaderField("Retry-After")));
+        return response;
+    }
+
+    /**
+     * @return seconds of a Retry-After header, -1 if missing or an HTTP date
+     */
+    private static long getRetryAfter(List<String> header) {
+        if (header == null || header.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.get(0).trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
+    /**
+     * Reads an array of [price, volume, ...] arrays into the sink, ignoring any extra elements.
+     */
+    protected static void readPriceLevels(JSONStreamReader reader, boolean bid, PriceLevelSink sink) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginArray();
+            double price = reader.nextDouble();
+            double volume = reader.nextDouble();
+            while (reader.hasNext()) {
+                reader.skipValue();
+            }
+            reader.endArray();
+            sink.level(bid, price, volume);
+        }
+        reader.endArray();
+    }
 
-    public static long getNonce() {
-        if (nonce == null) {
-            nonce = System.currentTimeMillis() / 1000;
+    /**
+     * Reads a {"bids": [...], "asks": [...]} object into the sink, skipping any other keys.
+     */
+    protected static void readBidsAndAsks(JSONStreamReader reader, PriceLevelSink sink) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(BID_ASK_KEYS)) {
+                case 0:
+                    readPriceLevels(reader, true, sink);
+                    break;
+                case 1:
+                    readPriceLevels(reader, false, sink);
+                    break;
+                default:
+                    reader.skipValue();
+            }
         }
-        return ++nonce;
+        reader.endObject();
+    }
+
+    /**
+     * @param orders array of bid and ask lists to add to
+     * @param platform platform of the orders
+     * @return sink adding each level to the bid or ask list
+     */
+    protected static PriceLevelSink orderListSink(final List<Order>[] orders, final TradePlatform platform) {
+        return (bid, price, volume) -> orders[bid ? 0 : 1].add(new Order(-1, -1, price, volume, bid, platform));
+    }
+
+    /**
+     * @param trades list to add to
+     * @param platform platform of the trades
+     * @return sink adding each trade to the list
+     */
+    protected static TradeSink tradeListSink(final List<Transaction> trades, final TradePlatform platform) {
+        return (id, time, price, volume, type) -> trades.add(new Transaction(id, time, price, volume, type, platform));
+    }
+
+
+    /**
+     * A request for one currency pair, run by {@link #requestAll}.
+     * @param <T> result type
+     */
+    @FunctionalInterface
+    public interface PairRequest<T> {
+        T request(CurrencyPair pair) throws Exception;
     }
 
 
@@ -0,0 +1,146 @@
+package bx.cryptogui.exchangeapi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds an application/x-www-form-urlencoded body, percent-encoding each parameter straight into one byte buffer.
+ * The same bytes are signed and sent, see {@link RequestSigner#sign(FormEncoder)}.
+ * <p>Not thread safe.</p>
+ */
+public class FormEncoder {
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size = 0;
+
+    public FormEncoder() {
+        this(128);
+    }
+
+    public FormEncoder(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public FormEncoder add(String name, String value) {
+        startParameter(name);
+        encode(value);
+        return this;
+    }
+
+    /**
+     * Adds a number without creating a String for it.
+     */
+    public FormEncoder add(String name, long value) {
+        startParameter(name);
+        if (value < 0) {
+            append('-');
+        } else {
+            value = -value;     // negative, so Long.MIN_VALUE works
+        }
+        int start = size;
+        do {
+            append((byte) ('0' - value % 10));
+            value /= 10;
+        } while (value != 0);
+        // digits were appended least significant first
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return this;
+    }
+
+    /**
+     * @return body length in bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return internal buffer, valid up to {@link #size()}
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the body, the internal buffer itself if it is exactly full
+     */
+    public byte[] toByteArray() {
+        return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.US_ASCII);
+    }
+
+    private void startParameter(String name) {
+        if (size > 0) {
+            append('&');
+        }
+        encode(name);
+        append('=');
+    }
+
+    /**
+     * Encodes like {@link java.net.URLEncoder} with UTF-8.
+     */
+    private void encode(String string) {
+        for (int i = 0, length = string.length(); i < length; i++) {
+            char c = string.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                    c == '.' || c == '-' || c == '*' || c == '_') {
+                append(c);
+            } else if (c == ' ') {
+                append('+');
+            } else if (c < 0x80) {
+                appendEscaped(c);
+            } else if (c < 0x800) {
+                appendEscaped(0xC0 | (c >> 6));
+                appendEscaped(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                appendEscaped(0xF0 | (codePoint >> 18));
+                appendEscaped(0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscaped(0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscaped(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                appendEscaped('?');     // unpaired surrogate, as String.getBytes
+            } else {
+                appendEscaped(0xE0 | (c >> 12));
+                appendEscaped(0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void appendEscaped(int b) {
+        append('%');
+        append(HEX_DIGITS[(b >> 4) & 0xF]);
+        append(HEX_DIGITS[b & 0xF]);
+    }
+
+    private void append(char c) {
+        append((byte) c);
+    }
+
+    private void append(byte b) {
+        if (size == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length*2);
+        }
+        buffer[size++] = b;
+    }
+}
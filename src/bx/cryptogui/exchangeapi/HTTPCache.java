@@ -0,0 +1,486 @@
+package bx.cryptogui.exchangeapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of public GET responses, keyed by URL, shared by all exchange APIs.
+ * <p>
+ *     A response younger than the TTL of its {@link Endpoint} is served without a request. An older one is
+ *     revalidated with If-None-Match / If-Modified-Since when the exchange sent an ETag or Last-Modified, and a 304
+ *     response serves the cached body again. Concurrent requests of the same URL share one request, whatever the TTL.
+ *     Only 200 responses are cached, at most {@link #getMaxEntries()}, least recently used first out.
+ * </p>
+ * <p>
+ *     {@link #open} streams a downloaded body to the caller as it arrives, copying it into the entry on the way, so
+ *     it is decoded while it is read rather than after. The entry is kept, and given to the requests sharing it, once
+ *     the body is read to the end or the stream is closed.
+ * </p>
+ */
+public class HTTPCache {
+
+    /**
+     * Kinds of cached requests, each with its own TTL.
+     */
+    public enum Endpoint {
+        TICKER(1000),
+        ORDER_BOOK(1000),
+        TRADES(2000);
+
+        private final long defaultTTL;
+
+        Endpoint(long defaultTTL) {
+            this.defaultTTL = defaultTTL;
+        }
+
+        /**
+         * @return default TTL in milliseconds
+         */
+        public long getDefaultTTL() {
+            return defaultTTL;
+        }
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    private final Map<Endpoint, Long> ttls = Collections.synchronizedMap(new EnumMap<>(Endpoint.class));
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);    // guarded by this
+    private int maxEntries = DEFAULT_MAX_ENTRIES;   // guarded by this
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong sharedRequests = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return milliseconds a response of the endpoint is served without revalidating
+     */
+    public long getTTL(Endpoint endpoint) {
+        Long ttl = ttls.get(endpoint);
+        return ttl == null ? endpoint.getDefaultTTL() : ttl;
+    }
+
+    /**
+     * @param ttl milliseconds, 0 to always request (concurrent requests are still shared)
+     */
+    public void setTTL(Endpoint endpoint, long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("TTL must not be negative");
+        }
+        ttls.put(endpoint, ttl);
+    }
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Max entries must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        trim();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return requests served from the cache without any request
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return requests that waited on the same request of another thread
+     */
+    public long getSharedRequests() {
+        return sharedRequests.get();
+    }
+
+    /**
+     * @return requests answered 304, serving the cached body
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return requests that downloaded the body
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the cached response of the URL, or requests it.
+     * @param url url, the cache key
+     * @param endpoint kind of request, sets the TTL
+     * @param request sends the request with the given conditional headers added
+     * @return response, error responses included
+     * @throws IOException request failed, also thrown to the threads sharing the request
+     */
+    public Entry get(URL url, Endpoint endpoint, Request request) throws IOException {
+        final String key = url.toString();
+        final long ttl = getTTL(endpoint);
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached != null && System.nanoTime() - cached.time < TimeUnit.MILLISECONDS.toNanos(ttl)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            sharedRequests.incrementAndGet();
+            return await(running);
+        }
+        try (HTTPStream response = request.send(conditionalHeaders(cached))) {
+            Entry entry = fetch(key, cached, ttl > 0, response);
+            future.complete(entry);
+            return entry;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Returns a stream of the cached response of the URL, or requests it. A 200 response's body is streamed from the
+     * connection, see {@link HTTPCache}, closing the stream part read reads the rest into the entry.
+     * @param url url, the cache key
+     * @param endpoint kind of request, sets the TTL
+     * @param request sends the request with the given conditional headers added
+     * @return response, error responses included, must be closed
+     * @throws IOException request failed, also thrown to the threads sharing the request
+     */
+    public HTTPStream open(URL url, Endpoint endpoint, Request request) throws IOException {
+        final String key = url.toString();
+        final long ttl = getTTL(endpoint);
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached != null && System.nanoTime() - cached.time < TimeUnit.MILLISECONDS.toNanos(ttl)) {
+            hits.incrementAndGet();
+            return cached.toStream();
+        }
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            sharedRequests.incrementAndGet();
+            return await(running).toStream();
+        }
+        try {
+            final HTTPStream response = request.send(conditionalHeaders(cached));
+            if (response.getResponseCode() == 200) {
+                misses.incrementAndGet();
+                return new HTTPStream(response.getHeaderFields(), new CopyingBody(key, ttl > 0, response, future),
+                        response.getResponseCode(), response.getResponseMessage());
+            }
+            final Entry entry;
+            try (HTTPStream closed = response) {
+                entry = fetch(key, cached, ttl > 0, closed);
+            }
+            future.complete(entry);
+            inFlight.remove(key, future);
+            return entry.toStream();
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            inFlight.remove(key, future);
+            throw e;
+        }
+    }
+
+    private static Map<String, String> conditionalHeaders(Entry cached) {
+        Map<String, String> conditional = new HashMap<>();
+        if (cached != null) {
+            if (cached.eTag != null) {
+                conditional.put("If-None-Match", cached.eTag);
+            }
+            if (cached.lastModified != null) {
+                conditional.put("If-Modified-Since", cached.lastModified);
+            }
+        }
+        return conditional;
+    }
+
+    /**
+     * Reads the response into an entry, or revalidates the cached one, and keeps it.
+     */
+    private Entry fetch(String key, Entry cached, boolean store, HTTPStream response) throws IOException {
+        Entry entry;
+        if (response.getResponseCode() == 304 && cached != null) {
+            revalidations.incrementAndGet();
+            entry = cached.revalidated();
+        } else {
+            misses.incrementAndGet();
+            entry = new Entry(response, readFully(response.getBody()));
+        }
+        keep(key, entry, store);
+        return entry;
+    }
+
+    private synchronized void keep(String key, Entry entry, boolean store) {
+        if (store && entry.responseCode == 200) {
+            entries.put(key, entry);
+            trim();
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    private void trim() {
+        while (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    private static Entry await(CompletableFuture<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a shared request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Body of a response being downloaded, copied as it is read. At the end, or on close after reading the rest, the
+     * copy becomes the entry and completes the shared request.
+     */
+    private final class CopyingBody extends InputStream {
+
+        private final String key;
+        private final boolean store;
+        private final HTTPStream response;
+        private final InputStream in;
+        private final CompletableFuture<Entry> future;
+        private byte[] copy;
+        private int length = 0;
+        private boolean finished = false;
+
+        private CopyingBody(String key, boolean store, HTTPStream response, CompletableFuture<Entry> future) {
+            this.key = key;
+            this.store = store;
+            this.response = response;
+            this.in = response.getBody();
+            this.future = future;
+            this.copy = new byte[contentLength(response)];
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b;
+            try {
+                b = in.read();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+            if (b == -1) {
+                finish();
+            } else {
+                ensureCapacity(length + 1);
+                copy[length++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            final int read;
+            try {
+                read = in.read(buffer, offset, count);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+            if (read == -1) {
+                finish();
+            } else {
+                ensureCapacity(length + read);
+                System.arraycopy(buffer, offset, copy, length, read);
+                length += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                final byte[] buffer = new byte[8192];
+                while (!finished) {
+                    read(buffer, 0, buffer.length);
+                }
+            } finally {
+                response.close();
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > copy.length) {
+                copy = Arrays.copyOf(copy, Math.max(capacity, copy.length*2));
+            }
+        }
+
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            final Entry entry = new Entry(response, length == copy.length ? copy : Arrays.copyOf(copy, length));
+            keep(key, entry, store);
+            future.complete(entry);
+            inFlight.remove(key, future);
+        }
+
+        private void fail(Exception e) {
+            finished = true;
+            future.completeExceptionally(e);
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return expected body size, from Content-Length if sent
+     */
+    private static int contentLength(HTTPStream response) {
+        final List<String> values = response.getHeaderField("Content-Length");
+        if (values != null && !values.isEmpty()) {
+            try {
+                final long length = Long.parseLong(values.get(0).trim());
+                if (length >= 0 && length < Integer.MAX_VALUE - 8) {
+                    return (int) length;
+                }
+            } catch (NumberFormatException e) {
+                // not sent as a number, grown as read
+            }
+        }
+        return 8192;
+    }
+
+    /**
+     * Sends a request, see {@link #get} and {@link #open}.
+     */
+    @FunctionalInterface
+    public interface Request {
+        /**
+         * @param conditionalHeaders If-None-Match / If-Modified-Since headers to add, may be empty
+         */
+        HTTPStream send(Map<String, String> conditionalHeaders) throws IOException;
+    }
+
+    /**
+     * Buffered response, shared by every caller, so the body is only read through new streams.
+     */
+    public static final class Entry {
+
+        private final int responseCode;
+        private final String responseMessage;
+        private final Map<String, List<String>> header;
+        private final byte[] body;
+        private final String eTag;
+        private final String lastModified;
+        private final long time;    // nanoTime of the request, or of the last revalidation
+        private volatile String bodyString;
+
+        private Entry(HTTPStream response, byte[] body) {
+            this(response.getResponseCode(), response.getResponseMessage(), response.getHeaderFields(), body,
+                    first(response.getHeaderField("ETag")), first(response.getHeaderField("Last-Modified")),
+                    System.nanoTime());
+        }
+
+        private Entry(int responseCode, String responseMessage, Map<String, List<String>> header, byte[] body,
+                      String eTag, String lastModified, long time) {
+            this.responseCode = responseCode;
+            this.responseMessage = responseMessage;
+            this.header = header;
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.time = time;
+        }
+
+        private Entry revalidated() {
+            Entry entry = new Entry(responseCode, responseMessage, header, body, eTag, lastModified, System.nanoTime());
+            entry.bodyString = bodyString;
+            return entry;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        /**
+         * @return response with the body as a String, decoded once per entry
+         */
+        public HTTPResponse toResponse() {
+            String string = bodyString;
+            if (string == null) {
+                string = new String(body, StandardCharsets.UTF_8);
+                bodyString = string;
+            }
+            return new HTTPResponse(header, string, responseCode, responseMessage);
+        }
+
+        /**
+         * @return response reading the cached body
+         */
+        public HTTPStream toStream() {
+            return new HTTPStream(header, new ByteArrayInputStream(body), responseCode, responseMessage);
+        }
+
+        private static String first(List<String> values) {
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+    }
+}
@@ -2,11 +2,22 @@ package bx.cryptogui.exchangeapi;
 
 public class HTTPException extends Exception {
 
+    private final int responseCode;
+
     public HTTPException(int code, String message) {
         super(code + ", " + message);
+        this.responseCode = code;
     }
 
     public HTTPException(HTTPResponse response) {
         this(response.getResponseCode(), response.getResponseMessage());
     }
+
+    public HTTPException(HTTPStream response) {
+        this(response.getResponseCode(), response.getResponseMessage());
+    }
+
+    public final int getResponseCode() {
+        return responseCode;
+    }
 }
@@ -24,8 +24,19 @@ public class HTTPResponse {
         return header;
     }
 
+    /**
+     * @return values of the header, names are case insensitive, or null
+     */
     public final List<String> getHeaderField(String key) {
-        return header.get(key);
+        List<String> values = header.get(key);
+        if (values == null) {
+            for (Map.Entry<String, List<String>> entry: header.entrySet()) {
+                if (key.equalsIgnoreCase(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return values;
     }
 
     public final String getBody() {
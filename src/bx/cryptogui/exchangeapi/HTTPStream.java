@@ -0,0 +1,80 @@
+package bx.cryptogui.exchangeapi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response whose body is read directly from the connection instead of being held as a String. Must be closed.
+ */
+public class HTTPStream implements Closeable {
+
+    /** Remaining body up to this size is drained on close so the connection can be kept alive. */
+    private static final int MAX_DRAIN = 64*1024;
+
+    private final int responseCode;
+    private final String responseMessage;
+    private final Map<String, List<String>> header;
+    private final InputStream body;
+
+    public HTTPStream(Map<String, List<String>> header, InputStream body, int responseCode, String responseMessage) {
+        this.header = header;
+        this.body = body;
+        this.responseCode = responseCode;
+        this.responseMessage = responseMessage;
+    }
+
+    public final Map<String, List<String>> getHeaderFields() {
+        return header;
+    }
+
+    /**
+     * @return values of the header, names are case insensitive, or null
+     */
+    public final List<String> getHeaderField(String key) {
+        List<String> values = header.get(key);
+        if (values == null) {
+            for (Map.Entry<String, List<String>> entry: header.entrySet()) {
+                if (key.equalsIgnoreCase(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return body, empty stream if there is no body
+     */
+    public final InputStream getBody() {
+        return body;
+    }
+
+    public final int getResponseCode() {
+        return responseCode;
+    }
+
+    public final String getResponseMessage() {
+        return responseMessage;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            byte[] buffer = new byte[4096];
+            int drained = 0, read;
+            while (drained < MAX_DRAIN && (read = body.read(buffer)) != -1) {
+                drained += read;
+            }
+        } finally {
+            body.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(%s, %s)", responseCode, responseMessage);
+    }
+}
@@ -0,0 +1,45 @@
+package bx.cryptogui.exchangeapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Sends the HTTP requests made through {@link ExchangeAPI#getRequest} and {@link ExchangeAPI#postRequest}.
+ * Implementations must be thread safe, as every exchange API shares the same transport.
+ */
+public interface HTTPTransport {
+
+    /**
+     * @param url url
+     * @param headers request headers, may be null
+     * @return response, including error responses (code 400 and above)
+     * @throws IOException connection failed or timed out
+     */
+    HTTPResponse get(URL url, Map<String, String> headers) throws IOException;
+
+    /**
+     * @param url url
+     * @param headers request headers, may be null
+     * @param body encoded request body, may be null or empty
+     * @return response, including error responses (code 400 and above)
+     * @throws IOException connection failed or timed out
+     */
+    HTTPResponse post(URL url, Map<String, String> headers, byte[] body) throws IOException;
+
+    /**
+     * GET request with the body left unread. The default implementation buffers the whole response.
+     * @param url url
+     * @param headers request headers, may be null
+     * @return open response, including error responses (code 400 and above)
+     * @throws IOException connection failed or timed out
+     */
+    default HTTPStream openStream(URL url, Map<String, String> headers) throws IOException {
+        HTTPResponse response = get(url, headers);
+        return new HTTPStream(response.getHeaderFields(),
+                new ByteArrayInputStream(response.getBody().getBytes(StandardCharsets.UTF_8)),
+                response.getResponseCode(), response.getResponseMessage());
+    }
+}
@@ -0,0 +1,464 @@
+package bx.cryptogui.exchangeapi;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull tokenizer for UTF-8 JSON read straight from a stream, without building a String or a {@link org.json.JSONObject}.
+ * <p>
+ *     Numbers are parsed from the byte buffer, and may be quoted (many exchanges send prices as strings). Object keys
+ *     and short string values can be matched with {@link #selectName(String[])} and {@link #selectString(String[])}
+ *     without allocating. Separators (',' and ':') are skipped, so the reader assumes well formed JSON.
+ * </p>
+ */
+public class JSONStreamReader implements AutoCloseable {
+
+    public static final int BEGIN_OBJECT = '{';
+    public static final int END_OBJECT = '}';
+    public static final int BEGIN_ARRAY = '[';
+    public static final int END_ARRAY = ']';
+    public static final int STRING = '"';
+    public static final int NUMBER = '0';
+    public static final int BOOLEAN = 't';
+    public static final int NULL = 'n';
+    public static final int END_DOCUMENT = -1;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int pos = 0;
+    private int limit = 0;
+    /** Reused for keys and string values. */
+    private byte[] token = new byte[64];
+    private int tokenLength = 0;
+
+    public JSONStreamReader(InputStream in) {
+        this(in, 8192);
+    }
+
+    public JSONStreamReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    // ------------------ STRUCTURE ------------------------------------------------------------------------------------
+
+    /**
+     * @return next token type, one of the constants of this class
+     */
+    public int peek() throws IOException {
+        int c = peekByte();
+        switch (c) {
+            case -1:
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case '"':
+                return c;
+            case 't':
+            case 'f':
+                return BOOLEAN;
+            case 'n':
+                return NULL;
+            default:
+                return NUMBER;
+        }
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * @return true if the current object or array has another element
+     */
+    public boolean hasNext() throws IOException {
+        int c = peekByte();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    // ------------------ NAMES AND STRINGS ----------------------------------------------------------------------------
+
+    public String nextName() throws IOException {
+        return nextString();
+    }
+
+    /**
+     * Reads the next key without allocating.
+     * @param names candidate keys, ASCII
+     * @return index of the matching key, or -1 if none match
+     */
+    public int selectName(String[] names) throws IOException {
+        return selectString(names);
+    }
+
+    public String nextString() throws IOException {
+        readStringToken();
+        return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next string value without allocating.
+     * @param options candidate values, ASCII
+     * @return index of the matching value, or -1 if none match
+     */
+    public int selectString(String[] options) throws IOException {
+        readStringToken();
+        for (int i = 0; i < options.length; i++) {
+            if (tokenEquals(options[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ------------------ NUMBERS --------------------------------------------------------------------------------------
+
+    /**
+     * Reads a number, quoted or not.
+     */
+    public double nextDouble() throws IOException {
+        boolean quoted = skipOpenQuote();
+        int c = peekRaw();
+        boolean negative = false;
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;     // significant digits in mantissa
+        int exponent = 0;
+        boolean precise = true;
+        boolean any = false;
+        // integer part
+        while ((c = peekRaw()) >= '0' && c <= '9') {
+            pos++;
+            any = true;
+            if (digits < 18) {
+                if (mantissa != 0 || c != '0') {
+                    mantissa = mantissa*10 + (c - '0');
+                    digits++;
+                }
+            } else {
+                exponent++;
+                precise = false;
+            }
+        }
+        if (c == '.') {
+            pos++;
+            while ((c = peekRaw()) >= '0' && c <= '9') {
+                pos++;
+                any = true;
+                if (digits < 18) {
+                    if (mantissa != 0 || c != '0') {
+                        digits++;
+                    }
+                    mantissa = mantissa*10 + (c - '0');
+                    exponent--;
+                } else {
+                    precise = false;
+                }
+            }
+        }
+        if (c == 'e' || c == 'E') {
+            pos++;
+            c = peekRaw();
+            boolean negativeExp = false;
+            if (c == '-' || c == '+') {
+                negativeExp = c == '-';
+                pos++;
+            }
+            int exp = 0;
+            while ((c = peekRaw()) >= '0' && c <= '9') {
+                pos++;
+                if (exp < 10000) {
+                    exp = exp*10 + (c - '0');
+                }
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (!any) {
+            throw new JSONException("Expected a number at " + describePosition());
+        }
+        if (quoted) {
+            expectRaw('"');
+        }
+        double value;
+        if (precise && digits <= 15 && exponent >= -22 && exponent <= 22) {
+            // both operands exact, so the single multiply/divide is correctly rounded
+            value = exponent >= 0 ? mantissa*POWERS_OF_TEN[exponent] : mantissa/POWERS_OF_TEN[-exponent];
+        } else {
+            value = Double.parseDouble(mantissa + "E" + exponent);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads an integer, quoted or not.
+     */
+    public long nextLong() throws IOException {
+        boolean quoted = skipOpenQuote();
+        int c = peekRaw();
+        boolean negative = false;
+        if (c == '-') {
+            negative = true;
+            pos++;
+        }
+        long value = 0;
+        boolean any = false;
+        while ((c = peekRaw()) >= '0' && c <= '9') {
+            pos++;
+            any = true;
+            value = value*10 + (c - '0');
+        }
+        if (!any) {
+            throw new JSONException("Expected an integer at " + describePosition());
+        }
+        if (quoted) {
+            expectRaw('"');
+        }
+        return negative ? -value : value;
+    }
+
+    public int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        int c = peekByte();
+        if (c == 't') {
+            expectLiteral("true");
+            return true;
+        } else if (c == 'f') {
+            expectLiteral("false");
+            return false;
+        }
+        throw new JSONException("Expected a boolean at " + describePosition());
+    }
+
+    public void nextNull() throws IOException {
+        peekByte();
+        expectLiteral("null");
+    }
+
+    /**
+     * Skips the next value, including nested objects and arrays.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = peekByte();
+            switch (c) {
+                case -1:
+                    throw new JSONException("Unexpected end of document");
+                case '{':
+                case '[':
+                    pos++;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    pos++;
+                    depth--;
+                    break;
+                case '"':
+                    readStringToken();
+                    break;
+                default:    // number or literal
+                    while ((c = peekRaw()) != -1 && c != ',' && c != '}' && c != ']' && c != ':' && !isWhitespace(c)) {
+                        pos++;
+                    }
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // ------------------ INTERNALS ------------------------------------------------------------------------------------
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Next byte without consuming it, skipping whitespace and separators.
+     */
+    private int peekByte() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            int c = buffer[pos] & 0xFF;    // bytes of 0x80 and above must not read as -1 (EOF)
+            if (isWhitespace(c) || c == ',' || c == ':') {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Next byte without consuming it or skipping anything.
+     */
+    private int peekRaw() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private void expect(int expected) throws IOException {
+        int c = peekByte();
+        if (c != expected) {
+            throw new JSONException(String.format("Expected '%s' but was '%s' at %s",
+                    (char) expected, c == -1 ? "EOF" : String.valueOf((char) c), describePosition()));
+        }
+        pos++;
+    }
+
+    private void expectRaw(int expected) throws IOException {
+        if (peekRaw() != expected) {
+            throw new JSONException("Expected '" + (char) expected + "' at " + describePosition());
+        }
+        pos++;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            expectRaw(literal.charAt(i));
+        }
+    }
+
+    private boolean skipOpenQuote() throws IOException {
+        if (peekByte() == '"') {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a string into {@link #token}, resolving escapes.
+     */
+    private void readStringToken() throws IOException {
+        expect('"');
+        tokenLength = 0;
+        while (true) {
+            int c = peekRaw();
+            if (c == -1) {
+                throw new JSONException("Unterminated string");
+            }
+            pos++;
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                c = peekRaw();
+                pos++;
+                switch (c) {
+                    case 'n': appendToken('\n'); break;
+                    case 't': appendToken('\t'); break;
+                    case 'r': appendToken('\r'); break;
+                    case 'b': appendToken('\b'); break;
+                    case 'f': appendToken('\f'); break;
+                    case 'u': appendCodePoint(readHex4()); break;
+                    default: appendToken(c);    // \" \\ \/
+                }
+            } else {
+                appendToken(c);
+            }
+        }
+    }
+
+    private int readHex4() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = peekRaw();
+            pos++;
+            value <<= 4;
+            if (c >= '0' && c <= '9') {
+                value += c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                value += c - 'a' + 10;
+            } else if (c >= 'A' && c <= 'F') {
+                value += c - 'A' + 10;
+            } else {
+                throw new JSONException("Invalid unicode escape at " + describePosition());
+            }
+        }
+        return value;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        // re-encode as UTF-8, surrogate pairs are kept as separate 3 byte sequences
+        if (codePoint < 0x80) {
+            appendToken(codePoint);
+        } else if (codePoint < 0x800) {
+            appendToken(0xC0 | (codePoint >> 6));
+            appendToken(0x80 | (codePoint & 0x3F));
+        } else {
+            appendToken(0xE0 | (codePoint >> 12));
+            appendToken(0x80 | ((codePoint >> 6) & 0x3F));
+            appendToken(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void appendToken(int b) {
+        if (tokenLength == token.length) {
+            byte[] larger = new byte[token.length*2];
+            System.arraycopy(token, 0, larger, 0, tokenLength);
+            token = larger;
+        }
+        token[tokenLength++] = (byte) b;
+    }
+
+    private boolean tokenEquals(String s) {
+        if (s.length() != tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String describePosition() {
+        return "buffer position " + pos;
+    }
+}
@@ -1,7 +1,6 @@
 package bx.cryptogui.exchangeapi;
 
 import bx.cryptogui.data.*;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -13,6 +12,8 @@ import java.util.Map;
 
 public class KiwicoinAPI extends ExchangeAPI {
 
+    public static final String DEFAULT_BASE_URL = "https://kiwi-coin.com";
+
     public KiwicoinAPI() {
         super();
     }
@@ -27,7 +28,12 @@ public class KiwicoinAPI extends ExchangeAPI {
 
     @Override
     public Exchange getExchange() {
-        return null;
+        return Exchange.KIWICOIN;
+    }
+
+    @Override
+    protected String getDefaultBaseUrl() {
+        return DEFAULT_BASE_URL;
     }
 
     /**
@@ -47,7 +53,8 @@ public class KiwicoinAPI extends ExchangeAPI {
         }
         Map<String, String> headers = new HashMap<>();      // must have user-agent, else forbidden
         headers.put("User-Agent", "");
-        HTTPResponse response = getRequest(new URL("https://kiwi-coin.com/api/ticker"), headers);
+        HTTPResponse response = getCachedRequest(new URL(getBaseUrl() + "/api/ticker"), headers,
+                HTTPCache.Endpoint.TICKER);
         if (response.getResponseCode() == 200) {
             JSONObject json = response.getJSONObject();
             long time = json.getLong("date");
@@ -65,33 +72,29 @@ public class KiwicoinAPI extends ExchangeAPI {
 
     @Override
     public List<Order>[] getOrderBook(CurrencyPair currencyPair) throws IOException, HTTPException {
-        if (!currencyPair.equals(CurrencyPair.BTC_NZD)) {
+        List<Order>[] orders = new List[] {new ArrayList<>(), new ArrayList<>()};
+        if (!streamOrderBook(currencyPair, orderListSink(orders, TradePlatform.of(Exchange.KIWICOIN, currencyPair)))) {
             return null;
         }
-        List<Order>[] orders = new List[] {new ArrayList<>(), new ArrayList<>()};
+        return orders;
+    }
+
+    @Override
+    public boolean streamOrderBook(CurrencyPair currencyPair, PriceLevelSink sink) throws IOException, HTTPException {
+        if (!currencyPair.equals(CurrencyPair.BTC_NZD)) {
+            return false;
+        }
         Map<String, String> headers = new HashMap<>();      // must have user-agent, else forbidden
         headers.put("User-Agent", "");
-        HTTPResponse response = getRequest(new URL("https://kiwi-coin.com/api/order_book"), headers);
-        if (response.getResponseCode() == 200) {
-            JSONObject json = response.getJSONObject();
-            JSONArray bids = json.getJSONArray("bids");
-            JSONArray asks = json.getJSONArray("asks");
-            for (int i = 0; i < bids.length(); i++) {
-                JSONArray array = bids.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[0].add(new Order(-1, -1, price, volume, true, new TradePlatform(Exchange.KIWICOIN, currencyPair)));
-            }
-            for (int i = 0; i < asks.length(); i++) {
-                JSONArray array = asks.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[1].add(new Order(-1, -1, price, volume, false, new TradePlatform(Exchange.KIWICOIN, currencyPair)));
+        try (HTTPStream response = openCachedStream(new URL(getBaseUrl() + "/api/order_book"), headers,
+                HTTPCache.Endpoint.ORDER_BOOK)) {
+            if (response.getResponseCode() == 200) {
+                readBidsAndAsks(new JSONStreamReader(response.getBody()), sink);
+            } else {
+                throw new HTTPException(response);
             }
-        } else {
-            throw new HTTPException(response);
         }
-        return orders;
+        return true;
     }
 
     /**
@@ -0,0 +1,348 @@
+package bx.cryptogui.exchangeapi;
+
+import bx.cryptogui.data.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Push based ticker and order book of one trade platform, kept up to date from an exchange's WebSocket channels.
+ * <p>
+ *     The feed reconnects with exponential backoff and resubscribes after every connection. The state is
+ *     resynchronised from a REST snapshot ({@link ExchangeAPI#getTicker}, {@link ExchangeAPI#streamOrderBook})
+ *     after connecting and, unless a feed handles it otherwise ({@link #onSequenceGap}), whenever a gap is found in
+ *     the message sequence. The book is an {@link OrderBook}
+ *     changed in place, updates are coalesced and published to the listener every {@link #PUBLISH_INTERVAL}
+ *     milliseconds.
+ * </p>
+ */
+public abstract class MarketDataFeed {
+
+    public static final long PUBLISH_INTERVAL = 250;
+    public static final long MIN_RECONNECT_DELAY = 1000;
+    public static final long MAX_RECONNECT_DELAY = 30000;
+    public static final int CONNECT_TIMEOUT = 10000;
+    public static final int IDLE_TIMEOUT = 30000;
+
+    private static final ScheduledExecutorService publisher;
+    static {
+        final AtomicInteger threadCount = new AtomicInteger();
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "market-data-publisher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return streaming feed for the exchange of the api, or null if the exchange has no supported feed
+     */
+    public static MarketDataFeed create(ExchangeAPI api, CurrencyPair currencyPair, MarketDataListener listener) {
+        if (api.getExchange() == null || api.convertCurrencyPair(currencyPair) == null) {
+            return null;
+        }
+        switch (api.getExchange()) {
+            case COINBASE:
+                return new CoinbaseFeed(api, currencyPair, listener);
+            case BITSTAMP:
+                return new BitstampFeed(api, currencyPair, listener);
+            default:
+                return null;
+        }
+    }
+
+    protected final ExchangeAPI api;
+    protected final CurrencyPair currencyPair;
+    protected final TradePlatform platform;
+    private final MarketDataListener listener;
+    private volatile URI uri;
+
+    // guarded by this
+    private final OrderBook book;
+    private Ticker ticker;
+    private boolean bookChanged = false;
+    private boolean tickerChanged = false;
+    private long lastSequence = -1;
+    /** REST snapshots are read into this book outside the lock, guarded by itself. */
+    private final OrderBook snapshotBook;
+
+    private volatile boolean running = false;
+    private volatile WebSocketClient client;
+    private Thread connectThread;
+    private ScheduledFuture<?> publishTask;
+
+    protected MarketDataFeed(ExchangeAPI api, CurrencyPair currencyPair, MarketDataListener listener, URI uri) {
+        this.api = Objects.requireNonNull(api);
+        this.currencyPair = Objects.requireNonNull(currencyPair);
+        this.platform = TradePlatform.of(api.getExchange(), currencyPair);
+        this.listener = Objects.requireNonNull(listener);
+        this.uri = Objects.requireNonNull(uri);
+        this.book = new OrderBook(platform);
+        this.snapshotBook = new OrderBook(platform);
+    }
+
+    public final TradePlatform getTradePlatform() {
+        return platform;
+    }
+
+    public final URI getUri() {
+        return uri;
+    }
+
+    /**
+     * Points the feed at another server, eg. a {@link ReplayWebSocketServer}. Used from the next connection.
+     */
+    public final void setUri(URI uri) {
+        this.uri = Objects.requireNonNull(uri);
+    }
+
+    public final boolean isRunning() {
+        return running;
+    }
+
+    public final boolean isConnected() {
+        WebSocketClient current = client;
+        return current != null && current.isOpen();
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        connectThread = new Thread(this::connectLoop, "market-data-" + platform);
+        connectThread.setDaemon(true);
+        connectThread.start();
+        publishTask = publisher.scheduleAtFixedRate(this::publish, PUBLISH_INTERVAL, PUBLISH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        publishTask.cancel(false);
+        connectThread.interrupt();
+        WebSocketClient current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Drops the current connection, the feed reconnects and resubscribes.
+     */
+    public void reconnect() {
+        WebSocketClient current = client;
+        if (current != null) {
+            current.close(WebSocketClient.NORMAL_CLOSURE, "reconnect");
+        }
+    }
+
+    // ------------------ SUBCLASS HOOKS -------------------------------------------------------------------------------
+
+    /**
+     * @return messages sent after every connection to subscribe to the channels
+     */
+    protected abstract List<String> getSubscribeMessages();
+
+    /**
+     * Called on the connection's reader thread for every text message.
+     */
+    protected abstract void handleMessage(String message) throws Exception;
+
+    /**
+     * Called after connecting and subscribing. By default resynchronises the ticker and order book from REST.
+     */
+    protected void onConnected() throws Exception {
+        resynchronise(true);
+    }
+
+    /**
+     * Called on the connection's reader thread when a gap is found in the message sequence. By default
+     * resynchronises the ticker and order book from REST.
+     */
+    protected void onSequenceGap() throws Exception {
+        resynchronise(true);
+    }
+
+    // ------------------ STATE ----------------------------------------------------------------------------------------
+
+    /**
+     * Replaces the ticker, and the order book if asked, with REST snapshots.
+     */
+    protected void resynchronise(boolean orderBook) throws Exception {
+        Ticker snapshot = api.getTicker(currencyPair);
+        if (orderBook) {
+            synchronized (snapshotBook) {
+                snapshotBook.clear();
+                api.streamOrderBook(currencyPair, snapshotBook::set);
+                synchronized (this) {
+                    book.copyFrom(snapshotBook, Integer.MAX_VALUE);
+                    bookChanged = true;
+                }
+            }
+        }
+        synchronized (this) {
+            if (snapshot != null) {
+                ticker = snapshot;
+                tickerChanged = true;
+            }
+        }
+    }
+
+    protected synchronized void clearOrderBook() {
+        book.clear();
+        bookChanged = true;
+    }
+
+    /**
+     * @param volume new total volume at the price, 0 removes the level
+     */
+    protected synchronized void setLevel(boolean bid, double price, double volume) {
+        book.set(bid, price, volume);
+        bookChanged = true;
+    }
+
+    /**
+     * Updates the ticker from a trade. High, low and volume are only extended, until the next REST snapshot.
+     */
+    protected synchronized void applyTrade(long time, double price, double volume, int type) {
+        if (ticker == null) {
+            ticker = new Ticker(time, price, type, price, price, -1, volume);
+        } else {
+            ticker = new Ticker(Math.max(time, ticker.getTime()), price, type,
+                    ticker.getHigh() < 0 ? -1 : Math.max(ticker.getHigh(), price),
+                    ticker.getLow() < 0 ? -1 : Math.min(ticker.getLow(), price),
+                    ticker.getAverage(), ticker.getVolume() + volume);
+        }
+        tickerChanged = true;
+    }
+
+    /**
+     * Checks a message sequence number that should increase by exactly 1, see {@link #onSequenceGap}.
+     * @return false if the message is a duplicate or older than the last one, and should be ignored
+     */
+    protected boolean checkSequence(long sequence) throws Exception {
+        long last;
+        synchronized (this) {
+            last = lastSequence;
+            if (last >= 0 && sequence <= last) {
+                return false;
+            }
+            lastSequence = sequence;
+        }
+        if (last >= 0 && sequence != last + 1) {
+            onSequenceGap();
+        }
+        return true;
+    }
+
+    /**
+     * Checks the latest sequence number announced by the exchange (eg. a heartbeat), see {@link #onSequenceGap}.
+     */
+    protected void checkLatestSequence(long latest) throws Exception {
+        boolean missed;
+        synchronized (this) {
+            missed = lastSequence >= 0 && latest > lastSequence;
+            if (lastSequence < 0 || missed) {
+                lastSequence = latest;
+            }
+        }
+        if (missed) {
+            onSequenceGap();
+        }
+    }
+
+    /**
+     * Forgets the last sequence number, the next message starts a new sequence.
+     */
+    protected synchronized void resetSequence() {
+        lastSequence = -1;
+    }
+
+    // ------------------ INTERNALS ------------------------------------------------------------------------------------
+
+    private void connectLoop() {
+        long delay = MIN_RECONNECT_DELAY;
+        while (running) {
+            WebSocketClient current = new WebSocketClient(uri, new WebSocketClient.Listener() {
+                @Override
+                public void onMessage(WebSocketClient client, String message) {
+                    try {
+                        handleMessage(message);
+                    } catch (Exception e) {
+                        listener.feedFailed(e);
+                    }
+                }
+                @Override
+                public void onError(WebSocketClient client, Throwable exception) {
+                    listener.feedFailed(exception);
+                }
+            }, IDLE_TIMEOUT);
+            try {
+                resetSequence();
+                current.connect(CONNECT_TIMEOUT);
+                client = current;
+                if (!running) {     // stopped while connecting
+                    current.close();
+                    break;
+                }
+                for (String message: getSubscribeMessages()) {
+                    current.send(message);
+                }
+                listener.connectionChanged(true);
+                delay = MIN_RECONNECT_DELAY;
+                onConnected();
+                current.awaitClose();
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                listener.feedFailed(e);
+            } catch (Exception e) {     // snapshot failed, drop the connection and try again
+                listener.feedFailed(e);
+                current.close();
+            } finally {
+                client = null;
+                listener.connectionChanged(false);
+            }
+            if (!running) {
+                break;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            delay = Math.min(delay*2, MAX_RECONNECT_DELAY);
+        }
+    }
+
+    private void publish() {
+        try {
+            Ticker newTicker = null;
+            synchronized (this) {
+                if (tickerChanged) {
+                    newTicker = ticker;
+                    tickerChanged = false;
+                }
+                if (bookChanged) {
+                    bookChanged = false;
+                    listener.orderBookUpdated(book);
+                }
+            }
+            if (newTicker != null) {
+                listener.tickerUpdated(newTicker);
+            }
+        } catch (RuntimeException e) {
+            listener.feedFailed(e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package bx.cryptogui.exchangeapi;
+
+import bx.cryptogui.data.OrderBook;
+import bx.cryptogui.data.Ticker;
+
+/**
+ * Receives the state of a {@link MarketDataFeed}. Called on the feed's publisher thread, at most once per
+ * {@link MarketDataFeed#PUBLISH_INTERVAL} for each kind of update.
+ */
+public interface MarketDataListener {
+
+    void tickerUpdated(Ticker ticker);
+
+    /**
+     * Called while the feed holds the book's lock, copy what is needed (eg. {@link OrderBook#copyFrom}) and do not
+     * keep a reference to the book.
+     */
+    void orderBookUpdated(OrderBook book);
+
+    default void connectionChanged(boolean connected) {}
+
+    /**
+     * Connection or message failure, the feed reconnects by itself.
+     */
+    default void feedFailed(Throwable exception) {}
+}
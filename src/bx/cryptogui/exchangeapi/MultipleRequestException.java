@@ -0,0 +1,61 @@
+package bx.cryptogui.exchangeapi;
+
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thrown when some of the concurrent per-pair requests of {@link ExchangeAPI#requestAll} fail. Holds the results
+ * of the requests that succeeded, and the failure of every other pair (also added as suppressed exceptions).
+ */
+public class MultipleRequestException extends RequestException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Exchange exchange;
+    private final Map<CurrencyPair, Object> partialResults;
+    private final Map<CurrencyPair, Throwable> failures;
+
+    public MultipleRequestException(Exchange exchange, Map<CurrencyPair, ?> partialResults,
+                                    Map<CurrencyPair, Throwable> failures) {
+        super(buildMessage(exchange, partialResults.size() + failures.size(), failures),
+                failures.isEmpty() ? null : failures.values().iterator().next());
+        this.exchange = exchange;
+        this.partialResults = Collections.unmodifiableMap(new LinkedHashMap<>(partialResults));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        for (Throwable failure: failures.values()) {
+            if (failure != getCause()) {
+                addSuppressed(failure);
+            }
+        }
+    }
+
+    public final Exchange getExchange() {
+        return exchange;
+    }
+
+    /**
+     * @param <T> result type of the request
+     * @return results of the pairs that succeeded
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> Map<CurrencyPair, T> getPartialResults() {
+        return (Map<CurrencyPair, T>) partialResults;
+    }
+
+    public final Map<CurrencyPair, Throwable> getFailures() {
+        return failures;
+    }
+
+    private static String buildMessage(Exchange exchange, int total, Map<CurrencyPair, Throwable> failures) {
+        StringBuilder builder = new StringBuilder().append(exchange).append(": ")
+                .append(failures.size()).append(" of ").append(total).append(" requests failed");
+        for (Map.Entry<CurrencyPair, Throwable> entry: failures.entrySet()) {
+            builder.append("; ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return builder.toString();
+    }
+}
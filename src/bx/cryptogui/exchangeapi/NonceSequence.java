@@ -0,0 +1,84 @@
+package bx.cryptogui.exchangeapi;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Strictly increasing nonces of one API key, shared by every API instance using the key.
+ * <p>
+ *     Nonces start at the current time in seconds, as exchanges expect, or after the last nonce of a previous run if
+ *     that is higher. Blocks of {@link #RESERVE} nonces are reserved in the user {@link Preferences} before any of
+ *     them is used, so a restart never reuses a nonce and storage is only written once per block.
+ * </p>
+ */
+public final class NonceSequence {
+
+    public static final long RESERVE = 1000;
+
+    private static final Map<String, NonceSequence> sequences = new ConcurrentHashMap<>();
+    private static final Preferences preferences = Preferences.userNodeForPackage(NonceSequence.class).node("nonce");
+
+    private final String id;
+    private final AtomicLong last;
+    private volatile long reservedUntil;
+
+    private NonceSequence(String id) {
+        this.id = id;
+        long start = Math.max(preferences.getLong(id, 0), System.currentTimeMillis()/1000);
+        this.last = new AtomicLong(start);
+        this.reservedUntil = start;
+    }
+
+    /**
+     * @param key API key, only a hash of it is stored
+     * @return sequence of the key
+     */
+    public static NonceSequence forKey(String key) {
+        return sequences.computeIfAbsent(hash(key), NonceSequence::new);
+    }
+
+    /**
+     * @return next nonce, higher than any returned before for the key, including previous runs
+     * @throws IllegalStateException the block of the nonce could not be stored, so it may be reused after a restart.
+     * The nonce is not used, the next call tries again
+     */
+    public long next() throws IllegalStateException {
+        long nonce = last.incrementAndGet();
+        if (nonce > reservedUntil) {
+            reserve(nonce);
+        }
+        return nonce;
+    }
+
+    private synchronized void reserve(long nonce) {
+        if (nonce > reservedUntil) {
+            long until = nonce + RESERVE;
+            preferences.putLong(id, until);
+            try {
+                preferences.flush();
+            } catch (BackingStoreException e) {
+                throw new IllegalStateException("Could not store the nonces of the key", e);
+            }
+            reservedUntil = until;
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                builder.append(String.format("%02x", digest[i]));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // every JRE has SHA-256
+        }
+    }
+}
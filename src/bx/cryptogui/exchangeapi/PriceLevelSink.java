@@ -0,0 +1,15 @@
+package bx.cryptogui.exchangeapi;
+
+/**
+ * Receives order book price levels as they are decoded.
+ */
+@FunctionalInterface
+public interface PriceLevelSink {
+
+    /**
+     * @param bid true for a bid (buy) level, false for an ask (sell) level
+     * @param price price
+     * @param volume volume at the price
+     */
+    void level(boolean bid, double price, double volume);
+}
@@ -0,0 +1,131 @@
+package bx.cryptogui.exchangeapi;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the requests of one exchange, shared by all API instances of that exchange.
+ * <p>
+ *     Tokens refill at {@link #getPermitsPerSecond()} up to {@link #getBurst()}. A request takes one token, or reserves
+ *     the next one and waits for it, so waiting requests start in turn at the refill rate. A rate limit (429) or server
+ *     error (5xx) response pauses the bucket, for the Retry-After time if given, otherwise with exponential backoff.
+ * </p>
+ */
+public class RateLimiter {
+
+    public static final long MIN_BACKOFF = 1000;
+    public static final long MAX_BACKOFF = 300000;
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final RequestMetrics metrics;
+    // guarded by this
+    private double tokens;
+    private long lastRefill;    // nanoTime, in the future while paused
+    private int backoffLevel = 0;
+
+    /**
+     * @param permitsPerSecond refill rate
+     * @param burst bucket size, requests that may start at once after being idle
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.metrics = new RequestMetrics();
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public final double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public final int getBurst() {
+        return burst;
+    }
+
+    public final RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Waits for a token.
+     * @return nanoseconds waited
+     * @throws InterruptedIOException interrupted while waiting, so request methods can keep throwing IOException
+     */
+    public long acquire() throws InterruptedIOException {
+        long wait = reserve();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the rate limit");
+            }
+        }
+        metrics.recordWait(wait);
+        return wait;
+    }
+
+    /**
+     * Records the response of a request made after {@link #acquire()}, pausing the bucket if it was throttled.
+     * @param code HTTP response code
+     * @param retryAfter seconds from the Retry-After header, or -1
+     */
+    public void recordResponse(int code, long retryAfter) {
+        boolean throttled = isThrottled(code);
+        metrics.recordResponse(throttled);
+        synchronized (this) {
+            if (!throttled) {
+                backoffLevel = 0;
+                return;
+            }
+            long pause = retryAfter > 0 ? TimeUnit.SECONDS.toMillis(retryAfter)
+                    : Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(backoffLevel, 20));
+            backoffLevel++;
+            refill(System.nanoTime());
+            tokens = Math.min(tokens, 0);
+            lastRefill = Math.max(lastRefill, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause));
+        }
+    }
+
+    /**
+     * @return true for 429 Too Many Requests and 5xx server errors
+     */
+    public static boolean isThrottled(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    /**
+     * @return true while the bucket is paused after a throttled response
+     */
+    public synchronized boolean isPaused() {
+        return lastRefill > System.nanoTime();
+    }
+
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        refill(now);
+        tokens -= 1;
+        long wait = Math.max(0, lastRefill - now);  // paused
+        if (tokens < 0) {
+            wait += (long) (-tokens/permitsPerSecond*1e9);
+        }
+        return wait;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(burst, tokens + (now - lastRefill)*permitsPerSecond/1e9);
+            lastRefill = now;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RateLimiter[%s/s,burst %s]", permitsPerSecond, burst);
+    }
+}
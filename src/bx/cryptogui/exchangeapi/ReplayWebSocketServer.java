@@ -0,0 +1,235 @@
+package bx.cryptogui.exchangeapi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local WebSocket server that replays a recording of exchange frames, for running a {@link MarketDataFeed} end to
+ * end without the exchange.
+ * <p>
+ *     A recording has one text frame per line. Blank lines and lines starting with '#' are ignored, and three
+ *     directives are supported: {@code @sleep <ms>} pauses the replay, {@code @close} closes the connection with a
+ *     close frame, and {@code @drop} closes the socket without one, as a dropped connection. Replay of a connection
+ *     starts after the client's first message (the subscription). The position in the recording is shared by all
+ *     connections, so frames after an {@code @close} or {@code @drop} are replayed to the next connection, which tests
+ *     reconnect and resubscribe. Once the recording is exhausted the connection is kept open until the client closes
+ *     it.
+ * </p>
+ */
+public class ReplayWebSocketServer implements Closeable {
+
+    private final List<String> frames;
+    private final ServerSocket serverSocket;
+    private final List<String> receivedMessages = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+    private int cursor = 0;     // guarded by frames
+    private volatile boolean closed = false;
+
+    /**
+     * Starts the server on a free loopback port.
+     * @param frames recording, see the class description
+     */
+    public ReplayWebSocketServer(List<String> frames) throws IOException {
+        this(frames, 0);
+    }
+
+    public ReplayWebSocketServer(List<String> frames, int port) throws IOException {
+        this.frames = new ArrayList<>(frames);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "replay-websocket-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static ReplayWebSocketServer fromFile(Path recording) throws IOException {
+        return new ReplayWebSocketServer(Files.readAllLines(recording, StandardCharsets.UTF_8));
+    }
+
+    public URI getUri() {
+        return URI.create("ws://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/");
+    }
+
+    /**
+     * @return messages sent by clients, in order
+     */
+    public List<String> getReceivedMessages() {
+        synchronized (receivedMessages) {
+            return new ArrayList<>(receivedMessages);
+        }
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket: sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                Thread handler = new Thread(() -> serve(socket), "replay-websocket-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            List<String> head = WebSocketCodec.readHttpHead(in);
+            String key = WebSocketCodec.getHeader(head, "Sec-WebSocket-Key");
+            if (key == null) {
+                out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                return;
+            }
+            out.write(("HTTP/1.1 101 Switching Protocols\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Accept: " + WebSocketCodec.acceptKey(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            connectionCount.incrementAndGet();
+            // reads client frames, replay starts after the first text message
+            Object started = new Object();
+            boolean[] subscribed = {false};
+            Thread reader = new Thread(() -> {
+                try {
+                    while (true) {
+                        WebSocketCodec.Frame frame = WebSocketCodec.readFrame(in);
+                        if (frame.opcode == WebSocketCodec.OP_TEXT) {
+                            receivedMessages.add(new String(frame.payload, StandardCharsets.UTF_8));
+                            synchronized (started) {
+                                subscribed[0] = true;
+                                started.notifyAll();
+                            }
+                        } else if (frame.opcode == WebSocketCodec.OP_PING) {
+                            synchronized (out) {
+                                WebSocketCodec.writeFrame(out, WebSocketCodec.OP_PONG, frame.payload, false);
+                            }
+                        } else if (frame.opcode == WebSocketCodec.OP_CLOSE) {
+                            synchronized (out) {
+                                WebSocketCodec.writeFrame(out, WebSocketCodec.OP_CLOSE, frame.payload, false);
+                            }
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    // connection closed
+                } finally {
+                    synchronized (started) {
+                        started.notifyAll();
+                    }
+                    closeQuietly(socket);
+                }
+            }, "replay-websocket-reader");
+            reader.setDaemon(true);
+            reader.start();
+            synchronized (started) {
+                while (!subscribed[0] && !socket.isClosed()) {
+                    started.wait();
+                }
+            }
+            if (!replay(out)) {
+                socket.close();
+            }
+            reader.join();
+        } catch (IOException | InterruptedException e) {
+            // connection closed
+        } finally {
+            closeQuietly(socket);
+            sockets.remove(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed anyway
+        }
+    }
+
+    /**
+     * Sends frames from the shared cursor until an {@code @close}, an {@code @drop} or the end of the recording.
+     * @return false if the connection is to be dropped
+     */
+    private boolean replay(OutputStream out) throws IOException, InterruptedException {
+        while (true) {
+            String line;
+            synchronized (frames) {
+                if (cursor >= frames.size()) {
+                    return true;
+                }
+                line = frames.get(cursor++);
+            }
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            if (trimmed.startsWith("@sleep")) {
+                Thread.sleep(Long.parseLong(trimmed.substring("@sleep".length()).trim()));
+            } else if (trimmed.equals("@close")) {
+                synchronized (out) {
+                    WebSocketCodec.writeFrame(out, WebSocketCodec.OP_CLOSE,
+                            WebSocketCodec.closePayload(WebSocketClient.NORMAL_CLOSURE, "replay"), false);
+                }
+                return true;
+            } else if (trimmed.equals("@drop")) {
+                return false;
+            } else {
+                synchronized (out) {
+                    WebSocketCodec.writeFrame(out, WebSocketCodec.OP_TEXT, line.getBytes(StandardCharsets.UTF_8), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays a recording until killed.
+     * @param args recording file, and optionally the port
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayWebSocketServer <recording> [port]");
+            System.exit(1);
+        }
+        List<String> recording = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+        ReplayWebSocketServer server = new ReplayWebSocketServer(recording, args.length > 1 ? Integer.parseInt(args[1]) : 0);
+        System.out.println("Replaying " + args[0] + " on " + server.getUri());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,93 @@
+package bx.cryptogui.exchangeapi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request counters of one exchange: queue wait in the {@link RateLimiter}, request rate and throttled responses.
+ */
+public class RequestMetrics {
+
+    /** Window of {@link #getRequestsPerSecond()}, in seconds. */
+    public static final int RATE_WINDOW = 60;
+
+    // guarded by this
+    private long requests = 0;
+    private long throttled = 0;
+    private long totalWait = 0;
+    private long maxWait = 0;
+    private final int[] requestsPerSecond = new int[RATE_WINDOW];
+    private long lastSecond = currentSecond();
+
+    synchronized void recordWait(long waitNanos) {
+        requests++;
+        totalWait += waitNanos;
+        maxWait = Math.max(maxWait, waitNanos);
+        long second = currentSecond();
+        advance(second);
+        requestsPerSecond[index(second)]++;
+    }
+
+    synchronized void recordResponse(boolean throttledResponse) {
+        if (throttledResponse) {
+            throttled++;
+        }
+    }
+
+    public synchronized long getRequestCount() {
+        return requests;
+    }
+
+    /**
+     * @return responses that were 429 or 5xx
+     */
+    public synchronized long getThrottledCount() {
+        return throttled;
+    }
+
+    /**
+     * @return average time requests waited for the rate limiter, in milliseconds
+     */
+    public synchronized double getAverageQueueWait() {
+        return requests == 0 ? 0 : totalWait/1e6/requests;
+    }
+
+    /**
+     * @return longest time a request waited for the rate limiter, in milliseconds
+     */
+    public synchronized double getMaxQueueWait() {
+        return maxWait/1e6;
+    }
+
+    /**
+     * @return requests per second over the last {@link #RATE_WINDOW} seconds
+     */
+    public synchronized double getRequestsPerSecond() {
+        advance(currentSecond());
+        long sum = 0;
+        for (int count: requestsPerSecond) {
+            sum += count;
+        }
+        return sum/(double) RATE_WINDOW;
+    }
+
+    private void advance(long second) {
+        for (long s = Math.max(lastSecond + 1, second - RATE_WINDOW + 1); s <= second; s++) {
+            requestsPerSecond[index(s)] = 0;
+        }
+        lastSecond = Math.max(lastSecond, second);
+    }
+
+    private static int index(long second) {
+        return (int) Math.floorMod(second, (long) RATE_WINDOW);
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s requests, %.2f/s, %s throttled, queue wait avg %.1f ms max %.1f ms",
+                requests, getRequestsPerSecond(), throttled, getAverageQueueWait(), getMaxQueueWait());
+    }
+}
@@ -0,0 +1,90 @@
+package bx.cryptogui.exchangeapi;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+
+/**
+ * Signs private requests of one API key. Thread safe: each thread reuses its own initialised {@link Mac}, so signing
+ * does not look up the algorithm or rebuild the key, and only allocates the returned String.
+ */
+public final class RequestSigner {
+
+    public static final String HMAC_SHA512 = "HmacSHA512";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final String algorithm;
+    private final SecretKeySpec secretKey;
+    private final NonceSequence nonces;
+    private final ThreadLocal<Mac> macs;
+    private final ThreadLocal<byte[]> digests;
+    private final ThreadLocal<char[]> hexDigits;
+
+    /**
+     * @param authorisation key and secret
+     * @param algorithm MAC algorithm, eg. {@link #HMAC_SHA512}
+     * @throws IllegalArgumentException the algorithm is not available or does not accept the secret
+     */
+    public RequestSigner(Authorisation authorisation, String algorithm) throws IllegalArgumentException {
+        this.algorithm = Objects.requireNonNull(algorithm);
+        this.secretKey = new SecretKeySpec(authorisation.getSecret().getBytes(StandardCharsets.UTF_8), algorithm);
+        this.nonces = NonceSequence.forKey(authorisation.getKey());
+        final int macLength = newMac().getMacLength();  // fails here rather than on the first request
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.digests = ThreadLocal.withInitial(() -> new byte[macLength]);
+        this.hexDigits = ThreadLocal.withInitial(() -> new char[macLength*2]);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return next nonce of the key, see {@link NonceSequence}
+     * @throws IllegalStateException the nonces could not be stored, see {@link NonceSequence#next()}
+     */
+    public long nextNonce() throws IllegalStateException {
+        return nonces.next();
+    }
+
+    /**
+     * @return lower case hex MAC of the data
+     */
+    public String sign(byte[] data) {
+        return sign(data, 0, data.length);
+    }
+
+    public String sign(FormEncoder form) {
+        return sign(form.getBuffer(), 0, form.size());
+    }
+
+    public String sign(byte[] data, int offset, int length) {
+        Mac mac = macs.get();
+        byte[] digest = digests.get();
+        mac.update(data, offset, length);
+        try {
+            mac.doFinal(digest, 0);     // also resets the Mac for the next request
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);     // digest is sized to the Mac
+        }
+        char[] hex = hexDigits.get();
+        for (int i = 0; i < digest.length; i++) {
+            hex[2*i] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hex[2*i + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Cannot sign with " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package bx.cryptogui.exchangeapi;
+
+import bx.cryptogui.data.TradeColumns;
+
+/**
+ * Receives pages of trades in order, as they arrive.
+ */
+@FunctionalInterface
+public interface TradePageSink {
+
+    /**
+     * @param trades one page, newest first
+     * @throws Exception stops the paging, and is thrown by the pager
+     */
+    void page(TradeColumns trades) throws Exception;
+}
@@ -0,0 +1,17 @@
+package bx.cryptogui.exchangeapi;
+
+/**
+ * Receives trades as they are decoded.
+ */
+@FunctionalInterface
+public interface TradeSink {
+
+    /**
+     * @param id trade id, -1 if the exchange does not give one
+     * @param time epoch seconds
+     * @param price price
+     * @param volume volume
+     * @param type {@link bx.cryptogui.data.Transaction#BUY}, {@link bx.cryptogui.data.Transaction#SELL} or -1
+     */
+    void trade(long id, long time, double price, double volume, int type);
+}
@@ -0,0 +1,139 @@
+package bx.cryptogui.exchangeapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default transport built on {@link HttpURLConnection}.
+ * <p>
+ *     The JDK keeps idle connections in a per-host keep-alive cache, but only when the response body has been read
+ *     to the end and the stream closed, and the connection is never {@link HttpURLConnection#disconnect()}ed. This
+ *     transport always drains the body (or the error body) so TLS sessions are reused between polls. The cache holds
+ *     at most {@code http.maxConnections} idle connections per host, set here if not given on the command line.
+ * </p>
+ * <p>HTTP/2 is not supported by {@link HttpURLConnection}, requests are HTTP/1.1.</p>
+ */
+public class URLConnectionTransport implements HTTPTransport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 20000;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    static {
+        // read once by the JDK keep-alive cache, must be set before the first connection
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        }
+        if (System.getProperty("http.keepAlive") == null) {
+            System.setProperty("http.keepAlive", "true");
+        }
+    }
+
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public URLConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout connect timeout in milliseconds, 0 for no timeout
+     * @param readTimeout read timeout in milliseconds, 0 for no timeout
+     */
+    public URLConnectionTransport(int connectTimeout, int readTimeout) throws IllegalArgumentException {
+        if (connectTimeout < 0 || readTimeout < 0) {
+            throw new IllegalArgumentException("Timeouts must not be negative");
+        }
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    public final int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public final int getReadTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public HTTPResponse get(URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = openConnection(url, "GET", headers);
+        return readResponse(connection);
+    }
+
+    @Override
+    public HTTPResponse post(URL url, Map<String, String> headers, byte[] body) throws IOException {
+        HttpURLConnection connection = openConnection(url, "POST", headers);
+        if (body != null && body.length > 0) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        return readResponse(connection);
+    }
+
+    @Override
+    public HTTPStream openStream(URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = openConnection(url, "GET", headers);
+        int code = connection.getResponseCode();
+        InputStream stream = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        Map<String, List<String>> headerFields = connection.getHeaderFields();
+        return new HTTPStream(headerFields == null ? Collections.emptyMap() : headerFields,
+                stream == null ? new ByteArrayInputStream(new byte[0]) : stream, code, connection.getResponseMessage());
+    }
+
+    protected HttpURLConnection openConnection(URL url, String method, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        if (headers != null) {
+            for (Map.Entry<String, String> entry: headers.entrySet()) {
+                connection.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Reads the whole body, from the error stream if the request failed, so the connection can be kept alive.
+     */
+    protected HTTPResponse readResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        String message = connection.getResponseMessage();
+        Map<String, List<String>> headers = connection.getHeaderFields();
+        InputStream stream = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        String body;
+        if (stream == null) {   // no body
+            body = "";
+        } else {
+            try (InputStream in = stream) {
+                body = new String(readFully(in), StandardCharsets.UTF_8);
+            }
+        }
+        return new HTTPResponse(headers == null ? Collections.emptyMap() : headers, body, code, message);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
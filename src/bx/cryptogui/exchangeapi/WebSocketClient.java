@@ -0,0 +1,261 @@
+package bx.cryptogui.exchangeapi;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal RFC 6455 WebSocket client for text message feeds (ws and wss), with no extensions.
+ * Messages are delivered on a reader thread owned by the client.
+ */
+public class WebSocketClient implements Closeable {
+
+    public static final int NORMAL_CLOSURE = 1000;
+    public static final int ABNORMAL_CLOSURE = 1006;
+
+    public interface Listener {
+        default void onOpen(WebSocketClient client) {}
+        void onMessage(WebSocketClient client, String message);
+        default void onClose(WebSocketClient client, int code, String reason) {}
+        default void onError(WebSocketClient client, Throwable exception) {}
+    }
+
+    private final URI uri;
+    private final Listener listener;
+    private final int idleTimeout;
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private Socket socket;
+    private OutputStream out;
+    private volatile boolean open = false;
+    private volatile boolean closing = false;
+
+    /**
+     * @param uri ws:// or wss:// uri
+     * @param listener listener
+     * @param idleTimeout milliseconds without data before a ping is sent, the connection fails if a second
+     *                    timeout passes without data
+     */
+    public WebSocketClient(URI uri, Listener listener, int idleTimeout) {
+        this.uri = uri;
+        this.listener = listener;
+        this.idleTimeout = idleTimeout;
+    }
+
+    public final URI getUri() {
+        return uri;
+    }
+
+    public final boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Opens the connection and performs the handshake, then starts the reader thread.
+     * @param connectTimeout connect timeout in milliseconds
+     * @throws IOException connection or handshake failed
+     */
+    public void connect(int connectTimeout) throws IOException {
+        String scheme = uri.getScheme();
+        boolean secure = "wss".equalsIgnoreCase(scheme);
+        if (!secure && !"ws".equalsIgnoreCase(scheme)) {
+            throw new IllegalArgumentException("Not a WebSocket uri: " + uri);
+        }
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        Socket plain = new Socket();
+        plain.connect(new InetSocketAddress(uri.getHost(), port), connectTimeout);
+        socket = secure ? ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(plain, uri.getHost(), port, true) : plain;
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(connectTimeout);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        try {
+            handshake(in, port, secure);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        socket.setSoTimeout(idleTimeout);
+        open = true;
+        Thread reader = new Thread(() -> readLoop(in), "websocket-" + uri.getHost());
+        reader.setDaemon(true);
+        reader.start();
+        listener.onOpen(this);
+    }
+
+    public void send(String message) throws IOException {
+        sendFrame(WebSocketCodec.OP_TEXT, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a close frame and closes the connection.
+     */
+    @Override
+    public void close() {
+        close(NORMAL_CLOSURE, "");
+    }
+
+    public void close(int code, String reason) {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        try {
+            if (open) {
+                sendFrame(WebSocketCodec.OP_CLOSE, WebSocketCodec.closePayload(code, reason));
+            }
+        } catch (IOException e) {
+            // closing anyway
+        } finally {
+            closeSocket();
+        }
+    }
+
+    /**
+     * Blocks until the connection is closed, by either side or by a failure.
+     */
+    public void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        return closed.await(timeout, unit);
+    }
+
+    private void handshake(InputStream in, int port, boolean secure) throws IOException {
+        String key = WebSocketCodec.newKey();
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        boolean defaultPort = port == (secure ? 443 : 80);
+        String request = "GET " + path + " HTTP/1.1\r\n" +
+                "Host: " + uri.getHost() + (defaultPort ? "" : ":" + port) + "\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Key: " + key + "\r\n" +
+                "Sec-WebSocket-Version: 13\r\n" +
+                "User-Agent: bx.cryptogui\r\n\r\n";
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        List<String> head = WebSocketCodec.readHttpHead(in);
+        if (head.isEmpty() || !head.get(0).contains(" 101")) {
+            throw new IOException("WebSocket upgrade refused: " + (head.isEmpty() ? "no response" : head.get(0)));
+        }
+        if (!WebSocketCodec.acceptKey(key).equals(WebSocketCodec.getHeader(head, "Sec-WebSocket-Accept"))) {
+            throw new IOException("Invalid Sec-WebSocket-Accept");
+        }
+    }
+
+    private void readLoop(InputStream in) {
+        int closeCode = ABNORMAL_CLOSURE;
+        String closeReason = "";
+        ByteArrayOutputStream fragments = new ByteArrayOutputStream();
+        int fragmentOpcode = -1;
+        boolean pinged = false;
+        try {
+            while (true) {
+                WebSocketCodec.Frame frame;
+                try {
+                    frame = WebSocketCodec.readFrame(in);
+                } catch (SocketTimeoutException e) {
+                    if (pinged) {
+                        throw new SocketTimeoutException("No data for " + 2*idleTimeout + " ms");
+                    }
+                    pinged = true;
+                    sendFrame(WebSocketCodec.OP_PING, new byte[0]);
+                    continue;
+                }
+                pinged = false;
+                switch (frame.opcode) {
+                    case WebSocketCodec.OP_PING:
+                        sendFrame(WebSocketCodec.OP_PONG, frame.payload);
+                        break;
+                    case WebSocketCodec.OP_PONG:
+                        break;
+                    case WebSocketCodec.OP_CLOSE:
+                        if (frame.payload.length >= 2) {
+                            closeCode = ((frame.payload[0] & 0xFF) << 8) | (frame.payload[1] & 0xFF);
+                            closeReason = new String(frame.payload, 2, frame.payload.length - 2, StandardCharsets.UTF_8);
+                        } else {
+                            closeCode = NORMAL_CLOSURE;
+                        }
+                        if (!closing) {     // echo close
+                            closing = true;
+                            sendFrame(WebSocketCodec.OP_CLOSE, WebSocketCodec.closePayload(closeCode, ""));
+                        }
+                        return;
+                    case WebSocketCodec.OP_CONTINUATION:
+                        if (fragmentOpcode == -1) {
+                            throw new IOException("Unexpected continuation frame");
+                        }
+                        fragments.write(frame.payload, 0, frame.payload.length);
+                        if (frame.fin) {
+                            if (fragmentOpcode == WebSocketCodec.OP_TEXT) {
+                                listener.onMessage(this, new String(fragments.toByteArray(), StandardCharsets.UTF_8));
+                            }
+                            fragments.reset();
+                            fragmentOpcode = -1;
+                        } else if (fragments.size() > WebSocketCodec.MAX_PAYLOAD) {
+                            throw new IOException("Message too large");
+                        }
+                        break;
+                    case WebSocketCodec.OP_TEXT:
+                    case WebSocketCodec.OP_BINARY:
+                        if (frame.fin) {
+                            if (frame.opcode == WebSocketCodec.OP_TEXT) {
+                                listener.onMessage(this, new String(frame.payload, StandardCharsets.UTF_8));
+                            }
+                        } else {
+                            fragmentOpcode = frame.opcode;
+                            fragments.reset();
+                            fragments.write(frame.payload, 0, frame.payload.length);
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown opcode " + frame.opcode);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closing) {
+                listener.onError(this, e);
+            } else {
+                closeCode = NORMAL_CLOSURE;
+            }
+        } finally {
+            closeSocket();
+            listener.onClose(this, closeCode, closeReason);
+            closed.countDown();
+        }
+    }
+
+    private synchronized void sendFrame(int opcode, byte[] payload) throws IOException {
+        if (out == null) {
+            throw new IOException("Not connected");
+        }
+        WebSocketCodec.writeFrame(out, opcode, payload, true);
+    }
+
+    private void closeSocket() {
+        open = false;
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package bx.cryptogui.exchangeapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * RFC 6455 framing shared by {@link WebSocketClient} and {@link ReplayWebSocketServer}.
+ */
+final class WebSocketCodec {
+
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    static final int MAX_PAYLOAD = 16*1024*1024;
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final SecureRandom random = new SecureRandom();
+
+    private WebSocketCodec() {}
+
+    static final class Frame {
+        final boolean fin;
+        final int opcode;
+        final byte[] payload;
+
+        Frame(boolean fin, int opcode, byte[] payload) {
+            this.fin = fin;
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+    }
+
+    static String newKey() {
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(sha1.digest((key + GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the status/request line and headers of the opening handshake, up to the blank line.
+     * @return lines, first is the status or request line
+     */
+    static List<String> readHttpHead(InputStream in) throws IOException {
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                throw new EOFException("Connection closed during handshake");
+            }
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                if (line.length() == 0) {
+                    return lines;
+                }
+                lines.add(line.toString());
+                line.setLength(0);
+            } else {
+                line.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * @return value of the header (case insensitive), or null
+     */
+    static String getHeader(List<String> head, String name) {
+        for (int i = 1; i < head.size(); i++) {
+            String line = head.get(i);
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name)) {
+                return line.substring(colon + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a single (final) frame. Client frames must be masked, server frames must not.
+     */
+    static void writeFrame(OutputStream out, int opcode, byte[] payload, boolean mask) throws IOException {
+        int length = payload.length;
+        byte[] header = new byte[14];
+        int headerLength = 2;
+        header[0] = (byte) (0x80 | opcode);
+        if (length < 126) {
+            header[1] = (byte) length;
+        } else if (length <= 0xFFFF) {
+            header[1] = 126;
+            header[2] = (byte) (length >> 8);
+            header[3] = (byte) length;
+            headerLength = 4;
+        } else {
+            header[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                header[2 + i] = (byte) ((long) length >> (56 - 8*i));
+            }
+            headerLength = 10;
+        }
+        byte[] data = payload;
+        if (mask) {
+            header[1] |= 0x80;
+            byte[] maskKey = new byte[4];
+            random.nextBytes(maskKey);
+            System.arraycopy(maskKey, 0, header, headerLength, 4);
+            headerLength += 4;
+            data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (payload[i] ^ maskKey[i & 3]);
+            }
+        }
+        out.write(header, 0, headerLength);
+        out.write(data);
+        out.flush();
+    }
+
+    static Frame readFrame(InputStream in) throws IOException {
+        int b0 = readByte(in);
+        int b1 = readByte(in);
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        boolean masked = (b1 & 0x80) != 0;
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = (readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) {
+                length = (length << 8) | readByte(in);
+            }
+        }
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new IOException("Frame too large: " + length);
+        }
+        byte[] maskKey = null;
+        if (masked) {
+            maskKey = new byte[4];
+            readFully(in, maskKey);
+        }
+        byte[] payload = new byte[(int) length];
+        readFully(in, payload);
+        if (maskKey != null) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= maskKey[i & 3];
+            }
+        }
+        return new Frame(fin, opcode, payload);
+    }
+
+    static byte[] closePayload(int code, String reason) {
+        byte[] reasonBytes = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + reasonBytes.length);
+        out.write(code >> 8);
+        out.write(code);
+        out.write(reasonBytes, 0, reasonBytes.length);
+        return out.toByteArray();
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Connection closed");
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read == -1) {
+                throw new EOFException("Connection closed");
+            }
+            offset += read;
+        }
+    }
+}
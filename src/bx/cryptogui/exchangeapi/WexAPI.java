@@ -2,7 +2,6 @@ package bx.cryptogui.exchangeapi;
 
 import bx.cryptogui.data.*;
 import bx.cryptogui.data.Currency;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -13,9 +12,13 @@ import java.util.function.Function;
 
 public class WexAPI extends ExchangeAPI {
 
+    public static final String DEFAULT_BASE_URL = "https://wex.nz";
     public static final String INVALID_API_KEY = "invalid api key";
     public static final String INVALID_SIGN = "invalid sign";
 
+    private static final String[] TRADE_KEYS = {"tid", "timestamp", "price", "amount", "type"};
+    private static final String[] TRADE_TYPES = {"bid", "ask"};
+
     public WexAPI() {
         super();
     }
@@ -33,6 +36,11 @@ public class WexAPI extends ExchangeAPI {
         return Exchange.WEX;
     }
 
+    @Override
+    protected String getDefaultBaseUrl() {
+        return DEFAULT_BASE_URL;
+    }
+
     @Override
     public String convertCurrencyPair(CurrencyPair currencyPair) {
         if (currencyPair.equals(CurrencyPair.BTC_USD)) {
@@ -49,7 +57,8 @@ public class WexAPI extends ExchangeAPI {
     public Ticker getTicker(CurrencyPair currencyPair) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
         if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://wex.nz/api/3/ticker/" + pairString));
+        HTTPResponse response = getCachedRequest(new URL(getBaseUrl() + "/api/3/ticker/" + pairString),
+                HTTPCache.Endpoint.TICKER);
         if (response.getResponseCode() == 200) {
             JSONObject json = response.getJSONObject().getJSONObject(pairString);
             long time = json.getLong("updated");
@@ -68,62 +77,93 @@ public class WexAPI extends ExchangeAPI {
     @Override
     public List<Order>[] getOrderBook(CurrencyPair currencyPair) throws IOException, HTTPException {
         List<Order>[] orders = new List[] {new ArrayList<Order>(), new ArrayList<Order>()};
+        if (!streamOrderBook(currencyPair, orderListSink(orders, TradePlatform.of(Exchange.WEX, currencyPair)))) {
+            return null;
+        }
+        return orders;
+    }
+
+    @Override
+    public boolean streamOrderBook(CurrencyPair currencyPair, PriceLevelSink sink) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
-        if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://wex.nz/api/3/depth/" + pairString + "?limit=200"));
-        if (response.getResponseCode() == 200) {
-            JSONObject json = response.getJSONObject();
-            JSONArray asks = json.getJSONObject(pairString).getJSONArray("asks");
-            JSONArray bids = json.getJSONObject(pairString).getJSONArray("bids");
-            for (int i = 0; i < bids.length(); i++) {
-                JSONArray array = bids.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[0].add(new Order(-1, -1, price, volume, true, new TradePlatform(Exchange.WEX, currencyPair)));
-            }
-            for (int i = 0; i < asks.length(); i++) {
-                JSONArray array = asks.getJSONArray(i);
-                double price = array.getDouble(0);
-                double volume = array.getDouble(1);
-                orders[1].add(new Order(-1, -1, price, volume, false, new TradePlatform(Exchange.WEX, currencyPair)));
+        if (pairString == null) return false;
+        try (HTTPStream response = openCachedStream(new URL(getBaseUrl() + "/api/3/depth/" + pairString + "?limit=200"),
+                HTTPCache.Endpoint.ORDER_BOOK)) {
+            if (response.getResponseCode() == 200) {
+                JSONStreamReader reader = new JSONStreamReader(response.getBody());
+                String[] pairKey = {pairString};
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.selectName(pairKey) == 0) {
+                        readBidsAndAsks(reader, sink);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                throw new HTTPException(response);
             }
-        } else {
-            throw new HTTPException(response);
         }
-        return orders;
+        return true;
     }
 
     @Override
     public List<Transaction> getTrades(CurrencyPair currencyPair) throws IOException, HTTPException {
         List<Transaction> trades = new ArrayList<>();
+        if (!streamTrades(currencyPair, tradeListSink(trades, TradePlatform.of(Exchange.WEX, currencyPair)))) {
+            return null;
+        }
+        return trades;
+    }
+
+    @Override
+    public boolean streamTrades(CurrencyPair currencyPair, TradeSink sink) throws IOException, HTTPException {
         String pairString = convertCurrencyPair(currencyPair);
-        if (pairString == null) return null;
-        HTTPResponse response = getRequest(new URL("https://wex.nz/api/3/trades/" + pairString + "?limit=5000"));
-        if (response.getResponseCode() == 200) {
-            JSONObject json = response.getJSONObject();
-            JSONArray array = json.getJSONArray(pairString);
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject transaction = array.getJSONObject(i);
-                long id = transaction.getLong("tid");
-                long time = transaction.getLong("timestamp");
-                double price = transaction.getDouble("price");
-                double volume = transaction.getDouble("amount");
-                int type = transaction.getString("type").equals("bid") ? 0 : 1;
-                trades.add(new Transaction(id, time, price, volume, type, new TradePlatform(Exchange.WEX, currencyPair)));
+        if (pairString == null) return false;
+        // not cached, the trades change with every poll
+        try (HTTPStream response = openStream(new URL(getBaseUrl() + "/api/3/trades/" + pairString + "?limit=5000"))) {
+            if (response.getResponseCode() == 200) {
+                JSONStreamReader reader = new JSONStreamReader(response.getBody());
+                String[] pairKey = {pairString};
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.selectName(pairKey) != 0) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        long id = -1, time = -1;
+                        double price = 0, volume = 0;
+                        int type = -1;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.selectName(TRADE_KEYS)) {
+                                case 0: id = reader.nextLong(); break;
+                                case 1: time = reader.nextLong(); break;
+                                case 2: price = reader.nextDouble(); break;
+                                case 3: volume = reader.nextDouble(); break;
+                                case 4: type = reader.selectString(TRADE_TYPES) == 0 ? 0 : 1; break;
+                                default: reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        sink.trade(id, time, price, volume, type);
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+            } else {
+                throw new HTTPException(response);
             }
-        } else {
-            throw new HTTPException(response);
         }
-        return trades;
+        return true;
     }
 
     @Override
-    public Map<TradePlatform, List<Transaction>> getAllTrades() throws IOException, HTTPException {
-        Map<TradePlatform, List<Transaction>> trades = new HashMap<>();
-        trades.put(TradePlatform.WEX_BTC_USD, getTrades(CurrencyPair.BTC_USD));
-        trades.put(new TradePlatform(Exchange.WEX, CurrencyPair.LTC_USD), getTrades(CurrencyPair.LTC_USD));
-        trades.put(new TradePlatform(Exchange.WEX, CurrencyPair.ETH_USD), getTrades(CurrencyPair.ETH_USD));
-        return trades;
+    public Map<TradePlatform, List<Transaction>> getAllTrades() throws RequestException, InterruptedException {
+        return getAllTrades(CurrencyPair.BTC_USD, CurrencyPair.LTC_USD, CurrencyPair.ETH_USD);
     }
 
     @Override
@@ -131,15 +171,15 @@ public class WexAPI extends ExchangeAPI {
         if (!isAuthorised()) {
             throw new IllegalArgumentException("Not authenticated");
         }
-        Map<String, String> parameters = new HashMap<>();
-        parameters.put("method", "getInfo");
-        parameters.put("nonce", String.valueOf(getNonce()));
+        FormEncoder parameters = new FormEncoder()
+                .add("method", "getInfo")
+                .add("nonce", getNonce());
 
         Map<String, String> headers = new HashMap<>();
         headers.put("Key", getKey());
-        headers.put("Sign", getSignature(urlEncode(parameters)));
+        headers.put("Sign", getSignature(parameters));
 
-        HTTPResponse response = postRequest(new URL("https://wex.nz/tapi"), headers, parameters);
+        HTTPResponse response = postRequest(new URL(getBaseUrl() + "/tapi"), headers, parameters);
         Map<Currency, Double> balance = new HashMap<>();
         if (response.getResponseCode() >= 400) {
             System.err.println("response: " + response);
@@ -37,15 +37,26 @@ public class APIManager {
         return Collections.unmodifiableList(new ArrayList<>(exchanges.values()));
     }
 
+    /**
+     * Streams the ticker and order book of the platform if its exchange has a {@link MarketDataFeed}, otherwise polls
+     * them once over REST.
+     */
     public void startRetrieving(TradePlatform platform) {
         APIRetriever retriever = exchanges.get(platform.getExchange());
         retriever.setCurrencyPair(platform.getCurrencyPair());
-        retriever.restart();
+        if (!retriever.startStreaming()) {
+            retriever.restart();
+        }
     }
 
 
     public class APIRetriever extends Service<Void> {
 
+        /**
+         * Levels kept per side of the displayed order book.
+         */
+        public static final int ORDER_BOOK_DEPTH = 200;
+
         private ReadOnlyLongWrapper lastUpdated = new ReadOnlyLongWrapper(Long.MIN_VALUE);
         public final long getLastUpdated() {
             return lastUpdated.get();
@@ -62,20 +73,27 @@ public class APIManager {
             return ticker.getReadOnlyProperty();
         }
 
-        private ReadOnlyObjectWrapper<List<Order>> bidOrders = new ReadOnlyObjectWrapper<>();
-        public final List<Order> getBidOrders() {
-            return bidOrders.get();
+        private ReadOnlyObjectWrapper<OrderBook> orderBook = new ReadOnlyObjectWrapper<>();
+        public final OrderBook getOrderBook() {
+            return orderBook.get();
         }
-        public final ReadOnlyObjectProperty<List<Order>> bidOrdersProperty() {
-            return bidOrders.getReadOnlyProperty();
+        /**
+         * @return order book of the current platform, replaced when the platform changes and otherwise changed in
+         * place on the FX thread, see {@link #orderBookVersionProperty()}
+         */
+        public final ReadOnlyObjectProperty<OrderBook> orderBookProperty() {
+            return orderBook.getReadOnlyProperty();
         }
 
-        private ReadOnlyObjectWrapper<List<Order>> askOrders = new ReadOnlyObjectWrapper<>();
-        public final List<Order> getAskOrders() {
-            return askOrders.get();
+        private ReadOnlyLongWrapper orderBookVersion = new ReadOnlyLongWrapper(0);
+        public final long getOrderBookVersion() {
+            return orderBookVersion.get();
         }
-        public final ReadOnlyObjectProperty<List<Order>> askOrdersProperty() {
-            return askOrders.getReadOnlyProperty();
+        /**
+         * @return incremented every time the order book changed
+         */
+        public final ReadOnlyLongProperty orderBookVersionProperty() {
+            return orderBookVersion.getReadOnlyProperty();
         }
 
         private ObjectProperty<CurrencyPair> currencyPair = new SimpleObjectProperty<>();
@@ -89,8 +107,32 @@ public class APIManager {
             return currencyPair;
         }
 
+        private ReadOnlyBooleanWrapper streamConnected = new ReadOnlyBooleanWrapper(false);
+        public final boolean isStreamConnected() {
+            return streamConnected.get();
+        }
+        public final ReadOnlyBooleanProperty streamConnectedProperty() {
+            return streamConnected.getReadOnlyProperty();
+        }
+
+        private ReadOnlyObjectWrapper<Throwable> feedError = new ReadOnlyObjectWrapper<>();
+        public final Throwable getFeedError() {
+            return feedError.get();
+        }
+        /**
+         * @return last failure of the market data feed, the feed reconnects by itself
+         */
+        public final ReadOnlyObjectProperty<Throwable> feedErrorProperty() {
+            return feedError.getReadOnlyProperty();
+        }
+
         private final Exchange exchange;
         private final ExchangeAPI api;
+        private MarketDataFeed feed;
+        // hand over from the network threads to the FX thread, guarded by pendingLock
+        private final Object pendingLock = new Object();
+        private OrderBook pendingBook;
+        private boolean pendingChanged = false;
 
         public APIRetriever(Exchange exchange, ExchangeAPI api) {
             this.exchange = Objects.requireNonNull(exchange);
@@ -104,15 +146,100 @@ public class APIManager {
                 protected Void call() throws Exception {
                     CurrencyPair pair = getCurrencyPair();
                     final Ticker newTicker = api.getTicker(pair);
-                    final List<Order>[] orderBook = api.getOrderBook(pair);
+                    OrderBook book = new OrderBook(TradePlatform.of(exchange, pair));
+                    if (api.streamOrderBook(pair, book::set)) {
+                        postOrderBook(book);
+                    }
                     Platform.runLater(() -> ticker.set(newTicker));
-                    Platform.runLater(() -> bidOrders.set(orderBook[0]));
-                    Platform.runLater(() -> askOrders.set(orderBook[1]));
                     Platform.runLater(() -> lastUpdated.set(newTicker.getTime()));
                     return null;
                 }
             };
         }
+
+        /**
+         * Starts (or keeps) streaming the current currency pair, replacing the feed of another pair.
+         * @return false if the exchange has no market data feed for the pair
+         */
+        public boolean startStreaming() {
+            CurrencyPair pair = getCurrencyPair();
+            if (feed != null) {
+                if (feed.getTradePlatform().getCurrencyPair().equals(pair) && feed.isRunning()) {
+                    return true;
+                }
+                stopStreaming();
+            }
+            feed = MarketDataFeed.create(api, pair, new MarketDataListener() {
+                @Override
+                public void tickerUpdated(Ticker newTicker) {
+                    Platform.runLater(() -> {
+                        ticker.set(newTicker);
+                        lastUpdated.set(newTicker.getTime());
+                    });
+                }
+                @Override
+                public void orderBookUpdated(OrderBook book) {
+                    postOrderBook(book);
+                }
+                @Override
+                public void connectionChanged(boolean connected) {
+                    Platform.runLater(() -> streamConnected.set(connected));
+                }
+                @Override
+                public void feedFailed(Throwable exception) {
+                    Platform.runLater(() -> feedError.set(exception));
+                }
+            });
+            if (feed == null) {
+                return false;
+            }
+            feed.start();
+            return true;
+        }
+
+        public void stopStreaming() {
+            if (feed != null) {
+                feed.stop();
+                feed = null;
+            }
+        }
+
+        /**
+         * Copies the best levels of the book and schedules them to be copied into {@link #getOrderBook()}. Books
+         * posted before the FX thread caught up are coalesced.
+         */
+        private void postOrderBook(OrderBook book) {
+            boolean schedule;
+            synchronized (pendingLock) {
+                if (pendingBook == null || !pendingBook.getTradePlatform().equals(book.getTradePlatform())) {
+                    pendingBook = new OrderBook(book.getTradePlatform());
+                }
+                pendingBook.copyFrom(book, ORDER_BOOK_DEPTH);
+                schedule = !pendingChanged;
+                pendingChanged = true;
+            }
+            if (schedule) {
+                Platform.runLater(this::applyPendingOrderBook);
+            }
+        }
+
+        private void applyPendingOrderBook() {
+            synchronized (pendingLock) {
+                if (!pendingChanged) {
+                    return;
+                }
+                OrderBook book = getOrderBook();
+                if (book == null || !book.getTradePlatform().equals(pendingBook.getTradePlatform())) {
+                    book = new OrderBook(pendingBook.getTradePlatform());
+                    book.copyFrom(pendingBook, ORDER_BOOK_DEPTH);
+                    orderBook.set(book);
+                } else {
+                    book.copyFrom(pendingBook, ORDER_BOOK_DEPTH);
+                }
+                pendingChanged = false;
+            }
+            orderBookVersion.set(getOrderBookVersion() + 1);
+        }
     }
 
 }
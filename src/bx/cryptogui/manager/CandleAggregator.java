@@ -0,0 +1,320 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.CalendarBuckets;
+import bx.cryptogui.control.CandleStickValues;
+import bx.cryptogui.data.CandleColumns;
+import bx.cryptogui.data.ChartData;
+import javafx.collections.FXCollections;
+import javafx.scene.chart.XYChart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * One pass kernels merging trades or finer candles into candles of a chart interval. Each carries the running open,
+ * high, low, close, volume and quote volume of the current interval in locals and writes each finished candle into
+ * reused {@link CandleColumns}, allocating nothing per trade or candle. Intervals without trades are flat at the last
+ * price. Chart series are built from the columns at the end, see {@link #toSeries}.
+ * <p>
+ *     Intervals follow the wall clock of a time zone, see {@link CalendarBuckets}, so a day is 23 or 25 hours long
+ *     when the clocks change. Without one, the system default zone's.
+ * </p>
+ * <p>
+ *     Inputs of at least {@link #PARALLEL_THRESHOLD} are aggregated on a {@link ForkJoinPool}: the intervals are
+ *     split in halves until a chunk has at most {@link #CHUNK_SIZE} inputs, each chunk writes the candles of its own
+ *     intervals into their final places. A chunk starts on an interval boundary so no candle spans two chunks, and
+ *     the only state carried across a boundary, the last price for flat intervals, is the input before the chunk.
+ *     The calculator does so for charts of long windows at 1 minute candles, and each interval derived with them.
+ * </p>
+ */
+public class CandleAggregator {
+
+    /** Most inputs aggregated by one task of the pool */
+    public static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Inputs from which the common pool is used, if it has more than one thread: two chunks, about 3 months of 1
+     * minute candles. Splitting costs tens of microseconds, a chunk of candles takes about half a millisecond.
+     */
+    public static final int PARALLEL_THRESHOLD = 2*CHUNK_SIZE;
+
+    private CandleAggregator() {}
+
+    /**
+     * Aggregates on the common pool if there are enough trades, see {@link #PARALLEL_THRESHOLD}.
+     * @param times trade times, ascending
+     * @param from index of the first trade
+     * @param to index after the last trade
+     * @param startTime start of the first interval, at or before the first trade
+     * @param interval seconds per candle
+     * @param untilTime intervals are added until the one before the one containing this time, eg. now
+     * @param out cleared, then filled with a candle per interval
+     */
+    public static void fromTrades(long[] times, double[] prices, double[] volumes, int from, int to, long startTime,
+                                  int interval, long untilTime, CandleColumns out) {
+        fromTrades(times, prices, volumes, from, to, startTime, interval, untilTime, out, defaultPool(to - from));
+    }
+
+    /**
+     * @param pool pool aggregating the chunks, null to aggregate on this thread
+     * @see #fromTrades(long[], double[], double[], int, int, long, int, long, CandleColumns)
+     */
+    public static void fromTrades(long[] times, double[] prices, double[] volumes, int from, int to, long startTime,
+                                  int interval, long untilTime, CandleColumns out, ForkJoinPool pool) {
+        fromTrades(times, prices, volumes, from, to, startTime, interval, untilTime, out, pool,
+                CalendarBuckets.local());
+    }
+
+    /**
+     * @param buckets where the intervals start
+     * @see #fromTrades(long[], double[], double[], int, int, long, int, long, CandleColumns, ForkJoinPool)
+     */
+    public static void fromTrades(long[] times, double[] prices, double[] volumes, int from, int to, long startTime,
+                                  int interval, long untilTime, CandleColumns out, ForkJoinPool pool,
+                                  CalendarBuckets buckets) {
+        out.clear();
+        if (from < to) {
+            run(new TradeKernel(times, prices, volumes, from, to, out), startTime, interval, buckets,
+                    times[to - 1], untilTime, pool);
+        }
+    }
+
+    /**
+     * Aggregates on the common pool if there are enough candles, see {@link #PARALLEL_THRESHOLD}.
+     * @param data candles of an interval dividing the interval
+     * @param from index of the first candle
+     * @param to index after the last candle
+     * @param startTime start of the first interval, at or before the first candle
+     * @param interval seconds per candle
+     * @param untilTime intervals are added until the one before the one containing this time, eg. now
+     * @param out cleared, then filled with a candle per interval
+     */
+    public static void fromCandles(ChartData data, int from, int to, long startTime, int interval, long untilTime,
+                                   CandleColumns out) {
+        fromCandles(data, from, to, startTime, interval, untilTime, out, defaultPool(to - from));
+    }
+
+    /**
+     * @param pool pool aggregating the chunks, null to aggregate on this thread
+     * @see #fromCandles(ChartData, int, int, long, int, long, CandleColumns)
+     */
+    public static void fromCandles(ChartData data, int from, int to, long startTime, int interval, long untilTime,
+                                   CandleColumns out, ForkJoinPool pool) {
+        fromCandles(data, from, to, startTime, interval, untilTime, out, pool, CalendarBuckets.local());
+    }
+
+    /**
+     * @param buckets where the intervals start
+     * @see #fromCandles(ChartData, int, int, long, int, long, CandleColumns, ForkJoinPool)
+     */
+    public static void fromCandles(ChartData data, int from, int to, long startTime, int interval, long untilTime,
+                                   CandleColumns out, ForkJoinPool pool, CalendarBuckets buckets) {
+        out.clear();
+        if (from < to) {
+            run(new CandleKernel(data, from, to, out), startTime, interval, buckets, data.getTime(to - 1), untilTime,
+                    pool);
+        }
+    }
+
+    /**
+     * @return the common pool if there are enough inputs to split, see {@link #PARALLEL_THRESHOLD}, else null to
+     * aggregate on the calling thread
+     */
+    public static ForkJoinPool defaultPool(int inputs) {
+        return inputs >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1 ?
+                ForkJoinPool.commonPool() : null;
+    }
+
+    /**
+     * Adds every interval up to the last input, and on until the one before the one containing untilTime, then
+     * aggregates them all. The candles' times are the starts of the intervals until then.
+     */
+    private static void run(Kernel kernel, long startTime, int interval, CalendarBuckets buckets, long lastTime,
+                            long untilTime, ForkJoinPool pool) {
+        final CandleColumns out = kernel.out;
+        long intervalStartTime = startTime;
+        long intervalEndTime = buckets.next(intervalStartTime, interval);
+        do {
+            out.add(intervalStartTime, 0, 0, 0, 0, 0, 0);
+            intervalStartTime = intervalEndTime;
+            intervalEndTime = buckets.next(intervalStartTime, interval);
+        } while (intervalStartTime <= lastTime || intervalEndTime <= untilTime);
+        kernel.endTime = intervalStartTime;
+        final int intervals = out.size();
+        if (pool == null) {
+            kernel.aggregate(0, intervals);
+        } else {
+            pool.invoke(new Chunk(kernel, 0, intervals));
+        }
+    }
+
+    /**
+     * Aggregates a range of intervals, halving it while it has too many inputs.
+     */
+    private static final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Kernel kernel;
+        private final int first;
+        private final int end;
+
+        private Chunk(Kernel kernel, int first, int end) {
+            this.kernel = kernel;
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first > 1 && kernel.indexOf(end) - kernel.indexOf(first) > CHUNK_SIZE) {
+                final int middle = (first + end) >>> 1;
+                invokeAll(new Chunk(kernel, first, middle), new Chunk(kernel, middle, end));
+            } else {
+                kernel.aggregate(first, end);
+            }
+        }
+    }
+
+    private abstract static class Kernel {
+
+        final int from;
+        final int to;
+        final CandleColumns out;
+        long endTime;   // end of the last interval
+
+        Kernel(int from, int to, CandleColumns out) {
+            this.from = from;
+            this.to = to;
+            this.out = out;
+        }
+
+        final long intervalStart(int interval) {
+            return interval < out.size() ? out.getTime(interval) : endTime;
+        }
+
+        /**
+         * @return index of the first input at or after the start of an interval
+         */
+        abstract int indexOf(int interval);
+
+        /**
+         * Sets the candles of the intervals from first, inclusive, to end, exclusive.
+         */
+        abstract void aggregate(int first, int end);
+    }
+
+    private static final class TradeKernel extends Kernel {
+
+        private final long[] times;
+        private final double[] prices;
+        private final double[] volumes;
+
+        TradeKernel(long[] times, double[] prices, double[] volumes, int from, int to, CandleColumns out) {
+            super(from, to, out);
+            this.times = times;
+            this.prices = prices;
+            this.volumes = volumes;
+        }
+
+        @Override
+        int indexOf(int interval) {
+            final long time = intervalStart(interval);
+            int low = from, high = to;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (times[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        void aggregate(int first, int end) {
+            int i = indexOf(first);
+            final int last = indexOf(end);
+            double lastPrice = prices[i > from ? i - 1 : from];
+            for (int k = first; k < end; k++) {
+                final long intervalEndTime = intervalStart(k + 1);
+                if (i < last && times[i] < intervalEndTime) {
+                    final double open = prices[i];
+                    double high = open, low = open, volume = 0, quoteVolume = 0;
+                    for (; i < last && times[i] < intervalEndTime; i++) {
+                        final double price = prices[i], tradeVolume = volumes[i];
+                        high = Math.max(high, price);
+                        low = Math.min(low, price);
+                        volume += tradeVolume;
+                        quoteVolume += price*tradeVolume;
+                        lastPrice = price;
+                    }
+                    out.set(k, open, high, low, lastPrice, volume, quoteVolume);
+                } else {
+                    out.set(k, lastPrice, lastPrice, lastPrice, lastPrice, 0, 0);
+                }
+            }
+        }
+    }
+
+    private static final class CandleKernel extends Kernel {
+
+        private final ChartData data;
+
+        CandleKernel(ChartData data, int from, int to, CandleColumns out) {
+            super(from, to, out);
+            this.data = data;
+        }
+
+        @Override
+        int indexOf(int interval) {
+            return Math.max(from, Math.min(to, data.indexOf(intervalStart(interval))));
+        }
+
+        @Override
+        void aggregate(int first, int end) {
+            int i = indexOf(first);
+            final int last = indexOf(end);
+            double lastPrice = i > from ? data.getClose(i - 1) : data.getOpen(from);
+            for (int k = first; k < end; k++) {
+                final long intervalEndTime = intervalStart(k + 1);
+                if (i < last && data.getTime(i) < intervalEndTime) {
+                    final double open = data.getOpen(i);
+                    double high = data.getHigh(i), low = data.getLow(i), volume = 0, quoteVolume = 0;
+                    for (; i < last && data.getTime(i) < intervalEndTime; i++) {
+                        high = Math.max(high, data.getHigh(i));
+                        low = Math.min(low, data.getLow(i));
+                        volume += data.getVolume(i);
+                        quoteVolume += data.getQuoteVolume(i);
+                        lastPrice = data.getClose(i);
+                    }
+                    out.set(k, open, high, low, lastPrice, volume, quoteVolume);
+                } else {
+                    out.set(k, lastPrice, lastPrice, lastPrice, lastPrice, 0, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the price series, open as y value and {@link CandleStickValues} as extra value, and the volume series,
+     * quote volume as extra value
+     */
+    @SuppressWarnings("unchecked")
+    public static XYChart.Series<Number, Number>[] toSeries(CandleColumns candles) {
+        final int size = candles.size();
+        List<XYChart.Data<Number, Number>> prices = new ArrayList<>(size);
+        List<XYChart.Data<Number, Number>> volumes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final long time = candles.getTime(i);
+            prices.add(new XYChart.Data<>(time, candles.getOpen(i),
+                    new CandleStickValues(candles.getClose(i), candles.getHigh(i), candles.getLow(i))));
+            volumes.add(new XYChart.Data<>(time, candles.getVolume(i), candles.getQuoteVolume(i)));
+        }
+        return (XYChart.Series<Number, Number>[]) new XYChart.Series<?, ?>[] {
+                new XYChart.Series<>(FXCollections.observableList(prices)),
+                new XYChart.Series<>(FXCollections.observableList(volumes))};
+    }
+}
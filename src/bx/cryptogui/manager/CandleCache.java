@@ -0,0 +1,277 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.CalendarBuckets;
+import bx.cryptogui.data.CandleColumns;
+import bx.cryptogui.data.TradeColumns;
+import bx.cryptogui.data.TradePlatform;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Candles calculated for charts, by trade platform, interval and time window, so going back to an interval only
+ * builds the chart series again instead of reading and merging the window. A chart up to now stays up to date: the
+ * writer offers each committed write to its {@link LiveCandles} and folds them in after each run, whether shown or
+ * not. Late trades, older than the open candle, are only seen after the platform is invalidated and read again.
+ * <p>
+ *     An entry serves any window it covers, of the same end, the candles before the window are dropped when it is
+ *     taken. The least recently taken entries are dropped beyond the capacity.
+ * </p>
+ * <p>Thread safe.</p>
+ */
+public class CandleCache {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final Map<Key, Entry> entries;
+
+    public CandleCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity most entries kept
+     */
+    public CandleCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CandleCache.Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param minTime start of the window, Long.MIN_VALUE for no limit
+     * @param maxTime end of the window, Long.MAX_VALUE for now
+     * @return the entry covering the window, null if there is none
+     */
+    public synchronized Entry get(TradePlatform tradePlatform, int interval, long minTime, long maxTime) {
+        Entry entry = entries.get(new Key(tradePlatform, interval, maxTime));
+        return entry != null && entry.getMinTime() <= minTime ? entry : null;
+    }
+
+    /**
+     * Adds an entry, replacing the one of the same platform, interval and end.
+     */
+    public synchronized void put(Entry entry) {
+        entries.put(new Key(entry.tradePlatform, entry.interval, entry.maxTime), entry);
+    }
+
+    /**
+     * Drops the entries of a trade platform, eg. before it is read again.
+     */
+    public synchronized void invalidate(TradePlatform tradePlatform) {
+        for (Iterator<Key> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().tradePlatform == tradePlatform) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized boolean contains(Entry entry) {
+        return entries.get(new Key(entry.tradePlatform, entry.interval, entry.maxTime)) == entry;
+    }
+
+    /**
+     * @return the entries, least recently taken first
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Passes a committed write to the entries of its trade platform up to now, see {@link LiveCandles#offer}.
+     */
+    public void offer(TradePlatform tradePlatform, TradeColumns trades) {
+        for (Entry entry: getEntries()) {
+            if (entry.tradePlatform == tradePlatform) {
+                entry.offer(trades);
+            }
+        }
+    }
+
+    /**
+     * Candles of a trade platform at an interval over a time window, and the most recent trades. Lock it to read
+     * several values consistently.
+     */
+    public static final class Entry {
+
+        private final TradePlatform tradePlatform;
+        private final int interval;
+        private final long maxTime;
+        private final CandleColumns candles;
+        private final TradeColumns recentTrades;
+        private final int recentTradesCount;
+        private final LiveCandles live;     // null unless up to now
+        private long minTime;
+
+        /**
+         * @param minTime start of the window the candles cover, Long.MIN_VALUE for no limit
+         * @param maxTime end of the window, Long.MAX_VALUE for now
+         * @param buckets where the intervals start, to open new candles up to now
+         * @param candles candles of the window, owned by the entry from now on
+         * @param recentTrades most recent trades of the window, ordered by time ascending, owned by the entry too
+         * @param recentTradesCount most recent trades kept as new ones are folded in
+         */
+        public Entry(TradePlatform tradePlatform, int interval, long minTime, long maxTime, CalendarBuckets buckets,
+                     CandleColumns candles, TradeColumns recentTrades, int recentTradesCount) {
+            this.tradePlatform = Objects.requireNonNull(tradePlatform);
+            this.interval = interval;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.candles = candles;
+            this.recentTrades = recentTrades;
+            this.recentTradesCount = recentTradesCount;
+            this.live = maxTime == Long.MAX_VALUE ?
+                    LiveCandles.of(tradePlatform, interval, buckets, candles, recentTrades) : null;
+        }
+
+        public final TradePlatform getTradePlatform() {
+            return tradePlatform;
+        }
+
+        public final int getInterval() {
+            return interval;
+        }
+
+        public synchronized long getMinTime() {
+            return minTime;
+        }
+
+        public final long getMaxTime() {
+            return maxTime;
+        }
+
+        /**
+         * @return the candles, only changed while the entry is locked
+         */
+        public final CandleColumns getCandles() {
+            return candles;
+        }
+
+        /**
+         * @return copy of the most recent trades, ordered by time ascending
+         */
+        public synchronized TradeColumns copyRecentTrades() {
+            TradeColumns copy = new TradeColumns(tradePlatform, recentTrades.size());
+            copy.addAll(recentTrades);
+            return copy;
+        }
+
+        /**
+         * @return true if new trades are folded into the candles
+         */
+        public final boolean isLive() {
+            return live != null;
+        }
+
+        /**
+         * @return updates folded into the candles so far, see {@link LiveCandles.Update#getNumber()}
+         */
+        public synchronized int getUpdates() {
+            return live == null ? 0 : live.getUpdates();
+        }
+
+        void offer(TradeColumns trades) {
+            if (live != null) {
+                live.offer(trades);
+            }
+        }
+
+        /**
+         * Folds the trades offered since into the candles.
+         * @return the candles changed, null if none
+         */
+        public synchronized LiveCandles.Update fold() {
+            if (live == null) {
+                return null;
+            }
+            LiveCandles.Update update = live.drain();
+            apply(update);
+            return update;
+        }
+
+        /**
+         * Brings the candles up to a time and drops those ending before a window starts, for a chart of the window.
+         * @param minTime start of the window, covered by the entry
+         * @param currentTime time the candles are extended to, see {@link LiveCandles#advance}
+         */
+        public synchronized void take(long minTime, long currentTime) {
+            if (live != null) {
+                apply(live.drain());
+                apply(live.advance(currentTime));
+            }
+            if (minTime > this.minTime) {
+                int count = 0;
+                while (count < candles.size() - 1 && candles.getTime(count + 1) <= minTime) {
+                    count++;
+                }
+                candles.removeFirst(count);
+                if (live != null) {
+                    live.dropFirst(count);
+                }
+                this.minTime = minTime;
+            }
+        }
+
+        private void apply(LiveCandles.Update update) {
+            if (update == null) {
+                return;
+            }
+            final CandleColumns changed = update.getCandles();
+            for (int i = 0, size = changed.size(); i < size; i++) {
+                final int index = update.getFrom() + i;
+                if (index < candles.size()) {
+                    candles.set(index, changed.getTime(i), changed.getOpen(i), changed.getHigh(i),
+                            changed.getLow(i), changed.getClose(i), changed.getVolume(i), changed.getQuoteVolume(i));
+                } else {
+                    candles.add(changed.getTime(i), changed.getOpen(i), changed.getHigh(i), changed.getLow(i),
+                            changed.getClose(i), changed.getVolume(i), changed.getQuoteVolume(i));
+                }
+            }
+            recentTrades.addAll(update.getTrades());
+            final int drop = recentTrades.size() - recentTradesCount;
+            if (drop > 0) {
+                recentTrades.retain(i -> i >= drop);
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final TradePlatform tradePlatform;
+        private final int interval;
+        private final long maxTime;
+
+        private Key(TradePlatform tradePlatform, int interval, long maxTime) {
+            this.tradePlatform = tradePlatform;
+            this.interval = interval;
+            this.maxTime = maxTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return tradePlatform == key.tradePlatform && interval == key.interval && maxTime == key.maxTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tradePlatform.getId(), interval, maxTime);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.CalendarBuckets;
+import bx.cryptogui.data.ChartData;
+import bx.cryptogui.data.TradePlatform;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneOffset;
+import java.util.function.LongConsumer;
+
+/**
+ * Candles of each trade table stored at several resolutions ({@link #LEVELS}), so a chart of any interval reads at
+ * most a few candles per bar.
+ * <p>
+ *     The 1 minute level is the rollup {@link SchemaManager#updateRollup} keeps in step with the trades. Every coarser
+ *     level is built from the level below it and is refreshed apart from the writes: writes only widen the level's
+ *     dirty time range in {@link #LEVELS_TABLE} ({@link #markDirty}), and {@link #refreshStep} rebuilds that range
+ *     a bounded chunk per transaction, finest level first, so it never holds up other writes for long. A trade
+ *     arriving late for a closed bucket so repairs that bucket on the next refresh.
+ * </p>
+ * <p>
+ *     A level never built for the zone offset is built the same way, from the start of the level below, and is not
+ *     read until it is complete: {@link #selectBuiltLevel} falls back to the finer levels meanwhile. A complete level
+ *     may be read while dirty, its dirty range showing the candles of the last refresh.
+ * </p>
+ * <p>
+ *     Buckets are aligned to the standard offset of the local zone, weeks start on Monday. A level built for another
+ *     zone offset is rebuilt whole. Charts follow the wall clock ({@link CalendarBuckets}), so where summer time
+ *     moves the clock by less than a level, eg. 6 hours or a day, that level is not read for charts, see
+ *     {@link #selectLevel}.
+ * </p>
+ * <p>Writing methods use the writer connection and must not run alongside other writes on it.</p>
+ */
+public class CandlePyramid {
+
+    /** Seconds per candle of each stored level, finest first */
+    public static final int[] LEVELS = {60, 300, 900, 3600, 21600, 86400, 604800};
+    /** Dirty time range, zone offset and completeness of each level table */
+    public static final String LEVELS_TABLE = "candle_levels";
+    /** Most candles of the level below rebuilt into a level per transaction, see {@link #refreshStep} */
+    public static final int CHUNK_CANDLES = 1 << 16;
+    /** Candles read per query, see {@link #read} */
+    public static final int PAGE_SIZE = 4096;
+
+    private static final String[] SUFFIXES = {"_1m", "_5m", "_15m", "_1h", "_6h", "_1d", "_1w"};
+    private static final long WEEK_ANCHOR = 4*86400;    // 1970-01-05, a Monday
+
+    private final Connection connection;
+    private final CalendarBuckets buckets;
+    private final int zoneOffset;
+
+    /**
+     * @param connection writer connection
+     */
+    public CandlePyramid(Connection connection) {
+        this(connection, CalendarBuckets.local());
+    }
+
+    /**
+     * @param buckets chart buckets, the levels are aligned to the standard offset of their zone
+     */
+    public CandlePyramid(Connection connection, CalendarBuckets buckets) {
+        this(connection, buckets, buckets.getStandardOffset());
+    }
+
+    /**
+     * @param zoneOffset seconds east of UTC the buckets are aligned to, a whole number of minutes
+     */
+    public CandlePyramid(Connection connection, int zoneOffset) {
+        this(connection, CalendarBuckets.of(ZoneOffset.ofTotalSeconds(zoneOffset)), zoneOffset);
+    }
+
+    private CandlePyramid(Connection connection, CalendarBuckets buckets, int zoneOffset) {
+        if (zoneOffset % 60 != 0) {
+            throw new IllegalArgumentException("Zone offset must be whole minutes");
+        }
+        this.connection = connection;
+        this.buckets = buckets;
+        this.zoneOffset = zoneOffset;
+    }
+
+    /**
+     * @param level seconds per candle, one of {@link #LEVELS}
+     * @return name of the candle table of a trade table at the level
+     */
+    public static String levelTable(String tradeTable, int level) {
+        return tradeTable + SUFFIXES[indexOf(level)];
+    }
+
+    /**
+     * @param interval chart interval in seconds
+     * @return coarsest level dividing the interval whose buckets start where the chart's do at every offset of the
+     * zone, so its candles merge into whole bars
+     * @throws IllegalArgumentException the interval is not a whole number of minutes
+     */
+    public int selectLevel(int interval) {
+        for (int i = LEVELS.length - 1; i >= 0; i--) {
+            if (divides(LEVELS[i], interval)) {
+                return LEVELS[i];
+            }
+        }
+        throw new IllegalArgumentException("Interval must be a whole number of minutes: " + interval);
+    }
+
+    /**
+     * @param level seconds per candle, one of {@link #LEVELS}
+     * @param interval chart interval in seconds
+     * @return whether the candles of the level merge into whole bars of the interval at every offset of the zone
+     */
+    public boolean divides(int level, int interval) {
+        return interval % level == 0 && (level == LEVELS[0] || buckets.alignsWith(level, zoneOffset));
+    }
+
+    /**
+     * @param connection any connection, eg. a reader
+     * @param level level chosen for a chart, see {@link #selectLevel}
+     * @return the level if it is complete for the zone offset, else the coarsest finer level that is, at worst the
+     * 1 minute level
+     */
+    public int selectBuiltLevel(Connection connection, String table, int level) throws SQLException {
+        final int index = indexOf(level);
+        boolean[] complete = new boolean[index + 1];
+        complete[0] = true;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT level FROM " + LEVELS_TABLE +
+                " WHERE table_name = ? AND zone_offset = ? AND complete = 1 AND level <= ?")) {
+            statement.setString(1, table);
+            statement.setInt(2, zoneOffset);
+            statement.setInt(3, level);
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    complete[indexOf(set.getInt(1))] = true;
+                }
+            }
+        }
+        int i = index;
+        while (!complete[i]) {
+            i--;
+        }
+        return LEVELS[i];
+    }
+
+    private static int indexOf(int level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] == level) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No level of " + level + "s");
+    }
+
+    /**
+     * @return start of the level's bucket containing the time
+     */
+    public long bucketStart(long time, int level) {
+        long anchor = anchor(level);
+        return Math.floorDiv(time + zoneOffset - anchor, level)*level + anchor - zoneOffset;
+    }
+
+    private static long anchor(int level) {
+        return level == 604800 ? WEEK_ANCHOR : 0;
+    }
+
+    /**
+     * Marks the coarser levels of a table out of date over a time range, in the current transaction.
+     * @param fromTime earliest time whose trades changed
+     * @param toTime latest time whose trades changed
+     */
+    public void markDirty(String table, long fromTime, long toTime) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE " + LEVELS_TABLE +
+                " SET dirty_from = MIN(COALESCE(dirty_from, ?), ?), dirty_to = MAX(COALESCE(dirty_to, ?), ?) " +
+                "WHERE table_name = ?")) {
+            statement.setLong(1, fromTime);
+            statement.setLong(2, fromTime);
+            statement.setLong(3, toTime);
+            statement.setLong(4, toTime);
+            statement.setString(5, table);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Brings a level of a table, and the levels below it, up to date, a chunk per transaction, see
+     * {@link #refreshStep}. A level never built is built whole.
+     */
+    public void refresh(String table, int level) throws SQLException {
+        while (!refreshStep(table, level)) {
+            // next chunk
+        }
+    }
+
+    /**
+     * Rebuilds a chunk of the finest out of date level of a table, up to a level, in one transaction: the dirty
+     * buckets covering at most {@link #CHUNK_CANDLES} candles of the level below, or clearing a level never built for
+     * the zone offset to build it from the start of the level below.
+     * @return true if the levels were up to date, false if a chunk was rebuilt
+     */
+    public boolean refreshStep(String table, int level) throws SQLException {
+        final int index = indexOf(level);
+        connection.setAutoCommit(false);
+        try {
+            boolean upToDate = true;
+            for (int i = 1; i <= index && upToDate; i++) {
+                upToDate = refreshLevel(table, i);
+            }
+            connection.commit();
+            return upToDate;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * @return true if the level was up to date, false if a chunk of it was rebuilt
+     */
+    private boolean refreshLevel(String table, int index) throws SQLException {
+        final int level = LEVELS[index];
+        final String target = levelTable(table, level);
+        final String source = levelTable(table, LEVELS[index - 1]);
+        final long from, to;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT zone_offset, dirty_from, dirty_to " +
+                "FROM " + LEVELS_TABLE + " WHERE table_name = ? AND level = ?")) {
+            statement.setString(1, table);
+            statement.setInt(2, level);
+            try (ResultSet set = statement.executeQuery()) {
+                if (!set.next() || set.getInt(1) != zoneOffset) {
+                    startBuilding(table, level, target, source);
+                    return false;
+                }
+                long dirtyFrom = set.getLong(2);
+                if (set.wasNull()) {
+                    return true;
+                }
+                from = bucketStart(dirtyFrom, level);
+                to = bucketStart(set.getLong(3), level) + level;
+            }
+        }
+        final long end = Math.min(to, bucketStart(from + (long) CHUNK_CANDLES*LEVELS[index - 1], level));
+        final long shift = zoneOffset - anchor(level);
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM " + target + " WHERE time >= ? AND time < ?");
+             PreparedStatement insert = connection.prepareStatement(String.format(
+                     "INSERT INTO %1$s SELECT b, " +
+                     "(SELECT open FROM %2$s WHERE time >= b AND time < b + %3$d ORDER BY time LIMIT 1), " +
+                     "high, low, " +
+                     "(SELECT close FROM %2$s WHERE time >= b AND time < b + %3$d ORDER BY time DESC LIMIT 1), " +
+                     "volume, quote_volume, trades FROM (SELECT ((time + %4$d)/%3$d)*%3$d - %4$d AS b, " +
+                     "MAX(high) AS high, MIN(low) AS low, SUM(volume) AS volume, SUM(quote_volume) AS quote_volume, " +
+                     "SUM(trades) AS trades FROM %2$s WHERE time >= ? AND time < ? GROUP BY b)",
+                     target, source, level, shift));
+             PreparedStatement mark = connection.prepareStatement(end < to ?
+                     "UPDATE " + LEVELS_TABLE + " SET dirty_from = ? WHERE table_name = ? AND level = ?" :
+                     "UPDATE " + LEVELS_TABLE + " SET dirty_from = NULL, dirty_to = NULL, complete = 1 " +
+                     "WHERE table_name = ? AND level = ?")) {
+            delete.setLong(1, from);
+            delete.setLong(2, end);
+            delete.executeUpdate();
+            insert.setLong(1, from);
+            insert.setLong(2, end);
+            insert.executeUpdate();
+            int parameter = 1;
+            if (end < to) {
+                mark.setLong(parameter++, end);
+            }
+            mark.setString(parameter++, table);
+            mark.setInt(parameter, level);
+            mark.executeUpdate();
+        }
+        return false;
+    }
+
+    /**
+     * Clears a level and marks it incomplete and dirty over the candles of the level below, the finer levels being
+     * up to date.
+     */
+    private void startBuilding(String table, int level, String target, String source) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             PreparedStatement mark = connection.prepareStatement("INSERT OR REPLACE INTO " + LEVELS_TABLE +
+                     " (table_name, level, zone_offset, dirty_from, dirty_to, complete) VALUES (?, ?, ?, ?, ?, ?)")) {
+            statement.executeUpdate("DELETE FROM " + target);
+            mark.setString(1, table);
+            mark.setInt(2, level);
+            mark.setInt(3, zoneOffset);
+            try (ResultSet set = statement.executeQuery("SELECT MIN(time), MAX(time) FROM " + source)) {
+                set.next();
+                final long first = set.getLong(1);
+                final boolean empty = set.wasNull();
+                mark.setObject(4, empty ? null : first);
+                mark.setObject(5, empty ? null : set.getLong(2));
+                mark.setInt(6, empty ? 1 : 0);
+            }
+            mark.executeUpdate();
+        }
+    }
+
+    /**
+     * Reads the candles of a level overlapping a time window, as of its last refresh, see {@link #selectBuiltLevel}.
+     * @param connection any connection, eg. a reader
+     * @param minTime start of the window, Long.MIN_VALUE for no limit
+     * @param maxTime end of the window, Long.MAX_VALUE for no limit
+     */
+    public static ChartData read(Connection connection, String table, TradePlatform platform, int level,
+                                 long minTime, long maxTime) throws SQLException {
+        return read(connection, table, platform, level, minTime, maxTime, null);
+    }
+
+    /**
+     * Reads the candles of a level overlapping a time window in pages of {@link #PAGE_SIZE}, each its own query
+     * continuing after the last candle of the one before, so no read holds a snapshot of the database for long and
+     * the candles are never counted first.
+     * @param progress given the time of the last candle read after each page, or null
+     */
+    public static ChartData read(Connection connection, String table, TradePlatform platform, int level,
+                                 long minTime, long maxTime, LongConsumer progress) throws SQLException {
+        long after = minTime == Long.MIN_VALUE ? minTime : minTime - level;    // buckets ending after minTime
+        final long expected = minTime == Long.MIN_VALUE || maxTime == Long.MAX_VALUE ? PAGE_SIZE :
+                (maxTime - after)/level + 1;
+        ChartData data = new ChartData(platform, minTime, maxTime, level, (int) Math.min(expected, PAGE_SIZE));
+        try (PreparedStatement statement = connection.prepareStatement("SELECT time, open, high, low, close, volume, " +
+                "quote_volume FROM " + levelTable(table, level) + " WHERE time > ? AND time <= ? ORDER BY time " +
+                "LIMIT " + PAGE_SIZE)) {
+            int rows;
+            do {
+                statement.setLong(1, after);
+                statement.setLong(2, maxTime);
+                rows = 0;
+                try (ResultSet set = statement.executeQuery()) {
+                    while (set.next()) {
+                        after = set.getLong(1);
+                        data.addCandle(after, set.getDouble(2), set.getDouble(3), set.getDouble(4),
+                                set.getDouble(5), set.getDouble(6), set.getDouble(7));
+                        rows++;
+                    }
+                }
+                if (progress != null && rows > 0) {
+                    progress.accept(after);
+                }
+            } while (rows == PAGE_SIZE);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,77 @@
+package bx.cryptogui.manager;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Copies the trades of SQLite trade tables into new {@link ColumnarTradeStore}s, in trade order. The candles are
+ * already up to date, so only the trades are copied. Stores that already hold trades are left alone.
+ * <p>Usage: ColumnarMigration database directory table...</p>
+ * <p>Then select the tables' platforms with {@link DatabaseManager#useColumnarStore}.</p>
+ */
+public class ColumnarMigration {
+
+    private static final int BATCH = 1 << 16;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: ColumnarMigration database directory table...");
+            return;
+        }
+        final File directory = new File(args[1]);
+        try (ConnectionManager connections = new ConnectionManager("jdbc:sqlite:" + args[0])) {
+            new SchemaManager(connections.getWriter()).migrate(Arrays.asList(args).subList(2, args.length));
+            final CandlePyramid candlePyramid = new CandlePyramid(connections.getWriter());
+            for (int i = 2; i < args.length; i++) {
+                final String table = args[i];
+                final long start = System.nanoTime();
+                try (ColumnarTradeStore target = new ColumnarTradeStore(new File(directory, table), table,
+                        connections.getWriter(), candlePyramid)) {
+                    if (target.size() > 0) {
+                        System.out.println(table + ": already has " + target.size() + " trades, skipped");
+                        continue;
+                    }
+                    final long rows = copy(new SQLiteTradeStore(connections, table, candlePyramid), target);
+                    System.out.println(String.format("%s: %s trades copied in %.1f s", table, rows,
+                            (System.nanoTime() - start)/1e9));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return trades copied
+     */
+    public static long copy(TradeStore source, final ColumnarTradeStore target) throws Exception {
+        final long[] times = new long[BATCH], ids = new long[BATCH];
+        final double[] prices = new double[BATCH], volumes = new double[BATCH];
+        final byte[] types = new byte[BATCH];
+        final int[] count = {0};
+        final Exception[] failure = {null};
+        long rows = source.scan(Long.MIN_VALUE, Long.MAX_VALUE, (id, time, price, volume, type) -> {
+            if (failure[0] != null) {
+                return;
+            }
+            int n = count[0];
+            times[n] = time;
+            ids[n] = id;
+            prices[n] = price;
+            volumes[n] = volume;
+            types[n] = (byte) type;
+            if (++n == BATCH) {
+                try {
+                    target.append(n, times, ids, prices, volumes, types);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+                n = 0;
+            }
+            count[0] = n;
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        target.append(count[0], times, ids, prices, volumes, types);
+        return rows;
+    }
+}
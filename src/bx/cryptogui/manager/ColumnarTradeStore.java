@@ -0,0 +1,701 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.data.TradeColumns;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.exchangeapi.TradeSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trades kept in a directory of memory mapped column files, one per field: {@code time.col}, {@code id.col},
+ * {@code price.col} and {@code volume.col} of 8 bytes a row, {@code type.col} of 1 byte a row, all little endian,
+ * with the row count, highest exchange id and pending candles in {@code meta}. Rows are in trade order (time, id).
+ * <p>
+ *     Rows are appended. A page older than the last row is merged into the rows from its first time on, which are
+ *     rewritten, so filling a recent gap costs the rows after it. A range is found with a binary search of the
+ *     sparse time index ({@link #INDEX_STRIDE}) then of one stretch of the time column, and is copied straight from
+ *     the mapped pages into primitive arrays ({@link #read}) with no decoding per row.
+ * </p>
+ * <p>
+ *     The candles stay in SQLite. After each write the 1 minute candles of its minutes are recalculated from the
+ *     columns and the coarser levels marked out of date, in the caller's transaction on the writer connection.
+ *     Columns are flushed before the row count that publishes them, and a rewrite first sets the count back to where
+ *     it starts, so a crash never tears rows.
+ * </p>
+ * <p>
+ *     The rows of a write are kept even if its transaction is rolled back or never committed, and the next fetch
+ *     skips them. So before writing, {@code meta} records the earliest time whose candles are pending and numbers the
+ *     write. Each write recalculates the pending minutes too, and records its number in {@link #ROLLUPS_TABLE} in
+ *     its transaction. The minutes stop being pending once that number is seen committed ({@link #committed}).
+ *     Opening a store recalculates any minutes still pending.
+ * </p>
+ * <p>At most {@link #MAX_ROWS} rows, the size of one mapping of an 8 byte column.</p>
+ */
+public class ColumnarTradeStore implements TradeStore {
+
+    /** Rows per entry of the sparse time index, kept in memory */
+    public static final int INDEX_STRIDE = 4096;
+    /** Last write of each store whose candles were committed */
+    public static final String ROLLUPS_TABLE = "columnar_rollups";
+    public static final int MAX_ROWS = Integer.MAX_VALUE/8;
+
+    private static final String[] COLUMNS = {"time", "id", "price", "volume", "type"};
+    private static final int[] WIDTHS = {8, 8, 8, 8, 1};
+    private static final int TIME = 0, ID = 1, PRICE = 2, VOLUME = 3, TYPE = 4;
+    private static final int MIN_CAPACITY = 1 << 16;    // rows mapped for a new store
+    private static final long MAX_ID_UNKNOWN = Long.MIN_VALUE;    // meta after a crash mid rewrite
+    private static final long NONE_PENDING = Long.MAX_VALUE;
+    private static final int META_SIZE = 32;     // rows, highest id, write number, pending from
+
+    private final File directory;
+    private final String tableName;
+    private final Connection connection;    // writer, for the candles
+    private final CandlePyramid candlePyramid;
+    private final FileChannel[] channels = new FileChannel[COLUMNS.length];
+    private final MappedByteBuffer[] columns = new MappedByteBuffer[COLUMNS.length];
+    private final FileChannel metaChannel;
+    private final MappedByteBuffer meta;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int capacity = 0;   // rows mapped
+    private int size;
+    private long maxId;
+    private long generation;    // writes numbered so far
+    private long pendingFrom;   // earliest time whose candles may not be committed, NONE_PENDING for none
+    private long pendingTo = Long.MIN_VALUE;
+    private long[] index = new long[16];    // time of every INDEX_STRIDE-th row
+
+    /**
+     * Opens the store in a directory, creating it if missing.
+     * @param tableName trade table whose candles are kept up to date
+     * @param connection writer connection, with no transaction open, the pending candles are recalculated
+     */
+    public ColumnarTradeStore(File directory, String tableName, Connection connection, CandlePyramid candlePyramid)
+            throws IOException, SQLException {
+        this.directory = directory;
+        this.tableName = tableName;
+        this.connection = connection;
+        this.candlePyramid = candlePyramid;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        try {
+            metaChannel = open("meta");
+            final long metaSize = metaChannel.size();
+            meta = metaChannel.map(FileChannel.MapMode.READ_WRITE, 0, META_SIZE);
+            meta.order(ByteOrder.LITTLE_ENDIAN);
+            if (metaSize == 0) {
+                writeMeta(0, -1);
+            }
+            if (metaSize < META_SIZE) {
+                writePending(0, NONE_PENDING);    // none in a store written before
+            }
+            size = (int) meta.getLong(0);
+            maxId = meta.getLong(8);
+            generation = meta.getLong(16);
+            pendingFrom = meta.getLong(24);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                channels[c] = open(COLUMNS[c] + ".col");
+                if (channels[c].size() < (long) size*WIDTHS[c]) {
+                    throw new IOException(COLUMNS[c] + " column of " + directory + " is shorter than its " + size +
+                            " rows");
+                }
+            }
+            ensureCapacity(Math.max(size, MIN_CAPACITY));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (int i = 0; i < size; i += INDEX_STRIDE) {
+            setIndex(i);
+        }
+        if (maxId == MAX_ID_UNKNOWN) {
+            maxId = -1;
+            for (int i = 0; i < size; i++) {
+                maxId = Math.max(maxId, id(i));
+            }
+            writeMeta(size, maxId);
+        }
+        if (pendingFrom != NONE_PENDING) {
+            try {
+                recalculatePending();
+            } catch (SQLException e) {
+                close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Recalculates the pending candles, up to the last row, in a transaction of their own.
+     */
+    private void recalculatePending() throws SQLException {
+        pendingTo = getLatestTime();
+        connection.setAutoCommit(false);
+        try {
+            updateRollup(pendingFrom, pendingTo);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        committed();
+    }
+
+    private FileChannel open(String name) throws IOException {
+        return FileChannel.open(new File(directory, name).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public final File getDirectory() {
+        return directory;
+    }
+
+    public final String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getLatestTime() {
+        lock.readLock().lock();
+        try {
+            return size == 0 ? 0 : time(size - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getLatestId() {
+        lock.readLock().lock();
+        try {
+            return maxId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ------------------ WRITING --------------------------------------------------------------------------------------
+
+    @Override
+    public int writeNew(TradeColumns transactions) throws IOException, SQLException {
+        if (transactions.isEmpty()) {
+            return 0;
+        }
+        final TradeColumns toInsert = new TradeColumns(transactions.getTradePlatform(), transactions.size());
+        toInsert.addAll(transactions);
+        long replaceFrom = Long.MAX_VALUE;
+        if (toInsert.getId(0) >= 0) {
+            final long latestId = getLatestId();
+            toInsert.retain(i -> toInsert.getId(i) > latestId);
+        } else if (size() == 0) {
+            // all new, nothing replaced, so the candles from the first new trade on are recalculated
+            toInsert.reverse();     // oldest first, keeps the order within a second
+        } else {
+            // trades of the latest time are replaced
+            replaceFrom = getLatestTime();
+            final long latestTime = replaceFrom;
+            toInsert.reverse();
+            toInsert.retain(i -> toInsert.getTime(i) >= latestTime);
+        }
+        if (toInsert.isEmpty()) {
+            return 0;
+        }
+        toInsert.sort();
+        return write(toInsert, replaceFrom);
+    }
+
+    /**
+     * Merges the page into the rows from its first time on.
+     */
+    @Override
+    public int insert(TradeColumns trades) throws IOException, SQLException {
+        if (trades.isEmpty()) {
+            return 0;
+        }
+        TradeColumns sorted = new TradeColumns(trades.getTradePlatform(), trades.size());
+        sorted.addAll(trades);
+        sorted.sort();
+        return write(sorted, Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes trades then updates their candles, and any pending.
+     * @param trades in trade order
+     * @param replaceFrom time from which stored rows are replaced rather than merged with, Long.MAX_VALUE for none
+     * @return rows written, replaced rows included
+     */
+    private int write(TradeColumns trades, long replaceFrom) throws IOException, SQLException {
+        final int count = trades.size();
+        final long[] ids = SchemaManager.storedIds(trades);
+        long[] times = new long[count];
+        double[] prices = new double[count];
+        double[] volumes = new double[count];
+        byte[] types = new byte[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = trades.getTime(i);
+            prices[i] = trades.getPrice(i);
+            volumes[i] = trades.getVolume(i);
+            types[i] = (byte) trades.getTradeType(i);
+        }
+        final long fromTime = Math.min(times[0], replaceFrom);
+        final long toTime = Math.max(times[count - 1], replaceFrom == Long.MAX_VALUE ? Long.MIN_VALUE : replaceFrom);
+        final int rows;
+        lock.writeLock().lock();
+        try {
+            final int from = indexOf(fromTime);
+            final int tail = replaceFrom == Long.MAX_VALUE ? size - from : 0;
+            if (tail == 0) {
+                int unique = dropRepeats(count, times, ids, prices, volumes, types);
+                addPending(fromTime, toTime);
+                if (from < size) {
+                    writeMeta(from, maxId);     // rows from here are rewritten
+                }
+                rows = writeRows(from, unique, times, ids, prices, volumes, types);
+            } else {
+                rows = mergeRows(from, tail, count, times, ids, prices, volumes, types, fromTime, toTime);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (pendingFrom != NONE_PENDING) {
+            updateRollup(fromTime, toTime);
+        }
+        return rows;
+    }
+
+    /**
+     * Appends rows in trade order after the last row, without updating the candles, for bulk loads whose candles are
+     * already up to date, see {@link ColumnarMigration}.
+     * @throws IllegalArgumentException the first row is before the last row
+     */
+    public void append(int count, long[] times, long[] ids, double[] prices, double[] volumes, byte[] types)
+            throws IOException {
+        if (count == 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (size > 0 && times[0] < time(size - 1)) {
+                throw new IllegalArgumentException("Rows from " + times[0] + " are before the last row of " +
+                        directory);
+            }
+            writeRows(size, count, times, ids, prices, volumes, types);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes rows whose key repeats the previous row's, in place.
+     * @return rows left
+     */
+    private static int dropRepeats(int count, long[] times, long[] ids, double[] prices, double[] volumes,
+                                   byte[] types) {
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique > 0 && times[i] == times[unique - 1] && ids[i] == ids[unique - 1]) {
+                continue;
+            }
+            times[unique] = times[i];
+            ids[unique] = ids[i];
+            prices[unique] = prices[i];
+            volumes[unique] = volumes[i];
+            types[unique] = types[i];
+            unique++;
+        }
+        return unique;
+    }
+
+    /**
+     * Merges new rows with the stored rows from a row on, ignoring new rows whose key or exchange id is among them.
+     * @return rows added
+     */
+    private int mergeRows(int from, int tail, int count, long[] times, long[] ids, double[] prices,
+                          double[] volumes, byte[] types, long fromTime, long toTime) throws IOException {
+        long[] tailTimes = new long[tail], tailIds = new long[tail];
+        double[] tailPrices = new double[tail], tailVolumes = new double[tail];
+        byte[] tailTypes = new byte[tail];
+        copyRows(from, tail, tailTimes, tailIds, tailPrices, tailVolumes, tailTypes);
+        Set<Long> tailExchangeIds = new HashSet<>();
+        for (long id: tailIds) {
+            if (id >= 0) {
+                tailExchangeIds.add(id);
+            }
+        }
+        final int total = tail + count;
+        long[] mergedTimes = new long[total], mergedIds = new long[total];
+        double[] mergedPrices = new double[total], mergedVolumes = new double[total];
+        byte[] mergedTypes = new byte[total];
+        int merged = 0, t = 0;
+        for (int n = 0; n <= count; n++) {
+            // stored rows before the new row, all of them after the last
+            while (t < tail && (n == count || tailTimes[t] < times[n] ||
+                    tailTimes[t] == times[n] && tailIds[t] <= ids[n])) {
+                mergedTimes[merged] = tailTimes[t];
+                mergedIds[merged] = tailIds[t];
+                mergedPrices[merged] = tailPrices[t];
+                mergedVolumes[merged] = tailVolumes[t];
+                mergedTypes[merged++] = tailTypes[t++];
+            }
+            if (n == count || ids[n] >= 0 && tailExchangeIds.contains(ids[n]) || merged > 0 &&
+                    mergedTimes[merged - 1] == times[n] && mergedIds[merged - 1] == ids[n]) {
+                continue;
+            }
+            mergedTimes[merged] = times[n];
+            mergedIds[merged] = ids[n];
+            mergedPrices[merged] = prices[n];
+            mergedVolumes[merged] = volumes[n];
+            mergedTypes[merged++] = types[n];
+        }
+        if (merged == tail) {
+            return 0;
+        }
+        addPending(fromTime, toTime);
+        writeMeta(from, MAX_ID_UNKNOWN);   // rows from here are rewritten
+        return writeRows(from, merged, mergedTimes, mergedIds, mergedPrices, mergedVolumes, mergedTypes) - tail;
+    }
+
+    /**
+     * Writes rows from a row on, replacing the rows there, then publishes the new row count.
+     * @return rows written
+     */
+    private int writeRows(int from, int count, long[] times, long[] ids, double[] prices, double[] volumes,
+                          byte[] types) throws IOException {
+        final long newSize = (long) from + count;
+        if (newSize > MAX_ROWS) {
+            throw new IOException("Column files of " + directory + " are full");
+        }
+        ensureCapacity((int) newSize);
+        column(TIME, from).asLongBuffer().put(times, 0, count);
+        column(ID, from).asLongBuffer().put(ids, 0, count);
+        column(PRICE, from).asDoubleBuffer().put(prices, 0, count);
+        column(VOLUME, from).asDoubleBuffer().put(volumes, 0, count);
+        column(TYPE, from).put(types, 0, count);
+        for (MappedByteBuffer column: columns) {
+            column.force();
+        }
+        for (int i = 0; i < count; i++) {
+            maxId = Math.max(maxId, ids[i]);
+        }
+        size = (int) newSize;
+        writeMeta(size, maxId);
+        for (int i = (from + INDEX_STRIDE - 1)/INDEX_STRIDE*INDEX_STRIDE; i < size; i += INDEX_STRIDE) {
+            setIndex(i);
+        }
+        return count;
+    }
+
+    private void writeMeta(int rows, long latestId) {
+        meta.putLong(0, rows);
+        meta.putLong(8, latestId);
+        meta.force();
+    }
+
+    /**
+     * Numbers a write and widens the pending candles to its times, before its rows are written.
+     */
+    private void addPending(long fromTime, long toTime) {
+        pendingTo = Math.max(pendingTo, toTime);
+        writePending(generation + 1, Math.min(pendingFrom, fromTime));
+    }
+
+    private void writePending(long writes, long from) {
+        generation = writes;
+        pendingFrom = from;
+        meta.putLong(16, writes);
+        meta.putLong(24, from);
+        meta.force();
+    }
+
+    /**
+     * Stops the candles being pending if the last write's were committed.
+     */
+    @Override
+    public void committed() throws SQLException {
+        lock.writeLock().lock();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT generation FROM " + ROLLUPS_TABLE +
+                " WHERE table_name = ?")) {
+            if (pendingFrom == NONE_PENDING) {
+                return;
+            }
+            statement.setString(1, tableName);
+            try (ResultSet set = statement.executeQuery()) {
+                if (set.next() && set.getLong(1) == generation) {
+                    pendingTo = Long.MIN_VALUE;
+                    writePending(generation, NONE_PENDING);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setIndex(int row) {
+        final int entry = row/INDEX_STRIDE;
+        if (entry >= index.length) {
+            index = Arrays.copyOf(index, index.length*2);
+        }
+        index[entry] = time(row);
+    }
+
+    private void ensureCapacity(int rows) throws IOException {
+        if (rows <= capacity) {
+            return;
+        }
+        final int newCapacity = (int) Math.min(MAX_ROWS, Math.max(rows, capacity*2L));
+        for (int c = 0; c < COLUMNS.length; c++) {
+            columns[c] = channels[c].map(FileChannel.MapMode.READ_WRITE, 0, (long) newCapacity*WIDTHS[c]);
+            columns[c].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        capacity = newCapacity;
+    }
+
+    /**
+     * Recalculates the 1 minute candles of every minute touching the time range and the pending candles from the
+     * columns, and marks the coarser levels out of date, in the current transaction, as
+     * {@link SchemaManager#updateRollup} does from a trade table. Records the last write as rolled up.
+     */
+    private void updateRollup(long fromTime, long toTime) throws SQLException {
+        final String rollup = SchemaManager.rollupTable(tableName);
+        lock.readLock().lock();
+        fromTime = Math.min(fromTime, pendingFrom);
+        toTime = Math.max(toTime, pendingTo);
+        final long from = Math.floorDiv(fromTime, 60)*60;
+        final long to = Math.floorDiv(toTime, 60)*60 + 60;
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM " + rollup + " WHERE time >= ? AND time < ?");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO " + rollup + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement mark = connection.prepareStatement(
+                     "INSERT OR REPLACE INTO " + ROLLUPS_TABLE + " VALUES (?, ?)")) {
+            delete.setLong(1, from);
+            delete.setLong(2, to);
+            delete.executeUpdate();
+            final int end = indexOf(to);
+            int i = indexOf(from);
+            while (i < end) {
+                final long minute = Math.floorDiv(time(i), 60)*60;
+                final double open = price(i);
+                double high = open, low = open, close = open, volume = 0, quoteVolume = 0;
+                int trades = 0;
+                for (; i < end && time(i) < minute + 60; i++) {
+                    close = price(i);
+                    final double tradeVolume = volume(i);
+                    high = Math.max(high, close);
+                    low = Math.min(low, close);
+                    volume += tradeVolume;
+                    quoteVolume += close*tradeVolume;
+                    trades++;
+                }
+                insert.setLong(1, minute);
+                insert.setDouble(2, open);
+                insert.setDouble(3, high);
+                insert.setDouble(4, low);
+                insert.setDouble(5, close);
+                insert.setDouble(6, volume);
+                insert.setDouble(7, quoteVolume);
+                insert.setInt(8, trades);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            candlePyramid.markDirty(tableName, fromTime, toTime);
+            mark.setString(1, tableName);
+            mark.setLong(2, generation);
+            mark.executeUpdate();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ------------------ READING --------------------------------------------------------------------------------------
+
+    /**
+     * @return first row at or after the time, the number of rows if there is none
+     */
+    public int indexOf(long time) {
+        lock.readLock().lock();
+        try {
+            // last index entry before the time, the row after the entry's is the first that can match
+            int low = 0, high = (size + INDEX_STRIDE - 1)/INDEX_STRIDE;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (index[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int first = low == 0 ? 0 : (low - 1)*INDEX_STRIDE + 1;
+            int last = Math.min(low*INDEX_STRIDE, size);
+            while (first < last) {
+                int mid = (first + last) >>> 1;
+                if (time(mid) < time) {
+                    first = mid + 1;
+                } else {
+                    last = mid;
+                }
+            }
+            return first;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies rows into arrays, from the mapped pages with no decoding. Columns given a null array are skipped.
+     * Row numbers change only when an older page is merged in, see {@link #indexOf}.
+     * @param from first row
+     * @param count most rows copied, each array holding at least as many
+     * @return rows copied
+     */
+    public int read(int from, int count, long[] times, long[] ids, double[] prices, double[] volumes, byte[] types) {
+        lock.readLock().lock();
+        try {
+            count = Math.max(0, Math.min(count, size - from));
+            copyRows(from, count, times, ids, prices, volumes, types);
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void copyRows(int from, int count, long[] times, long[] ids, double[] prices, double[] volumes,
+                          byte[] types) {
+        if (times != null) {
+            column(TIME, from).asLongBuffer().get(times, 0, count);
+        }
+        if (ids != null) {
+            column(ID, from).asLongBuffer().get(ids, 0, count);
+        }
+        if (prices != null) {
+            column(PRICE, from).asDoubleBuffer().get(prices, 0, count);
+        }
+        if (volumes != null) {
+            column(VOLUME, from).asDoubleBuffer().get(volumes, 0, count);
+        }
+        if (types != null) {
+            column(TYPE, from).get(types, 0, count);
+        }
+    }
+
+    @Override
+    public TradeColumns readLatest(TradePlatform platform, long minTime, long maxTime, int limit) {
+        lock.readLock().lock();
+        try {
+            final int end = maxTime == Long.MAX_VALUE ? size : indexOf(maxTime + 1);
+            final int start = Math.max(indexOf(minTime), end - limit);
+            TradeColumns trades = new TradeColumns(platform, Math.max(0, end - start));
+            for (int i = start; i < end; i++) {
+                long id = id(i);
+                trades.add(SchemaManager.isLocalId(id) ? -1 : id, time(i), price(i), volume(i), type(i));
+            }
+            return trades;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes wait while the sink runs.
+     */
+    @Override
+    public long scan(long fromTime, long toTime, TradeSink sink) {
+        lock.readLock().lock();
+        try {
+            final int start = indexOf(fromTime);
+            final int end = Math.max(start, indexOf(toTime));
+            for (int i = start; i < end; i++) {
+                sink.trade(id(i), time(i), price(i), volume(i), type(i));
+            }
+            return end - start;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return view of a column from a row, positioned independently of other readers
+     */
+    private ByteBuffer column(int column, int row) {
+        ByteBuffer buffer = columns[column].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(row*WIDTHS[column]);
+        return buffer;
+    }
+
+    private long time(int row) {
+        return columns[TIME].getLong(row*8);
+    }
+
+    private long id(int row) {
+        return columns[ID].getLong(row*8);
+    }
+
+    private double price(int row) {
+        return columns[PRICE].getDouble(row*8);
+    }
+
+    private double volume(int row) {
+        return columns[VOLUME].getDouble(row*8);
+    }
+
+    private int type(int row) {
+        return columns[TYPE].get(row);
+    }
+
+    /**
+     * Closes the files. The mappings are released when collected.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            IOException failure = null;
+            for (FileChannel channel: channels) {
+                try {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (metaChannel != null) {
+                metaChannel.close();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package bx.cryptogui.manager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections to one SQLite database file in WAL journal mode: a single writer connection and a pool of read-only
+ * connections. In WAL mode readers see the last commit and never wait for the writer, and the writer never waits for
+ * readers, so long chart reads run alongside ingestion.
+ * <p>
+ *     The writer connection is shared, callers must not interleave their transactions on it (see
+ *     {@link DatabaseManager}). Reader connections are leased one thread at a time and given back when the
+ *     {@link Lease} is closed.
+ * </p>
+ */
+public class ConnectionManager implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_READERS = 4;
+    /** Milliseconds a connection waits on a lock held by another connection, eg. a checkpoint, before failing */
+    public static final int BUSY_TIMEOUT = 5000;
+
+    private final String url;
+    private final Connection writer;
+    private final BlockingQueue<Connection> idleReaders;
+    private final List<Connection> readers = new ArrayList<>();   // guarded by this
+    private final int maxReaders;
+    private volatile boolean closed = false;
+
+    public ConnectionManager(String url) throws SQLException {
+        this(url, DEFAULT_MAX_READERS);
+    }
+
+    /**
+     * @param url JDBC url of a database file, in-memory databases cannot be shared between connections
+     * @param maxReaders maximum number of read-only connections, opened as needed
+     */
+    public ConnectionManager(String url, int maxReaders) throws SQLException {
+        if (maxReaders < 1) {
+            throw new IllegalArgumentException("Must allow at least 1 reader");
+        }
+        this.url = url;
+        this.maxReaders = maxReaders;
+        this.idleReaders = new ArrayBlockingQueue<>(maxReaders);
+        this.writer = DriverManager.getConnection(url);
+        try (Statement statement = writer.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");    // durable at checkpoints, safe from corruption
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT);
+        } catch (SQLException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    public final String getUrl() {
+        return url;
+    }
+
+    public final int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * @return the only connection that writes
+     */
+    public Connection getWriter() {
+        return writer;
+    }
+
+    /**
+     * Leases a read-only connection, opening one if none is idle and fewer than the maximum are open, otherwise
+     * waiting for one to be given back.
+     * @return lease to close when done, in auto-commit mode
+     */
+    public Lease openReader() throws SQLException, InterruptedException {
+        Connection connection = idleReaders.poll();
+        if (connection == null) {
+            connection = newReaderIfAllowed();
+        }
+        while (connection == null) {
+            if (closed) {
+                throw new SQLException("Connections closed");
+            }
+            connection = idleReaders.poll(100, TimeUnit.MILLISECONDS);
+        }
+        return new Lease(connection);
+    }
+
+    private Connection newReaderIfAllowed() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                throw new SQLException("Connections closed");
+            }
+            if (readers.size() >= maxReaders) {
+                return null;
+            }
+            Connection connection = DriverManager.getConnection(url);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA query_only = 1");
+                statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+            readers.add(connection);
+            return connection;
+        }
+    }
+
+    private void giveBack(Connection connection) throws SQLException {
+        if (closed) {
+            connection.close();
+        } else {
+            idleReaders.offer(connection);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        List<Connection> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(readers);
+        }
+        idleReaders.clear();
+        SQLException failure = null;
+        for (Connection connection: toClose) {
+            // a leased reader fails its query, then is closed again, harmlessly, when given back
+            failure = close(connection, failure);
+        }
+        failure = close(writer, failure);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Closes a connection, whatever the previous failures.
+     * @param failure first failure so far, or null
+     * @return the first failure, with any later ones suppressed into it
+     */
+    private static SQLException close(Connection connection, SQLException failure) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+        }
+        return failure;
+    }
+
+    /**
+     * A read-only connection leased from the pool, for one thread.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private Connection connection;
+
+        private Lease(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            if (connection == null) {
+                throw new IllegalStateException("Lease closed");
+            }
+            return connection;
+        }
+
+        /**
+         * Gives the connection back to the pool, the lease cannot be used afterwards.
+         * @throws SQLException if the pool was closed meanwhile and closing the connection failed
+         */
+        @Override
+        public void close() throws SQLException {
+            if (connection != null) {
+                final Connection given = connection;
+                connection = null;
+                giveBack(given);
+            }
+        }
+    }
+}
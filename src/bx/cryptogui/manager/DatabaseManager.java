@@ -1,12 +1,15 @@
 package bx.cryptogui.manager;
 
-import bx.cryptogui.Utils;
-import bx.cryptogui.control.CandleStickValues;
+import bx.cryptogui.CalendarBuckets;
+import bx.cryptogui.data.CandleColumns;
+import bx.cryptogui.data.ChartData;
 import bx.cryptogui.data.CurrencyPair;
 import bx.cryptogui.data.Exchange;
+import bx.cryptogui.data.TradeColumns;
 import bx.cryptogui.data.TradePlatform;
-import bx.cryptogui.data.Transaction;
 import bx.cryptogui.exchangeapi.*;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.concurrent.Service;
@@ -14,19 +17,67 @@ import javafx.concurrent.Task;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 import javafx.scene.chart.XYChart;
+import javafx.util.Duration;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
-import java.time.DayOfWeek;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
 
 public class DatabaseManager {
 
-    private final Connection connection;
+    /** Missing trade id ranges of the tables, see {@link #addGap}. */
+    public static final String GAPS_TABLE = "trade_gaps";
+
+    private final ConnectionManager connections;
+    private final Connection connection;    // writer
     private final Map<Exchange, ExchangeManager> exchanges = new HashMap<>();
+    private final CalendarBuckets buckets = CalendarBuckets.local();
+    private final CandlePyramid candlePyramid;
+    private final Map<String, TradeStore> tradeStores = new ConcurrentHashMap<>();
+    private final GroupCommitWriter groupWriter;
+    private final ExecutorService candleRefresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "candle-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Integer> chartedLevels = new ConcurrentHashMap<>();  // coarsest level read per table
+    private final Set<String> queuedRefreshes = ConcurrentHashMap.newKeySet();
+    private final Map<String, SQLException> refreshFailures = new ConcurrentHashMap<>();
+    private final PollScheduler pollScheduler = new PollScheduler();
+    private final Timeline pollTimeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> startDueWriting()));
+
+    /**
+     * @param connections writes go through its writer connection, reads through its read-only pool
+     */
+    public DatabaseManager(ConnectionManager connections) {
+        this(connections, GroupCommitWriter.DEFAULT_COMMIT_LATENCY);
+    }
 
-    public DatabaseManager(Connection connection) {
-        this.connection = Objects.requireNonNull(connection);
+    /**
+     * @param connections writes go through its writer connection, reads through its read-only pool
+     * @param commitLatency milliseconds trade writes wait to be committed together, or
+     *                      {@link GroupCommitWriter#NO_GROUPING}, see {@link GroupCommitWriter}
+     */
+    public DatabaseManager(ConnectionManager connections, long commitLatency) {
+        this.connections = Objects.requireNonNull(connections);
+        this.connection = connections.getWriter();
+        this.candlePyramid = new CandlePyramid(connection, buckets);
+        this.groupWriter = new GroupCommitWriter(connection, this, GroupCommitWriter.DEFAULT_CAPACITY, commitLatency);
+        groupWriter.addCommitListener(() -> {
+            for (TradeStore store: tradeStores.values()) {
+                store.committed();
+            }
+        });
         // hard-coded default
         Map<CurrencyPair, String> wexMap = new HashMap<>();
         wexMap.put(CurrencyPair.BTC_USD, "wex_btc_usd");
@@ -58,6 +109,15 @@ public class DatabaseManager {
         Map<CurrencyPair, String> kiwicoinMap = new HashMap<>();
         kiwicoinMap.put(CurrencyPair.BTC_NZD, "kiwicoin_btc_nzd");
         exchanges.put(Exchange.KIWICOIN, new ExchangeManager(Exchange.KIWICOIN, new KiwicoinAPI(), kiwicoinMap));
+
+        for (ExchangeManager exchangeManager: exchanges.values()) {
+            for (CurrencyPair pair: exchangeManager.tablePairs) {
+                String tableName = exchangeManager.getTableName(pair);
+                pollScheduler.register(TradePlatform.of(exchangeManager.exchange, pair));
+                tradeStores.put(tableName, new SQLiteTradeStore(connections, tableName, candlePyramid));
+            }
+        }
+        pollTimeline.setCycleCount(Timeline.INDEFINITE);
     }
 
     public final boolean supportsExchange(Exchange exchange) {
@@ -76,75 +136,301 @@ public class DatabaseManager {
         return Collections.unmodifiableList(new ArrayList<>(exchanges.values()));
     }
 
+    /**
+     * Creates or upgrades every trade table, see {@link SchemaManager}. Call before any update or read.
+     */
+    public void migrateSchema() throws SQLException {
+        List<String> tables = new ArrayList<>();
+        for (ExchangeManager exchangeManager: exchanges.values()) {
+            for (CurrencyPair pair: exchangeManager.tablePairs) {
+                tables.add(exchangeManager.getTableName(pair));
+            }
+        }
+        synchronized (this) {
+            new SchemaManager(connection).migrate(tables);
+        }
+    }
 
+    public final ConnectionManager getConnectionManager() {
+        return connections;
+    }
 
+    public final PollScheduler getPollScheduler() {
+        return pollScheduler;
+    }
+
+    /**
+     * Updates every table now.
+     */
     public void requestDatabaseUpdate() {
         for (ExchangeManager exchangeManager : exchanges.values()) {
             exchangeManager.startWritingIfFinished();
         }
     }
 
+    /**
+     * Starts updating the tables when the {@link PollScheduler} has them due. Must be called on the FX thread.
+     */
+    public void startScheduledUpdates() {
+        pollTimeline.play();
+    }
+
+    public void stopScheduledUpdates() {
+        pollTimeline.stop();
+    }
+
+    private void startDueWriting() {
+        final long now = System.currentTimeMillis();
+        for (ExchangeManager exchangeManager: exchanges.values()) {
+            if (!exchangeManager.isWriting()) {
+                List<CurrencyPair> due = pollScheduler.takeDue(exchangeManager.exchange, now);
+                if (!due.isEmpty()) {
+                    exchangeManager.startWriting(due);
+                }
+            }
+        }
+    }
+
     public void startReadingThenCalculate(TradePlatform platform) {
         exchanges.get(platform.getExchange()).startReadingThenCalculate(platform.getCurrencyPair());
     }
 
-    public void startCalculating(TradePlatform platform) {
-        exchanges.get(platform.getExchange()).startCalculating(platform.getCurrencyPair());
+    /**
+     * @return true if the chart was taken from the cache, see {@link ExchangeManager#startCalculating}
+     */
+    public boolean startCalculating(TradePlatform platform) {
+        return exchanges.get(platform.getExchange()).startCalculating(platform.getCurrencyPair());
     }
 
     // ------------------ DATABASE METHODS -----------------------------------------------------------------------------
 
-    protected long getLatestTime(String tableName) throws SQLException {
-        String SQLString = String.format("SELECT MAX(time) FROM %s", tableName);
-        try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
-            ResultSet resultSet = statement.executeQuery();
-            resultSet.next();
-            return resultSet.getLong(1);
-        }
-    }
-
-    // Synchronised methods, can only have 1 writer writing at a time,
-    // prevent 'cannot commit - no transaction is active'
-    protected synchronized int writeToDatabase(String tableName, List<Transaction> transactions) throws SQLException {
-        // FIRST: find latest time in database, don't re-insert same rows
-        long maxDatabaseTime = getLatestTime(tableName);
-        deleteRowsAtLeastTime(tableName, maxDatabaseTime);   // re-insert rows of last time
-        // only insert rows with time AT LEAST max time in database (no re-inserting earlier rows)
-        List<Transaction> toInsert = new ArrayList<>(transactions);
-        Collections.reverse(toInsert);  // reverse to get ascending time
-        Collections.sort(toInsert);     // sort just in case
-        int index = toInsert.size();
-        for (int i = 0; i < toInsert.size(); i++) {
-            if (toInsert.get(i).getTime() >= maxDatabaseTime) {
-                index = i;
-                break;
+    /**
+     * @return store of the trades of a table
+     */
+    protected TradeStore getTradeStore(String tableName) {
+        TradeStore store = tradeStores.get(tableName);
+        if (store == null) {
+            throw new IllegalArgumentException("No trade table " + tableName);
+        }
+        return store;
+    }
+
+    /**
+     * Keeps the trades of a platform in memory mapped column files from now on, see {@link ColumnarTradeStore}.
+     * Trades already in its SQLite table are not moved, see {@link ColumnarMigration}.
+     * @param directory directory of the column stores, each table has a directory in it
+     */
+    public synchronized void useColumnarStore(TradePlatform platform, File directory)
+            throws IOException, SQLException {
+        ExchangeManager exchangeManager = exchanges.get(platform.getExchange());
+        String tableName = exchangeManager == null ? null : exchangeManager.getTableName(platform.getCurrencyPair());
+        if (tableName == null) {
+            throw new IllegalArgumentException("No trade table for " + platform);
+        }
+        TradeStore old = tradeStores.put(tableName, new ColumnarTradeStore(new File(directory, tableName),
+                tableName, connection, candlePyramid));
+        old.close();
+    }
+
+    /**
+     * Commits the queued trade writes, stops refreshing candles, then closes the trade stores, call before closing the
+     * connections.
+     */
+    public void closeTradeStores() throws IOException {
+        groupWriter.close();    // not while holding the lock, the writer takes it
+        candleRefresher.shutdown();     // the refresh running stops after its chunk
+        try {
+            candleRefresher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (TradeStore store: tradeStores.values()) {
+                store.close();
             }
         }
-        toInsert = toInsert.subList(index, toInsert.size());
+    }
+
+    public final GroupCommitWriter getGroupWriter() {
+        return groupWriter;
+    }
+
+    /**
+     * @return latest trade time committed to the table
+     */
+    protected long getLatestTime(String tableName) throws IOException, SQLException, InterruptedException {
+        return getTradeStore(tableName).getLatestTime();
+    }
+
+    /**
+     * @return highest trade id committed to the table, -1 if it has no trades with an id
+     */
+    protected long getLatestId(String tableName) throws IOException, SQLException, InterruptedException {
+        return getTradeStore(tableName).getLatestId();
+    }
+
+    // Trade writes go through the group writer, which commits each alone or, with a commit latency, the writes of
+    // every exchange together. It holds this lock while writing, so the synchronised methods below never interleave
+    // their transactions with it on the writer connection. Readers use their own connections and are never blocked
+    /**
+     * Queues the new trades of a fetch to be written, see {@link TradeStore#writeNew}. The 1 minute candles of the
+     * new trades are brought up to date too. Waits while the queue is full, or for the commit if not grouping.
+     * @param transactions fetched trades, newest first as exchanges give them
+     * @return rows inserted, once committed, see {@link GroupCommitWriter#await}
+     */
+    protected Future<Integer> submitToDatabase(String tableName, TradeColumns transactions)
+            throws InterruptedException {
+        final TradeStore store = getTradeStore(tableName);
+        return groupWriter.submit(() -> {
+            final int rows = store.writeNew(transactions);
+            queueCandleRefresh(tableName);  // runs once committed, it waits for the lock
+            return rows;
+        });
+    }
+
+    /**
+     * Writes the new trades of a fetch and waits for the commit, see {@link #submitToDatabase}.
+     * @return rows inserted
+     */
+    protected int writeToDatabase(String tableName, TradeColumns transactions)
+            throws IOException, SQLException, InterruptedException {
+        return GroupCommitWriter.await(submitToDatabase(tableName, transactions));
+    }
+
+    /**
+     * Writes one page of a paged download and waits for the commit. Trades already in the table are ignored.
+     * @param trades page of trades, any order
+     * @return rows inserted
+     */
+    protected int appendToDatabase(String tableName, TradeColumns trades)
+            throws IOException, SQLException, InterruptedException {
+        final TradeStore store = getTradeStore(tableName);
+        return groupWriter.write(() -> {
+            final int rows = store.insert(trades);
+            queueCandleRefresh(tableName);
+            return rows;
+        });
+    }
+
+    // The coarser candle levels are refreshed on their own thread, a chunk at a time holding this lock, see
+    // CandlePyramid#refreshStep. Each table's levels are kept up to date up to the coarsest one charted
+    /**
+     * Notes that a level of a table is charted and queues bringing it up to date, building it if it never was.
+     * @return the level to read meanwhile, see {@link CandlePyramid#selectBuiltLevel}
+     * @throws SQLException the last refresh of the table failed, reported once
+     */
+    protected int chartCandles(Connection reader, String tableName, int level) throws SQLException {
+        chartedLevels.merge(tableName, level, Math::max);
+        queueCandleRefresh(tableName);
+        final SQLException failure = refreshFailures.remove(tableName);
+        if (failure != null) {
+            throw failure;
+        }
+        return candlePyramid.selectBuiltLevel(reader, tableName, level);
+    }
+
+    /**
+     * Queues bringing the charted levels of a table up to date, unless already queued.
+     */
+    private void queueCandleRefresh(String tableName) {
+        if (chartedLevels.containsKey(tableName) && !candleRefresher.isShutdown() &&
+                queuedRefreshes.add(tableName)) {
+            candleRefresher.execute(() -> refreshCandles(tableName));
+        }
+    }
+
+    private void refreshCandles(String tableName) {
+        queuedRefreshes.remove(tableName);  // writes from now on queue another refresh
+        try {
+            boolean upToDate = false;
+            while (!upToDate && !candleRefresher.isShutdown()) {
+                synchronized (this) {
+                    upToDate = candlePyramid.refreshStep(tableName, chartedLevels.get(tableName));
+                }
+            }
+        } catch (SQLException e) {
+            refreshFailures.put(tableName, e);
+        }
+    }
+
+    // ------------------ GAPS -----------------------------------------------------------------------------------------
+
+    /**
+     * Records that the trades with ids between afterId and beforeId (both exclusive) are missing from a table, for
+     * exchanges with sequential trade ids per currency pair.
+     */
+    protected synchronized void addGap(String tableName, long afterId, long beforeId) throws SQLException {
+        if (beforeId <= afterId + 1) {
+            return;
+        }
+        String SQLString = "INSERT OR REPLACE INTO " + GAPS_TABLE + " VALUES (?, ?, ?, ?)";
         connection.setAutoCommit(false);
-        // Columns: time(INT), price(REAL), volume(REAL), type(INT)
-        String SQLString = String.format("INSERT INTO %s VALUES (?, ?, ?, ?, ?)", tableName);
         try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
-            for (Transaction trans: toInsert) {
-                statement.setLong(1, trans.getId());
-                statement.setLong(2, trans.getTime());
-                statement.setDouble(3, trans.getPrice());
-                statement.setDouble(4, trans.getVolume());
-                statement.setInt(5, trans.getTradeType());
-                statement.addBatch();
-            }
-            int[] results = statement.executeBatch();
+            statement.setString(1, tableName);
+            statement.setLong(2, afterId);
+            statement.setLong(3, beforeId);
+            statement.setLong(4, System.currentTimeMillis()/1000);
+            statement.executeUpdate();
             connection.commit();
-            return results.length;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Records the ids between the latest stored before paging back and the oldest paged as a gap, if a page came.
+     * @param latestId latest id stored before paging, negative if none
+     * @param oldestId oldest id paged, Long.MAX_VALUE if none
+     */
+    private void addPagedGap(String tableName, long latestId, long oldestId) throws SQLException {
+        if (latestId >= 0 && oldestId != Long.MAX_VALUE) {
+            addGap(tableName, latestId, oldestId);
         }
     }
 
-    protected void deleteRowsAtLeastTime(String tableName, long time) throws SQLException {
-        String SQLString = String.format("DELETE FROM %s WHERE time >= ?", tableName);
+    /**
+     * Narrows a gap after some of it was fetched, removing it once no ids are missing.
+     * @param beforeId new upper bound, the lowest id fetched
+     */
+    protected synchronized void updateGap(String tableName, long afterId, long beforeId) throws SQLException {
+        String SQLString = beforeId <= afterId + 1 ?
+                "DELETE FROM " + GAPS_TABLE + " WHERE table_name = ? AND after_id = ?" :
+                "UPDATE " + GAPS_TABLE + " SET before_id = ? WHERE table_name = ? AND after_id = ?";
+        connection.setAutoCommit(false);
         try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
-            statement.setLong(1, time);
+            int index = 1;
+            if (beforeId > afterId + 1) {
+                statement.setLong(index++, beforeId);
+            }
+            statement.setString(index++, tableName);
+            statement.setLong(index, afterId);
             statement.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * @return missing id ranges of a table as {after id, before id}, newest first
+     */
+    protected synchronized List<long[]> getGaps(String tableName) throws SQLException {
+        List<long[]> gaps = new ArrayList<>();
+        String SQLString = "SELECT after_id, before_id FROM " + GAPS_TABLE + " WHERE table_name = ? ORDER BY before_id DESC";
+        try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
+            statement.setString(1, tableName);
+            ResultSet set = statement.executeQuery();
+            while (set.next()) {
+                gaps.add(new long[] {set.getLong(1), set.getLong(2)});
+            }
         }
+        return gaps;
     }
 
 
@@ -166,6 +452,15 @@ public class DatabaseManager {
             return newRows.getReadOnlyProperty();
         }
 
+        /** Candles of the chart shown changed by the trades written since, see {@link LiveCandles} */
+        private ReadOnlyObjectWrapper<LiveCandles.Update> liveUpdate = new ReadOnlyObjectWrapper<>();
+        public final LiveCandles.Update getLiveUpdate() {
+            return liveUpdate.get();
+        }
+        public final ReadOnlyObjectProperty<LiveCandles.Update> liveUpdateProperty() {
+            return liveUpdate.getReadOnlyProperty();
+        }
+
         private LongProperty minTime = new SimpleLongProperty(this, "minTime", Long.MIN_VALUE);
         public final long getMinTime() {
             return minTime.get();
@@ -243,18 +538,35 @@ public class DatabaseManager {
             return calculatingProgress.getReadOnlyProperty();
         }
 
-        public final List<Transaction> getReaderValue() {
+        public final ChartData getReaderValue() {
             return reader.getValue();
         }
-        public final ReadOnlyObjectProperty<List<Transaction>> readerValueProperty() {
+        public final ReadOnlyObjectProperty<ChartData> readerValueProperty() {
             return reader.valueProperty();
         }
 
-        public final XYChart.Series<Number, Number>[] getCalculatorValue() {
-            return calculator.getValue();
+        /** Price and volume series of the chart last calculated or taken from the cache */
+        private ReadOnlyObjectWrapper<XYChart.Series<Number, Number>[]> chartSeries = new ReadOnlyObjectWrapper<>();
+        public final XYChart.Series<Number, Number>[] getChartSeries() {
+            return chartSeries.get();
         }
-        public final ReadOnlyObjectProperty<XYChart.Series<Number, Number>[]> calculatorValueProperty() {
-            return calculator.valueProperty();
+        public final ReadOnlyObjectProperty<XYChart.Series<Number, Number>[]> chartSeriesProperty() {
+            return chartSeries.getReadOnlyProperty();
+        }
+
+        /**
+         * @return most recent trades of the chart shown as it was built, ordered by time ascending
+         */
+        public final TradeColumns getChartTrades() {
+            return chartTrades;
+        }
+
+        /**
+         * Intervals offered for charts, in seconds. A calculation also fills the cache with those it can derive from
+         * the same candles, see {@link Calculator}.
+         */
+        public final List<Integer> getChartIntervals() {
+            return chartIntervals;
         }
 
         private ObjectProperty<EventHandler<WorkerStateEvent>> onWritingSucceeded = new SimpleObjectProperty<>();
@@ -325,15 +637,28 @@ public class DatabaseManager {
 
         private final Exchange exchange;
         private final ExchangeAPI api;
-        private final Map<CurrencyPair, String> tableNames = new HashMap<>();
+        private final String[] tableNames = new String[CurrencyPair.COUNT];     // by currency pair id
+        private final List<CurrencyPair> tablePairs = new ArrayList<>();    // pairs with a table, by id
         private final WriterService writer = new WriterService();
         private final ReaderService reader = new ReaderService();
         private final Calculator calculator = new Calculator();
+        private final CandleCache cache = new CandleCache();
+        private final List<Integer> chartIntervals = new ArrayList<>();     // FX thread only
+        private volatile CandleCache.Entry live;    // of the chart shown if up to now, null while another is made
+        private TradeColumns chartTrades;   // FX thread only
+        private int chartUpdates;   // live updates in the chart shown, FX thread only
 
         protected ExchangeManager(Exchange exchange, ExchangeAPI api, Map<CurrencyPair, String> tableNames) {
             this.exchange = Objects.requireNonNull(exchange);
             this.api = Objects.requireNonNull(api);
-            this.tableNames.putAll(tableNames);
+            for (Map.Entry<CurrencyPair, String> entry: tableNames.entrySet()) {
+                this.tableNames[entry.getKey().getId()] = Objects.requireNonNull(entry.getValue());
+            }
+            for (int id = 0; id < CurrencyPair.COUNT; id++) {
+                if (this.tableNames[id] != null) {
+                    tablePairs.add(CurrencyPair.byId(id));
+                }
+            }
 
             writing.bind(writer.runningProperty());
             writer.onSucceededProperty().bind(onWritingSucceeded);
@@ -346,11 +671,47 @@ public class DatabaseManager {
 
             calculating.bind(calculator.runningProperty());
             calculatingProgress.bind(calculator.progressProperty());
-            calculator.onSucceededProperty().bind(onCalculatingSucceeded);
+            calculator.setOnSucceeded(event -> {
+                show(calculator.getValue());
+                EventHandler<WorkerStateEvent> handler = getOnCalculatingSucceeded();
+                if (handler != null) {
+                    handler.handle(event);
+                }
+            });
             calculator.onFailedProperty().bind(onCalculatingFailed);
         }
 
+        public final Exchange getExchange() {
+            return exchange;
+        }
+
+        /**
+         * @return table of each currency pair
+         */
+        public final Map<CurrencyPair, String> getTableNames() {
+            Map<CurrencyPair, String> map = new LinkedHashMap<>();
+            for (CurrencyPair pair: tablePairs) {
+                map.put(pair, tableNames[pair.getId()]);
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * @return table of the currency pair, null if it has none
+         */
+        public final String getTableName(CurrencyPair pair) {
+            return tableNames[pair.getId()];
+        }
+
         public void startWriting() {
+            startWriting(tablePairs);
+        }
+
+        /**
+         * Updates the tables of some currency pairs.
+         */
+        public void startWriting(Collection<CurrencyPair> pairs) {
+            writer.setCurrencyPairs(pairs);
             writer.restart();
         }
 
@@ -360,61 +721,270 @@ public class DatabaseManager {
             }
         }
 
+        /**
+         * Reads the chart's candles again, dropping those cached for the currency pair, then calculates.
+         */
         public void startReadingThenCalculate(CurrencyPair pair) {
+            cache.invalidate(TradePlatform.of(exchange, pair));
+            startReading(pair);
+        }
+
+        private void startReading(CurrencyPair pair) {
+            live = null;
             reader.setCurrencyPair(pair);
             reader.restart();   // Calculator auto starts when succeeded
         }
 
-        public void startCalculating(CurrencyPair pair) {
-            List<Transaction> trades = getReaderValue();
-            if (trades == null || !reader.getCurrencyPair().equals(pair) || trades.isEmpty() ||
-                    trades.get(0).getTime() >= getMinTime()) {
-                startReadingThenCalculate(pair);
+        /**
+         * Shows the chart of the interval and window from the cache if it has it, only building the series, else
+         * calculates it from the candles read, reading them first if those read do not cover it.
+         * @return true if the chart was taken from the cache and is shown already, the calculating succeeded handler
+         * is not called then
+         */
+        public boolean startCalculating(CurrencyPair pair) {
+            final CandleCache.Entry cached = cache.get(TradePlatform.of(exchange, pair), getInterval(), getMinTime(),
+                    getMaxTime());
+            if (cached != null) {
+                reader.cancel();
+                calculator.cancel();
+                show(cached);
+                return true;
+            }
+            ChartData data = getReaderValue();
+            if (data == null || !reader.getCurrencyPair().equals(pair) || data.getMinTime() > getMinTime() ||
+                    data.getMaxTime() < getMaxTime() ||
+                    !candlePyramid.divides(data.getCandleInterval(), getInterval())) {
+                startReading(pair);
             } else {
+                live = null;
                 calculator.restart();
             }
+            return false;
         }
 
+        /**
+         * Makes the chart series of cached candles, brought up to now and cut to the window, and shows them.
+         */
+        private void show(CandleCache.Entry entry) {
+            assert Platform.isFxApplicationThread();
+            synchronized (entry) {
+                entry.take(getMinTime(), System.currentTimeMillis()/1000);
+                chartSeries.set(CandleAggregator.toSeries(entry.getCandles()));
+                chartTrades = entry.copyRecentTrades();
+                chartUpdates = entry.getUpdates();
+            }
+            live = entry.isLive() ? entry : null;
+        }
+
+        /**
+         * Passes a committed write to the cached candles of its currency pair.
+         */
+        private void offerLive(CurrencyPair pair, TradeColumns trades) {
+            final TradePlatform platform = TradePlatform.of(exchange, pair);
+            cache.offer(platform, trades);
+            final CandleCache.Entry current = live;
+            if (current != null && current.getTradePlatform() == platform && !cache.contains(current)) {
+                current.offer(trades);
+            }
+        }
+
+        /**
+         * Folds the writes offered into the cached candles, and publishes the candles changed of the chart shown
+         * unless it was built after them or another chart was shown meanwhile.
+         */
+        private void publishLive() {
+            final CandleCache.Entry current = live;
+            final List<CandleCache.Entry> entries = cache.getEntries();
+            if (current != null && !entries.contains(current)) {
+                entries.add(current);
+            }
+            for (final CandleCache.Entry entry: entries) {
+                final LiveCandles.Update update = entry.fold();
+                if (update != null && entry == current) {
+                    Platform.runLater(() -> {
+                        if (live == entry && update.getNumber() > chartUpdates) {
+                            chartUpdates = update.getNumber();
+                            liveUpdate.set(update);
+                        }
+                    });
+                }
+            }
+        }
+
+        /** Trades read with the candles, for the past trades table */
+        public static final int RECENT_TRADES = 200;
+
         public class WriterService extends Service<Void> {
 
+            /** Pages of recorded gaps re-fetched per pair and run, so filling a gap never stalls the newest trades */
+            public static final int MAX_GAP_PAGES = 10;
+
+            private List<CurrencyPair> currencyPairs = new ArrayList<>();     // FX thread only
+
+            /**
+             * @param pairs currency pairs written by the next run, those without a table are ignored
+             */
+            public void setCurrencyPairs(Collection<CurrencyPair> pairs) {
+                currencyPairs = new ArrayList<>();
+                for (CurrencyPair pair: pairs) {
+                    if (getTableName(pair) != null) {
+                        currencyPairs.add(pair);
+                    }
+                }
+            }
+
             @Override
             protected Task<Void> createTask() {
+                final List<CurrencyPair> pairs = currencyPairs;
                 return new Task<Void>() {
                     @Override
                     protected Void call() throws Exception {
                         long latestTime = Long.MIN_VALUE;
                         int rowsAdded = 0;
+                        MultipleRequestException failure = null;
+                        Map<CurrencyPair, Integer> rowsByPair = new HashMap<>();
                         if (api instanceof CoinbaseAPI) {
-                            for (CurrencyPair pair: tableNames.keySet()) {
-                                long minTime = getLatestTime(tableNames.get(pair));
-                                List<Transaction> trades = ((CoinbaseAPI) api).getTrades(pair, minTime);
-                                if (trades != null && !trades.isEmpty()) {
-                                    latestTime = Math.max(trades.get(0).getTime(), latestTime);
-                                    rowsAdded += writeToDatabase(tableNames.get(pair), trades);
-                                }
+                            // Page every pair concurrently, each page is written as it arrives
+                            final AtomicLong pagedLatestTime = new AtomicLong(Long.MIN_VALUE);
+                            try {
+                                rowsByPair = writeAllTradePages((CoinbaseAPI) api, pairs, pagedLatestTime);
+                            } catch (MultipleRequestException e) {
+                                rowsByPair = e.getPartialResults();
+                                failure = e;
                             }
+                            latestTime = pagedLatestTime.get();
                         } else {
-                            Map<TradePlatform, List<Transaction>> allTrades = api.getAllTrades();
-                            for (CurrencyPair pair: tableNames.keySet()) {
-                                List<Transaction> trades = allTrades.get(new TradePlatform(exchange, pair));
+                            // Fetch every pair concurrently, decoded straight into columns, then write the pairs that
+                            // succeeded
+                            Map<CurrencyPair, TradeColumns> tradesByPair;
+                            try {
+                                tradesByPair = api.requestAll(pairs, pair -> {
+                                    TradeColumns trades = new TradeColumns(TradePlatform.of(exchange, pair));
+                                    return api.streamTrades(pair, trades::add) ? trades : null;
+                                });
+                            } catch (MultipleRequestException e) {
+                                tradesByPair = e.getPartialResults();
+                                failure = e;
+                            }
+                            // Queue every pair before waiting, so they are committed together when grouping
+                            Map<CurrencyPair, Future<Integer>> writes = new LinkedHashMap<>();
+                            for (Map.Entry<CurrencyPair, TradeColumns> entry: tradesByPair.entrySet()) {
+                                TradeColumns trades = entry.getValue();
                                 if (trades != null && !trades.isEmpty()) {
-                                    latestTime = Math.max(trades.get(0).getTime(), latestTime);
-                                    // Actual writing to SQLite database
-                                    rowsAdded += writeToDatabase(tableNames.get(pair), trades);
+                                    latestTime = Math.max(trades.getTime(0), latestTime);
+                                    writes.put(entry.getKey(), submitToDatabase(getTableName(entry.getKey()), trades));
+                                } else {
+                                    rowsByPair.put(entry.getKey(), 0);
                                 }
                             }
+                            for (Map.Entry<CurrencyPair, Future<Integer>> entry: writes.entrySet()) {
+                                rowsByPair.put(entry.getKey(), GroupCommitWriter.await(entry.getValue()));
+                                offerLive(entry.getKey(), tradesByPair.get(entry.getKey()));
+                            }
+                        }
+                        publishLive();
+                        for (int rows: rowsByPair.values()) {
+                            rowsAdded += rows;
                         }
+                        schedule(rowsByPair, failure);
                         final long finalLatestTime = latestTime;
                         final int finalRowsAdded = rowsAdded;
                         Platform.runLater(() -> lastUpdated.set(finalLatestTime));
                         Platform.runLater(() -> newRows.set(finalRowsAdded));
+                        if (failure != null) {
+                            throw failure;
+                        }
                         return null;
                     }
                 };
             }
+
+            /**
+             * Reports the poll of each pair to the {@link PollScheduler}.
+             * @param rowsByPair rows added per pair that succeeded
+             * @param failure failed pairs, or null
+             */
+            private void schedule(Map<CurrencyPair, Integer> rowsByPair, MultipleRequestException failure) {
+                final long now = System.currentTimeMillis();
+                for (Map.Entry<CurrencyPair, Integer> entry: rowsByPair.entrySet()) {
+                    pollScheduler.polled(TradePlatform.of(exchange, entry.getKey()), now, entry.getValue());
+                }
+                if (failure == null) {
+                    return;
+                }
+                boolean throttled = false;
+                for (Map.Entry<CurrencyPair, Throwable> entry: failure.getFailures().entrySet()) {
+                    pollScheduler.failed(TradePlatform.of(exchange, entry.getKey()), now);
+                    Throwable cause = entry.getValue();
+                    throttled |= cause instanceof HTTPException &&
+                            RateLimiter.isThrottled(((HTTPException) cause).getResponseCode());
+                }
+                if (throttled) {
+                    pollScheduler.throttled(exchange, now);
+                }
+            }
+
+            /**
+             * Pages back from the newest trade of each table to the latest trade already in it, writing each page as
+             * it arrives. Ids missing between the table and the oldest page fetched, because paging stopped early or
+             * failed, are recorded as a gap, then up to {@link #MAX_GAP_PAGES} pages of recorded gaps are re-fetched.
+             * @param pairs currency pairs with a table
+             * @param latestTime updated with the newest trade time
+             * @return rows inserted per pair
+             */
+            private Map<CurrencyPair, Integer> writeAllTradePages(final CoinbaseAPI coinbaseAPI,
+                                                                  Collection<CurrencyPair> pairs,
+                                                                  final AtomicLong latestTime) throws Exception {
+                final Map<CurrencyPair, Long> minTimes = new HashMap<>();
+                final Map<CurrencyPair, Long> maxIds = new HashMap<>();
+                for (CurrencyPair pair: pairs) {
+                    String tableName = getTableName(pair);
+                    minTimes.put(pair, getLatestTime(tableName));
+                    maxIds.put(pair, getLatestId(tableName));
+                }
+                return api.requestAll(pairs, pair -> {
+                    final String tableName = getTableName(pair);
+                    final long maxId = maxIds.get(pair);
+                    final long[] oldestId = {Long.MAX_VALUE};
+                    final int[] rows = {0};
+                    TradePageSink sink = trades -> {
+                        if (!trades.isEmpty()) {
+                            latestTime.accumulateAndGet(trades.getTime(0), Math::max);
+                            oldestId[0] = Math.min(oldestId[0], trades.getId(trades.size() - 1));
+                        }
+                        rows[0] += appendToDatabase(tableName, trades);
+                        offerLive(pair, trades);
+                    };
+                    try {
+                        coinbaseAPI.streamTradePages(pair, minTimes.get(pair), sink);
+                    } catch (Throwable e) {
+                        try {
+                            addPagedGap(tableName, maxId, oldestId[0]);
+                        } catch (SQLException gapFailure) {
+                            e.addSuppressed(gapFailure);     // the paging failure is the one reported
+                        }
+                        throw e;
+                    }
+                    addPagedGap(tableName, maxId, oldestId[0]);
+                    int pages = MAX_GAP_PAGES;
+                    for (long[] gap: getGaps(tableName)) {
+                        if (pages <= 0) {
+                            break;
+                        }
+                        final int[] gapPages = {0};
+                        long lowest = coinbaseAPI.streamTradesBetween(pair, gap[0], gap[1], pages, trades -> {
+                            gapPages[0]++;
+                            sink.page(trades);
+                        });
+                        pages -= gapPages[0];
+                        updateGap(tableName, gap[0], lowest);
+                    }
+                    return rows[0];
+                });
+            }
         }
 
-        protected class ReaderService extends Service<List<Transaction>> {
+        protected class ReaderService extends Service<ChartData> {
 
             private ObjectProperty<CurrencyPair> currencyPair = new SimpleObjectProperty<>();
             public final CurrencyPair getCurrencyPair() {
@@ -427,60 +997,73 @@ public class DatabaseManager {
                 return currencyPair;
             }
 
+            /**
+             * Reads the candles of the window at the coarsest stored level dividing the interval, or while that one is
+             * built a finer one, and the most recent trades, never every trade of the window. The levels are
+             * refreshed apart, the read never waits for writes.
+             */
             @Override
-            protected Task<List<Transaction>> createTask() {
+            protected Task<ChartData> createTask() {
                 final CurrencyPair pair = getCurrencyPair();
-                final TradePlatform platform = new TradePlatform(exchange, pair);
-                final String tableName = tableNames.get(pair);
+                final TradePlatform platform = TradePlatform.of(exchange, pair);
+                final String tableName = getTableName(pair);
                 if (tableName == null) {    // fail if table does't exists
-                    return new Task<List<Transaction>>() {
+                    return new Task<ChartData>() {
                         @Override
-                        protected List<Transaction> call() throws NullPointerException {
+                        protected ChartData call() throws NullPointerException {
                             throw new NullPointerException("No table for " + getCurrencyPair());
                         }
                     };
                 }
                 final long min = minTime.get();
                 final long max = maxTime.get();
-                // get row count in query
-                StringBuilder rowCountBuilder = new StringBuilder("SELECT COUNT(*) FROM ").append(tableName);
-                StringBuilder statementBuilder = new StringBuilder("SELECT * FROM ").append(tableName);
-                if (min == Long.MIN_VALUE && max == Long.MAX_VALUE) {   // NO RESTRICTIONS
-                } else if (max == Long.MAX_VALUE) {
-                    rowCountBuilder.append(" WHERE time > ").append(min);
-                    statementBuilder.append(" WHERE time > ").append(min);
-                } else if (min == Long.MIN_VALUE) {
-                    rowCountBuilder.append(" WHERE time < ").append(max);
-                    statementBuilder.append(" WHERE time < ").append(max);
-                } else {
-                    rowCountBuilder.append(" WHERE time BETWEEN ").append(min).append(" AND ").append(max);
-                    statementBuilder.append(" WHERE time BETWEEN ").append(min).append(" AND ").append(max);
-                }
-                statementBuilder.append(" ORDER BY time");
-                final String rowCountStr = rowCountBuilder.toString();
-                final String statementStr = statementBuilder.toString();
-                return new Task<List<Transaction>>() {
+                final int level = candlePyramid.selectLevel(getInterval());
+                final TradeStore store = getTradeStore(tableName);
+                return new Task<ChartData>() {
                     @Override
-                    protected List<Transaction> call() throws SQLException {
-                        List<Transaction> data = new ArrayList<>();
-                        // get row count
-                        long rowCount;
-                        try (PreparedStatement rowCountStatement = connection.prepareStatement(rowCountStr)) {
-                            ResultSet rowCountSet = rowCountStatement.executeQuery();
-                            rowCountSet.next();
-                            rowCount = rowCountSet.getLong(1);
+                    protected ChartData call() throws IOException, SQLException, InterruptedException {
+                        final ChartData data;
+                        // read-only connection, runs alongside the writers
+                        try (ConnectionManager.Lease lease = connections.openReader()) {
+                            final int built = chartCandles(lease.getConnection(), tableName, level);
+                            data = CandlePyramid.read(lease.getConnection(), tableName, platform, built, min, max,
+                                    new ReadProgress(min, max));
+                        }
+                        data.setRecentTrades(store.readLatest(platform, min, max, RECENT_TRADES));
+                        updateProgress(1, 1);
+                        return data;
+                    }
+
+                    /**
+                     * Estimates the progress of a read from the time reached in the window, updated every whole
+                     * percent at most, the trades after the candles taking the last.
+                     */
+                    class ReadProgress implements LongConsumer {
+
+                        private final long end;
+                        private long start;
+                        private long percent = -1;
+
+                        /**
+                         * @param min start of the window, Long.MIN_VALUE to start from the first candle read
+                         * @param max end of the window, Long.MAX_VALUE for now
+                         */
+                        ReadProgress(long min, long max) {
+                            this.start = min;
+                            this.end = Math.min(max, System.currentTimeMillis()/1000);
                         }
-                        long workDone = 0;
-                        try (PreparedStatement statement = connection.prepareStatement(statementStr)) {
-                            // get data
-                            ResultSet set = statement.executeQuery();
-                            while (set.next()) {
-                                data.add(new Transaction(set.getLong(1), set.getLong(2), set.getDouble(3),
-                                        set.getDouble(4), set.getInt(5), platform));
-                                updateProgress(++workDone, rowCount);
+
+                        @Override
+                        public void accept(long time) {
+                            if (start == Long.MIN_VALUE) {
+                                start = time;
+                            }
+                            long reached = end <= start ? 99 : Math.min(99, 100*(time - start)/(end - start));
+                            if (reached > percent) {
+                                percent = reached;
+                                updateProgress(reached, 100);
                             }
                         }
-                        return data;
                     }
                 };
             }
@@ -491,123 +1074,77 @@ public class DatabaseManager {
             }
         }
 
-        public class Calculator extends Service<XYChart.Series<Number, Number>[]> {
+        public class Calculator extends Service<CandleCache.Entry> {
+
+            // output columns of each interval reused by the next run, taken by a running task so a cancelled one
+            // still running never shares them
+            private final Map<Integer, AtomicReference<CandleColumns>> spareCandles = new ConcurrentHashMap<>();
 
             public Calculator() {}
 
+            /**
+             * Merges the candles read into candles of the interval, see {@link CandleAggregator#fromCandles}.
+             * Intervals without trades are flat at the last price, and intervals are added up to now. It then merges
+             * those of the other {@link #getChartIntervals() chart intervals} the candles read divide whose window
+             * they cover: the smaller ones, or all of them without a start. Each is cached, a copy of the reused
+             * columns, and those up to now are then kept up to date by the writer, see {@link CandleCache}.
+             * @return the cached candles of the interval
+             */
             @Override
-            protected Task<XYChart.Series<Number, Number>[]> createTask() {
-                final List<Transaction> trades = reader.getValue();
-                assert trades != null;
-                if (getInterval() < 1) {
-                    throw new IllegalStateException("interval must be at least 1");
+            protected Task<CandleCache.Entry> createTask() {
+                final ChartData data = reader.getValue();
+                assert data != null;
+                final int interval = getInterval();
+                final int level = data.getCandleInterval();
+                if (interval % level != 0) {
+                    throw new IllegalStateException("interval must be a multiple of " + level + "s");
+                }
+                final long min = getMinTime(), max = getMaxTime();
+                final List<Integer> intervals = new ArrayList<>();
+                intervals.add(interval);
+                for (int other: chartIntervals) {
+                    if (other != interval && other % level == 0 && (other < interval || min == Long.MIN_VALUE)) {
+                        intervals.add(other);
+                    }
                 }
-                return new Task<XYChart.Series<Number, Number>[]>() {
+                return new Task<CandleCache.Entry>() {
                     @Override
-                    protected XYChart.Series<Number, Number>[] call() {
+                    protected CandleCache.Entry call() {
                         final long currentTime = System.currentTimeMillis()/1000;   // for extending to now
-                        final List<Transaction> data = getTimeRestrictedTrades(trades);   // restricted between min and max
-                        final int dataSize = data.size();
-                        final int interval = getInterval();
-                        XYChart.Series<Number, Number> priceSeries = new XYChart.Series<>();
-                        XYChart.Series<Number, Number> volumeSeries = new XYChart.Series<>();
-                        // sort
-                        if (!data.isEmpty()) {
-                            int workDone = 0;
-                            Collections.sort(data);
-                            List<Transaction> intervalTrades = new ArrayList<>();
-                            double lastPrice = data.get(0).getPrice();
-                            long intervalStartTime = calculateStartTime(data.get(0).getTime());
-                            for (int i = 0, max = data.size(); i < max; i++) {
-                                Transaction item = data.get(i);
-                                while (item.getTime() >= intervalStartTime + interval) {    // add previous interval if new interval
-                                    if (intervalTrades.isEmpty()) {
-                                        priceSeries.getData().add(new XYChart.Data<>(intervalStartTime, lastPrice,
-                                                new CandleStickValues(lastPrice, lastPrice, lastPrice)));
-                                        volumeSeries.getData().add(new XYChart.Data<>(intervalStartTime, 0, 0.0));
-                                    } else {
-                                        List<Double> prices = intervalTrades.stream().map(Transaction::getPrice).collect(Collectors.toList());
-                                        List<Double> volumes = intervalTrades.stream().map(Transaction::getVolume).collect(Collectors.toList());
-                                        List<Double> qVolumes = intervalTrades.stream().map(
-                                                transaction -> transaction.getPrice()*transaction.getVolume()).collect(Collectors.toList());
-                                        double open = intervalTrades.get(0).getPrice();
-                                        double close = intervalTrades.get(intervalTrades.size() - 1).getPrice();
-                                        double high = Collections.max(prices);
-                                        double low = Collections.min(prices);
-                                        priceSeries.getData().add(new XYChart.Data<>(intervalStartTime, open, new CandleStickValues(close, high, low)));
-                                        volumeSeries.getData().add(new XYChart.Data<>(intervalStartTime, volumes.stream().mapToDouble(Double::doubleValue).sum(),
-                                                qVolumes.stream().mapToDouble(Double::doubleValue).sum()));
-                                        intervalTrades.clear();
-                                    }
-                                    intervalStartTime += interval;
-                                }
-                                intervalTrades.add(item);
-                                lastPrice = item.getPrice();
-                                updateProgress(++workDone, dataSize);
+                        // restricted between min and max, by whole candles
+                        final int from = min == Long.MIN_VALUE ? 0 : data.indexOf(min - level + 1);
+                        final int to = max == Long.MAX_VALUE ? data.size() : data.indexOf(max + 1);
+                        final ForkJoinPool pool = CandleAggregator.defaultPool(to - from);
+                        CandleCache.Entry shown = null;
+                        for (int seconds: intervals) {
+                            final AtomicReference<CandleColumns> spare =
+                                    spareCandles.computeIfAbsent(seconds, key -> new AtomicReference<>());
+                            CandleColumns candles = spare.getAndSet(null);
+                            if (candles == null) {
+                                candles = new CandleColumns();
                             }
-                            do {
-                                if (intervalTrades.isEmpty()) {
-                                    priceSeries.getData().add(new XYChart.Data<>(intervalStartTime, lastPrice,
-                                            new CandleStickValues(lastPrice, lastPrice, lastPrice)));
-                                    volumeSeries.getData().add(new XYChart.Data<>(intervalStartTime, 0, 0.0));
-                                } else {
-                                    List<Double> prices = intervalTrades.stream().map(Transaction::getPrice).collect(Collectors.toList());
-                                    List<Double> volumes = intervalTrades.stream().map(Transaction::getVolume).collect(Collectors.toList());
-                                    List<Double> qVolumes = intervalTrades.stream().map(
-                                            transaction -> transaction.getPrice()*transaction.getVolume()).collect(Collectors.toList());
-                                    double open = intervalTrades.get(0).getPrice();
-                                    double close = intervalTrades.get(intervalTrades.size() - 1).getPrice();
-                                    double high = Collections.max(prices);
-                                    double low = Collections.min(prices);
-                                    priceSeries.getData().add(new XYChart.Data<>(intervalStartTime, open, new CandleStickValues(close, high, low)));
-                                    volumeSeries.getData().add(new XYChart.Data<>(intervalStartTime, volumes.stream().mapToDouble(Double::doubleValue).sum(),
-                                            qVolumes.stream().mapToDouble(Double::doubleValue).sum()));
-                                    intervalTrades.clear();
+                            try {
+                                final long startTime = from < to ? buckets.floor(data.getTime(from), seconds) : 0;
+                                CandleAggregator.fromCandles(data, from, to, startTime, seconds, currentTime, candles,
+                                        pool, buckets);
+                                final TradeColumns recentTrades = new TradeColumns(data.getTradePlatform(),
+                                        data.getRecentTrades().size());
+                                recentTrades.addAll(data.getRecentTrades());
+                                final CandleCache.Entry entry = new CandleCache.Entry(data.getTradePlatform(),
+                                        seconds, min, max, buckets, candles.copy(), recentTrades, RECENT_TRADES);
+                                cache.put(entry);
+                                if (shown == null) {
+                                    shown = entry;
                                 }
-                                intervalStartTime += interval;
-                            } while (currentTime >= intervalStartTime + interval);
+                            } finally {
+                                spare.set(candles);
+                            }
                         }
-                        return new XYChart.Series[] {priceSeries, volumeSeries};
+                        updateProgress(1, 1);
+                        return shown;
                     }
                 };
             }
-
-            /**
-             * Get all the trades within the min and max times.
-             * @param trades trades, ordered by time ascending
-             * @return all trades within min and max times
-             */
-            private List<Transaction> getTimeRestrictedTrades(List<Transaction> trades) {
-                final long minTime = getMinTime(), maxTime = getMaxTime();
-                int minIndex = 0, maxIndex = trades.size();
-                for (int i = 0, max = trades.size(); i < max; i++) {
-                    if (trades.get(i).getTime() >= minTime) {
-                        minIndex = i;
-                        break;
-                    }
-                }
-                for (int i = trades.size() - 1; i >= 0; i--) {
-                    if (trades.get(i).getTime() <= maxTime) {
-                         maxIndex = i + 1;
-                         break;
-                    }
-                }
-                return new ArrayList<>(trades.subList(minIndex, maxIndex));
-            }
-
-            private long calculateStartTime(long minTime) {
-                final int interval = getInterval();
-                if (interval < 3600) {  // minute
-                    return Utils.snapToPreviousMinute(minTime, interval/60);
-                }
-                if (interval < 86400) { // hour
-                    return Utils.snapToPreviousHour(minTime, interval/3600);
-                }
-                if (interval < 86400*7) {   // day
-                    return Utils.snapToPreviousDay(minTime, interval/86400);
-                }
-                return Utils.snapToPreviousWeek(minTime, interval/(86400*7), DayOfWeek.MONDAY);
-            }
         }
     }
 }
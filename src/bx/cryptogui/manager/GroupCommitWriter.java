@@ -0,0 +1,312 @@
+package bx.cryptogui.manager;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes trades on the writer connection, for every exchange manager, submitted as batches. With a commit latency set
+ * a single thread runs them together in a few large transactions: a transaction takes every batch queued while the
+ * one before was written, and those arriving within the commit latency of its first batch, so one commit serves the
+ * tables of every exchange instead of one each. Without one, the default, there is no thread and each batch is
+ * committed alone by the thread submitting it, as the exchange managers did before.
+ * <p>
+ *     When grouping, the queue is bounded and {@link #submit} waits while it is full, so producers slow down to the
+ *     speed of the writes. Each batch runs in its own savepoint, a failing batch is rolled back alone and the rest are
+ *     committed.
+ * </p>
+ */
+public class GroupCommitWriter implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    /** Commit latency committing each batch alone */
+    public static final long NO_GROUPING = -1;
+    /**
+     * Milliseconds a transaction waits for more batches after its first. No grouping by default: with WAL and
+     * synchronous = NORMAL a commit does not sync the file, and grouping measured slower than committing alone
+     * (see {@link bx.cryptogui.benchmark.GroupCommitBenchmark}). It pays where commits sync, eg. synchronous = FULL.
+     */
+    public static final long DEFAULT_COMMIT_LATENCY = NO_GROUPING;
+    /** Most batches written in one transaction */
+    public static final int MAX_GROUP = 256;
+
+    /**
+     * A write in the current transaction of the writer connection, which it must not commit.
+     */
+    @FunctionalInterface
+    public interface Write {
+
+        /**
+         * @return rows written
+         */
+        int write() throws IOException, SQLException;
+    }
+
+    /**
+     * Told of each commit, holding the lock with no transaction open, eg. to publish what the writes keep outside the
+     * database.
+     */
+    @FunctionalInterface
+    public interface CommitListener {
+
+        void committed() throws IOException, SQLException;
+    }
+
+    private final Connection connection;
+    private final Object lock;
+    private final BlockingQueue<Batch> queue;
+    private final long commitLatency;   // nanoseconds, negative for no grouping
+    private final Thread thread;    // null for no grouping
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final List<CommitListener> commitListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    public GroupCommitWriter(Connection connection, Object lock) {
+        this(connection, lock, DEFAULT_CAPACITY, DEFAULT_COMMIT_LATENCY);
+    }
+
+    /**
+     * @param connection writer connection
+     * @param lock held while a transaction is written, by others sharing the connection too
+     * @param capacity most batches queued before producers wait
+     * @param commitLatency milliseconds a transaction waits for more batches after its first, 0 to only group the
+     *                      batches already queued, {@link #NO_GROUPING} to commit each batch alone
+     */
+    public GroupCommitWriter(Connection connection, Object lock, int capacity, long commitLatency) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.connection = connection;
+        this.lock = lock;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.commitLatency = commitLatency < 0 ? NO_GROUPING : TimeUnit.MILLISECONDS.toNanos(commitLatency);
+        if (this.commitLatency < 0) {
+            this.thread = null;
+        } else {
+            this.thread = new Thread(this::run, "group-commit-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues a write, waiting while the queue is full, or commits it now if not grouping.
+     * @return rows written, once committed
+     */
+    public Future<Integer> submit(Write write) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Writer closed");
+        }
+        Batch batch = new Batch(write);
+        if (thread == null) {
+            commit(Collections.singletonList(batch));
+            return batch.result;
+        }
+        queue.put(batch);
+        if (!thread.isAlive()) {
+            failQueued(new IllegalStateException("Writer closed"));
+        }
+        return batch.result;
+    }
+
+    /**
+     * Queues a write and waits for its commit.
+     * @return rows written
+     */
+    public int write(Write write) throws IOException, SQLException, InterruptedException {
+        return await(submit(write));
+    }
+
+    /**
+     * Waits for a submitted write, throwing what it threw.
+     * @return rows written
+     */
+    public static int await(Future<Integer> result) throws IOException, SQLException, InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * @return milliseconds, {@link #NO_GROUPING} if each batch is committed alone
+     */
+    public void addCommitListener(CommitListener listener) {
+        commitListeners.add(listener);
+    }
+
+    public final long getCommitLatency() {
+        return commitLatency < 0 ? NO_GROUPING : TimeUnit.NANOSECONDS.toMillis(commitLatency);
+    }
+
+    /**
+     * @return transactions committed so far
+     */
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * @return batches written so far
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    private void run() {
+        final List<Batch> group = new ArrayList<>();
+        Exception failure = new IllegalStateException("Writer closed");
+        try {
+            while (true) {
+                group.clear();
+                Batch first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        break;
+                    }
+                    continue;
+                }
+                group.add(first);
+                if (commitLatency >= 0) {
+                    queue.drainTo(group, MAX_GROUP - 1);
+                    final long deadline = first.queued + commitLatency;
+                    while (group.size() < MAX_GROUP) {
+                        Batch next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        group.add(next);
+                        queue.drainTo(group, MAX_GROUP - group.size());
+                    }
+                }
+                commit(group);
+            }
+        } catch (InterruptedException e) {
+            failure = new IllegalStateException("Writer interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            for (Batch batch: group) {
+                batch.result.completeExceptionally(failure);    // no effect on those committed
+            }
+            failQueued(failure);
+        }
+    }
+
+    /**
+     * Writes a group in one transaction, tells the commit listeners, then completes the results of its batches. If
+     * the connection cannot be put back in auto-commit mode or a listener fails, the batches fail with that, committed
+     * or not.
+     */
+    private void commit(List<Batch> group) {
+        Exception failure = null;
+        synchronized (lock) {
+            try {
+                connection.setAutoCommit(false);
+                for (Batch batch: group) {
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        batch.rows = batch.write.write();
+                        connection.releaseSavepoint(savepoint);
+                    } catch (Exception e) {
+                        connection.rollback(savepoint);
+                        connection.releaseSavepoint(savepoint);
+                        batch.result.completeExceptionally(e);
+                    }
+                }
+                connection.commit();
+                commits.incrementAndGet();
+                batches.addAndGet(group.size());
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackException) {
+                    e.addSuppressed(rollbackException);
+                }
+                failure = e;
+            }
+            try {
+                connection.setAutoCommit(true);
+                if (failure == null) {
+                    for (CommitListener listener: commitListeners) {
+                        listener.committed();
+                    }
+                }
+            } catch (IOException | SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        for (Batch batch: group) {
+            if (failure != null) {
+                batch.result.completeExceptionally(failure);
+            } else {
+                batch.result.complete(batch.rows);  // no effect on failed batches
+            }
+        }
+    }
+
+    private void failQueued(Exception e) {
+        List<Batch> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (Batch batch: remaining) {
+            batch.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Writes the batches already queued, then stops the thread. If interrupted while waiting for it, returns with the
+     * interrupt flag set and the thread still writing.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Batch {
+
+        private final Write write;
+        private final long queued = System.nanoTime();
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private int rows;
+
+        private Batch(Write write) {
+            this.write = write;
+        }
+    }
+}
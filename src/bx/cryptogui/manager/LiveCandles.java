@@ -0,0 +1,243 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.CalendarBuckets;
+import bx.cryptogui.data.CandleColumns;
+import bx.cryptogui.data.TradeColumns;
+import bx.cryptogui.data.TradePlatform;
+
+/**
+ * The open (last) candle of a chart drawn by the calculator, kept up to date from the trades written since. The
+ * writer offers each committed write, then drains the trades offered into an {@link Update}: the open candle with the
+ * new trades folded in and the candles opened after it, so the chart is updated in place at a cost of the new trades
+ * instead of reading and merging its window again.
+ * <p>
+ *     Trades already drawn are skipped: with an id, those up to the highest id folded, without one, those up to the
+ *     number of trades folded at the latest time, as the writer replaces the trades of the latest time stored. Trades
+ *     older than the open candle are left to the next full read.
+ * </p>
+ * <p>Thread safe.</p>
+ */
+public class LiveCandles {
+
+    private final TradePlatform tradePlatform;
+    private final int interval;
+    private final CalendarBuckets buckets;
+    private int openIndex;      // index of the open candle in the chart series
+    private long openTime;
+    private long openEndTime;
+    private double open, high, low, close, volume, quoteVolume;
+    private boolean openTraded;     // false while the open candle is flat at the last price
+    private long lastId;
+    private long lastTime;
+    private int lastTimeCount;      // trades without an id folded at lastTime
+    private TradeColumns pending;
+    private int updates = 0;
+
+    private LiveCandles(TradePlatform tradePlatform, int interval, CalendarBuckets buckets, CandleColumns candles,
+                        TradeColumns recentTrades) {
+        this.tradePlatform = tradePlatform;
+        this.interval = interval;
+        this.buckets = buckets;
+        this.pending = new TradeColumns(tradePlatform);
+        openIndex = candles.size() - 1;
+        openTime = candles.getTime(openIndex);
+        openEndTime = buckets.next(openTime, interval);
+        open = candles.getOpen(openIndex);
+        high = candles.getHigh(openIndex);
+        low = candles.getLow(openIndex);
+        close = candles.getClose(openIndex);
+        volume = candles.getVolume(openIndex);
+        quoteVolume = candles.getQuoteVolume(openIndex);
+        openTraded = volume > 0;
+        lastId = -1;
+        lastTime = Long.MIN_VALUE;
+        for (int i = 0, size = recentTrades.size(); i < size; i++) {
+            lastId = Math.max(lastId, recentTrades.getId(i));
+            lastTime = Math.max(lastTime, recentTrades.getTime(i));
+        }
+        for (int i = recentTrades.size() - 1; i >= 0 && recentTrades.getTime(i) == lastTime; i--) {
+            lastTimeCount++;
+        }
+    }
+
+    /**
+     * @param buckets where the chart's intervals start
+     * @param candles candles of the chart up to now, as drawn
+     * @param recentTrades latest trades read with them, in trade order
+     * @return live candles continuing the chart, null if it has no candles
+     */
+    public static LiveCandles of(TradePlatform tradePlatform, int interval, CalendarBuckets buckets,
+                                 CandleColumns candles, TradeColumns recentTrades) {
+        return candles.isEmpty() ? null : new LiveCandles(tradePlatform, interval, buckets, candles, recentTrades);
+    }
+
+    public final TradePlatform getTradePlatform() {
+        return tradePlatform;
+    }
+
+    /**
+     * Keeps the trades of a committed write not drawn yet, until the next {@link #drain}.
+     * @param trades trades of one platform, newest first as fetched, or a page in any order
+     */
+    public synchronized void offer(TradeColumns trades) {
+        if (trades.isEmpty()) {
+            return;
+        }
+        if (trades.getId(0) >= 0) {
+            long offeredId = lastId;    // skips them in the next offers too, before they are drained
+            for (int i = 0, size = trades.size(); i < size; i++) {
+                if (trades.getId(i) > lastId && trades.getTime(i) >= openTime) {
+                    pending.add(trades.getId(i), trades.getTime(i), trades.getPrice(i), trades.getVolume(i),
+                            trades.getTradeType(i));
+                    offeredId = Math.max(offeredId, trades.getId(i));
+                }
+            }
+            lastId = offeredId;
+        } else {
+            int atLastTime = 0;
+            for (int i = trades.size() - 1; i >= 0; i--) {     // oldest first, the order within a second
+                final long time = trades.getTime(i);
+                if (time < lastTime || time < openTime || time == lastTime && atLastTime++ < lastTimeCount) {
+                    continue;
+                }
+                pending.add(-1, time, trades.getPrice(i), trades.getVolume(i), trades.getTradeType(i));
+            }
+        }
+    }
+
+    /**
+     * Folds the trades offered since the last drain into the open candle, opening new candles as their intervals
+     * start. Intervals without trades are flat at the last price.
+     * @return the changed candles, null if no trades were offered
+     */
+    public synchronized Update drain() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        final TradeColumns trades = pending;
+        pending = new TradeColumns(tradePlatform);
+        trades.sort();
+        final int from = openIndex;
+        final CandleColumns candles = new CandleColumns();
+        for (int i = 0, size = trades.size(); i < size; i++) {
+            final long time = trades.getTime(i), id = trades.getId(i);
+            final double price = trades.getPrice(i), tradeVolume = trades.getVolume(i);
+            while (time >= openEndTime) {
+                openNext(candles);
+            }
+            if (!openTraded) {
+                open = high = low = price;
+                openTraded = true;
+            }
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+            close = price;
+            volume += tradeVolume;
+            quoteVolume += price*tradeVolume;
+            lastId = Math.max(lastId, id);
+            if (time > lastTime) {
+                lastTime = time;
+                lastTimeCount = 0;
+            }
+            if (id < 0) {
+                lastTimeCount++;
+            }
+        }
+        candles.add(openTime, open, high, low, close, volume, quoteVolume);
+        return new Update(from, candles, trades, ++updates);
+    }
+
+    /**
+     * Opens flat candles at the last price up to the interval before the one containing a time, as the calculator
+     * extends a chart to now.
+     * @return the changed candles, null if the open candle is still the last
+     */
+    public synchronized Update advance(long untilTime) {
+        if (untilTime < buckets.next(openEndTime, interval)) {
+            return null;
+        }
+        final int from = openIndex;
+        final CandleColumns candles = new CandleColumns();
+        while (untilTime >= buckets.next(openEndTime, interval)) {
+            openNext(candles);
+        }
+        candles.add(openTime, open, high, low, close, volume, quoteVolume);
+        return new Update(from, candles, new TradeColumns(tradePlatform, 0), ++updates);
+    }
+
+    /**
+     * Closes the open candle into the candles changed and opens the next, flat at the last price.
+     */
+    private void openNext(CandleColumns candles) {
+        candles.add(openTime, open, high, low, close, volume, quoteVolume);
+        openIndex++;
+        openTime = openEndTime;
+        openEndTime = buckets.next(openTime, interval);
+        open = high = low = close;
+        volume = quoteVolume = 0;
+        openTraded = false;
+    }
+
+    /**
+     * Follows the chart dropping its first candles.
+     */
+    public synchronized void dropFirst(int count) {
+        if (count > openIndex) {
+            throw new IndexOutOfBoundsException("Count: " + count + ", open candle: " + openIndex);
+        }
+        openIndex -= count;
+    }
+
+    /**
+     * @return updates made so far, the number of the last
+     */
+    public synchronized int getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Candles of a chart changed by new trades, from the open candle on.
+     */
+    public static final class Update {
+
+        private final int from;
+        private final CandleColumns candles;
+        private final TradeColumns trades;
+        private final int number;
+
+        private Update(int from, CandleColumns candles, TradeColumns trades, int number) {
+            this.from = from;
+            this.candles = candles;
+            this.trades = trades;
+            this.number = number;
+        }
+
+        /**
+         * @return number of the update, counting from 1, a chart built after it already has its changes
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * @return index in the chart series of the first changed candle, the others follow it
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * @return the changed candles, replacing the series' from {@link #getFrom()}, and the new ones after them
+         */
+        public CandleColumns getCandles() {
+            return candles;
+        }
+
+        /**
+         * @return the new trades, in trade order
+         */
+        public TradeColumns getTrades() {
+            return trades;
+        }
+    }
+}
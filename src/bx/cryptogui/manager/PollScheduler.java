@@ -0,0 +1,135 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.data.TradePlatform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides when the trades of each trade platform are polled next. Busy platforms are polled often enough to get
+ * about {@link #TARGET_TRADES_PER_POLL} trades per poll, idle platforms back off up to {@link #getMaxInterval()}, and
+ * an exchange that answers with a rate limit or server error backs off further, up to {@link #MAX_BACKOFF_INTERVAL}.
+ * <p>Times are in milliseconds. Thread safe.</p>
+ */
+public class PollScheduler {
+
+    public static final long MIN_INTERVAL = 10000;
+    public static final long MAX_BACKOFF_INTERVAL = 1800000;
+    public static final int TARGET_TRADES_PER_POLL = 50;
+    /** Weight of the latest poll in the trade rate */
+    private static final double RATE_WEIGHT = 0.5;
+
+    private final State[] states = new State[TradePlatform.COUNT];     // by platform id, guarded by this
+    private long maxInterval = 180000;  // guarded by this
+
+    public synchronized long getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * @param maxInterval longest interval between polls of an idle platform, at least {@link #MIN_INTERVAL}
+     */
+    public synchronized void setMaxInterval(long maxInterval) {
+        this.maxInterval = Math.max(MIN_INTERVAL, maxInterval);
+        for (State state: states) {
+            if (state == null) {
+                continue;
+            }
+            state.nextPoll = Math.min(state.nextPoll, state.lastPoll + this.maxInterval*state.backoff);
+        }
+    }
+
+    /**
+     * Adds a platform, due immediately.
+     */
+    public synchronized void register(TradePlatform platform) {
+        if (states[platform.getId()] == null) {
+            states[platform.getId()] = new State();
+        }
+    }
+
+    /**
+     * Returns the due pairs of an exchange, and moves their next poll to one interval from now in case the poll never
+     * reports back.
+     * @param now current time
+     * @return due pairs, empty if none
+     */
+    public synchronized List<CurrencyPair> takeDue(Exchange exchange, long now) {
+        List<CurrencyPair> due = new ArrayList<>();
+        for (int id = TradePlatform.firstId(exchange), end = id + CurrencyPair.COUNT; id < end; id++) {
+            State state = states[id];
+            if (state != null && state.nextPoll <= now) {
+                due.add(TradePlatform.byId(id).getCurrencyPair());
+                state.nextPoll = now + state.interval*state.backoff;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Records a successful poll and schedules the next one from the trade rate.
+     * @param now time of the poll
+     * @param newTrades trades added by the poll
+     */
+    public synchronized void polled(TradePlatform platform, long now, int newTrades) {
+        State state = states[platform.getId()];
+        if (state == null) {
+            return;
+        }
+        if (state.lastPoll == Long.MIN_VALUE) {    // first poll fetches the backlog, not the rate
+            state.interval = MIN_INTERVAL;
+        } else {
+            double rate = newTrades/(double) Math.max(1, now - state.lastPoll);     // trades per ms
+            state.rate = Double.isNaN(state.rate) ? rate : RATE_WEIGHT*rate + (1 - RATE_WEIGHT)*state.rate;
+            long interval = newTrades == 0 ? state.interval*2 :
+                    state.rate > 0 ? (long) (TARGET_TRADES_PER_POLL/state.rate) : maxInterval;
+            state.interval = Math.max(MIN_INTERVAL, Math.min(maxInterval, interval));
+        }
+        state.backoff = Math.max(1, state.backoff/2);
+        state.lastPoll = now;
+        state.nextPoll = now + state.interval*state.backoff;
+    }
+
+    /**
+     * Records a failed poll, retried after the current interval.
+     */
+    public synchronized void failed(TradePlatform platform, long now) {
+        State state = states[platform.getId()];
+        if (state != null) {
+            state.nextPoll = now + state.interval*state.backoff;
+        }
+    }
+
+    /**
+     * Backs off every platform of an exchange after a rate limit (429) or server error (5xx) response.
+     */
+    public synchronized void throttled(Exchange exchange, long now) {
+        for (int id = TradePlatform.firstId(exchange), end = id + CurrencyPair.COUNT; id < end; id++) {
+            State state = states[id];
+            if (state != null) {
+                if (state.interval*state.backoff*2 <= MAX_BACKOFF_INTERVAL) {
+                    state.backoff *= 2;
+                }
+                state.nextPoll = now + Math.min(MAX_BACKOFF_INTERVAL, state.interval*state.backoff);
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds between the last poll and the next, or -1 if the platform is not registered
+     */
+    public synchronized long getInterval(TradePlatform platform) {
+        State state = states[platform.getId()];
+        return state == null ? -1 : state.interval*state.backoff;
+    }
+
+    private static class State {
+        long lastPoll = Long.MIN_VALUE;
+        long nextPoll = Long.MIN_VALUE;
+        long interval = MIN_INTERVAL;
+        long backoff = 1;
+        double rate = Double.NaN;
+    }
+}
@@ -0,0 +1,226 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.data.TradeColumns;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.exchangeapi.TradeSink;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Trades kept in their SQLite trade table (see {@link SchemaManager}). Each write updates the 1 minute candles in the
+ * same transaction. Writes go through the writer connection in the caller's transaction, reads through a reader of
+ * the pool.
+ */
+public class SQLiteTradeStore implements TradeStore {
+
+    /** Trades read per query by {@link #scan} */
+    public static final int PAGE_SIZE = 8192;
+
+    private final ConnectionManager connections;
+    private final Connection connection;    // writer
+    private final String tableName;
+    private final CandlePyramid candlePyramid;
+
+    /**
+     * @param candlePyramid candles marked out of date by the writes
+     */
+    public SQLiteTradeStore(ConnectionManager connections, String tableName, CandlePyramid candlePyramid) {
+        this.connections = connections;
+        this.connection = connections.getWriter();
+        this.tableName = tableName;
+        this.candlePyramid = candlePyramid;
+    }
+
+    public final String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public long getLatestTime() throws SQLException, InterruptedException {
+        try (ConnectionManager.Lease lease = connections.openReader()) {
+            return getLatestTime(lease.getConnection());
+        }
+    }
+
+    private long getLatestTime(Connection connection) throws SQLException {
+        String SQLString = String.format("SELECT MAX(time) FROM %s", tableName);
+        try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    @Override
+    public long getLatestId() throws SQLException, InterruptedException {
+        try (ConnectionManager.Lease lease = connections.openReader()) {
+            return getLatestId(lease.getConnection());
+        }
+    }
+
+    private long getLatestId(Connection connection) throws SQLException {
+        String SQLString = String.format("SELECT MAX(id) FROM %s WHERE id >= 0", tableName);
+        try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            long id = resultSet.getLong(1);
+            return resultSet.wasNull() ? -1 : id;
+        }
+    }
+
+    /**
+     * Trades with an id are inserted idempotently, so only truly new rows are written. The 1 minute candles of the
+     * new trades are updated too.
+     */
+    @Override
+    public int writeNew(TradeColumns transactions) throws SQLException {
+        if (transactions.isEmpty()) {
+            return 0;
+        }
+        final TradeColumns toInsert = new TradeColumns(transactions.getTradePlatform(), transactions.size());
+        toInsert.addAll(transactions);
+        long fromTime = Long.MAX_VALUE;
+        if (toInsert.getId(0) >= 0) {
+            final long maxDatabaseId = getLatestId(connection);
+            toInsert.retain(i -> toInsert.getId(i) > maxDatabaseId);
+        } else {
+            // FIRST: find latest time in database, don't re-insert same rows
+            final long maxDatabaseTime = getLatestTime(connection);
+            fromTime = maxDatabaseTime;
+            deleteRowsAtLeastTime(maxDatabaseTime);   // re-insert rows of last time
+            toInsert.reverse();     // oldest first, keeps the order within a second
+            toInsert.retain(i -> toInsert.getTime(i) >= maxDatabaseTime);
+        }
+        toInsert.sort();
+        int rows = insertTrades(toInsert);
+        updateRollup(toInsert, fromTime);
+        return rows;
+    }
+
+    /**
+     * Writes the 1 minute candles of the page too.
+     */
+    @Override
+    public int insert(TradeColumns trades) throws SQLException {
+        int rows = insertTrades(trades);
+        if (rows > 0) {
+            updateRollup(trades, Long.MAX_VALUE);
+        }
+        return rows;
+    }
+
+    /**
+     * Inserts in the current transaction, ignoring trades whose id is already in the table.
+     * @param trades trades without an id must be in trade order, they are numbered within their second
+     * @return rows inserted
+     */
+    private int insertTrades(TradeColumns trades) throws SQLException {
+        if (trades.isEmpty()) {
+            return 0;
+        }
+        // Columns: id(INT), time(INT), price(REAL), volume(REAL), type(INT)
+        String SQLString = String.format("INSERT OR IGNORE INTO %s VALUES (?, ?, ?, ?, ?)", tableName);
+        try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
+            final long[] ids = SchemaManager.storedIds(trades);
+            for (int i = 0, size = trades.size(); i < size; i++) {
+                statement.setLong(1, ids[i]);
+                statement.setLong(2, trades.getTime(i));
+                statement.setDouble(3, trades.getPrice(i));
+                statement.setDouble(4, trades.getVolume(i));
+                statement.setInt(5, trades.getTradeType(i));
+                statement.addBatch();
+            }
+            int rows = 0;
+            for (int result: statement.executeBatch()) {
+                rows += Math.max(0, result);
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Updates the 1 minute candles of the minutes of the trades in the current transaction, and marks the coarser
+     * candles out of date.
+     * @param fromTime earliest time whose trades were deleted, Long.MAX_VALUE if none were
+     */
+    private void updateRollup(TradeColumns trades, long fromTime) throws SQLException {
+        long toTime = fromTime == Long.MAX_VALUE ? Long.MIN_VALUE : fromTime;
+        for (int i = 0, size = trades.size(); i < size; i++) {
+            fromTime = Math.min(fromTime, trades.getTime(i));
+            toTime = Math.max(toTime, trades.getTime(i));
+        }
+        if (fromTime <= toTime) {
+            SchemaManager.updateRollup(connection, tableName, fromTime, toTime);
+            candlePyramid.markDirty(tableName, fromTime, toTime);
+        }
+    }
+
+    private void deleteRowsAtLeastTime(long time) throws SQLException {
+        String SQLString = String.format("DELETE FROM %s WHERE time >= ?", tableName);
+        try (PreparedStatement statement = connection.prepareStatement(SQLString)) {
+            statement.setLong(1, time);
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public TradeColumns readLatest(TradePlatform platform, long minTime, long maxTime, int limit)
+            throws SQLException, InterruptedException {
+        TradeColumns trades = new TradeColumns(platform, limit);
+        try (ConnectionManager.Lease lease = connections.openReader();
+             PreparedStatement statement = lease.getConnection().prepareStatement("SELECT * FROM " + tableName +
+                     " WHERE time BETWEEN ? AND ? ORDER BY time DESC, id DESC LIMIT " + limit)) {
+            statement.setLong(1, minTime);
+            statement.setLong(2, maxTime);
+            ResultSet set = statement.executeQuery();
+            while (set.next()) {
+                long id = set.getLong(1);
+                trades.add(SchemaManager.isLocalId(id) ? -1 : id, set.getLong(2), set.getDouble(3), set.getDouble(4),
+                        set.getInt(5));
+            }
+        }
+        trades.reverse();
+        return trades;
+    }
+
+    /**
+     * Reads in pages of {@link #PAGE_SIZE}, each continuing after the key (time, id) of the last trade of the one
+     * before with a seek, on a reader leased per page, so a long scan holds no snapshot or connection for long and
+     * memory is bounded by the page.
+     */
+    @Override
+    public long scan(long fromTime, long toTime, TradeSink sink) throws SQLException, InterruptedException {
+        final String SQLString = "SELECT * FROM " + tableName +
+                " WHERE (time, id) > (?, ?) AND time < ? ORDER BY time, id LIMIT " + PAGE_SIZE;
+        long afterTime = fromTime, afterId = Long.MIN_VALUE;
+        long rows = 0;
+        int pageRows;
+        do {
+            pageRows = 0;
+            try (ConnectionManager.Lease lease = connections.openReader();
+                 PreparedStatement statement = lease.getConnection().prepareStatement(SQLString)) {
+                statement.setLong(1, afterTime);
+                statement.setLong(2, afterId);
+                statement.setLong(3, toTime);
+                ResultSet set = statement.executeQuery();
+                while (set.next()) {
+                    afterId = set.getLong(1);
+                    afterTime = set.getLong(2);
+                    sink.trade(afterId, afterTime, set.getDouble(3), set.getDouble(4), set.getInt(5));
+                    pageRows++;
+                }
+            }
+            rows += pageRows;
+        } while (pageRows == PAGE_SIZE);
+        return rows;
+    }
+
+    /**
+     * Nothing to close, the connections belong to the {@link ConnectionManager}.
+     */
+    @Override
+    public void close() {}
+}
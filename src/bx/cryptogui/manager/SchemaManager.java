@@ -0,0 +1,282 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.data.TradeColumns;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+
+/**
+ * Creates the tables of the database and upgrades them in place. The schema version is kept in SQLite's
+ * {@code user_version}, each version's migration runs once, in one transaction with the version change.
+ * <h3>Version 1</h3>
+ * <p>
+ *     Trade tables are {@code WITHOUT ROWID} tables clustered on their primary key (time, id), so a time range is read
+ *     in time order straight from the table and the latest time is a seek to its end. A partial unique index on the
+ *     ids given by exchanges keeps trades unique and makes the latest id a seek too. Trades without an exchange id
+ *     get a negative id, distinct among the trades of their second (see {@link #LOCAL_ID}).
+ * </p>
+ * <p>Missing id ranges of the trade tables are kept in {@link DatabaseManager#GAPS_TABLE}.</p>
+ * <h3>Version 2</h3>
+ * <p>
+ *     Each trade table has a 1 minute candle table, {@link #rollupTable}, keyed by the start of the minute and kept
+ *     up to date by {@link #updateRollup} in the same transaction as each write, so charts read candles instead of
+ *     trades.
+ * </p>
+ * <h3>Version 3</h3>
+ * <p>
+ *     Each trade table has candle tables at the coarser {@link CandlePyramid#LEVELS}, with the same columns as the
+ *     1 minute table. They are built on first use, see {@link CandlePyramid}.
+ * </p>
+ * <h3>Version 4</h3>
+ * <p>
+ *     {@link CandlePyramid#LEVELS_TABLE} records whether each level is complete, so a level is built over several
+ *     transactions and not read before. Levels built before were built whole.
+ * </p>
+ * <h3>Version 5</h3>
+ * <p>
+ *     {@link ColumnarTradeStore#ROLLUPS_TABLE} records the last write of each column store whose 1 minute candles
+ *     were committed, so candles lost with a transaction are recalculated.
+ * </p>
+ */
+public class SchemaManager {
+
+    public static final int CURRENT_VERSION = 5;
+    /**
+     * Highest id of trades the exchange gave no id. They are numbered within each second in trade order, up to -1 for
+     * the last one, so (time, id) is trade order for every table. {@link #isLocalId} is true for them.
+     */
+    public static final long LOCAL_ID = -1;
+
+    private final Connection connection;
+
+    /**
+     * @param connection writer connection
+     */
+    public SchemaManager(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static boolean isLocalId(long id) {
+        return id <= LOCAL_ID;
+    }
+
+    /**
+     * @param trades trades without an id must be in trade order, they are numbered within their second
+     * @return id to store for each trade, the exchange's or a local id (see {@link #LOCAL_ID})
+     */
+    public static long[] storedIds(TradeColumns trades) {
+        final int size = trades.size();
+        long[] ids = new long[size];
+        long localId = LOCAL_ID;
+        for (int i = 0; i < size; i++) {
+            final long time = trades.getTime(i);
+            long id = trades.getId(i);
+            if (id < 0) {
+                if (i == 0 || trades.getTime(i - 1) != time) {
+                    // number the trades of the second up to LOCAL_ID
+                    int end = i + 1;
+                    while (end < size && trades.getTime(end) == time) {
+                        end++;
+                    }
+                    localId = LOCAL_ID - (end - i - 1);
+                } else {
+                    localId++;
+                }
+                id = localId;
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * @return name of the 1 minute candle table of a trade table
+     */
+    public static String rollupTable(String tradeTable) {
+        return tradeTable + "_1m";
+    }
+
+    public int getVersion() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet set = statement.executeQuery("PRAGMA user_version")) {
+            return set.next() ? set.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Upgrades the database to {@link #CURRENT_VERSION} and creates any missing trade tables.
+     * @param tradeTables names of every trade table
+     * @throws SQLException a migration failed, the database is left at the last version that succeeded
+     */
+    public void migrate(Collection<String> tradeTables) throws SQLException {
+        for (int version = getVersion() + 1; version <= CURRENT_VERSION; version++) {
+            connection.setAutoCommit(false);
+            try {
+                migrateTo(version, tradeTables);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("PRAGMA user_version = " + version);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        for (String table: tradeTables) {
+            if (!tableExists(table)) {
+                createTradeTable(table);
+                createRollupTable(table);
+                createLevelTables(table);
+            }
+        }
+    }
+
+    private void migrateTo(int version, Collection<String> tradeTables) throws SQLException {
+        switch (version) {
+            case 1:
+                for (String table: tradeTables) {
+                    if (tableExists(table)) {
+                        rebuildTradeTable(table);
+                    } else {
+                        createTradeTable(table);
+                    }
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + DatabaseManager.GAPS_TABLE +
+                            " (table_name TEXT NOT NULL, after_id INTEGER NOT NULL, before_id INTEGER NOT NULL, " +
+                            "time INTEGER NOT NULL, PRIMARY KEY (table_name, after_id))");
+                }
+                break;
+            case 2:
+                for (String table: tradeTables) {
+                    if (!tableExists(rollupTable(table))) {
+                        createRollupTable(table);
+                        updateRollup(connection, table, Long.MIN_VALUE, Long.MAX_VALUE);
+                    }
+                }
+                break;
+            case 3:
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE TABLE " + CandlePyramid.LEVELS_TABLE + " (table_name TEXT NOT NULL, " +
+                            "level INTEGER NOT NULL, zone_offset INTEGER NOT NULL, dirty_from INTEGER, dirty_to INTEGER, " +
+                            "PRIMARY KEY (table_name, level))");
+                }
+                for (String table: tradeTables) {
+                    if (tableExists(table)) {
+                        createLevelTables(table);
+                    }
+                }
+                break;
+            case 4:
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("ALTER TABLE " + CandlePyramid.LEVELS_TABLE +
+                            " ADD COLUMN complete INTEGER NOT NULL DEFAULT 1");
+                }
+                break;
+            case 5:
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE TABLE " + ColumnarTradeStore.ROLLUPS_TABLE +
+                            " (table_name TEXT PRIMARY KEY, generation INTEGER NOT NULL)");
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown schema version " + version);
+        }
+    }
+
+    /**
+     * Columns: id INT, time INT, price REAL, volume REAL, type INT (0-buy, 1-sell, other-unknown).
+     */
+    private void createTradeTable(String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + table + " (id INTEGER NOT NULL, time INTEGER NOT NULL, " +
+                    "price REAL, volume REAL, type INTEGER, PRIMARY KEY (time, id)) WITHOUT ROWID");
+            statement.executeUpdate(String.format(
+                    "CREATE UNIQUE INDEX %1$s_id ON %1$s (id) WHERE id >= 0", table));
+        }
+    }
+
+    /**
+     * Columns: time INT (start of the minute), open REAL, high REAL, low REAL, close REAL, volume REAL,
+     * quote_volume REAL, trades INT.
+     */
+    private void createRollupTable(String table) throws SQLException {
+        createCandleTable(rollupTable(table));
+    }
+
+    private void createLevelTables(String table) throws SQLException {
+        for (int i = 1; i < CandlePyramid.LEVELS.length; i++) {
+            createCandleTable(CandlePyramid.levelTable(table, CandlePyramid.LEVELS[i]));
+        }
+    }
+
+    private void createCandleTable(String candleTable) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + candleTable + " (time INTEGER PRIMARY KEY, open REAL, " +
+                    "high REAL, low REAL, close REAL, volume REAL, quote_volume REAL, trades INTEGER)");
+        }
+    }
+
+    /**
+     * Recalculates the 1 minute candles of every minute touching the time range from the trades, in the current
+     * transaction. Each minute is read with a primary key seek, so the cost follows the trades in those minutes.
+     * @param fromTime first time whose trades changed
+     * @param toTime last time whose trades changed
+     */
+    public static void updateRollup(Connection connection, String table, long fromTime, long toTime)
+            throws SQLException {
+        final long from = fromTime == Long.MIN_VALUE ? fromTime : Math.floorDiv(fromTime, 60)*60;
+        final long to = toTime == Long.MAX_VALUE ? toTime : Math.floorDiv(toTime, 60)*60 + 60;
+        final String rollup = rollupTable(table);
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM " + rollup + " WHERE time >= ? AND time < ?");
+             PreparedStatement insert = connection.prepareStatement(String.format(
+                     "INSERT INTO %1$s SELECT m, " +
+                     "(SELECT price FROM %2$s WHERE time >= m AND time < m + 60 ORDER BY time, id LIMIT 1), " +
+                     "high, low, " +
+                     "(SELECT price FROM %2$s WHERE time >= m AND time < m + 60 ORDER BY time DESC, id DESC LIMIT 1), " +
+                     "volume, quote_volume, trades FROM (SELECT (time/60)*60 AS m, MAX(price) AS high, " +
+                     "MIN(price) AS low, SUM(volume) AS volume, SUM(price*volume) AS quote_volume, COUNT(*) AS trades " +
+                     "FROM %2$s WHERE time >= ? AND time < ? GROUP BY time/60)", rollup, table))) {
+            delete.setLong(1, from);
+            delete.setLong(2, to);
+            delete.executeUpdate();
+            insert.setLong(1, from);
+            insert.setLong(2, to);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Copies a version 0 table, a rowid table with no key, into a new clustered table. Trades without an id are
+     * numbered by rowid, the order they were written, up to -1. Repeated exchange ids keep the earliest trade.
+     */
+    private void rebuildTradeTable(String table) throws SQLException {
+        final String old = table + "_v0";
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP INDEX IF EXISTS " + table + "_id");
+            statement.executeUpdate("ALTER TABLE " + table + " RENAME TO " + old);
+            createTradeTable(table);
+            statement.executeUpdate(String.format("INSERT OR IGNORE INTO %s (id, time, price, volume, type) " +
+                    "SELECT CASE WHEN id >= 0 THEN id ELSE rowid - (SELECT MAX(rowid) FROM %2$s) - 1 END, " +
+                    "time, price, volume, type FROM %2$s WHERE time IS NOT NULL ORDER BY time, rowid", table, old));
+            statement.executeUpdate("DROP TABLE " + old);
+        }
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            statement.setString(1, table);
+            try (ResultSet set = statement.executeQuery()) {
+                return set.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package bx.cryptogui.manager;
+
+import bx.cryptogui.data.TradeColumns;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.exchangeapi.TradeSink;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Where the trades of one trade table are kept, in trade order (time, id), see {@link SchemaManager#LOCAL_ID}. The
+ * candles of the table stay in SQLite whatever the store, and each write brings them up to date.
+ * <p>
+ *     {@link SQLiteTradeStore} keeps them in the table itself, {@link ColumnarTradeStore} in memory mapped column
+ *     files. {@link DatabaseManager} picks one per trade platform.
+ * </p>
+ * <p>
+ *     Writes run in the current transaction of the writer connection and the caller commits it then calls
+ *     {@link #committed}, see {@link GroupCommitWriter}. Writes must not run alongside each other, reads may run
+ *     alongside writes.
+ * </p>
+ */
+public interface TradeStore extends AutoCloseable {
+
+    /**
+     * @return latest trade time stored, 0 if there are no trades
+     */
+    long getLatestTime() throws IOException, SQLException, InterruptedException;
+
+    /**
+     * @return highest exchange trade id stored, -1 if there are no trades with an id
+     */
+    long getLatestId() throws IOException, SQLException, InterruptedException;
+
+    /**
+     * Writes the new trades of a fetch. Trades with an id are new if their id is higher than any stored. Trades
+     * without an id (-1) are new from the latest time stored, whose trades are replaced, and are given local ids.
+     * @param transactions fetched trades, newest first as exchanges give them
+     * @return trades stored
+     */
+    int writeNew(TradeColumns transactions) throws IOException, SQLException;
+
+    /**
+     * Writes one page of a paged download. Trades already stored are ignored.
+     * @param trades page of trades with an id, any order
+     * @return trades stored
+     */
+    int insert(TradeColumns trades) throws IOException, SQLException;
+
+    /**
+     * @param minTime earliest time, inclusive
+     * @param maxTime latest time, inclusive
+     * @param limit most trades read
+     * @return latest trades between the times, ordered by time ascending, local ids read as -1
+     */
+    TradeColumns readLatest(TradePlatform platform, long minTime, long maxTime, int limit)
+            throws IOException, SQLException, InterruptedException;
+
+    /**
+     * Passes the trades in a time range to a sink in trade order, with their stored ids, local ids included.
+     * @param fromTime earliest time, inclusive
+     * @param toTime latest time, exclusive
+     * @return trades passed
+     */
+    long scan(long fromTime, long toTime, TradeSink sink) throws IOException, SQLException, InterruptedException;
+
+    /**
+     * Told a transaction of the writer connection committed, with none open, see
+     * {@link GroupCommitWriter#addCommitListener}. Nothing by default.
+     */
+    default void committed() throws IOException, SQLException {}
+
+    @Override
+    void close() throws IOException;
+}
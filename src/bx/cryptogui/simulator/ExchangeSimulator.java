@@ -0,0 +1,616 @@
+package bx.cryptogui.simulator;
+
+import bx.cryptogui.data.Currency;
+import bx.cryptogui.data.CurrencyPair;
+import bx.cryptogui.data.Exchange;
+import bx.cryptogui.data.TradePlatform;
+import bx.cryptogui.exchangeapi.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Local HTTP server standing in for the public REST endpoints of Wex, Bitstamp, Coinbase, Cryptopia and Kiwicoin, for
+ * running the exchange APIs and the database writer without the exchanges.
+ * <p>
+ *     Each exchange is served under its own path, see {@link #getBaseUrl(Exchange)}, and {@link #install()} points
+ *     every API instance at it. Responses are recorded bodies when one was added for the path (query ignored),
+ *     otherwise they are generated from a {@link SyntheticMarket} per trade platform, in each exchange's format,
+ *     including the Coinbase {@code cb-after} pagination header. Latency, server errors (500) and rate limit
+ *     responses (429) can be added to every request.
+ * </p>
+ */
+public class ExchangeSimulator implements Closeable {
+
+    public static final int DEFAULT_BOOK_DEPTH = 200;
+    public static final Exchange[] EXCHANGES =
+            {Exchange.WEX, Exchange.BITSTAMP, Exchange.COINBASE, Exchange.CRYPTOPIA, Exchange.KIWICOIN};
+    private static final CurrencyPair[] PAIRS = {CurrencyPair.BTC_USD, CurrencyPair.BTC_NZD, CurrencyPair.LTC_USD,
+            CurrencyPair.LTC_NZD, CurrencyPair.ETH_USD, CurrencyPair.ETH_NZD};
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "exchange-simulator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Exchange, Map<String, CurrencyPair>> pairStrings = new EnumMap<>(Exchange.class);
+    private final Map<TradePlatform, SyntheticMarket> markets = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> recordings = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile int bookDepth = DEFAULT_BOOK_DEPTH;
+    private volatile int latency = 0;
+    private volatile int latencyJitter = 0;
+    private volatile double errorRate = 0;
+    private volatile double throttleRate = 0;
+
+    /**
+     * Starts the simulator on a free loopback port.
+     */
+    public ExchangeSimulator() throws IOException {
+        this(0);
+    }
+
+    public ExchangeSimulator(int port) throws IOException {
+        for (Exchange exchange: EXCHANGES) {
+            ExchangeAPI api = createAPI(exchange);
+            Map<String, CurrencyPair> pairs = new HashMap<>();
+            for (CurrencyPair pair: PAIRS) {
+                String pairString = api.convertCurrencyPair(pair);
+                if (pairString != null) {
+                    pairs.put(pairString, pair);
+                }
+            }
+            pairStrings.put(exchange, pairs);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return a new API instance of the exchange, with the default base URL
+     */
+    public static ExchangeAPI createAPI(Exchange exchange) {
+        switch (exchange) {
+            case WEX: return new WexAPI();
+            case BITSTAMP: return new BitstampAPI();
+            case COINBASE: return new CoinbaseAPI();
+            case CRYPTOPIA: return new CryptopiaAPI();
+            case KIWICOIN: return new KiwicoinAPI();
+            default: throw new IllegalArgumentException("Not simulated: " + exchange);
+        }
+    }
+
+    /**
+     * @return base URL of the exchange on this simulator
+     */
+    public String getBaseUrl(Exchange exchange) {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + "/" + exchange.name().toLowerCase();
+    }
+
+    /**
+     * Points every API instance of the simulated exchanges at this simulator, see
+     * {@link ExchangeAPI#setBaseUrlOverride}.
+     */
+    public void install() {
+        for (Exchange exchange: EXCHANGES) {
+            ExchangeAPI.setBaseUrlOverride(exchange, getBaseUrl(exchange));
+        }
+    }
+
+    public void uninstall() {
+        for (Exchange exchange: EXCHANGES) {
+            ExchangeAPI.setBaseUrlOverride(exchange, null);
+        }
+    }
+
+    /**
+     * @return the currency pairs the simulated exchange's API supports
+     */
+    public Collection<CurrencyPair> getCurrencyPairs(Exchange exchange) {
+        if (exchange == Exchange.KIWICOIN) {
+            return Collections.singletonList(CurrencyPair.BTC_NZD);
+        }
+        return Collections.unmodifiableCollection(pairStrings.get(exchange).values());
+    }
+
+    public void setMarket(TradePlatform platform, SyntheticMarket market) {
+        markets.put(platform, Objects.requireNonNull(market));
+    }
+
+    public SyntheticMarket getMarket(TradePlatform platform) {
+        return markets.get(platform);
+    }
+
+    /**
+     * Adds a market for every currency pair of every simulated exchange that has none.
+     * @param tradesPerSecond average trade rate of each market
+     * @param historySeconds seconds of trades already generated
+     */
+    public void addDefaultMarkets(double tradesPerSecond, long historySeconds) {
+        long seed = 1;
+        for (Exchange exchange: EXCHANGES) {
+            for (CurrencyPair pair: getCurrencyPairs(exchange)) {
+                double startPrice = pair.getBaseCurrency() == Currency.BTC ? 10000 :
+                        pair.getBaseCurrency() == Currency.ETH ? 800 : 150;
+                markets.putIfAbsent(TradePlatform.of(exchange, pair),
+                        new SyntheticMarket(startPrice, tradesPerSecond, historySeconds, seed++));
+            }
+        }
+    }
+
+    /**
+     * Serves a fixed body for a path, instead of the synthetic response.
+     * @param path path after the exchange's base URL, eg. "/products/BTC-USD/ticker", the query is ignored
+     */
+    public void addRecording(Exchange exchange, String path, byte[] body) {
+        recordings.put(recordingKey(exchange, path), body);
+    }
+
+    /**
+     * Adds every file under the directory as a recording. The first directory level is the exchange (lower case),
+     * the rest of the file's path is the request path, eg. {@code coinbase/products/BTC-USD/ticker}.
+     */
+    public void loadRecordings(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file: (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                Path relative = directory.relativize(file);
+                if (relative.getNameCount() < 2) {
+                    continue;
+                }
+                Exchange exchange = Exchange.valueOf(relative.getName(0).toString().toUpperCase());
+                StringBuilder path = new StringBuilder();
+                for (int i = 1; i < relative.getNameCount(); i++) {
+                    path.append('/').append(relative.getName(i));
+                }
+                addRecording(exchange, path.toString(), Files.readAllBytes(file));
+            }
+        }
+    }
+
+    /**
+     * @param latency milliseconds added to every response
+     * @param jitter up to this many more milliseconds, at random
+     */
+    public void setLatency(int latency, int jitter) {
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("Latency must not be negative");
+        }
+        this.latency = latency;
+        this.latencyJitter = jitter;
+    }
+
+    /**
+     * @param bookDepth price levels on each side of the generated order books
+     */
+    public void setBookDepth(int bookDepth) {
+        if (bookDepth < 1) {
+            throw new IllegalArgumentException("Book depth must be at least 1");
+        }
+        this.bookDepth = bookDepth;
+    }
+
+    /**
+     * @param errorRate fraction of requests answered 500
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param throttleRate fraction of requests answered 429 with Retry-After: 1
+     */
+    public void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return requests answered with a simulated error or 429
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public void close() {
+        uninstall();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ------------------ REQUESTS -------------------------------------------------------------------------------------
+
+    private void handle(HttpExchange httpExchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int delay = latency + (latencyJitter > 0 ? random.nextInt(latencyJitter + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+                errors.incrementAndGet();
+                httpExchange.getResponseHeaders().add("Retry-After", "1");
+                send(httpExchange, 429, "{\"message\":\"Rate limit exceeded\"}");
+                return;
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                send(httpExchange, 500, "{\"message\":\"Simulated error\"}");
+                return;
+            }
+            URI uri = httpExchange.getRequestURI();
+            String[] segments = uri.getPath().split("/", 3);    // "", exchange, path
+            Exchange exchange = segments.length < 3 ? null : parseExchange(segments[1]);
+            if (exchange == null) {
+                send(httpExchange, 404, "{\"message\":\"Not found\"}");
+                return;
+            }
+            String path = "/" + segments[2];
+            byte[] recording = recordings.get(recordingKey(exchange, path));
+            if (recording != null) {
+                send(httpExchange, 200, recording);
+                return;
+            }
+            String body = respond(exchange, path, parseQuery(uri.getRawQuery()), httpExchange);
+            if (body == null) {
+                send(httpExchange, 404, "{\"message\":\"Not found\"}");
+            } else {
+                send(httpExchange, 200, body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            send(httpExchange, 500, "{\"message\":\"" + e + "\"}");
+        } finally {
+            httpExchange.close();
+        }
+    }
+
+    /**
+     * @return synthetic body, or null if the path or currency pair is unknown
+     */
+    private String respond(Exchange exchange, String path, Map<String, String> query, HttpExchange httpExchange) {
+        String[] parts = path.substring(1).split("/");
+        switch (exchange) {
+            case WEX:   // /api/3/{ticker,depth,trades}/{pair}
+                if (parts.length == 4 && parts[0].equals("api") && parts[1].equals("3")) {
+                    SyntheticMarket market = getMarket(exchange, parts[3]);
+                    if (market != null) {
+                        return wexResponse(parts[2], parts[3], market, query);
+                    }
+                }
+                return null;
+            case BITSTAMP:  // /api/v2/{ticker,order_book,transactions}/{pair}
+                if (parts.length == 4 && parts[0].equals("api") && parts[1].equals("v2")) {
+                    SyntheticMarket market = getMarket(exchange, parts[3]);
+                    if (market != null) {
+                        return bitstampResponse(parts[2], market);
+                    }
+                }
+                return null;
+            case COINBASE:  // /products/{pair}/{ticker,book,trades}
+                if (parts.length == 3 && parts[0].equals("products")) {
+                    SyntheticMarket market = getMarket(exchange, parts[1]);
+                    if (market != null) {
+                        return coinbaseResponse(parts[2], market, query, httpExchange);
+                    }
+                }
+                return null;
+            case CRYPTOPIA:     // /api/{GetMarket,GetMarketOrders,GetMarketHistory}/{pair}
+                if (parts.length == 3 && parts[0].equals("api")) {
+                    SyntheticMarket market = getMarket(exchange, parts[2]);
+                    if (market != null) {
+                        return cryptopiaResponse(parts[1], market);
+                    }
+                }
+                return null;
+            case KIWICOIN:  // /api/{ticker,order_book}, BTC-NZD only
+                SyntheticMarket market = markets.get(TradePlatform.of(Exchange.KIWICOIN, CurrencyPair.BTC_NZD));
+                if (parts.length == 2 && parts[0].equals("api") && market != null) {
+                    return kiwicoinResponse(parts[1], market);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private String wexResponse(String method, String pairString, SyntheticMarket market, Map<String, String> query) {
+        long now = System.currentTimeMillis()/1000;
+        StringBuilder body = new StringBuilder(256).append("{\"").append(pairString).append("\":");
+        switch (method) {
+            case "ticker":
+                double last = market.getLastPrice();
+                double[] highLow = market.getHighLow(now - 86400);
+                body.append("{\"high\":").append(highLow[0]).append(",\"low\":").append(highLow[1])
+                        .append(",\"avg\":").append((highLow[0] + highLow[1])/2).append(",\"vol\":0,\"vol_cur\":0")
+                        .append(",\"last\":").append(last).append(",\"buy\":").append(bid(last, 0))
+                        .append(",\"sell\":").append(ask(last, 0)).append(",\"updated\":").append(now).append('}');
+                break;
+            case "depth":
+                appendBook(body.append('{'), market.getLastPrice(), intParameter(query, "limit", 150), false, "");
+                body.append('}');
+                break;
+            case "trades":
+                body.append('[');
+                int limit = Math.min(5000, intParameter(query, "limit", 150));
+                market.newestTrades(Long.MAX_VALUE, Long.MIN_VALUE, limit, (id, time, price, volume, type) -> {
+                    separate(body, '[').append("{\"type\":\"").append(type == 0 ? "bid" : "ask")
+                            .append("\",\"price\":").append(price).append(",\"amount\":").append(volume)
+                            .append(",\"tid\":").append(id).append(",\"timestamp\":").append(time).append('}');
+                });
+                body.append(']');
+                break;
+            default:
+                return null;
+        }
+        return body.append('}').toString();
+    }
+
+    private String bitstampResponse(String method, SyntheticMarket market) {
+        long now = System.currentTimeMillis()/1000;
+        StringBuilder body = new StringBuilder(256);
+        switch (method) {
+            case "ticker":
+                double last = market.getLastPrice();
+                double[] highLow = market.getHighLow(now - 86400);
+                body.append("{\"high\":\"").append(highLow[0]).append("\",\"last\":\"").append(last)
+                        .append("\",\"timestamp\":\"").append(now).append("\",\"bid\":\"").append(bid(last, 0))
+                        .append("\",\"vwap\":\"").append((highLow[0] + highLow[1])/2)
+                        .append("\",\"volume\":\"0.0\",\"low\":\"").append(highLow[1])
+                        .append("\",\"ask\":\"").append(ask(last, 0)).append("\",\"open\":\"").append(last).append("\"}");
+                return body.toString();
+            case "order_book":
+                body.append("{\"timestamp\":\"").append(now).append("\",");
+                appendBook(body, market.getLastPrice(), bookDepth, true, "");
+                return body.append('}').toString();
+            case "transactions":    // the last hour
+                body.append('[');
+                market.newestTrades(Long.MAX_VALUE, now - 3600, Integer.MAX_VALUE, (id, time, price, volume, type) ->
+                        separate(body, '[').append("{\"date\":\"").append(time).append("\",\"tid\":\"").append(id)
+                                .append("\",\"price\":\"").append(price).append("\",\"type\":\"").append(type)
+                                .append("\",\"amount\":\"").append(volume).append("\"}"));
+                return body.append(']').toString();
+            default:
+                return null;
+        }
+    }
+
+    private String coinbaseResponse(String method, SyntheticMarket market, Map<String, String> query,
+                                    HttpExchange httpExchange) {
+        StringBuilder body = new StringBuilder(256);
+        switch (method) {
+            case "ticker":
+                double last = market.getLastPrice();
+                body.append("{\"trade_id\":").append(market.getNewestId()).append(",\"price\":\"").append(last)
+                        .append("\",\"size\":\"0.01\",\"bid\":\"").append(bid(last, 0))
+                        .append("\",\"ask\":\"").append(ask(last, 0)).append("\",\"volume\":\"0.0\",\"time\":\"")
+                        .append(Instant.ofEpochMilli(System.currentTimeMillis())).append("\"}");
+                return body.toString();
+            case "book":
+                body.append("{\"sequence\":").append(market.getNewestId()).append(',');
+                appendBook(body, market.getLastPrice(), bookDepth, true, ",1");
+                return body.append('}').toString();
+            case "trades":  // pages of 100 newest first, older pages with ?after=id
+                String after = query.get("after");
+                long beforeId = after == null ? Long.MAX_VALUE : Long.parseLong(after);
+                final long[] ids = {Long.MAX_VALUE, Long.MIN_VALUE};  // oldest, newest
+                body.append('[');
+                market.newestTrades(beforeId, Long.MIN_VALUE, CoinbaseAPI.TRADES_PAGE_SIZE,
+                        (id, time, price, volume, type) -> {
+                            ids[0] = Math.min(ids[0], id);
+                            ids[1] = Math.max(ids[1], id);
+                            separate(body, '[').append("{\"time\":\"").append(Instant.ofEpochSecond(time))
+                                    .append("\",\"trade_id\":").append(id).append(",\"price\":\"").append(price)
+                                    .append("\",\"size\":\"").append(volume).append("\",\"side\":\"")
+                                    .append(type == 0 ? "sell" : "buy").append("\"}");  // maker side
+                        });
+                if (ids[1] != Long.MIN_VALUE) {
+                    httpExchange.getResponseHeaders().add("cb-before", String.valueOf(ids[1]));
+                    httpExchange.getResponseHeaders().add("cb-after", String.valueOf(ids[0]));
+                }
+                return body.append(']').toString();
+            default:
+                return null;
+        }
+    }
+
+    private String cryptopiaResponse(String method, SyntheticMarket market) {
+        long now = System.currentTimeMillis()/1000;
+        StringBuilder body = new StringBuilder(256).append("{\"Success\":true,\"Message\":null,\"Data\":");
+        switch (method) {
+            case "GetMarket":
+                double last = market.getLastPrice();
+                double[] highLow = market.getHighLow(now - 86400);
+                body.append("{\"LastPrice\":").append(last).append(",\"AskPrice\":").append(ask(last, 0))
+                        .append(",\"BidPrice\":").append(bid(last, 0)).append(",\"High\":").append(highLow[0])
+                        .append(",\"Low\":").append(highLow[1]).append(",\"Volume\":0}");
+                break;
+            case "GetMarketOrders":
+                double mid = market.getLastPrice();
+                body.append("{\"Buy\":[");
+                for (int i = 0; i < bookDepth; i++) {
+                    separate(body, '[').append("{\"Price\":").append(bid(mid, i)).append(",\"Volume\":")
+                            .append(levelVolume(i)).append('}');
+                }
+                body.append("],\"Sell\":[");
+                for (int i = 0; i < bookDepth; i++) {
+                    separate(body, '[').append("{\"Price\":").append(ask(mid, i)).append(",\"Volume\":")
+                            .append(levelVolume(i)).append('}');
+                }
+                body.append("]}");
+                break;
+            case "GetMarketHistory":    // the last 24 hours
+                body.append('[');
+                market.newestTrades(Long.MAX_VALUE, now - 86400, Integer.MAX_VALUE, (id, time, price, volume, type) ->
+                        separate(body, '[').append("{\"Timestamp\":").append(time).append(",\"Price\":").append(price)
+                                .append(",\"Amount\":").append(volume).append(",\"Type\":\"")
+                                .append(type == 0 ? "Buy" : "Sell").append("\"}"));
+                body.append(']');
+                break;
+            default:
+                return null;
+        }
+        return body.append(",\"Error\":null}").toString();
+    }
+
+    private String kiwicoinResponse(String method, SyntheticMarket market) {
+        long now = System.currentTimeMillis()/1000;
+        StringBuilder body = new StringBuilder(256);
+        switch (method) {
+            case "ticker":
+                double last = market.getLastPrice();
+                double[] highLow = market.getHighLow(now - 86400);
+                body.append("{\"date\":").append(now).append(",\"last\":").append(last)
+                        .append(",\"ask\":").append(ask(last, 0)).append(",\"bid\":").append(bid(last, 0))
+                        .append(",\"high\":").append(highLow[0]).append(",\"low\":").append(highLow[1])
+                        .append(",\"vwap\":").append((highLow[0] + highLow[1])/2).append(",\"volume\":0}");
+                return body.toString();
+            case "order_book":
+                body.append("{\"timestamp\":").append(now).append(',');
+                appendBook(body, market.getLastPrice(), bookDepth, false, "");
+                return body.append('}').toString();
+            default:
+                return null;
+        }
+    }
+
+    // ------------------ HELPERS --------------------------------------------------------------------------------------
+
+    /**
+     * Appends "bids":[...],"asks":[...] around the price.
+     * @param quoted prices and volumes as strings
+     * @param extra appended to each level, eg. ",1" for an order count
+     */
+    private static void appendBook(StringBuilder body, double mid, int depth, boolean quoted, String extra) {
+        String quote = quoted ? "\"" : "";
+        for (boolean bid: new boolean[] {true, false}) {
+            body.append(bid ? "\"bids\":[" : ",\"asks\":[");
+            for (int i = 0; i < depth; i++) {
+                separate(body, '[').append('[').append(quote).append(bid ? bid(mid, i) : ask(mid, i)).append(quote)
+                        .append(',').append(quote).append(levelVolume(i)).append(quote).append(extra).append(']');
+            }
+            body.append(']');
+        }
+    }
+
+    private static double bid(double mid, int level) {
+        return Math.round(mid*100 - 1 - level)/100.0;
+    }
+
+    private static double ask(double mid, int level) {
+        return Math.round(mid*100 + 1 + level)/100.0;
+    }
+
+    private static double levelVolume(int level) {
+        return 0.5 + (level*7919 % 100)/20.0;
+    }
+
+    /**
+     * Appends a comma unless the builder ends with the opening bracket.
+     */
+    private static StringBuilder separate(StringBuilder builder, char open) {
+        if (builder.charAt(builder.length() - 1) != open) {
+            builder.append(',');
+        }
+        return builder;
+    }
+
+    private SyntheticMarket getMarket(Exchange exchange, String pairString) {
+        CurrencyPair pair = pairStrings.get(exchange).get(pairString);
+        return pair == null ? null : markets.get(TradePlatform.of(exchange, pair));
+    }
+
+    private static Exchange parseExchange(String name) {
+        for (Exchange exchange: EXCHANGES) {
+            if (exchange.name().equalsIgnoreCase(name)) {
+                return exchange;
+            }
+        }
+        return null;
+    }
+
+    private static String recordingKey(Exchange exchange, String path) {
+        int query = path.indexOf('?');
+        return exchange.name() + (query < 0 ? path : path.substring(0, query));
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter: query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) {
+        try {
+            return query.containsKey(name) ? Integer.parseInt(query.get(name)) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void send(HttpExchange httpExchange, int code, String body) throws IOException {
+        send(httpExchange, code, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange httpExchange, int code, byte[] body) throws IOException {
+        httpExchange.getResponseHeaders().add("Content-Type", "application/json");
+        httpExchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = httpExchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Runs a simulator until killed.
+     * @param args port, trades per second of each market, latency ms, recordings directory (all optional)
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        ExchangeSimulator simulator = new ExchangeSimulator(port);
+        simulator.setLatency(args.length > 2 ? Integer.parseInt(args[2]) : 0, 0);
+        if (args.length > 3) {
+            simulator.loadRecordings(Paths.get(args[3]));
+        }
+        simulator.addDefaultMarkets(rate, 3600);
+        for (Exchange exchange: EXCHANGES) {
+            System.out.println(exchange + ": " + simulator.getBaseUrl(exchange));
+        }
+        Thread.currentThread().join();
+    }
+}
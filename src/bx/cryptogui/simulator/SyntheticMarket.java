@@ -0,0 +1,138 @@
+package bx.cryptogui.simulator;
+
+import bx.cryptogui.exchangeapi.TradeSink;
+
+import java.util.Random;
+
+/**
+ * Random-walk trades of one trade platform, generated as time passes, with Poisson arrivals. Trade ids are
+ * sequential from 1. The newest trades are kept in a ring buffer, older ones are forgotten.
+ * <p>Thread safe.</p>
+ */
+public class SyntheticMarket {
+
+    public static final int DEFAULT_CAPACITY = 200000;
+    /** Standard deviation of the log price change per trade */
+    private static final double VOLATILITY = 0.0005;
+
+    private final double tradesPerSecond;
+    private final Random random;
+    // ring buffer, guarded by this
+    private final long[] times;
+    private final double[] prices;
+    private final double[] volumes;
+    private final int[] types;
+    private int head = 0;     // index of the next trade
+    private int size = 0;
+    private long nextId = 1;
+    private double price;
+    private double nextTradeTime;     // epoch milliseconds
+
+    /**
+     * @param startPrice price of the first trade
+     * @param tradesPerSecond average trade rate
+     * @param historySeconds seconds of trades generated up to now
+     * @param seed random seed, the same seed gives the same trades
+     */
+    public SyntheticMarket(double startPrice, double tradesPerSecond, long historySeconds, long seed) {
+        this(startPrice, tradesPerSecond, historySeconds, seed, DEFAULT_CAPACITY);
+    }
+
+    public SyntheticMarket(double startPrice, double tradesPerSecond, long historySeconds, long seed, int capacity) {
+        if (!(startPrice > 0) || !(tradesPerSecond > 0) || capacity < 1) {
+            throw new IllegalArgumentException("Price, rate and capacity must be positive");
+        }
+        this.price = startPrice;
+        this.tradesPerSecond = tradesPerSecond;
+        this.random = new Random(seed);
+        this.times = new long[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new double[capacity];
+        this.types = new int[capacity];
+        this.nextTradeTime = System.currentTimeMillis() - historySeconds*1000.0;
+        advance(System.currentTimeMillis());
+    }
+
+    public double getTradesPerSecond() {
+        return tradesPerSecond;
+    }
+
+    /**
+     * Generates the trades up to the time.
+     * @param now epoch milliseconds
+     */
+    public synchronized void advance(long now) {
+        final double meanGap = 1000/tradesPerSecond;
+        while (nextTradeTime <= now) {
+            price = Math.max(0.01, price*Math.exp(VOLATILITY*random.nextGaussian()));
+            times[head] = (long) (nextTradeTime/1000);
+            prices[head] = Math.round(price*100)/100.0;
+            volumes[head] = Math.round((0.001 + random.nextDouble()*random.nextDouble()*2)*100000)/100000.0;
+            types[head] = random.nextBoolean() ? 0 : 1;
+            head = (head + 1) % times.length;
+            size = Math.min(size + 1, times.length);
+            nextId++;
+            nextTradeTime += -Math.log(1 - random.nextDouble())*meanGap;
+        }
+    }
+
+    /**
+     * @return id of the newest trade, 0 if there are none
+     */
+    public synchronized long getNewestId() {
+        return nextId - 1;
+    }
+
+    /**
+     * @return price of the newest trade
+     */
+    public synchronized double getLastPrice() {
+        return size == 0 ? price : prices[index(0)];
+    }
+
+    /**
+     * Visits the kept trades newest first, after {@link #advance}ing to now.
+     * @param beforeId only trades with a lower id, or Long.MAX_VALUE for all
+     * @param minTime only trades at or after this time, epoch seconds
+     * @param limit maximum number of trades
+     * @param sink receives the trades
+     * @return number of trades visited
+     */
+    public synchronized int newestTrades(long beforeId, long minTime, int limit, TradeSink sink) {
+        advance(System.currentTimeMillis());
+        final long newestId = nextId - 1;
+        int skip = (int) Math.max(0, Math.min(size, newestId - beforeId + 1));
+        int count = 0;
+        for (int i = skip; i < size && count < limit; i++, count++) {
+            int index = index(i);
+            if (times[index] < minTime) {
+                break;
+            }
+            sink.trade(newestId - i, times[index], prices[index], volumes[index], types[index]);
+        }
+        return count;
+    }
+
+    /**
+     * @return high and low of the trades since the time, the last price if there are none
+     */
+    public synchronized double[] getHighLow(long minTime) {
+        double high = getLastPrice(), low = high;
+        for (int i = 0; i < size; i++) {
+            int index = index(i);
+            if (times[index] < minTime) {
+                break;
+            }
+            high = Math.max(high, prices[index]);
+            low = Math.min(low, prices[index]);
+        }
+        return new double[] {high, low};
+    }
+
+    /**
+     * @param i 0 for the newest trade
+     */
+    private int index(int i) {
+        return Math.floorMod(head - 1 - i, times.length);
+    }
+}